@@ -0,0 +1,470 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package bench;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+
+/**
+ * Minimal micro benchmark harness. Each benchmark is warmed up and then
+ * measured over a number of timed iterations. For every benchmark the time
+ * per operation, the allocated bytes per operation (all threads, using the
+ * HotSpot thread allocation counters) and the number of garbage collections
+ * are reported.
+ * <p>
+ * Results can be written as CSV and JSON baselines, and compared against a
+ * previous CSV baseline to detect regressions between commits.
+ * <p>
+ * Options (command line arguments):
+ * <ul>
+ * <li><code>-warmup N</code> number of warmup iterations (default 3)</li>
+ * <li><code>-iterations N</code> number of measured iterations (default
+ * 5)</li>
+ * <li><code>-time MS</code> minimum time per iteration in milliseconds
+ * (default 500)</li>
+ * <li><code>-filter REGEX</code> only run benchmarks whose name matches</li>
+ * <li><code>-csv FILE</code> writes the results as CSV</li>
+ * <li><code>-json FILE</code> writes the results as JSON</li>
+ * <li><code>-baseline FILE</code> compares the results with a CSV
+ * baseline</li>
+ * <li><code>-threshold F</code> relative slowdown reported as regression
+ * (default 0.10)</li>
+ * </ul>
+ * Remaining arguments of the form <code>key=value</code> are available as
+ * benchmark parameters, see {@link #ints(String, String)}.
+ */
+public final class Harness {
+
+  /**
+   * Benchmark operation.
+   */
+  @FunctionalInterface
+  public interface Operation {
+
+    /**
+     * Performs one operation. The result is consumed by the harness to
+     * prevent dead code elimination.
+     *
+     * @return result of the operation
+     * @throws Exception on failure
+     */
+    Object invoke() throws Exception;
+  }
+
+  /**
+   * Benchmark result.
+   */
+  public static final class Result {
+
+    /**
+     * Benchmark name.
+     */
+    public final String name;
+
+    /**
+     * Benchmark parameters.
+     */
+    public final String params;
+
+    /**
+     * Mean time per operation in nanoseconds.
+     */
+    public final double nanos;
+
+    /**
+     * Standard deviation of the time per operation over the iterations.
+     */
+    public final double error;
+
+    /**
+     * Allocated bytes per operation.
+     */
+    public final double bytes;
+
+    /**
+     * Number of garbage collections during the measurement.
+     */
+    public final long collections;
+
+    /**
+     * Constructs a result.
+     *
+     * @param name        benchmark name
+     * @param params      benchmark parameters
+     * @param nanos       mean time per operation
+     * @param error       standard deviation of the time per operation
+     * @param bytes       allocated bytes per operation
+     * @param collections number of garbage collections
+     */
+    Result(String name, String params, double nanos, double error, double bytes, long collections) {
+      this.name = name;
+      this.params = params;
+      this.nanos = nanos;
+      this.error = error;
+      this.bytes = bytes;
+      this.collections = collections;
+    }
+
+    /**
+     * Returns the key of this result in a baseline.
+     *
+     * @return name and parameters
+     */
+    String key() {
+      return name + "|" + params;
+    }
+  }
+
+  /**
+   * Sink for benchmark results.
+   */
+  private static volatile int sink;
+
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private final List<Result> results = new ArrayList<>();
+  private final Map<String, String> params = new HashMap<>();
+
+  private int warmup = 3;
+  private int iterations = 5;
+  private long time = 500;
+  private Pattern filter;
+  private Path csv;
+  private Path json;
+  private Path baseline;
+  private double threshold = 0.10;
+
+
+  /**
+   * Constructs a harness from command line arguments.
+   *
+   * @param args command line arguments
+   */
+  public Harness(String... args) {
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      switch (arg) {
+        case "-warmup":
+          warmup = Integer.parseInt(args[++i]);
+          break;
+        case "-iterations":
+          iterations = Integer.parseInt(args[++i]);
+          break;
+        case "-time":
+          time = Long.parseLong(args[++i]);
+          break;
+        case "-filter":
+          filter = Pattern.compile(args[++i]);
+          break;
+        case "-csv":
+          csv = Paths.get(args[++i]);
+          break;
+        case "-json":
+          json = Paths.get(args[++i]);
+          break;
+        case "-baseline":
+          baseline = Paths.get(args[++i]);
+          break;
+        case "-threshold":
+          threshold = Double.parseDouble(args[++i]);
+          break;
+        default:
+          int split = arg.indexOf('=');
+          if (split <= 0) {
+            throw new IllegalArgumentException("Unknown option: " + arg);
+          }
+          params.put(arg.substring(0, split), arg.substring(split + 1));
+      }
+    }
+
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      ((com.sun.management.ThreadMXBean) threads).setThreadAllocatedMemoryEnabled(true);
+    }
+  }
+
+
+  /**
+   * Returns an integer list parameter, for example <code>sizes=64,256</code>.
+   *
+   * @param key      parameter name
+   * @param defaults default values (comma separated)
+   * @return parameter values
+   */
+  public int[] ints(String key, String defaults) {
+    return java.util.Arrays.stream(params.getOrDefault(key, defaults).split(","))
+                           .map(String::trim)
+                           .mapToInt(Integer::parseInt)
+                           .toArray();
+  }
+
+
+  /**
+   * Determines if a benchmark is selected by the filter. Used to skip
+   * expensive setup of benchmarks that are not run.
+   *
+   * @param name benchmark name
+   * @return true if the benchmark runs
+   */
+  public boolean selected(String name) {
+    return filter == null || filter.matcher(name).find();
+  }
+
+
+  /**
+   * Runs a benchmark.
+   *
+   * @param name      benchmark name
+   * @param params    benchmark parameters (for example "n=256")
+   * @param operation operation to measure
+   */
+  public void run(String name, String params, Operation operation) {
+    if (!selected(name)) {
+      return;
+    }
+    try {
+      for (int i = 0; i < warmup; i++) {
+        iteration(operation, null);
+      }
+
+      double[] nanos       = new double[iterations];
+      long[]   measurement = new long[3];
+      for (int i = 0; i < iterations; i++) {
+        nanos[i] = iteration(operation, measurement);
+      }
+
+      double mean = java.util.Arrays.stream(nanos).average().orElse(0.0);
+      double variance = java.util.Arrays.stream(nanos)
+                                        .map((x) -> (x - mean) * (x - mean))
+                                        .sum() / java.lang.Math.max(1, iterations - 1);
+      Result result = new Result(name, params, mean, java.lang.Math.sqrt(variance),
+                                 (double) measurement[1] / measurement[0],
+                                 measurement[2]);
+      results.add(result);
+      System.out.println(format(result));
+    }
+    catch (Exception e) {
+      System.out.println(name + " " + params + " failed: " + e);
+    }
+  }
+
+
+  /**
+   * Writes the results and compares them with the baseline, as configured
+   * by the command line arguments.
+   *
+   * @throws IOException when writing or reading fails
+   */
+  public void finish() throws IOException {
+    if (csv != null) {
+      writeCsv(csv);
+    }
+    if (json != null) {
+      writeJson(json);
+    }
+    if (baseline != null) {
+      compare(baseline);
+    }
+  }
+
+
+  /**
+   * Returns the results so far.
+   *
+   * @return results
+   */
+  public List<Result> getResults() {
+    return results;
+  }
+
+
+  /**
+   * Performs one timed iteration. The number of operations is doubled until
+   * the iteration takes at least the configured time.
+   *
+   * @param operation   operation
+   * @param measurement operation count, allocated bytes and collections
+   *                    (accumulated), or null
+   * @return time per operation in nanoseconds
+   * @throws Exception when the operation fails
+   */
+  private double iteration(Operation operation, long[] measurement) throws Exception {
+    long limit = time * 1_000_000L;
+    long count = 1;
+    while (true) {
+      long bytes       = allocatedBytes();
+      long collections = collections();
+      long start       = System.nanoTime();
+      int  hash        = 0;
+      for (long i = 0; i < count; i++) {
+        hash += System.identityHashCode(operation.invoke());
+      }
+      long elapsed = System.nanoTime() - start;
+      sink = hash;
+
+      if (elapsed >= limit || count >= (1L << 40)) {
+        if (measurement != null) {
+          measurement[0] += count;
+          measurement[1] += allocatedBytes() - bytes;
+          measurement[2] += collections() - collections;
+        }
+        return (double) elapsed / count;
+      }
+      count <<= 1;
+    }
+  }
+
+
+  /**
+   * Returns the number of bytes allocated by all live threads.
+   *
+   * @return allocated bytes, or zero if not supported
+   */
+  private long allocatedBytes() {
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return 0;
+    }
+    long[] bytes = ((com.sun.management.ThreadMXBean) threads)
+        .getThreadAllocatedBytes(threads.getAllThreadIds());
+    long total = 0;
+    for (long b : bytes) {
+      if (b > 0) {
+        total += b;
+      }
+    }
+    return total;
+  }
+
+
+  /**
+   * Returns the total number of garbage collections.
+   *
+   * @return number of collections
+   */
+  private static long collections() {
+    long count = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += java.lang.Math.max(0, bean.getCollectionCount());
+    }
+    return count;
+  }
+
+
+  /**
+   * Formats a result for the console.
+   *
+   * @param result result
+   * @return text
+   */
+  private static String format(Result result) {
+    return String.format(Locale.ROOT, "%-32s %-16s %14.1f ns/op (+- %.1f) %14.1f B/op %4d gc",
+                         result.name, result.params, result.nanos, result.error,
+                         result.bytes, result.collections);
+  }
+
+
+  /**
+   * Writes the results as CSV.
+   *
+   * @param path output file
+   * @throws IOException when writing fails
+   */
+  private void writeCsv(Path path) throws IOException {
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+      out.println("name,params,ns_per_op,error,bytes_per_op,gc_count");
+      for (Result result : results) {
+        out.println(String.format(Locale.ROOT, "%s,%s,%.3f,%.3f,%.1f,%d",
+                                  result.name, result.params.replace(',', ';'),
+                                  result.nanos, result.error, result.bytes,
+                                  result.collections));
+      }
+    }
+  }
+
+
+  /**
+   * Writes the results as JSON.
+   *
+   * @param path output file
+   * @throws IOException when writing fails
+   */
+  private void writeJson(Path path) throws IOException {
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+      out.println("[");
+      for (int i = 0; i < results.size(); i++) {
+        Result result = results.get(i);
+        out.print(String.format(Locale.ROOT,
+                                "  {\"name\": \"%s\", \"params\": \"%s\", \"nsPerOp\": %.3f, " +
+                                "\"error\": %.3f, \"bytesPerOp\": %.1f, \"gcCount\": %d}",
+                                result.name, result.params, result.nanos, result.error,
+                                result.bytes, result.collections));
+        out.println(i + 1 < results.size() ? "," : "");
+      }
+      out.println("]");
+    }
+  }
+
+
+  /**
+   * Compares the results with a CSV baseline and reports regressions.
+   *
+   * @param path baseline file
+   * @throws IOException when reading fails
+   */
+  private void compare(Path path) throws IOException {
+    Map<String, double[]> previous = new HashMap<>();
+    List<String>          lines    = Files.readAllLines(path, StandardCharsets.UTF_8);
+    for (String line : lines.subList(1, lines.size())) {
+      String[] fields = line.split(",");
+      previous.put(fields[0] + "|" + fields[1].replace(';', ','),
+                   new double[]{Double.parseDouble(fields[2]), Double.parseDouble(fields[4])});
+    }
+
+    int regressions = 0;
+    System.out.println();
+    System.out.println("Comparison with " + path);
+    for (Result result : results) {
+      double[] base = previous.get(result.key());
+      if (base == null) {
+        continue;
+      }
+      double  change     = result.nanos / base[0] - 1.0;
+      boolean regression = change > threshold;
+      if (regression) {
+        regressions++;
+      }
+      System.out.println(String.format(Locale.ROOT, "%-32s %-16s %+7.1f%% time %+7.1f%% alloc%s",
+                                       result.name, result.params, change * 100.0,
+                                       base[1] == 0 ? 0.0 : (result.bytes / base[1] - 1.0) * 100.0,
+                                       regression ? "  REGRESSION" : ""));
+    }
+    System.out.println(regressions + " regression(s)");
+  }
+}
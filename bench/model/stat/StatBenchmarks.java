@@ -0,0 +1,73 @@
+package model.stat;
+
+import java.util.Random;
+
+import bench.Harness;
+
+/**
+ * Benchmarks of the model.stat kernels: histogram counting (1D and 2D),
+ * smoothing and the distribution statistics, for a range of event counts and
+ * histogram resolutions. Requires JavaFX on the class path (the histograms
+ * reference chart classes).
+ * <p>
+ * Parameters: <code>events</code> (default 100000,1000000) and
+ * <code>bins</code> (default 256,1024). See {@link Harness} for the harness
+ * options.
+ */
+public final class StatBenchmarks
+{
+	private StatBenchmarks() {}
+
+	public static void main(String[] args) throws Exception
+	{
+		Harness harness = new Harness(args);
+		for (int events : harness.ints("events", "100000,1000000"))
+			for (int bins : harness.ints("bins", "256,1024"))
+				run(harness, events, bins);
+		harness.finish();
+	}
+
+	// ----------------------------------------------------------------------------------------------------
+	private static void run(Harness harness, int events, int bins)
+	{
+		String params = "events=" + events + " bins=" + bins;
+		Random random = new Random(7);
+		double[] xs = new double[events];
+		double[] ys = new double[events];
+		for (int i = 0; i < events; i++)
+		{
+			// two populations, like a stained and unstained sample
+			double center = (i & 1) == 0 ? 0.3 : 0.7;
+			xs[i] = center + random.nextGaussian() * 0.05;
+			ys[i] = 1 - center + random.nextGaussian() * 0.05;
+		}
+
+		harness.run("histogram1d.count", params, () -> {
+			Histogram1D histogram = new Histogram1D(bins, new Range(0.0, 1.0));
+			histogram.count(xs);
+			return histogram;
+		});
+		harness.run("histogram1d.count.log", params, () -> {
+			Histogram1D histogram = new Histogram1D("log", bins, new Range(0.001, 1.0), true);
+			histogram.count(xs);
+			return histogram;
+		});
+
+		Histogram1D counted = new Histogram1D(bins, new Range(0.0, 1.0));
+		counted.count(xs);
+		// smooth() caches its result, so each operation smooths a fresh copy
+		harness.run("histogram1d.smooth", params, () -> new Histogram1D(counted).smooth());
+		harness.run("histogram1d.stats", params, () -> {
+			Histogram1D histogram = new Histogram1D(counted);
+			histogram.calcDistributionStats();
+			return histogram;
+		});
+
+		harness.run("histogram2d.count", params, () -> {
+			Histogram2D histogram = new Histogram2D(bins, new Range(0.0, 1.0), new Range(0.0, 1.0));
+			for (int i = 0; i < events; i++)
+				histogram.count(xs[i], ys[i]);
+			return histogram;
+		});
+	}
+}
@@ -0,0 +1,231 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+import bench.Harness;
+import thorwin.math.geo.Quaternion;
+
+import java.util.Random;
+
+
+/**
+ * Benchmarks of the thorwin.math kernels: matrix multiplication, the
+ * decompositions (including the alternative algorithms, so for example the
+ * Crout and blocked LU can be compared), sparse solvers, FFT, least squares
+ * fitting, primes and batch point transforms (against transforming point by
+ * point). Primes are measured both from the shared (warm) sieve and by
+ * sieving from scratch. The benchmarks are in the thorwin.math package to
+ * have access to the package-private algorithms.
+ * <p>
+ * Parameters: <code>sizes</code> (matrix sizes, default 64,256,512),
+ * <code>ffts</code> (FFT lengths, default 1024,1000,65536) and
+ * <code>events</code> (point and sample counts, default 10000,1000000).
+ * See {@link Harness} for the harness options. Example:
+ * <pre>
+ * java -cp classes thorwin.math.MathBenchmarks sizes=128,512 -csv base.csv
+ * java -cp classes thorwin.math.MathBenchmarks sizes=128,512 -baseline base.csv
+ * </pre>
+ */
+public final class MathBenchmarks {
+
+  /**
+   * Private constructor to prevent instantiation.
+   */
+  private MathBenchmarks() {}
+
+  /**
+   * Runs the benchmarks.
+   *
+   * @param args harness options and parameters
+   * @throws Exception on failure
+   */
+  public static void main(String[] args) throws Exception {
+    Harness harness = new Harness(args);
+
+    for (int n : harness.ints("sizes", "64,256,512")) {
+      matrices(harness, n);
+    }
+    for (int n : harness.ints("ffts", "1024,1000,65536")) {
+      fft(harness, n);
+    }
+    for (int n : harness.ints("events", "10000,1000000")) {
+      events(harness, n);
+    }
+
+    harness.finish();
+  }
+
+
+  /**
+   * Matrix multiplication and decomposition benchmarks.
+   *
+   * @param harness harness
+   * @param n       matrix size
+   */
+  private static void matrices(Harness harness, int n) {
+    String square = "n=" + n;
+    String tall   = "m=" + 2 * n + " n=" + n;
+
+    Matrix a   = Matrix.random(n, n, 1);
+    Matrix b   = Matrix.random(n, n, 2);
+    Matrix t   = Matrix.random(2 * n, n, 3);
+    Matrix spd = a.transpose().multiply(a).add(Matrix.identity(n).multiply(n));
+
+    double[] pa = a.toArray();
+    double[] pb = b.toArray();
+    double[] pc = new double[n * n];
+    harness.run("dgemm", square, () -> {
+      MatrixOperations.dgemm(pa, pb, pc, n, n, n, false, false, 1.0, 0.0);
+      return pc;
+    });
+    harness.run("dgemm.transposed", square, () -> {
+      MatrixOperations.dgemm(pa, pb, pc, n, n, n, true, true, 1.0, 0.0);
+      return pc;
+    });
+
+    float[] fa = a.toFloatArray();
+    float[] fb = b.toFloatArray();
+    float[] fc = new float[n * n];
+    harness.run("sgemm", square, () -> {
+      MatrixOperations.sgemm(fa, fb, fc, n, n, n, false, false, 1.0f, 0.0f);
+      return fc;
+    });
+
+    harness.run("matrix.multiply", square, () -> a.multiply(b).evaluate());
+    harness.run("matrix.lazy", square, () -> a.lazy().multiply(b).add(a).evaluate());
+    harness.run("matrix.transpose", square, () -> a.transpose().evaluate());
+
+    harness.run("lu.crout", square, () -> DefaultLU.crout(a));
+    harness.run("lu.daxpy", square, () -> DefaultLU.daxpy(a));
+    harness.run("lu.blocked", square, () -> DefaultLU.blocked(a));
+
+    harness.run("qr.householder", square, () -> DefaultQR.householder(a));
+    harness.run("qr.blocked", square, () -> DefaultQR.blocked(a));
+    harness.run("qr.householder", tall, () -> DefaultQR.householder(t));
+    harness.run("qr.blocked", tall, () -> DefaultQR.blocked(t));
+
+    harness.run("chol.left", square, () -> DefaultCholesky.left(spd));
+    harness.run("chol.right", square, () -> DefaultCholesky.right(spd));
+    harness.run("chol.blocked", square, () -> DefaultCholesky.blocked(spd));
+
+    harness.run("svd", square, () -> DefaultSVD.svd(a));
+    harness.run("svd", tall, () -> DefaultSVD.svd(t));
+    harness.run("svd.randomized", tall + " k=10", () -> t.svd(10));
+
+    harness.run("eig.symmetric", square, () -> DefaultEigen.decompose(spd));
+    harness.run("eig.general", square, () -> DefaultEigen.decompose(a));
+    harness.run("eig.lanczos", square + " k=10", () -> spd.eig(10));
+
+    // sparse tridiagonal system of n^2 unknowns
+    int      size    = n * n;
+    int[]    rows    = new int[3 * size];
+    int[]    columns = new int[3 * size];
+    double[] values  = new double[3 * size];
+    int      count   = 0;
+    for (int i = 0; i < size; i++) {
+      for (int j = java.lang.Math.max(0, i - 1); j <= java.lang.Math.min(size - 1, i + 1); j++) {
+        rows[count] = i;
+        columns[count] = j;
+        values[count++] = i == j ? 4.0 : -1.0;
+      }
+    }
+    Matrix sparse = Matrix.sparse(size, size,
+                                  java.util.Arrays.copyOf(rows, count),
+                                  java.util.Arrays.copyOf(columns, count),
+                                  java.util.Arrays.copyOf(values, count));
+    Vector rhs = Vector.valueOf(new Random(4).doubles(size).toArray());
+    harness.run("sparse.cg", "n=" + size, () -> sparse.conjugateGradient(rhs, 1000, 1e-10));
+    harness.run("sparse.bicgstab", "n=" + size, () -> sparse.bicgstab(rhs, 1000, 1e-10));
+  }
+
+
+  /**
+   * FFT benchmarks.
+   *
+   * @param harness harness
+   * @param n       transform length
+   */
+  private static void fft(Harness harness, int n) {
+    String   params = "n=" + n;
+    double[] input  = new Random(5).doubles(n).toArray();
+    double[] reals  = new double[n];
+    double[] imags  = new double[n];
+    FFT      plan   = FFT.plan(n);
+
+    harness.run("fft.complex", params, () -> {
+      System.arraycopy(input, 0, reals, 0, n);
+      java.util.Arrays.fill(imags, 0.0);
+      plan.transform(reals, imags);
+      return reals;
+    });
+    harness.run("fft.real", params, () -> {
+      plan.realTransform(input, reals, imags);
+      return reals;
+    });
+    harness.run("fft.vector", params, () -> ComplexVector.fft(input.clone()));
+  }
+
+
+  /**
+   * Benchmarks over many events (points or samples).
+   *
+   * @param harness harness
+   * @param n       number of events
+   */
+  private static void events(Harness harness, int n) {
+    String   params = "events=" + n;
+    Random   random = new Random(6);
+    double[] xs     = random.doubles(n).toArray();
+    double[] ys     = random.doubles(n).toArray();
+    double[] zs     = random.doubles(n).toArray();
+    double[] outXs  = new double[n];
+    double[] outYs  = new double[n];
+    double[] outZs  = new double[n];
+
+    Affine3D affine = Affine3D.translation(1, 2, 3)
+                              .rotate(new Quaternion(0.5, 0.5, 0.5, 0.5))
+                              .scale(2, 2, 2);
+
+    harness.run("affine3d.batch", params, () -> {
+      affine.transform(xs, ys, zs, 0, n, outXs, outYs, outZs);
+      return outXs;
+    });
+    harness.run("affine3d.points", params, () -> {
+      for (int i = 0; i < n; i++) {
+        Vector3D p = affine.multiply(new Vector3D(xs[i], ys[i], zs[i]));
+        outXs[i] = p.getX();
+        outYs[i] = p.getY();
+        outZs[i] = p.getZ();
+      }
+      return outXs;
+    });
+
+    harness.run("polyfit", params + " order=3", () -> Math.polyfit(xs, ys, 3));
+    harness.run("polyfit.sliding", params + " window=100", () -> PolynomialFit.sliding(xs, ys, 2, 100));
+
+    harness.run("primes", "limit=" + n * 10, () -> Math.primes(n * 10));
+    harness.run("primes.cold", "limit=" + n * 10, () -> Primes.sieve(n * 10));
+    harness.run("isPrime.64", params, () -> {
+      long found = 0;
+      for (int i = 0; i < 1000; i++) {
+        found += Math.isPrime(Long.MAX_VALUE - i) ? 1 : 0;
+      }
+      return found;
+    });
+  }
+}
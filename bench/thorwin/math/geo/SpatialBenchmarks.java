@@ -0,0 +1,847 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import bench.Harness;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import thorwin.math.Affine3D;
+import thorwin.math.Vector2D;
+import thorwin.math.Vector3D;
+import thorwin.math.geo.projection.MercatorProjection;
+
+
+/**
+ * Benchmarks of the spatial indices. Mixed read/update workloads of moving
+ * volumes compare the mutable {@link ConcurrentOctree} with a persistent
+ * {@link Octree} that is updated by compare-and-set of its root, for a range
+ * of thread counts. The {@link BVH} is measured on a random triangle soup,
+ * the {@link PackedRTree} and {@link RTree} by hit testing polygons, and
+ * {@link PreparedPolygon2D} by gating a million events against a polygon.
+ * The batch {@link Geodesics} are compared with the scalar {@link Geodetic}
+ * methods, and joined with 1000 stations, and the batch projection with the
+ * scalar {@link MercatorProjection#toPoint}. The {@link GeodeticIndex} is
+ * measured by radius and box queries over uniformly distributed points (large
+ * radius queries are checked against a brute-force scan first).
+ * The {@link GridClipper} is compared with clipping the gate against every
+ * tile of a 64 by 64 grid. Hit testing {@link BezierCurve3D} edges through
+ * a {@link CurveCache} is compared with sampling the curves, and the batch
+ * {@link Quaternions} and {@link RotationTrack} with per-object slerp.
+ * A {@link RayPacket} of 100000 rays is compared with casting the rays one
+ * by one against a box and the triangle soup. Sorting points by their
+ * {@link Morton} codes is compared with a comparison sort of the indices.
+ * <p>
+ * Parameters: <code>entries</code> (default 100000), <code>threads</code>
+ * (default 1,2,4), <code>updates</code> (percentage of updates, default
+ * 10,50), <code>triangles</code>, <code>polygons</code> and
+ * <code>tracks</code> (default 100000), <code>points</code> (default 1000000),
+ * <code>curves</code> (default 1000), <code>rotations</code> (default 10000)
+ * and <code>vertices</code> (of the gate, default 200). One operation
+ * performs 1000 queries or updates per thread.
+ * See {@link Harness} for the harness options.
+ */
+public final class SpatialBenchmarks {
+
+  /**
+   * Number of queries or updates per thread per operation.
+   */
+  private static final int OPERATIONS = 1000;
+
+  /**
+   * Number of events gated per operation.
+   */
+  private static final int EVENTS = 1000000;
+
+  /**
+   * Number of columns and rows of the clipping grid.
+   */
+  private static final int TILES = 64;
+
+  /**
+   * Number of rays of the packet benchmarks.
+   */
+  private static final int RAYS = 100000;
+
+  /**
+   * Number of stations of the nearest station join.
+   */
+  private static final int STATIONS = 1000;
+
+  /**
+   * Private constructor to prevent instantiation.
+   */
+  private SpatialBenchmarks() {}
+
+  /**
+   * Runs the benchmarks.
+   *
+   * @param args harness options and parameters
+   * @throws Exception on failure
+   */
+  public static void main(String[] args) throws Exception {
+    Harness harness = new Harness(args);
+
+    for (int entries : harness.ints("entries", "100000")) {
+      List<Moving> volumes = new ArrayList<>(entries);
+      Random       random  = new Random(1);
+      for (int i = 0; i < entries; i++) {
+        volumes.add(new Moving(box(random)));
+      }
+      AABB bounds = new AABB(-100, 100, -100, 100, -100, 100);
+
+      harness.run("octree.insert", "entries=" + entries,
+                  () -> new Octree<Moving>(bounds).insert(volumes));
+      harness.run("octree.packed.build", "entries=" + entries,
+                  () -> PackedOctree.build(volumes));
+      harness.run("octree.concurrent.insert", "entries=" + entries, () -> {
+        ConcurrentOctree<Moving> tree = new ConcurrentOctree<>(bounds);
+        volumes.forEach(tree::insert);
+        return tree;
+      });
+
+      // a frustrum that sees about a quarter of the volumes
+      Frustrum3D     frustrum = new Frustrum3D(new Vector3D(0, 0, -150), new Vector3D(0, 0, 1),
+                                               new Vector3D(0, 1, 0), 1.0, 1.0, 1, 400);
+      FrustrumCuller culler   = new FrustrumCuller(frustrum);
+      double[]       boxes    = new double[6 * entries];
+      double[]       spheres  = new double[4 * entries];
+      for (int i = 0; i < entries; i++) {
+        AABB box = volumes.get(i).getBounds();
+        boxes[6 * i] = box.getMinX();
+        boxes[6 * i + 1] = box.getMaxX();
+        boxes[6 * i + 2] = box.getMinY();
+        boxes[6 * i + 3] = box.getMaxY();
+        boxes[6 * i + 4] = box.getMinZ();
+        boxes[6 * i + 5] = box.getMaxZ();
+        spheres[4 * i] = 0.5 * (box.getMinX() + box.getMaxX());
+        spheres[4 * i + 1] = 0.5 * (box.getMinY() + box.getMaxY());
+        spheres[4 * i + 2] = 0.5 * (box.getMinZ() + box.getMaxZ());
+        spheres[4 * i + 3] = 0.5 * Math.sqrt(Math.pow(box.getMaxX() - box.getMinX(), 2) +
+                                             Math.pow(box.getMaxY() - box.getMinY(), 2) +
+                                             Math.pow(box.getMaxZ() - box.getMinZ(), 2));
+      }
+      int[]                visible = new int[entries];
+      double[]             sizes   = new double[entries];
+      PackedOctree<Moving> packed  = PackedOctree.build(volumes);
+      harness.run("frustum.intersects", "entries=" + entries, () -> {
+        int[] count = new int[1];
+        for (Moving volume : volumes) {
+          if (frustrum.intersects(volume.getBounds()) != Intersection.OUTSIDE) {
+            count[0]++;
+          }
+        }
+        return count;
+      });
+      harness.run("frustum.cull.boxes", "entries=" + entries,
+                  () -> culler.cullBoxes(boxes, visible, sizes));
+      harness.run("frustum.cull.spheres", "entries=" + entries,
+                  () -> culler.cullSpheres(spheres, visible, sizes));
+      harness.run("frustum.octree.packed", "entries=" + entries, () -> {
+        int[] count = new int[1];
+        culler.select(packed, (volume) -> count[0]++);
+        return count;
+      });
+
+      for (int threads : harness.ints("threads", "1,2,4")) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int updates : harness.ints("updates", "10,50")) {
+          String params = "entries=" + entries + " threads=" + threads + " updates=" + updates;
+
+          ConcurrentOctree<Moving> concurrent = new ConcurrentOctree<>(bounds);
+          volumes.forEach(concurrent::insert);
+          harness.run("octree.concurrent.mixed", params, () -> mixed(executor, threads, (r) -> {
+            Moving volume = volumes.get(r.nextInt(volumes.size()));
+            if (r.nextInt(100) < updates) {
+              synchronized (volume) {
+                volume.bounds = box(r);
+                concurrent.update(volume);
+              }
+            }
+            else {
+              concurrent.select(query(r), (v) -> {});
+            }
+          }));
+
+          AtomicReference<Octree<Moving>> persistent =
+              new AtomicReference<>(new Octree<Moving>(bounds).insert(volumes));
+          AtomicReferenceArray<Moving> current = new AtomicReferenceArray<>(volumes.toArray(new Moving[0]));
+          harness.run("octree.persistent.mixed", params, () -> mixed(executor, threads, (r) -> {
+            if (r.nextInt(100) < updates) {
+              // immutable copy: delete the old volume, insert the moved one
+              int    index  = r.nextInt(volumes.size());
+              Moving volume = current.get(index);
+              Moving moved  = new Moving(box(r));
+              if (current.compareAndSet(index, volume, moved)) {
+                persistent.getAndUpdate((tree) -> tree.delete(volume).insert(moved));
+              }
+            }
+            else {
+              persistent.get().select(query(r), (v) -> {});
+            }
+          }));
+        }
+        executor.shutdown();
+      }
+    }
+
+    for (int count : harness.ints("triangles", "100000")) {
+      String   params    = "triangles=" + count;
+      double[] triangles = triangles(count, new Random(2));
+      BVH      bvh       = BVH.build(triangles);
+
+      checkGrid();
+      checkPacket();
+      harness.run("bvh.build", params, () -> BVH.build(triangles));
+      harness.run("bvh.refit", params, () -> {
+        bvh.refit();
+        return bvh;
+      });
+      harness.run("bvh.closestHit", params, () -> {
+        Random random = new Random(3);
+        int    hits   = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+          if (bvh.closestHit(random.nextDouble() * 200 - 100, random.nextDouble() * 200 - 100, -200,
+                             random.nextGaussian() * 0.1, random.nextGaussian() * 0.1, 1,
+                             Double.POSITIVE_INFINITY, null) >= 0) {
+            hits++;
+          }
+        }
+        return hits;
+      });
+      harness.run("bvh.overlap", params, () -> {
+        int[] pairs = new int[1];
+        bvh.overlap(bvh, (a, b) -> pairs[0]++);
+        return pairs[0];
+      });
+
+      // the rays of bvh.closestHit as a packet, plus a packet that hits a box
+      double[] rays   = new double[6 * RAYS];
+      Random   random = new Random(3);
+      for (int i = 0; i < RAYS; i++) {
+        rays[6 * i] = random.nextDouble() * 200 - 100;
+        rays[6 * i + 1] = random.nextDouble() * 200 - 100;
+        rays[6 * i + 2] = -200;
+        rays[6 * i + 3] = random.nextGaussian() * 0.1;
+        rays[6 * i + 4] = random.nextGaussian() * 0.1;
+        rays[6 * i + 5] = 1;
+      }
+      RayPacket        packet    = new RayPacket(rays);
+      Ray3D[]          scalar    = new Ray3D[RAYS];
+      List<Triangle3D> soup      = new ArrayList<>(count);
+      AABB             box       = new AABB(-50, 50, -50, 50, -50, 50);
+      int[]            indices   = new int[RAYS];
+      double[]         distances = new double[RAYS];
+      double[]         hits      = new double[count];
+      for (int i = 0; i < RAYS; i++) {
+        scalar[i] = packet.getRay(i);
+      }
+      for (int i = 0; i < count; i++) {
+        soup.add(bvh.getTriangle(i));
+      }
+      harness.run("ray.box.scalar", params, () -> {
+        int hit = 0;
+        for (Ray3D ray : scalar) {
+          OptionalDouble distance = ray.intersectionDistance(box);
+          if (distance.isPresent() && distance.getAsDouble() >= 0) {
+            hit++;
+          }
+        }
+        return hit;
+      });
+      harness.run("ray.box.packet", params, () -> packet.intersect(box, distances));
+      harness.run("ray.triangles.scalar", params, () -> {
+        double closest = Double.POSITIVE_INFINITY;
+        for (Triangle3D triangle : soup) {
+          OptionalDouble distance = scalar[0].intersectionDistance(triangle);
+          if (distance.isPresent()) {
+            closest = Math.min(closest, distance.getAsDouble());
+          }
+        }
+        return closest;
+      });
+      harness.run("ray.triangles.batch", params, () -> scalar[0].intersectTriangles(triangles, hits));
+      harness.run("ray.bvh.scalar", params, () -> {
+        int hit = 0;
+        for (Ray3D ray : scalar) {
+          if (bvh.closestHit(ray, Double.POSITIVE_INFINITY, null) >= 0) {
+            hit++;
+          }
+        }
+        return hit;
+      });
+      harness.run("ray.bvh.packet", params,
+                  () -> packet.closestHits(bvh, Double.POSITIVE_INFINITY, indices, distances));
+    }
+
+    for (int count : harness.ints("polygons", "100000")) {
+      String          params   = "polygons=" + count;
+      List<Polygon2D> polygons = new ArrayList<>(count);
+      Random          random   = new Random(4);
+      for (int i = 0; i < count; i++) {
+        polygons.add(polygon(random));
+      }
+      PackedRTree<Polygon2D> packed  = PackedRTree.build(polygons);
+      RTree<Polygon2D>       dynamic = new RTree<>();
+      dynamic.insert(polygons);
+
+      harness.run("rtree.packed.build", params, () -> PackedRTree.build(polygons));
+      harness.run("rtree.insert", params, () -> {
+        RTree<Polygon2D> tree = new RTree<>();
+        tree.insert(polygons);
+        return tree;
+      });
+      harness.run("rtree.linear.stab", params, () -> stab(polygons, (x, y, hits) -> {
+        for (Polygon2D polygon : polygons) {
+          if (polygon.contains(x, y)) {
+            hits[0]++;
+          }
+        }
+      }));
+      harness.run("rtree.packed.stab", params,
+                  () -> stab(polygons, (x, y, hits) -> packed.stab(x, y, (p) -> hits[0]++)));
+      harness.run("rtree.stab", params,
+                  () -> stab(polygons, (x, y, hits) -> dynamic.stab(x, y, (p) -> hits[0]++)));
+    }
+
+    for (int vertices : harness.ints("vertices", "200")) {
+      String     params = "vertices=" + vertices;
+      Random     random = new Random(6);
+      Vector2D[] gate   = new Vector2D[vertices];
+      for (int i = 0; i < vertices; i++) {
+        double angle  = 2 * Math.PI * i / vertices;
+        double radius = 50 + random.nextDouble() * 50;
+        gate[i] = new Vector2D(radius * Math.cos(angle), radius * Math.sin(angle));
+      }
+      Polygon2D polygon = new Polygon2D(gate);
+      double[]  xs      = new double[EVENTS];
+      double[]  ys      = new double[EVENTS];
+      for (int i = 0; i < EVENTS; i++) {
+        xs[i] = random.nextDouble() * 240 - 120;
+        ys[i] = random.nextDouble() * 240 - 120;
+      }
+      BitSet out = new BitSet(EVENTS);
+
+      harness.run("gate.prepare", params, polygon::prepare);
+      harness.run("gate.contains", params, () -> {
+        for (int i = 0; i < EVENTS; i++) {
+          out.set(i, polygon.contains(xs[i], ys[i]));
+        }
+        return out;
+      });
+      PreparedPolygon2D prepared = polygon.prepare();
+      harness.run("gate.prepared.containsAll", params, () -> {
+        prepared.containsAll(xs, ys, out);
+        return out;
+      });
+
+      GridClipper clipper = new GridClipper(new Rectangle2D(-100, -100, 200), TILES, TILES);
+      harness.run("clip.tiles", params, () -> {
+        List<Polygon2D> fragments = new ArrayList<>();
+        for (int column = 0; column < TILES; column++) {
+          for (int row = 0; row < TILES; row++) {
+            polygon.clip(clipper.getBounds(column, row)).ifPresent(fragments::add);
+          }
+        }
+        return fragments;
+      });
+      harness.run("clip.grid", params, () -> clipper.clip(polygon));
+    }
+
+    for (int count : harness.ints("rotations", "10000")) {
+      String       params = "rotations=" + count;
+      Random       random = new Random(10);
+      double[][]   frames = new double[4][4 * count];
+      for (double[] frame : frames) {
+        for (int i = 0; i < frame.length; i++) {
+          frame[i] = random.nextGaussian();
+        }
+        Quaternions.normalize(frame);
+      }
+      Quaternion[] from   = new Quaternion[count];
+      Quaternion[] to     = new Quaternion[count];
+      for (int i = 0; i < count; i++) {
+        from[i] = Quaternions.get(frames[0], i);
+        to[i] = Quaternions.get(frames[1], i);
+      }
+      double[]      out      = new double[4 * count];
+      double[]      matrices = new double[12 * count];
+      RotationTrack track    = new RotationTrack(new double[]{0, 1, 2, 3}, frames,
+                                                 RotationTrack.Interpolation.SQUAD);
+
+      harness.run("rotation.slerp", params, () -> {
+        Affine3D[] affines = new Affine3D[count];
+        for (int i = 0; i < count; i++) {
+          affines[i] = from[i].slerp(to[i], 0.3).toAffine3D();
+        }
+        return affines;
+      });
+      harness.run("rotation.batch.slerp", params, () -> {
+        Quaternions.slerp(frames[0], frames[1], 0.3, out);
+        Quaternions.toAffine3D(out, null, matrices);
+        return matrices;
+      });
+      harness.run("rotation.batch.nlerp", params, () -> {
+        Quaternions.nlerp(frames[0], frames[1], 0.3, out);
+        Quaternions.toAffine3D(out, null, matrices);
+        return matrices;
+      });
+      harness.run("rotation.track.squad", params, () -> {
+        track.evaluate(1.3, out, null, matrices);
+        return matrices;
+      });
+    }
+
+    for (int count : harness.ints("curves", "1000")) {
+      String          params = "curves=" + count;
+      Random          random = new Random(9);
+      BezierCurve3D[] curves = new BezierCurve3D[count];
+      for (int i = 0; i < count; i++) {
+        Vector3D[] points = new Vector3D[4];
+        for (int j = 0; j < 4; j++) {
+          points[j] = new Vector3D(random.nextDouble() * 1000, random.nextDouble() * 1000, 0);
+        }
+        curves[i] = new BezierCurve3D(points[0], points[1], points[2], points[3]);
+      }
+      CurveCache cache = new CurveCache(count);
+
+      harness.run("curve.flatten", params, () -> {
+        Object[] flattened = new Object[count];
+        for (int i = 0; i < count; i++) {
+          flattened[i] = curves[i].toFlattenedCurve(0.25);
+        }
+        return flattened;
+      });
+      harness.run("curve.hit.sampled", params, () -> {
+        int[] hits = new int[1];
+        for (int i = 0; i < count; i++) {
+          for (int step = 0; step <= 100; step++) {
+            Vector3D point = curves[i].calculate(step / 100.0);
+            if (Math.hypot(point.getX() - 500, point.getY() - 500) < 4) {
+              hits[0]++;
+              break;
+            }
+          }
+        }
+        return hits;
+      });
+      harness.run("curve.hit.cached", params, () -> {
+        int[] hits = new int[1];
+        for (int i = 0; i < count; i++) {
+          if (cache.flatten(curves[i], 0.25).isWithin(500, 500, 0, 4)) {
+            hits[0]++;
+          }
+        }
+        return hits;
+      });
+    }
+
+    for (int tracks : harness.ints("tracks", "100000")) {
+      String   params    = "tracks=" + tracks;
+      Random   random    = new Random(7);
+      double[] lats      = new double[tracks];
+      double[] lons      = new double[tracks];
+      double[] distances = new double[tracks];
+      for (int i = 0; i < tracks; i++) {
+        lats[i] = (random.nextDouble() - 0.5) * 0.5;
+        lons[i] = (random.nextDouble() - 0.5) * 0.5;
+      }
+      double[] stationLats = new double[STATIONS];
+      double[] stationLons = new double[STATIONS];
+      for (int i = 0; i < STATIONS; i++) {
+        stationLats[i] = (random.nextDouble() - 0.5) * 0.5;
+        stationLons[i] = (random.nextDouble() - 0.5) * 0.5;
+      }
+      int[] indices = new int[tracks];
+
+      harness.run("geodesic.haversine", params, () -> {
+        for (int i = 0; i < tracks; i++) {
+          distances[i] = Geodetic.haversine(0.1, 0.2, lats[i], lons[i]);
+        }
+        return distances;
+      });
+      harness.run("geodesic.batch.haversine", params, () -> {
+        Geodesics.haversine(0.1, 0.2, lats, lons, distances);
+        return distances;
+      });
+      harness.run("geodesic.batch.haversine.approximate", params, () -> {
+        Geodesics.haversine(0.1, 0.2, lats, lons, distances, 1e-9);
+        return distances;
+      });
+      harness.run("geodesic.vincenty", params, () -> {
+        for (int i = 0; i < tracks; i++) {
+          distances[i] = Geodetic.vincenty(0.1, 0.2, lats[i], lons[i], 100).getDistance();
+        }
+        return distances;
+      });
+      harness.run("geodesic.batch.vincenty", params, () -> {
+        Geodesics.vincenty(0.1, 0.2, lats, lons, distances, null, null);
+        return distances;
+      });
+      harness.run("geodesic.batch.nearest", params, () -> {
+        Geodesics.nearest(lats, lons, stationLats, stationLons, indices, distances);
+        return indices;
+      });
+
+      MercatorProjection mercator = MercatorProjection.DEFAULT;
+      double[]           xs       = new double[tracks];
+      double[]           ys       = new double[tracks];
+      BitSet             valid    = new BitSet(tracks);
+      harness.run("projection.toPoint", params, () -> {
+        for (int i = 0; i < tracks; i++) {
+          Optional<Vector2D> point = mercator.toPoint(lats[i], lons[i]);
+          xs[i] = point.isPresent() ? point.get().getX() : Double.NaN;
+          ys[i] = point.isPresent() ? point.get().getY() : Double.NaN;
+        }
+        return xs;
+      });
+      harness.run("projection.batch.toPoints", params, () -> {
+        mercator.toPoints(lats, lons, xs, ys, valid);
+        return valid;
+      });
+      harness.run("projection.batch.toGeodetics", params, () -> {
+        mercator.toGeodetics(xs, ys, lats, lons, valid);
+        return valid;
+      });
+    }
+
+    for (int points : harness.ints("points", "1000000")) {
+      String   params     = "points=" + points;
+      Random   random     = new Random(8);
+      double[] latitudes  = new double[points];
+      double[] longitudes = new double[points];
+      for (int i = 0; i < points; i++) {
+        latitudes[i] = Math.asin(2 * random.nextDouble() - 1);
+        longitudes[i] = (2 * random.nextDouble() - 1) * Math.PI;
+      }
+
+      harness.run("geoindex.build", params, () -> GeodeticIndex.build(latitudes, longitudes));
+      GeodeticIndex index = GeodeticIndex.build(latitudes, longitudes);
+      harness.run("geoindex.radius", params, () -> {
+        int[] hits = new int[1];
+        for (int i = 0; i < OPERATIONS; i++) {
+          index.select(latitudes[i], longitudes[i], 100000, (p) -> hits[0]++);
+        }
+        return hits;
+      });
+
+      // caps beyond a quarter circumference, checked against brute force
+      double large = 0.6 * Math.PI * Geodetic.WGS84_EARTH_RADIUS;
+      for (int i = 0; i < 20; i++) {
+        checkRadius(index, latitudes, longitudes, latitudes[i], longitudes[i],
+                    (0.5 + 0.025 * i) * Math.PI * Geodetic.WGS84_EARTH_RADIUS);
+      }
+      harness.run("geoindex.radius.large", params, () -> {
+        int[] hits = new int[1];
+        for (int i = 0; i < 10; i++) {
+          index.select(latitudes[i], longitudes[i], large, (p) -> hits[0]++);
+        }
+        return hits;
+      });
+      harness.run("geoindex.box", params, () -> {
+        int[] hits = new int[1];
+        for (int i = 0; i < OPERATIONS; i++) {
+          double south = Math.max(-Math.PI / 2, latitudes[i] - 0.01);
+          double north = Math.min(Math.PI / 2, latitudes[i] + 0.01);
+          double west  = longitudes[i];
+          double east  = west + 0.02 > Math.PI ? west + 0.02 - 2 * Math.PI : west + 0.02;
+          index.select(new GeodeticBounds(south, west, north, east), (p) -> hits[0]++);
+        }
+        return hits;
+      });
+
+      double[]    xs     = new double[points];
+      double[]    ys     = new double[points];
+      Rectangle2D extent = new Rectangle2D(0, 0, 1000, 1000);
+      for (int i = 0; i < points; i++) {
+        xs[i] = random.nextDouble() * 1000;
+        ys[i] = random.nextDouble() * 1000;
+      }
+      long[] codes = Morton.encode(Morton.Curve.HILBERT, xs, ys, extent);
+      harness.run("curve.encode.morton", params,
+                  () -> Morton.encode(Morton.Curve.MORTON, xs, ys, extent));
+      harness.run("curve.encode.hilbert", params,
+                  () -> Morton.encode(Morton.Curve.HILBERT, xs, ys, extent));
+      harness.run("curve.sort.radix", params, () -> Morton.sort(codes, 2 * Morton.BITS_2D));
+      harness.run("curve.sort.comparator", params, () -> {
+        Integer[] order = new Integer[points];
+        for (int i = 0; i < points; i++) {
+          order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong((i) -> codes[i]));
+        return order;
+      });
+    }
+
+    harness.finish();
+  }
+
+
+  /**
+   * Checks a radius query of a geodetic index against a brute-force scan.
+   *
+   * @param index      index of the points
+   * @param latitudes  latitudes of the points
+   * @param longitudes longitudes of the points
+   * @param latitude   latitude of the center
+   * @param longitude  longitude of the center
+   * @param radius     distance in meters
+   */
+  private static void checkRadius(GeodeticIndex index, double[] latitudes, double[] longitudes,
+                                  double latitude, double longitude, double radius) {
+    int expected = 0;
+    for (int i = 0; i < latitudes.length; i++) {
+      if (Geodetic.haversine(latitude, longitude, latitudes[i], longitudes[i]) <= radius) {
+        expected++;
+      }
+    }
+    int[] selected = index.select(latitude, longitude, radius);
+    for (int i : selected) {
+      if (Geodetic.haversine(latitude, longitude, latitudes[i], longitudes[i]) > radius) {
+        expected = -1;
+      }
+    }
+    if (selected.length != expected) {
+      throw new IllegalStateException("Radius query differs from brute force at " +
+                                      latitude + ", " + longitude);
+    }
+  }
+
+
+  /**
+   * Checks vertical rays through the edges of a 10&times;10 grid mesh, whose
+   * origins lie on faces of the node bounds, against a brute-force scan.
+   */
+  private static void checkGrid() {
+    double[] grid = new double[9 * 2 * 100];
+    int      n    = 0;
+    for (int x = 0; x < 10; x++) {
+      for (int y = 0; y < 10; y++) {
+        double[] cell = {x, y, 0, x + 1, y, 0, x + 1, y + 1, 0,
+                         x, y, 0, x + 1, y + 1, 0, x, y + 1, 0};
+        System.arraycopy(cell, 0, grid, n, cell.length);
+        n += cell.length;
+      }
+    }
+    BVH bvh = BVH.build(grid);
+    for (int x = 0; x <= 10; x++) {
+      for (int y = 0; y < 10; y++) {
+        Ray3D   ray      = new Ray3D(new Vector3D(x, y + 0.5, 1), new Vector3D(0, 0, -1));
+        boolean expected = ray.intersectTriangles(grid, null) >= 0;
+        if ((bvh.closestHit(ray, Double.POSITIVE_INFINITY, null) >= 0) != expected ||
+            bvh.anyHit(ray, Double.POSITIVE_INFINITY) != expected) {
+          throw new IllegalStateException("Ray differs from brute force at " + x + ", " + (y + 0.5));
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Checks axis-aligned rays with origins on faces of a box against the
+   * packet and batch slab tests: every ray should hit the unit box.
+   */
+  private static void checkPacket() {
+    double[]  rays      = {0, 0.5, 2, 0, 0, -1,
+                           0.5, 0.5, 2, 0, 0, -1,
+                           1, 1, 2, 0, 0, -1};
+    RayPacket packet    = new RayPacket(rays);
+    double[]  distances = new double[packet.size()];
+    if (packet.intersect(new AABB(0, 1, 0, 1, 0, 1), distances) != packet.size()) {
+      throw new IllegalStateException("Packet misses a box");
+    }
+    for (int i = 0; i < packet.size(); i++) {
+      if (packet.getRay(i).intersectBoxes(new double[]{0, 1, 0, 1, 0, 1}, null) != 0) {
+        throw new IllegalStateException("Ray " + i + " misses a box");
+      }
+    }
+  }
+
+
+  /**
+   * Creates a soup of small random triangles.
+   *
+   * @param count  number of triangles
+   * @param random random generator
+   * @return triangle coordinates
+   */
+  private static double[] triangles(int count, Random random) {
+    double[] triangles = new double[9 * count];
+    for (int i = 0; i < count; i++) {
+      double x = random.nextDouble() * 200 - 100;
+      double y = random.nextDouble() * 200 - 100;
+      double z = random.nextDouble() * 200 - 100;
+      for (int v = 0; v < 9; v += 3) {
+        triangles[9 * i + v] = x + random.nextGaussian();
+        triangles[9 * i + v + 1] = y + random.nextGaussian();
+        triangles[9 * i + v + 2] = z + random.nextGaussian();
+      }
+    }
+    return triangles;
+  }
+
+
+  /**
+   * Creates a small random convex polygon.
+   *
+   * @param random random generator
+   * @return polygon
+   */
+  private static Polygon2D polygon(Random random) {
+    double     x        = random.nextDouble() * 1000;
+    double     y        = random.nextDouble() * 1000;
+    Vector2D[] vertices = new Vector2D[3 + random.nextInt(6)];
+    for (int i = 0; i < vertices.length; i++) {
+      double angle  = 2 * Math.PI * i / vertices.length;
+      double radius = 1 + random.nextDouble() * 5;
+      vertices[i] = new Vector2D(x + radius * Math.cos(angle), y + radius * Math.sin(angle));
+    }
+    return new Polygon2D(vertices);
+  }
+
+
+  /**
+   * Runs point stabbing queries (hit tests) against polygons. The linear
+   * scan uses 100 queries per operation instead of 1000.
+   *
+   * @param polygons polygons
+   * @param query    query receiving the point and a hit counter
+   * @return number of hits
+   */
+  private static Object stab(List<Polygon2D> polygons, StabQuery query) {
+    Random random  = new Random(5);
+    int[]  hits    = new int[1];
+    int    queries = polygons.size() > OPERATIONS ? OPERATIONS / 10 : OPERATIONS;
+    for (int i = 0; i < queries; i++) {
+      query.stab(random.nextDouble() * 1000, random.nextDouble() * 1000, hits);
+    }
+    return hits[0];
+  }
+
+
+  /**
+   * A point stabbing query.
+   */
+  @FunctionalInterface
+  private interface StabQuery {
+
+    /**
+     * Runs a query.
+     *
+     * @param x    x-coordinate of the point
+     * @param y    y-coordinate of the point
+     * @param hits hit counter
+     */
+    void stab(double x, double y, int[] hits);
+  }
+
+
+  /**
+   * Runs a workload on a number of threads.
+   *
+   * @param executor executor
+   * @param threads  number of threads
+   * @param step     a single query or update
+   * @return number of threads
+   * @throws Exception on failure
+   */
+  private static Object mixed(ExecutorService executor,
+                              int threads,
+                              java.util.function.Consumer<Random> step) throws Exception {
+    List<Future<?>> futures = new ArrayList<>(threads);
+    for (int t = 0; t < threads; t++) {
+      Random random = new Random(t);
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < OPERATIONS; i++) {
+          step.accept(random);
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    return threads;
+  }
+
+
+  /**
+   * Creates a random small box.
+   *
+   * @param random random generator
+   * @return box
+   */
+  private static AABB box(Random random) {
+    double x = random.nextDouble() * 200 - 100;
+    double y = random.nextDouble() * 200 - 100;
+    double z = random.nextDouble() * 200 - 100;
+    double s = random.nextDouble();
+    return new AABB(x, x + s, y, y + s, z, z + s);
+  }
+
+
+  /**
+   * Creates a random query box.
+   *
+   * @param random random generator
+   * @return box
+   */
+  private static AABB query(Random random) {
+    double x = random.nextDouble() * 180 - 100;
+    double y = random.nextDouble() * 180 - 100;
+    double z = random.nextDouble() * 180 - 100;
+    return new AABB(x, x + 10, y, y + 10, z, z + 10);
+  }
+
+
+  /**
+   * Moving volume.
+   */
+  private static final class Moving implements Volume {
+
+    /**
+     * Current bounds.
+     */
+    volatile AABB bounds;
+
+    /**
+     * Constructs a volume.
+     *
+     * @param bounds bounds
+     */
+    Moving(AABB bounds) {
+      this.bounds = bounds;
+    }
+
+    @Override
+    public AABB getBounds() {
+      return bounds;
+    }
+  }
+}
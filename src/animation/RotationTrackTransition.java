@@ -0,0 +1,57 @@
+package animation;
+
+import java.util.List;
+
+import javafx.animation.Interpolator;
+import javafx.animation.Transition;
+import javafx.scene.transform.Affine;
+import javafx.util.Duration;
+import thorwin.math.geo.Quaternions;
+import thorwin.math.geo.RotationTrack;
+
+/**
+ * A Transition that drives the rotations of many nodes from a RotationTrack.
+ * Every frame the track is evaluated into reused buffers and the matrices are
+ * copied into the Affine transforms of the nodes, so no objects are created
+ * per frame. The translation of each Affine is kept.
+ * The interpolator of the transition maps the fraction to the track time, so
+ * the usual easing interpolators apply.
+ */
+public class RotationTrackTransition extends Transition {
+    private final RotationTrack track;
+    private final List<Affine> targets;
+    private final double[] rotations;
+    private final double[] matrices;
+
+    /**
+     * Create new RotationTrackTransition
+     * 
+     * @param track The rotations of the nodes over time
+     * @param targets The transforms of the nodes, one per object of the track
+     * @param duration The duration of the whole track
+     */
+    public RotationTrackTransition(final RotationTrack track, final List<Affine> targets, final Duration duration) {
+        if (targets.size() != track.size()) {
+            throw new IllegalArgumentException("Number of targets should be equal to the track size");
+        }
+        this.track = track;
+        this.targets = targets;
+        this.rotations = new double[4 * track.size()];
+        this.matrices = new double[12 * track.size()];
+        setCycleDuration(duration);
+        setInterpolator(Interpolator.LINEAR);
+    }
+
+    @Override
+    protected void interpolate(double frac) {
+        track.evaluate(track.getStart() + frac * (track.getEnd() - track.getStart()), rotations);
+        Quaternions.toAffine3D(rotations, null, matrices);
+        for (int i = 0; i < targets.size(); i++) {
+            Affine a = targets.get(i);
+            int m = 12 * i;
+            a.setToTransform(matrices[m], matrices[m + 1], matrices[m + 2], a.getTx(),
+                    matrices[m + 4], matrices[m + 5], matrices[m + 6], a.getTy(),
+                    matrices[m + 8], matrices[m + 9], matrices[m + 10], a.getTz());
+        }
+    }
+}
@@ -17,13 +17,18 @@
 
 package thorwin.math;
 
+import static java.lang.Math.min;
+
 import java.util.Optional;
+import java.util.stream.IntStream;
+
+import thorwin.math.geo.Transform2D;
 
 
 /**
  * Affine matrix for transforming Vector2D instances.
  */
-public final class Affine2D extends DefaultMatrix {
+public final class Affine2D extends DefaultMatrix implements Transform2D {
 
   /**
    * Identity affine matrix.
@@ -74,6 +79,22 @@ public final class Affine2D extends DefaultMatrix {
     return multiply(other);
   }
 
+  /**
+   * Composes a chain of affines into a single affine. The resulting affine
+   * is equivalent to applying the affines in the specified order, the first
+   * affine is applied first.
+   *
+   * @param affines affines to compose
+   * @return composed affine
+   */
+  public static Affine2D compose(Affine2D... affines) {
+    Affine2D result = IDENTITY;
+    for (Affine2D affine : affines) {
+      result = affine.multiply(result);
+    }
+    return result;
+  }
+
   /**
    * Multiplies this affine with another.
    *
@@ -171,10 +192,53 @@ public final class Affine2D extends DefaultMatrix {
    * @return transformed vector
    */
   public Vector2D multiply(double x, double y) {
-    Matrix v = Matrix.columnPacked(3, x, y, 1);
-    Matrix m = this.multiply(v);
+    return new Vector2D(mxx * x + mxy * y + tx,
+                        myx * x + myy * y + ty);
+  }
+
+
+  @Override
+  public Vector2D transform(double x, double y) {
+    return multiply(x, y);
+  }
 
-    return new Vector2D(m.get(0, 0), m.get(1, 0));
+
+  @Override
+  public void transform(double[] xs, double[] ys, int from, int to,
+                        double[] outXs, double[] outYs) {
+    int count = to - from;
+    if (count >= PARALLEL_THRESHOLD) {
+      int blocks = (count + PackedKernels.ROW_BLOCK - 1) / PackedKernels.ROW_BLOCK;
+      IntStream.range(0, blocks).parallel().forEach((block) -> {
+        int start = from + block * PackedKernels.ROW_BLOCK;
+        int end   = min(to, start + PackedKernels.ROW_BLOCK);
+        transformRange(xs, ys, start, end, outXs, outYs);
+      });
+    }
+    else {
+      transformRange(xs, ys, from, to, outXs, outYs);
+    }
+  }
+
+
+  /**
+   * Transforms a range of points, sequentially.
+   *
+   * @param xs    x-coordinates of the points
+   * @param ys    y-coordinates of the points
+   * @param from  index of the first point (inclusive)
+   * @param to    index of the last point (exclusive)
+   * @param outXs receives the transformed x-coordinates
+   * @param outYs receives the transformed y-coordinates
+   */
+  private void transformRange(double[] xs, double[] ys, int from, int to,
+                              double[] outXs, double[] outYs) {
+    for (int i = from; i < to; i++) {
+      double x = xs[i];
+      double y = ys[i];
+      outXs[i] = mxx * x + mxy * y + tx;
+      outYs[i] = myx * x + myy * y + ty;
+    }
   }
 
   /**
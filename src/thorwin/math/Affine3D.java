@@ -17,17 +17,21 @@
 
 package thorwin.math;
 
+import static java.lang.Math.min;
+
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 import thorwin.math.geo.AxisAngle;
 import thorwin.math.geo.Euler;
 import thorwin.math.geo.Quaternion;
+import thorwin.math.geo.Transform3D;
 
 
 /**
  * Affine matrix for transforming Vector3D instances.
  */
-public final class Affine3D extends DefaultMatrix {
+public final class Affine3D extends DefaultMatrix implements Transform3D {
 
   /**
    * Identity affine matrix.
@@ -181,6 +185,22 @@ public final class Affine3D extends DefaultMatrix {
     return quaternion.toAffine3D();
   }
 
+  /**
+   * Composes a chain of affines into a single affine. The resulting affine
+   * is equivalent to applying the affines in the specified order, the first
+   * affine is applied first.
+   *
+   * @param affines affines to compose
+   * @return composed affine
+   */
+  public static Affine3D compose(Affine3D... affines) {
+    Affine3D result = IDENTITY;
+    for (Affine3D affine : affines) {
+      result = affine.multiply(result);
+    }
+    return result;
+  }
+
   /**
    * Multiplies this affine with another
    *
@@ -330,6 +350,56 @@ public final class Affine3D extends DefaultMatrix {
                             this.tz);
   }
 
+  @Override
+  public Vector3D transform(double x, double y, double z) {
+    return multiply(x, y, z);
+  }
+
+
+  @Override
+  public void transform(double[] xs, double[] ys, double[] zs,
+                        int from, int to,
+                        double[] outXs, double[] outYs, double[] outZs) {
+    int count = to - from;
+    if (count >= PARALLEL_THRESHOLD) {
+      int blocks = (count + PackedKernels.ROW_BLOCK - 1) / PackedKernels.ROW_BLOCK;
+      IntStream.range(0, blocks).parallel().forEach((block) -> {
+        int start = from + block * PackedKernels.ROW_BLOCK;
+        int end   = min(to, start + PackedKernels.ROW_BLOCK);
+        transformRange(xs, ys, zs, start, end, outXs, outYs, outZs);
+      });
+    }
+    else {
+      transformRange(xs, ys, zs, from, to, outXs, outYs, outZs);
+    }
+  }
+
+
+  /**
+   * Transforms a range of points, sequentially.
+   *
+   * @param xs    x-coordinates of the points
+   * @param ys    y-coordinates of the points
+   * @param zs    z-coordinates of the points
+   * @param from  index of the first point (inclusive)
+   * @param to    index of the last point (exclusive)
+   * @param outXs receives the transformed x-coordinates
+   * @param outYs receives the transformed y-coordinates
+   * @param outZs receives the transformed z-coordinates
+   */
+  private void transformRange(double[] xs, double[] ys, double[] zs,
+                              int from, int to,
+                              double[] outXs, double[] outYs, double[] outZs) {
+    for (int i = from; i < to; i++) {
+      double x = xs[i];
+      double y = ys[i];
+      double z = zs[i];
+      outXs[i] = mxx * x + mxy * y + mxz * z + tx;
+      outYs[i] = myx * x + myy * y + myz * z + ty;
+      outZs[i] = mzx * x + mzy * y + mzz * z + tz;
+    }
+  }
+
   /**
    * Append a translation to this affine.
    *
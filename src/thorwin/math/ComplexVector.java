@@ -63,7 +63,7 @@ public interface ComplexVector {
   /**
    * Performs a Fast Fourier Transformation on the input samples.
    *
-   * @param reals real input samples (length should be a order of two)
+   * @param reals real input samples
    * @return Fourier transformed result
    */
   static ComplexVector fft(double... reals) {
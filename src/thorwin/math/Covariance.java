@@ -0,0 +1,365 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+import static java.lang.Integer.min;
+
+import java.util.stream.IntStream;
+
+
+/**
+ * Streaming accumulator for the mean and covariance of multivariate data.
+ * <p>
+ * Observations are added one at a time, or in batches of columns (for
+ * example the channels of an event file). The data itself is never stored,
+ * the accumulator only keeps the mean and the sums of squared deviations,
+ * which are updated using numerically stable (Welford/Chan) updates.
+ * Accumulators of separate parts of the data can be combined, which is
+ * used to accumulate large data sets in parallel over row blocks.
+ * <p>
+ * The principal components of the data are the eigenvectors of the
+ * covariance matrix: <code>covariance.getCovariance().eig(count)</code>.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class Covariance implements java.io.Serializable {
+
+  /**
+   * Number of variables.
+   */
+  private final int dimension;
+
+  /**
+   * Mean of the observations.
+   */
+  private final double[] mean;
+
+  /**
+   * Sums of the products of deviations from the mean (upper triangle,
+   * row-major packed).
+   */
+  private final double[] comoments;
+
+  /**
+   * Number of observations.
+   */
+  private long count;
+
+  /**
+   * Constructs an empty accumulator.
+   *
+   * @param dimension number of variables
+   */
+  public Covariance(int dimension) {
+    if (dimension <= 0) {
+      throw new IllegalArgumentException("dimension should be > 0");
+    }
+    this.dimension = dimension;
+    this.mean = new double[dimension];
+    this.comoments = new double[dimension * dimension];
+  }
+
+  /**
+   * Accumulates the observations in the specified columns, in parallel over
+   * row blocks. All columns should have equal length.
+   *
+   * @param columns data columns (one array per variable)
+   * @return accumulator
+   */
+  public static Covariance of(double[]... columns) {
+    int dimension = columns.length;
+    int rows      = columns.length == 0 ? 0 : columns[0].length;
+    return of(dimension, rows, (covariance, from, to) -> covariance.add(columns, from, to));
+  }
+
+  /**
+   * Accumulates the observations in the specified single-precision columns,
+   * in parallel over row blocks. All columns should have equal length.
+   *
+   * @param columns data columns (one array per variable)
+   * @return accumulator
+   */
+  public static Covariance of(float[]... columns) {
+    int dimension = columns.length;
+    int rows      = columns.length == 0 ? 0 : columns[0].length;
+    return of(dimension, rows, (covariance, from, to) -> covariance.add(columns, from, to));
+  }
+
+  /**
+   * Accumulates row blocks in parallel and combines the results.
+   *
+   * @param dimension number of variables
+   * @param rows      number of rows
+   * @param block     adds a block of rows to an accumulator
+   * @return accumulator
+   */
+  private static Covariance of(int dimension, int rows, BlockAccumulator block) {
+    int blocks = (rows + PackedKernels.ROW_BLOCK - 1) / PackedKernels.ROW_BLOCK;
+
+    return IntStream.range(0, blocks).parallel().mapToObj((i) -> {
+      int        from       = i * PackedKernels.ROW_BLOCK;
+      int        to         = min(rows, from + PackedKernels.ROW_BLOCK);
+      Covariance covariance = new Covariance(dimension);
+      block.add(covariance, from, to);
+      return covariance;
+    }).reduce(Covariance::combine).orElseGet(() -> new Covariance(dimension));
+  }
+
+  /**
+   * Adds a block of rows to an accumulator.
+   */
+  @FunctionalInterface
+  private interface BlockAccumulator {
+    void add(Covariance covariance, int from, int to);
+  }
+
+  /**
+   * Adds a single observation.
+   *
+   * @param values values of the variables
+   */
+  public void add(double... values) {
+    if (values.length != dimension) {
+      throw new IllegalArgumentException("Expected " + dimension + " values");
+    }
+
+    count++;
+
+    double[] delta = new double[dimension];
+    for (int i = 0; i < dimension; i++) {
+      delta[i] = values[i] - mean[i];
+      mean[i] += delta[i] / count;
+    }
+
+    for (int i = 0; i < dimension; i++) {
+      double d    = values[i] - mean[i];
+      int    base = i * dimension;
+      for (int j = i; j < dimension; j++) {
+        comoments[base + j] += delta[j] * d;
+      }
+    }
+  }
+
+  /**
+   * Adds the rows of a range of the specified columns.
+   *
+   * @param columns data columns (one array per variable)
+   * @param from    first row (inclusive)
+   * @param to      last row (exclusive)
+   */
+  public void add(double[][] columns, int from, int to) {
+    checkColumns(columns.length);
+    if (to <= from) {
+      return;
+    }
+
+    double[] blockMean = new double[dimension];
+    for (int i = 0; i < dimension; i++) {
+      double[] column = columns[i];
+      double   sum    = 0;
+      for (int row = from; row < to; row++) {
+        sum += column[row];
+      }
+      blockMean[i] = sum / (to - from);
+    }
+
+    double[] blockComoments = new double[dimension * dimension];
+    double[] deviation      = new double[dimension];
+    for (int row = from; row < to; row++) {
+      for (int i = 0; i < dimension; i++) {
+        deviation[i] = columns[i][row] - blockMean[i];
+      }
+      accumulate(deviation, blockComoments);
+    }
+
+    merge(to - from, blockMean, blockComoments);
+  }
+
+  /**
+   * Adds the rows of a range of the specified single-precision columns. The
+   * values are accumulated in double precision.
+   *
+   * @param columns data columns (one array per variable)
+   * @param from    first row (inclusive)
+   * @param to      last row (exclusive)
+   */
+  public void add(float[][] columns, int from, int to) {
+    checkColumns(columns.length);
+    if (to <= from) {
+      return;
+    }
+
+    double[] blockMean = new double[dimension];
+    for (int i = 0; i < dimension; i++) {
+      float[] column = columns[i];
+      double  sum    = 0;
+      for (int row = from; row < to; row++) {
+        sum += column[row];
+      }
+      blockMean[i] = sum / (to - from);
+    }
+
+    double[] blockComoments = new double[dimension * dimension];
+    double[] deviation      = new double[dimension];
+    for (int row = from; row < to; row++) {
+      for (int i = 0; i < dimension; i++) {
+        deviation[i] = columns[i][row] - blockMean[i];
+      }
+      accumulate(deviation, blockComoments);
+    }
+
+    merge(to - from, blockMean, blockComoments);
+  }
+
+  /**
+   * Combines this accumulator with another. Neither accumulator is altered.
+   *
+   * @param other other accumulator
+   * @return accumulator of the observations of both
+   */
+  public Covariance combine(Covariance other) {
+    checkColumns(other.dimension);
+    Covariance result = new Covariance(dimension);
+    result.merge(count, mean, comoments);
+    result.merge(other.count, other.mean, other.comoments);
+    return result;
+  }
+
+  /**
+   * Returns the number of observations.
+   *
+   * @return observation count
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the number of variables.
+   *
+   * @return dimension
+   */
+  public int getDimension() {
+    return dimension;
+  }
+
+  /**
+   * Returns the mean of the observations.
+   *
+   * @return mean vector
+   */
+  public Vector getMean() {
+    return VectorContext.getInstance().create(mean).toVector();
+  }
+
+  /**
+   * Returns the (sample) covariance matrix, normalized by <i>n - 1</i>.
+   *
+   * @return covariance matrix
+   */
+  public Matrix getCovariance() {
+    return scaled(count > 1 ? 1.0 / (count - 1) : 0.0);
+  }
+
+  /**
+   * Returns the population covariance matrix, normalized by <i>n</i>.
+   *
+   * @return covariance matrix
+   */
+  public Matrix getPopulationCovariance() {
+    return scaled(count > 0 ? 1.0 / count : 0.0);
+  }
+
+  /**
+   * Returns the symmetric matrix of the co-moments, multiplied by a factor.
+   *
+   * @param factor scaling factor
+   * @return symmetric matrix
+   */
+  private Matrix scaled(double factor) {
+    MatrixBuilder<?> builder = MatrixContext.getInstance().create(dimension, dimension);
+    for (int i = 0; i < dimension; i++) {
+      for (int j = i; j < dimension; j++) {
+        double value = comoments[i * dimension + j] * factor;
+        builder.set(i, j, value);
+        builder.set(j, i, value);
+      }
+    }
+    return builder.toMatrix();
+  }
+
+  /**
+   * Adds the outer product of a deviation vector to packed co-moments
+   * (upper triangle).
+   *
+   * @param deviation deviation from the mean
+   * @param target    packed co-moments
+   */
+  private void accumulate(double[] deviation, double[] target) {
+    for (int i = 0; i < dimension; i++) {
+      double d    = deviation[i];
+      int    base = i * dimension;
+      for (int j = i; j < dimension; j++) {
+        target[base + j] += d * deviation[j];
+      }
+    }
+  }
+
+  /**
+   * Merges the statistics of another set of observations into this
+   * accumulator.
+   *
+   * @param otherCount     number of observations
+   * @param otherMean      mean of the observations
+   * @param otherComoments co-moments of the observations
+   */
+  private void merge(long otherCount, double[] otherMean, double[] otherComoments) {
+    if (otherCount == 0) {
+      return;
+    }
+
+    long   total  = count + otherCount;
+    double factor = (double) count * otherCount / total;
+
+    double[] delta = new double[dimension];
+    for (int i = 0; i < dimension; i++) {
+      delta[i] = otherMean[i] - mean[i];
+    }
+
+    for (int i = 0; i < dimension; i++) {
+      int base = i * dimension;
+      for (int j = i; j < dimension; j++) {
+        comoments[base + j] += otherComoments[base + j] + delta[i] * delta[j] * factor;
+      }
+      mean[i] += delta[i] * otherCount / total;
+    }
+
+    count = total;
+  }
+
+  /**
+   * Checks the number of variables.
+   *
+   * @param length number of variables
+   */
+  private void checkColumns(int length) {
+    if (length != dimension) {
+      throw new IllegalArgumentException("Expected " + dimension + " columns");
+    }
+  }
+}
@@ -18,9 +18,12 @@
 package thorwin.math;
 
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.lang.Math.sqrt;
 
+import java.util.Arrays;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 /**
  * Cholesky Decomposition.
@@ -47,6 +50,278 @@ final class DefaultCholesky implements Cholesky {
     this.R = R;
   }
 
+  /**
+   * Cholesky decomposition for symmetric and positive definite matrix. Large
+   * matrices are decomposed using the blocked algorithm.
+   *
+   * @param matrix  Square, symmetric matrix.
+   * @return Cholesky decomposition
+   */
+  static Cholesky decompose(Matrix matrix) {
+    if (matrix.getRowDimension() > MatrixContext.BLOCKED) {
+      return blocked(matrix);
+    }
+    return left(matrix);
+  }
+
+
+  /**
+   * Blocked Cholesky algorithm for symmetric and positive definite matrix.
+   * After factorizing a diagonal block, the panel below it is solved row by
+   * row in parallel and the lower part of the trailing sub-matrix is updated
+   * with a single (parallel) matrix multiplication.
+   *
+   * @param matrix  Square, symmetric matrix.
+   * @return Cholesky decomposition
+   */
+  static Cholesky blocked(Matrix matrix) {
+
+    if (!matrix.isSquare()) {
+      throw new IllegalArgumentException("Matrix is not square");
+    }
+
+    int      n = matrix.getRowDimension();
+    double[] a = matrix.toArray();
+
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < i; j++) {
+        if (a[i * n + j] != a[j * n + i]) {
+          throw new IllegalArgumentException("Matrix is not symmetric");
+        }
+      }
+    }
+
+    for (int k = 0; k < n; k += PackedKernels.PANEL) {
+      int kend = min(k + PackedKernels.PANEL, n);
+
+      // Factorize the diagonal block.
+      for (int j = k; j < kend; j++) {
+        int    rowJ = j * n;
+        double d    = a[rowJ + j];
+        for (int c = k; c < j; c++) {
+          d -= a[rowJ + c] * a[rowJ + c];
+        }
+
+        // Still positive definite?
+        if (d <= 0.0) {
+          throw new IllegalArgumentException("Matrix is not positive definite");
+        }
+
+        double diagonal = sqrt(d);
+        a[rowJ + j] = diagonal;
+
+        for (int i = j + 1; i < kend; i++) {
+          int    rowI = i * n;
+          double s    = a[rowI + j];
+          for (int c = k; c < j; c++) {
+            s -= a[rowI + c] * a[rowJ + c];
+          }
+          a[rowI + j] = s / diagonal;
+        }
+      }
+
+      if (kend == n) {
+        break;
+      }
+
+      // Solve L21 * L11' = A21, every row independently.
+      final int start = k;
+      final int end   = kend;
+      IntStream.range(kend, n).parallel().forEach((i) -> {
+        int rowI = i * n;
+        for (int j = start; j < end; j++) {
+          int    rowJ = j * n;
+          double s    = a[rowI + j];
+          for (int c = start; c < j; c++) {
+            s -= a[rowI + c] * a[rowJ + c];
+          }
+          a[rowI + j] = s / a[rowJ + j];
+        }
+      });
+
+      // Update the trailing sub-matrix: A22 = A22 - L21 * L21'
+      double[] l21 = PackedKernels.copy(a, n, kend, k, n - kend, kend - k);
+      double[] l21t = PackedKernels.transpose(l21, n - kend, kend - k);
+      PackedKernels.update(l21, l21t, a, n, kend, kend,
+                           n - kend, n - kend, kend - k, -1, true);
+    }
+
+    // clear the upper triangle
+    for (int i = 0; i < n; i++) {
+      Arrays.fill(a, i * n + i + 1, (i + 1) * n, 0.0);
+    }
+
+    Matrix L = MatrixContext.getInstance().create(n, n, a).toMatrix();
+    return new DefaultCholesky(L, null);
+  }
+
+
+  /**
+   * Cholesky algorithm for a symmetric and positive definite off-heap matrix,
+   * in place, using a tiled right-looking algorithm. Tiles are streamed
+   * through the factorization of the diagonal tile, triangular solves of the
+   * tiles below it and dgemm updates of the trailing tiles, in parallel.
+   *
+   * @param matrix  Square, symmetric matrix, overwritten by L
+   * @return Cholesky decomposition
+   */
+  static Cholesky tiled(OffHeapMatrix matrix) {
+    if (!matrix.isSquare()) {
+      throw new IllegalArgumentException("Matrix is not square");
+    }
+
+    int n     = matrix.getRowDimension();
+    int T     = OffHeapMatrix.TILE;
+    int tiles = (n + T - 1) / T;
+
+    // check symmetry, comparing each tile below the diagonal with its mirror
+    IntStream.range(0, tiles * tiles).parallel().forEach((tile) -> {
+      int ti = tile / tiles;
+      int tj = tile % tiles;
+      if (tj > ti) {
+        return;
+      }
+      int      r0 = ti * T;
+      int      c0 = tj * T;
+      int      nr = min(T, n - r0);
+      int      nc = min(T, n - c0);
+      double[] a  = new double[nr * nc];
+      double[] b  = new double[nr * nc];
+      matrix.read(r0, c0, nr, nc, a);
+      matrix.read(c0, r0, nc, nr, b);
+      for (int i = 0; i < nr; i++) {
+        for (int j = 0; j < nc; j++) {
+          if (a[i * nc + j] != b[j * nr + i]) {
+            throw new IllegalArgumentException("Matrix is not symmetric");
+          }
+        }
+      }
+    });
+
+    for (int k = 0; k < tiles; k++) {
+      int      k0 = k * T;
+      int      nk = min(T, n - k0);
+      double[] L  = new double[nk * nk];
+      matrix.read(k0, k0, nk, nk, L);
+
+      // factor the diagonal tile
+      for (int j = 0; j < nk; j++) {
+        double d = L[j * nk + j];
+        for (int p = 0; p < j; p++) {
+          d -= L[j * nk + p] * L[j * nk + p];
+        }
+        if (d <= 0.0) {
+          throw new IllegalArgumentException("Matrix is not positive definite");
+        }
+        double ljj = sqrt(d);
+        L[j * nk + j] = ljj;
+        for (int i = j + 1; i < nk; i++) {
+          double s = L[i * nk + j];
+          for (int p = 0; p < j; p++) {
+            s -= L[i * nk + p] * L[j * nk + p];
+          }
+          L[i * nk + j] = s / ljj;
+        }
+        for (int i = 0; i < j; i++) {
+          L[i * nk + j] = 0.0;
+        }
+      }
+      matrix.write(k0, k0, nk, nk, L);
+
+      // solve the tiles below the diagonal, clear the tiles right of it
+      IntStream.range(k + 1, tiles).parallel().forEach((tile) -> {
+        int      i0 = tile * T;
+        int      ni = min(T, n - i0);
+        double[] a  = new double[ni * nk];
+        matrix.read(i0, k0, ni, nk, a);
+        for (int r = 0; r < ni; r++) {
+          for (int j = 0; j < nk; j++) {
+            double s = a[r * nk + j];
+            for (int p = 0; p < j; p++) {
+              s -= a[r * nk + p] * L[j * nk + p];
+            }
+            a[r * nk + j] = s / L[j * nk + j];
+          }
+        }
+        matrix.write(i0, k0, ni, nk, a);
+        matrix.write(k0, i0, nk, ni, new double[nk * ni]);
+      });
+
+      // update the trailing tiles on and below the diagonal
+      int next      = k + 1;
+      int remaining = tiles - next;
+      IntStream.range(0, remaining * remaining).parallel().forEach((tile) -> {
+        int ti = next + tile / remaining;
+        int tj = next + tile % remaining;
+        if (tj > ti) {
+          return;
+        }
+        int      i0 = ti * T;
+        int      j0 = tj * T;
+        int      ni = min(T, n - i0);
+        int      nj = min(T, n - j0);
+        double[] a  = new double[ni * nk];
+        double[] b  = new double[nj * nk];
+        double[] c  = new double[ni * nj];
+        matrix.read(i0, k0, ni, nk, a);
+        matrix.read(j0, k0, nj, nk, b);
+        matrix.read(i0, j0, ni, nj, c);
+        MatrixOperations.dgemm(a, b, c, ni, nj, nk, false, true, -1.0, 1.0);
+        matrix.write(i0, j0, ni, nj, c);
+      });
+    }
+
+    return new DefaultCholesky(matrix, null);
+  }
+
+
+  /**
+   * Cholesky algorithm for a symmetric and positive definite single precision
+   * matrix. The factor is stored in single precision, the dot products are
+   * accumulated in double precision.
+   *
+   * @param matrix  Square, symmetric matrix.
+   * @return Cholesky decomposition
+   */
+  static Cholesky single(FloatMatrix matrix) {
+    if (!matrix.isSquare()) {
+      throw new IllegalArgumentException("Matrix is not square");
+    }
+
+    int     n = matrix.getRowDimension();
+    float[] A = matrix.toFloatArray();
+    float[] L = new float[n * n];
+
+    for (int j = 0; j < n; j++) {
+      int    rowJ = j * n;
+      double d    = 0.0;
+      for (int k = 0; k < j; k++) {
+        int    rowK = k * n;
+        double s    = 0.0;
+        for (int i = 0; i < k; i++) {
+          s += (double) L[rowK + i] * L[rowJ + i];
+        }
+        s = (A[rowJ + k] - s) / L[rowK + k];
+        L[rowJ + k] = (float) s;
+        d = d + s * s;
+
+        if (A[rowK + j] != A[rowJ + k]) {
+          throw new IllegalArgumentException("Matrix is not symmetric");
+        }
+      }
+      d = A[rowJ + j] - d;
+
+      if (d <= 0.0) {
+        throw new IllegalArgumentException("Matrix is not positive definite");
+      }
+
+      L[rowJ + j] = (float) sqrt(d);
+    }
+
+    return new DefaultCholesky(new FloatMatrix(n, n, false, L), null);
+  }
+
+
   /**
    * Cholesky algorithm for symmetric and positive definite matrix.
    *
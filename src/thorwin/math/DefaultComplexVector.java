@@ -17,9 +17,6 @@
 
 package thorwin.math;
 
-import static java.lang.Math.PI;
-import static java.lang.Math.cos;
-import static java.lang.Math.sin;
 
 import java.util.Random;
 
@@ -87,7 +84,7 @@ final class DefaultComplexVector implements ComplexVector {
   /**
    * Performs a Fast Fourier Transformation on the input samples.
    *
-   * @param reals real input samples (length should be a order of two)
+   * @param reals real input samples
    * @return Fourier transformed result
    */
   public static DefaultComplexVector fft(double... reals) {
@@ -103,56 +100,11 @@ final class DefaultComplexVector implements ComplexVector {
    * Performs a Fast Fourier Transformation on the input samples. The supplied
    * array is modified during the algorithm.
    *
-   * @param reals real input samples (length should be a order of two)
+   * @param reals real input samples
    * @param imags imaginary input samples
    */
   private static void fft(double[] reals, double[] imags) {
-    int length = reals.length;
-
-    if (Integer.highestOneBit(length) != length) {
-      throw new IllegalArgumentException("Invalid length: " + length);
-    }
-
-    int shift = 1 + Integer.numberOfLeadingZeros(length);
-
-    for (int k = 0; k < length; k++) {
-      int j = Integer.reverse(k) >>> shift;
-      if (j > k) {
-        swap(reals, j, k);
-        swap(imags, j, k);
-      }
-    }
-
-    for (int l = 2; l <= length; l <<= 1) {
-      for (int k = 0; k < (l / 2); k++) {
-        double kth = (-2 * k * PI) / l;
-        Complex w = new Complex(cos(kth), sin(kth));
-
-        for (int j = 0; j < (length / l); j++) {
-          int index1 = (j * l) + k;
-          int index2 = index1 + (l / 2);
-          Complex u = w.multiply(reals[index2], imags[index2]);
-
-          reals[index2] = reals[index1] - u.real();
-          imags[index2] = imags[index1] - u.imag();
-          reals[index1] = reals[index1] + u.real();
-          imags[index1] = imags[index1] + u.imag();
-        }
-      }
-    }
-  }
-
-
-  /**
-   * Swaps two elements in the array.
-   * @param array input array
-   * @param index1 first element index
-   * @param index2 second element index
-   */
-  private static void swap(double[] array, int index1, int index2) {
-    double tmp = array[index1];
-    array[index1] = array[index2];
-    array[index2] = tmp;
+    FFT.plan(reals.length).transform(reals, imags);
   }
 
 
@@ -287,22 +239,7 @@ final class DefaultComplexVector implements ComplexVector {
   public ComplexVector ifft() {
     double[] reals = this.reals.clone();
     double[] imags = this.imags.clone();
-
-    double inverseLength = 1.0 / getDimension();
-
-    // conjugate
-    for (int i = 0; i < imags.length; i++) {
-      imags[i] *= -1;
-    }
-
-    fft(reals, imags);
-
-    // conjugate and multiply with inverse length
-    for (int i = 0; i < reals.length; i++) {
-      reals[i] *= inverseLength;
-      imags[i] *= -inverseLength;
-    }
-
+    FFT.plan(reals.length).inverse(reals, imags);
     return new DefaultComplexVector(reals, imags);
   }
 
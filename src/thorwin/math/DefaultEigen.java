@@ -224,7 +224,10 @@ final class DefaultEigen implements Eigen {
     imags[0] = 0.0;
   }
 
-  private static void tql2(int n, double[] reals, double[] imags, MatrixBuilder<?> V) {
+  // Symmetric tridiagonal QL algorithm. The diagonal is passed in reals, the
+  // sub-diagonal in imags[1..n-1]. Eigenvalues are sorted ascending.
+
+  static void tql2(int n, double[] reals, double[] imags, MatrixBuilder<?> V) {
 
     //  This is derived from the Algol procedures tql2, by
     //  Bowdler, Martin, Reinsch, and Wilkinson, Handbook for
@@ -21,6 +21,7 @@ import static java.lang.Math.abs;
 import static java.lang.Math.min;
 
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 
 /**
@@ -59,6 +60,115 @@ final class DefaultLU implements LU {
   }
 
 
+  /**
+   * Creates a LU decomposition. Large matrices are decomposed using the
+   * blocked algorithm, smaller ones using the Crout/Doolittle algorithm.
+   *
+   * @param matrix  matrix to decompose
+   * @return LU decomposition
+   */
+  static LU decompose(Matrix matrix) {
+    int m = matrix.getRowDimension();
+    int n = matrix.getColumnDimension();
+    if (min(m, n) > MatrixContext.BLOCKED) {
+      return blocked(matrix);
+    }
+    return crout(matrix);
+  }
+
+
+  /**
+   * Creates a LU decomposition using a right-looking blocked algorithm. Each
+   * panel of columns is factorized with partial pivoting, after which the
+   * trailing sub-matrix is updated with a single matrix multiplication,
+   * executed in parallel.
+   *
+   * @param matrix  matrix to decompose
+   * @return LU decomposition
+   */
+  static LU blocked(Matrix matrix) {
+    int      m   = matrix.getRowDimension();
+    int      n   = matrix.getColumnDimension();
+    double[] lu  = matrix.toArray();
+    int[]    piv = new int[m];
+    for (int i = 0; i < m; i++) {
+      piv[i] = i;
+    }
+    int pivSign = 1;
+
+    double[] swap = new double[n];
+    int      kmax = min(m, n);
+
+    for (int k = 0; k < kmax; k += PackedKernels.PANEL) {
+      int kend = min(k + PackedKernels.PANEL, kmax);
+
+      // Factorize the panel, swapping complete rows.
+      for (int j = k; j < kend; j++) {
+        int    p   = j;
+        double max = abs(lu[j * n + j]);
+        for (int i = j + 1; i < m; i++) {
+          double value = abs(lu[i * n + j]);
+          if (value > max) {
+            max = value;
+            p = i;
+          }
+        }
+        if (p != j) {
+          System.arraycopy(lu, p * n, swap, 0, n);
+          System.arraycopy(lu, j * n, lu, p * n, n);
+          System.arraycopy(swap, 0, lu, j * n, n);
+          int t = piv[p];
+          piv[p] = piv[j];
+          piv[j] = t;
+          pivSign = -pivSign;
+        }
+
+        double pivot = lu[j * n + j];
+        if (pivot != 0.0) {
+          for (int i = j + 1; i < m; i++) {
+            int    base       = i * n;
+            double multiplier = lu[base + j] / pivot;
+            lu[base + j] = multiplier;
+            if (multiplier != 0.0) {
+              for (int c = j + 1; c < kend; c++) {
+                lu[base + c] -= multiplier * lu[j * n + c];
+              }
+            }
+          }
+        }
+      }
+
+      if (kend == n) {
+        continue;
+      }
+
+      // Solve L11 * U12 = A12, the rows of U to the right of the panel.
+      for (int j = k; j < kend; j++) {
+        for (int i = j + 1; i < kend; i++) {
+          double multiplier = lu[i * n + j];
+          if (multiplier != 0.0) {
+            for (int c = kend; c < n; c++) {
+              lu[i * n + c] -= multiplier * lu[j * n + c];
+            }
+          }
+        }
+      }
+
+      // Update the trailing sub-matrix: A22 = A22 - L21 * U12
+      if (kend < m) {
+        double[] l21 = PackedKernels.copy(lu, n, kend, k, m - kend, kend - k);
+        double[] u12 = PackedKernels.copy(lu, n, k, kend, kend - k, n - kend);
+        PackedKernels.update(l21, u12, lu, n, kend, kend,
+                             m - kend, n - kend, kend - k, -1, false);
+      }
+    }
+
+    return new DefaultLU(MatrixContext.getInstance().create(m, n, lu).toMatrix(),
+                         pivSign,
+                         piv);
+  }
+
+
   /**
    * Creates a lu decomposition using the daxpy-based elimination algorithm.
    *
@@ -186,6 +296,226 @@ final class DefaultLU implements LU {
   }
 
 
+  /**
+   * Creates a lu decomposition of an off-heap matrix, in place, using a tiled
+   * right-looking algorithm with partial pivoting. Only a panel of one tile
+   * wide is kept on the heap, the remaining matrix is streamed tile by tile
+   * through triangular solves and dgemm updates, in parallel.
+   *
+   * @param matrix  matrix to decompose, overwritten by the factors
+   * @return LU decomposition
+   */
+  static LU tiled(OffHeapMatrix matrix) {
+    int   m   = matrix.getRowDimension();
+    int   n   = matrix.getColumnDimension();
+    int   T   = OffHeapMatrix.TILE;
+    int[] piv = new int[m];
+    for (int i = 0; i < m; i++) {
+      piv[i] = i;
+    }
+    int pivSign = 1;
+
+    int steps = min(m, n);
+    for (int step = 0; step < steps; step += T) {
+      int      k0     = step;
+      int      nk     = min(T, steps - k0);
+      int      height = m - k0;
+      double[] panel  = new double[height * nk];
+      int[]    swaps  = new int[nk];
+      matrix.read(k0, k0, height, nk, panel);
+
+      // factor the panel
+      for (int j = 0; j < nk; j++) {
+        int p = j;
+        for (int i = j + 1; i < height; i++) {
+          if (abs(panel[i * nk + j]) > abs(panel[p * nk + j])) {
+            p = i;
+          }
+        }
+        swaps[j] = k0 + p;
+        if (p != j) {
+          for (int c = 0; c < nk; c++) {
+            double t = panel[p * nk + c];
+            panel[p * nk + c] = panel[j * nk + c];
+            panel[j * nk + c] = t;
+          }
+          int t = piv[k0 + p];
+          piv[k0 + p] = piv[k0 + j];
+          piv[k0 + j] = t;
+          pivSign = -pivSign;
+        }
+
+        double pivot = panel[j * nk + j];
+        if (pivot != 0.0) {
+          for (int i = j + 1; i < height; i++) {
+            double l = panel[i * nk + j] / pivot;
+            panel[i * nk + j] = l;
+            for (int c = j + 1; c < nk; c++) {
+              panel[i * nk + c] -= l * panel[j * nk + c];
+            }
+          }
+        }
+      }
+      matrix.write(k0, k0, height, nk, panel);
+
+      // apply the row exchanges to the other columns
+      for (int j = 0; j < nk; j++) {
+        if (swaps[j] != k0 + j) {
+          swapRows(matrix, k0 + j, swaps[j], 0, k0);
+          swapRows(matrix, k0 + j, swaps[j], k0 + nk, n);
+        }
+      }
+
+      int start = k0 + nk;
+      if (start >= n) {
+        continue;
+      }
+      int columnTiles = (n - start + T - 1) / T;
+
+      // U12 = L11^-1 A12
+      IntStream.range(0, columnTiles).parallel().forEach((tile) -> {
+        int      c0 = start + tile * T;
+        int      nc = min(T, n - c0);
+        double[] a  = new double[nk * nc];
+        matrix.read(k0, c0, nk, nc, a);
+        for (int i = 1; i < nk; i++) {
+          for (int p = 0; p < i; p++) {
+            double l = panel[i * nk + p];
+            if (l != 0.0) {
+              for (int c = 0; c < nc; c++) {
+                a[i * nc + c] -= l * a[p * nc + c];
+              }
+            }
+          }
+        }
+        matrix.write(k0, c0, nk, nc, a);
+      });
+
+      // A22 = A22 - L21 U12
+      if (start >= m) {
+        continue;
+      }
+      int rowTiles = (m - start + T - 1) / T;
+      IntStream.range(0, rowTiles * columnTiles).parallel().forEach((tile) -> {
+        int r0 = start + (tile / columnTiles) * T;
+        int c0 = start + (tile % columnTiles) * T;
+        int nr = min(T, m - r0);
+        int nc = min(T, n - c0);
+
+        double[] l = new double[nr * nk];
+        System.arraycopy(panel, (r0 - k0) * nk, l, 0, nr * nk);
+        double[] u = new double[nk * nc];
+        double[] c = new double[nr * nc];
+        matrix.read(k0, c0, nk, nc, u);
+        matrix.read(r0, c0, nr, nc, c);
+        MatrixOperations.dgemm(l, u, c, nr, nc, nk, false, false, -1.0, 1.0);
+        matrix.write(r0, c0, nr, nc, c);
+      });
+    }
+
+    return new DefaultLU(matrix, pivSign, piv);
+  }
+
+
+  /**
+   * Exchanges a range of columns of two rows of an off-heap matrix.
+   *
+   * @param matrix      off-heap matrix
+   * @param row1        first row
+   * @param row2        second row
+   * @param columnStart initial column (inclusive)
+   * @param columnEnd   final column (exclusive)
+   */
+  private static void swapRows(OffHeapMatrix matrix,
+                               int row1,
+                               int row2,
+                               int columnStart,
+                               int columnEnd) {
+    int length = columnEnd - columnStart;
+    if (length <= 0) {
+      return;
+    }
+    double[] a = new double[length];
+    double[] b = new double[length];
+    matrix.read(row1, columnStart, 1, length, a);
+    matrix.read(row2, columnStart, 1, length, b);
+    matrix.write(row1, columnStart, 1, length, b);
+    matrix.write(row2, columnStart, 1, length, a);
+  }
+
+
+  /**
+   * Creates a lu decomposition of a single precision matrix. The factors are
+   * stored in single precision, the dot products of the left-looking
+   * Crout/Doolittle algorithm are accumulated in double precision.
+   *
+   * @param matrix  matrix to decompose
+   * @return LU decomposition
+   */
+  static LU single(FloatMatrix matrix) {
+    int     m   = matrix.getRowDimension();
+    int     n   = matrix.getColumnDimension();
+    float[] LU  = matrix.toFloatArray();
+    int[]   piv = new int[m];
+    for (int i = 0; i < m; i++) {
+      piv[i] = i;
+    }
+    int pivSign = 1;
+
+    double[] LUcolj = new double[m];
+
+    for (int j = 0; j < n; j++) {
+
+      for (int i = 0; i < m; i++) {
+        LUcolj[i] = LU[i * n + j];
+      }
+
+      // apply previous transformations, accumulating in double precision
+      for (int i = 0; i < m; i++) {
+        int    row  = i * n;
+        int    kmax = min(i, j);
+        double s    = 0.0;
+        for (int k = 0; k < kmax; k++) {
+          s += LU[row + k] * LUcolj[k];
+        }
+        LUcolj[i] -= s;
+        LU[row + j] = (float) LUcolj[i];
+      }
+
+      // find pivot and exchange if necessary
+      int p = j;
+      for (int i = j + 1; i < m; i++) {
+        if (abs(LUcolj[i]) > abs(LUcolj[p])) {
+          p = i;
+        }
+      }
+      if (p != j) {
+        for (int k = 0; k < n; k++) {
+          float t = LU[p * n + k];
+          LU[p * n + k] = LU[j * n + k];
+          LU[j * n + k] = t;
+        }
+        double t = LUcolj[p];
+        LUcolj[p] = LUcolj[j];
+        LUcolj[j] = t;
+        int k = piv[p];
+        piv[p] = piv[j];
+        piv[j] = k;
+        pivSign = -pivSign;
+      }
+
+      // compute multipliers
+      if (j < m && LUcolj[j] != 0.0) {
+        double pivot = LUcolj[j];
+        for (int i = j + 1; i < m; i++) {
+          LU[i * n + j] = (float) (LUcolj[i] / pivot);
+        }
+      }
+    }
+    return new DefaultLU(new FloatMatrix(m, n, false, LU), pivSign, piv);
+  }
+
+
   @Override
   public Matrix getL() {
     int              m = lu.getRowDimension();
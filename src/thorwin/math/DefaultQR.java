@@ -18,8 +18,10 @@
 package thorwin.math;
 
 import static java.lang.Math.hypot;
+import static java.lang.Math.min;
 
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 
 /**
@@ -49,6 +51,160 @@ final class DefaultQR implements thorwin.math.QR {
     this.diagonalR = diagonalR;
   }
 
+  /**
+   * Decompose QR. Large matrices with at least as many rows as columns are
+   * decomposed using the blocked algorithm.
+   *
+   * @param matrix  Matrix to decompose
+   * @return The decomposition
+   */
+  static QR decompose(Matrix matrix) {
+    int m = matrix.getRowDimension();
+    int n = matrix.getColumnDimension();
+    if (n > MatrixContext.BLOCKED && m >= n) {
+      return blocked(matrix);
+    }
+    return householder(matrix);
+  }
+
+  /**
+   * Decompose QR using blocked householder vectors. Each panel of columns is
+   * factorized using householder reflections. The reflections of a panel are
+   * accumulated in the compact WY form <i>I - V&times;T&times;V&prime;</i>,
+   * which is applied to the trailing columns with matrix multiplications,
+   * executed in parallel over column strips.
+   * <p>
+   * The resulting decomposition is stored in the same form as the
+   * unblocked algorithm.
+   *
+   * @param matrix  Matrix to decompose (rows &gt;= columns)
+   * @return The decomposition
+   */
+  static QR blocked(Matrix matrix) {
+
+    int m = matrix.getRowDimension();
+    int n = matrix.getColumnDimension();
+
+    double[] diagonalR = new double[n];
+    double[] qr        = matrix.toArray();
+
+    for (int k = 0; k < n; k += PackedKernels.PANEL) {
+      int kend = min(k + PackedKernels.PANEL, n);
+
+      // Factorize the panel, only updating the columns of the panel.
+      for (int j = k; j < kend; j++) {
+        double nrm = 0;
+        for (int i = j; i < m; i++) {
+          nrm = hypot(nrm, qr[i * n + j]);
+        }
+
+        if (nrm != 0.0) {
+          if (qr[j * n + j] < 0) {
+            nrm = -nrm;
+          }
+          for (int i = j; i < m; i++) {
+            qr[i * n + j] /= nrm;
+          }
+          qr[j * n + j] += 1.0;
+
+          for (int c = j + 1; c < kend; c++) {
+            double s = 0.0;
+            for (int i = j; i < m; i++) {
+              s += qr[i * n + j] * qr[i * n + c];
+            }
+            s = -s / qr[j * n + j];
+            for (int i = j; i < m; i++) {
+              qr[i * n + c] += s * qr[i * n + j];
+            }
+          }
+        }
+        diagonalR[j] = -nrm;
+      }
+
+      if (kend < n) {
+        applyPanel(qr, diagonalR, m, n, k, kend);
+      }
+    }
+
+    Matrix packed = MatrixContext.getInstance().create(m, n, qr).toMatrix();
+    return new DefaultQR(packed, diagonalR);
+  }
+
+  /**
+   * Applies the reflections of a factorized panel to the trailing columns:
+   * <i>A<sub>2</sub> = A<sub>2</sub> - V&times;(T&prime;&times;(V&prime;&times;
+   * A<sub>2</sub>))</i>.
+   *
+   * @param qr        row-major packed decomposition in progress
+   * @param diagonalR diagonal of <i>R</i>
+   * @param m         number of rows
+   * @param n         number of columns
+   * @param k         first column of the panel
+   * @param kend      first column after the panel
+   */
+  private static void applyPanel(double[] qr,
+                                 double[] diagonalR,
+                                 int m,
+                                 int n,
+                                 int k,
+                                 int kend) {
+    int rows = m - k;
+    int nb   = kend - k;
+
+    // Householder vectors (V) and their scaling factors (tau)
+    double[] v   = new double[rows * nb];
+    double[] tau = new double[nb];
+    for (int j = 0; j < nb; j++) {
+      if (diagonalR[k + j] != 0.0) {
+        tau[j] = 1.0 / qr[(k + j) * n + k + j];
+        for (int i = j; i < rows; i++) {
+          v[i * nb + j] = qr[(k + i) * n + k + j];
+        }
+      }
+    }
+
+    // Triangular factor T of the compact WY form
+    double[] t = new double[nb * nb];
+    double[] w = new double[nb];
+    for (int j = 0; j < nb; j++) {
+      for (int p = 0; p < j; p++) {
+        double s = 0.0;
+        for (int i = j; i < rows; i++) {
+          s += v[i * nb + p] * v[i * nb + j];
+        }
+        w[p] = s;
+      }
+      for (int p = 0; p < j; p++) {
+        double s = 0.0;
+        for (int q = p; q < j; q++) {
+          s += t[p * nb + q] * w[q];
+        }
+        t[p * nb + j] = -tau[j] * s;
+      }
+      t[j * nb + j] = tau[j];
+    }
+
+    double[] vt = PackedKernels.transpose(v, rows, nb);
+    double[] tt = PackedKernels.transpose(t, nb, nb);
+
+    int strips = (n - kend + PackedKernels.PANEL - 1) / PackedKernels.PANEL;
+
+    IntStream.range(0, strips).parallel().forEach((strip) -> {
+      int column  = kend + strip * PackedKernels.PANEL;
+      int columns = min(PackedKernels.PANEL, n - column);
+
+      double[] a  = PackedKernels.copy(qr, n, k, column, rows, columns);
+      double[] y  = new double[nb * columns];
+      double[] ty = new double[nb * columns];
+
+      MatrixOperations.dgemm(vt, a, y, nb, columns, rows, false, false, 1, 0);
+      MatrixOperations.dgemm(tt, y, ty, nb, columns, nb, false, false, 1, 0);
+      MatrixOperations.dgemm(v, ty, a, rows, columns, nb, false, false, -1, 1);
+
+      PackedKernels.paste(a, rows, columns, qr, n, k, column);
+    });
+  }
+
   /**
    * Decompose QR using householder vectors.
    *
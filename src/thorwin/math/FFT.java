@@ -0,0 +1,806 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.cos;
+import static java.lang.Math.max;
+import static java.lang.Math.sin;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+
+/**
+ * Fast Fourier Transformation plan for a specific length.
+ * <p>
+ * A plan precomputes everything that depends on the length only (twiddle
+ * factors, bit reversal permutation), so transforms do not calculate any
+ * trigonometric functions and do not allocate memory. Plans are immutable,
+ * thread-safe and cached, use {@link #plan(int)} to obtain one. The cache
+ * keeps the 64 most recently used plans, so transforming many different
+ * lengths does not hold on to their tables.
+ * <p>
+ * Lengths that are a power of two are transformed by a split-radix kernel.
+ * Other lengths are transformed using Bluestein's algorithm, which
+ * expresses the transform as a convolution of power-of-two length.
+ * <p>
+ * Real input of even length is transformed by packing it into a complex
+ * signal of half the length, which (about) halves the work. The result is
+ * the non-redundant half of the (hermitian) spectrum.
+ * <p>
+ * The forward transform calculates
+ * <i>X<sub>k</sub> = &sum; x<sub>j</sub> e<sup>-2&pi;ijk/n</sup></i>, the
+ * inverse transform is normalized by <i>1/n</i>.
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Split-radix_FFT_algorithm">
+ * Wikipedia on the split-radix FFT algorithm</a>
+ * @see <a href="https://en.wikipedia.org/wiki/Chirp_Z-transform#Bluestein.27s_algorithm">
+ * Wikipedia on Bluestein's algorithm</a>
+ */
+public final class FFT {
+
+  /**
+   * Maximum number of cached plans.
+   */
+  private static final int CACHED_PLANS = 64;
+
+  /**
+   * Cached plans, least recently used first.
+   */
+  private static final Map<Integer, FFT> PLANS = Collections.synchronizedMap(
+      new LinkedHashMap<Integer, FFT>(16, 0.75f, true) {
+        private static final long serialVersionUID = -2390618716305935127L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, FFT> eldest) {
+          return size() > CACHED_PLANS;
+        }
+      });
+
+  /**
+   * Transform length.
+   */
+  private final int length;
+
+  /**
+   * Cosine table, <i>cos(2&pi;k/n)</i> (power-of-two lengths).
+   */
+  private final double[] cosines;
+
+  /**
+   * Sine table, <i>sin(2&pi;k/n)</i> (power-of-two lengths).
+   */
+  private final double[] sines;
+
+  /**
+   * Pairs of indices swapped by the bit reversal permutation (power-of-two
+   * lengths).
+   */
+  private final int[] swaps;
+
+  /**
+   * Power-of-two plan used for the convolution (Bluestein lengths).
+   */
+  private final FFT convolution;
+
+  /**
+   * Chirp <i>e<sup>-&pi;ik<sup>2</sup>/n</sup></i>, real part (Bluestein
+   * lengths).
+   */
+  private final double[] chirpReals;
+
+  /**
+   * Chirp, imaginary part (Bluestein lengths).
+   */
+  private final double[] chirpImags;
+
+  /**
+   * Transformed convolution filter, real part (Bluestein lengths).
+   */
+  private final double[] filterReals;
+
+  /**
+   * Transformed convolution filter, imaginary part (Bluestein lengths).
+   */
+  private final double[] filterImags;
+
+  /**
+   * Per thread workspace of the convolution (Bluestein lengths).
+   */
+  private final ThreadLocal<double[][]> workspace;
+
+  /**
+   * Twiddle factors <i>cos(2&pi;k/n)</i> of the real transform, for
+   * <i>k &lt;= n/4</i> (even lengths).
+   */
+  private final double[] realCosines;
+
+  /**
+   * Twiddle factors <i>sin(2&pi;k/n)</i> of the real transform (even
+   * lengths).
+   */
+  private final double[] realSines;
+
+
+  /**
+   * Constructs a plan.
+   *
+   * @param length transform length
+   */
+  private FFT(int length) {
+    this.length = length;
+
+    if (Integer.bitCount(length) == 1) {
+      cosines = new double[length];
+      sines = new double[length];
+      for (int k = 0; k < length; k++) {
+        double angle = 2 * PI * k / length;
+        cosines[k] = cos(angle);
+        sines[k] = sin(angle);
+      }
+      swaps = bitReversal(length);
+
+      convolution = null;
+      chirpReals = null;
+      chirpImags = null;
+      filterReals = null;
+      filterImags = null;
+      workspace = null;
+    }
+    else {
+      cosines = null;
+      sines = null;
+      swaps = null;
+
+      int size = Integer.highestOneBit(2 * length - 1) << 1;
+      convolution = plan(size);
+
+      // chirp, k^2 is calculated modulo 2n to retain precision
+      chirpReals = new double[length];
+      chirpImags = new double[length];
+      long modulus = 2L * length;
+      for (int k = 0; k < length; k++) {
+        double angle = PI * (((long) k * k) % modulus) / length;
+        chirpReals[k] = cos(angle);
+        chirpImags[k] = -sin(angle);
+      }
+
+      // the filter is the conjugated chirp, wrapped around
+      filterReals = new double[size];
+      filterImags = new double[size];
+      filterReals[0] = chirpReals[0];
+      filterImags[0] = -chirpImags[0];
+      for (int k = 1; k < length; k++) {
+        filterReals[k] = chirpReals[k];
+        filterImags[k] = -chirpImags[k];
+        filterReals[size - k] = chirpReals[k];
+        filterImags[size - k] = -chirpImags[k];
+      }
+      convolution.transform(filterReals, filterImags);
+
+      workspace = ThreadLocal.withInitial(() -> new double[2][size]);
+    }
+
+    if (length % 2 == 0) {
+      int quarter = length / 4;
+      realCosines = new double[quarter + 1];
+      realSines = new double[quarter + 1];
+      for (int k = 0; k <= quarter; k++) {
+        double angle = 2 * PI * k / length;
+        realCosines[k] = cos(angle);
+        realSines[k] = sin(angle);
+      }
+    }
+    else {
+      realCosines = null;
+      realSines = null;
+    }
+  }
+
+
+  /**
+   * Returns the plan for the specified transform length.
+   *
+   * @param length transform length (&gt; 0)
+   * @return plan
+   */
+  public static FFT plan(int length) {
+    if (length <= 0) {
+      throw new IllegalArgumentException("Invalid length: " + length);
+    }
+
+    FFT plan = PLANS.get(length);
+    if (plan == null) {
+      // plans may construct other plans, so computeIfAbsent can not be used
+      FFT created  = new FFT(length);
+      FFT existing = PLANS.putIfAbsent(length, created);
+      plan = existing == null ? created : existing;
+    }
+    return plan;
+  }
+
+
+  /**
+   * Returns the transform length of this plan.
+   *
+   * @return length
+   */
+  public int getLength() {
+    return length;
+  }
+
+
+  /**
+   * Performs the (forward) Fourier transformation, in place.
+   *
+   * @param reals real parts (length of the plan)
+   * @param imags imaginary parts (length of the plan)
+   */
+  public void transform(double[] reals, double[] imags) {
+    checkLength(reals.length);
+    checkLength(imags.length);
+
+    if (cosines != null) {
+      splitRadix(reals, imags);
+      permute(reals, imags);
+    }
+    else {
+      bluestein(reals, imags);
+    }
+  }
+
+
+  /**
+   * Performs the inverse Fourier transformation, in place.
+   *
+   * @param reals real parts (length of the plan)
+   * @param imags imaginary parts (length of the plan)
+   */
+  public void inverse(double[] reals, double[] imags) {
+    checkLength(reals.length);
+    checkLength(imags.length);
+
+    // conjugate
+    for (int i = 0; i < length; i++) {
+      imags[i] = -imags[i];
+    }
+
+    transform(reals, imags);
+
+    // conjugate and multiply with inverse length
+    double inverseLength = 1.0 / length;
+    for (int i = 0; i < length; i++) {
+      reals[i] *= inverseLength;
+      imags[i] *= -inverseLength;
+    }
+  }
+
+
+  /**
+   * Performs the Fourier transformation of many signals, in parallel.
+   *
+   * @param reals real parts of the signals
+   * @param imags imaginary parts of the signals
+   */
+  public void transform(double[][] reals, double[][] imags) {
+    checkBatch(reals.length, imags.length);
+    IntStream.range(0, reals.length)
+             .parallel()
+             .forEach((i) -> transform(reals[i], imags[i]));
+  }
+
+
+  /**
+   * Performs the inverse Fourier transformation of many signals, in
+   * parallel.
+   *
+   * @param reals real parts of the signals
+   * @param imags imaginary parts of the signals
+   */
+  public void inverse(double[][] reals, double[][] imags) {
+    checkBatch(reals.length, imags.length);
+    IntStream.range(0, reals.length)
+             .parallel()
+             .forEach((i) -> inverse(reals[i], imags[i]));
+  }
+
+
+  /**
+   * Performs the Fourier transformation of a real signal. Only the first
+   * <i>n/2 + 1</i> elements of the spectrum are calculated, the remaining
+   * elements are the complex conjugates of these
+   * (<i>X<sub>n-k</sub> = X<sub>k</sub><sup>*</sup></i>).
+   *
+   * @param input real signal (length of the plan)
+   * @param reals receives the real parts of the spectrum (at least
+   *              <i>n/2 + 1</i> elements)
+   * @param imags receives the imaginary parts of the spectrum (at least
+   *              <i>n/2 + 1</i> elements)
+   */
+  public void realTransform(double[] input, double[] reals, double[] imags) {
+    checkLength(input.length);
+    int half = length / 2;
+    if (reals.length <= half || imags.length <= half) {
+      throw new IllegalArgumentException("Spectrum should contain " + (half + 1) + " elements");
+    }
+
+    if (realCosines == null) {
+      // odd length, use the complex transform
+      double[] re = input.clone();
+      double[] im = new double[length];
+      transform(re, im);
+      System.arraycopy(re, 0, reals, 0, half + 1);
+      System.arraycopy(im, 0, imags, 0, half + 1);
+      return;
+    }
+
+    // pack the even and odd samples in a complex signal of half length
+    for (int j = 0; j < half; j++) {
+      reals[j] = input[2 * j];
+      imags[j] = input[2 * j + 1];
+    }
+
+    plan(half).transformRange(reals, imags);
+
+    // separate the spectra of the even and odd samples, and combine them
+    double r0 = reals[0];
+    double i0 = imags[0];
+    reals[0] = r0 + i0;
+    imags[0] = 0.0;
+    reals[half] = r0 - i0;
+    imags[half] = 0.0;
+
+    for (int k = 1; k <= half / 2; k++) {
+      int    l  = half - k;
+      double ar = reals[k];
+      double ai = imags[k];
+      double br = reals[l];
+      double bi = imags[l];
+
+      double er = (ar + br) * 0.5;
+      double ei = (ai - bi) * 0.5;
+      double or = (ai + bi) * 0.5;
+      double oi = (br - ar) * 0.5;
+
+      double c  = realCosine(k);
+      double s  = realSine(k);
+      double tr = c * or + s * oi;
+      double ti = c * oi - s * or;
+
+      reals[k] = er + tr;
+      imags[k] = ei + ti;
+      reals[l] = er - tr;
+      imags[l] = ti - ei;
+    }
+  }
+
+
+  /**
+   * Performs the inverse Fourier transformation of the spectrum of a real
+   * signal, as calculated by {@link #realTransform(double[], double[],
+   * double[])}. The spectrum arrays are used as workspace, their contents are
+   * overwritten.
+   *
+   * @param reals  real parts of the spectrum (<i>n/2 + 1</i> elements,
+   *               overwritten)
+   * @param imags  imaginary parts of the spectrum (<i>n/2 + 1</i> elements,
+   *               overwritten)
+   * @param output receives the real signal (length of the plan)
+   */
+  public void realInverse(double[] reals, double[] imags, double[] output) {
+    checkLength(output.length);
+    int half = length / 2;
+    if (reals.length <= half || imags.length <= half) {
+      throw new IllegalArgumentException("Spectrum should contain " + (half + 1) + " elements");
+    }
+
+    if (realCosines == null) {
+      // odd length, use the complex transform
+      double[] re = new double[length];
+      double[] im = new double[length];
+      System.arraycopy(reals, 0, re, 0, half + 1);
+      System.arraycopy(imags, 0, im, 0, half + 1);
+      for (int k = half + 1; k < length; k++) {
+        re[k] = reals[length - k];
+        im[k] = -imags[length - k];
+      }
+      inverse(re, im);
+      System.arraycopy(re, 0, output, 0, length);
+      return;
+    }
+
+    // reconstruct the spectrum of the packed complex signal
+    double x0 = reals[0];
+    double xh = reals[half];
+    reals[0] = (x0 + xh) * 0.5;
+    imags[0] = (x0 - xh) * 0.5;
+
+    for (int k = 1; k <= half / 2; k++) {
+      int    l  = half - k;
+      double ar = reals[k];
+      double ai = imags[k];
+      double br = reals[l];
+      double bi = imags[l];
+
+      // E = (X[k] + conj(X[l])) / 2, O = (X[k] - conj(X[l])) * conj(W^k) / 2
+      double er = (ar + br) * 0.5;
+      double ei = (ai - bi) * 0.5;
+      double dr = (ar - br) * 0.5;
+      double di = (ai + bi) * 0.5;
+
+      double c  = realCosine(k);
+      double s  = realSine(k);
+      double or = c * dr - s * di;
+      double oi = c * di + s * dr;
+
+      // Z[k] = E + i O, Z[l] = conj(E) + i conj(O)
+      reals[k] = er - oi;
+      imags[k] = ei + or;
+      reals[l] = er + oi;
+      imags[l] = or - ei;
+    }
+
+    plan(half).inverseRange(reals, imags);
+
+    for (int j = 0; j < half; j++) {
+      output[2 * j] = reals[j];
+      output[2 * j + 1] = imags[j];
+    }
+  }
+
+
+  /**
+   * Performs the Fourier transformation of many real signals, in parallel.
+   *
+   * @param inputs real signals
+   * @param reals  receive the real parts of the spectra
+   * @param imags  receive the imaginary parts of the spectra
+   */
+  public void realTransform(double[][] inputs, double[][] reals, double[][] imags) {
+    checkBatch(inputs.length, reals.length);
+    checkBatch(inputs.length, imags.length);
+    IntStream.range(0, inputs.length)
+             .parallel()
+             .forEach((i) -> realTransform(inputs[i], reals[i], imags[i]));
+  }
+
+
+  /**
+   * Calculates the linear convolution of two real signals.
+   *
+   * @param a first signal
+   * @param b second signal
+   * @return convolution (length of a + length of b - 1)
+   */
+  public static double[] convolve(double[] a, double[] b) {
+    return convolve(new double[][]{a}, b)[0];
+  }
+
+
+  /**
+   * Calculates the linear convolution of many real signals with the same
+   * kernel, in parallel. The kernel is transformed only once.
+   *
+   * @param signals real signals
+   * @param kernel  convolution kernel
+   * @return convolutions (length of the signal + length of the kernel - 1)
+   */
+  public static double[][] convolve(double[][] signals, double[] kernel) {
+    int longest = 0;
+    for (double[] signal : signals) {
+      longest = max(longest, signal.length);
+    }
+    if (longest == 0 || kernel.length == 0) {
+      throw new IllegalArgumentException("Signals should not be empty");
+    }
+
+    int required = max(longest + kernel.length - 1, 2);
+    int size     = Integer.highestOneBit(required) == required
+                   ? required : Integer.highestOneBit(required) << 1;
+
+    FFT plan = plan(size);
+    int half = size / 2 + 1;
+
+    double[] padded = new double[size];
+    System.arraycopy(kernel, 0, padded, 0, kernel.length);
+    double[] kernelReals = new double[half];
+    double[] kernelImags = new double[half];
+    plan.realTransform(padded, kernelReals, kernelImags);
+
+    double[][] result = new double[signals.length][];
+
+    IntStream.range(0, signals.length).parallel().forEach((i) -> {
+      double[] signal = signals[i];
+      double[] buffer = new double[size];
+      double[] reals  = new double[half];
+      double[] imags  = new double[half];
+      System.arraycopy(signal, 0, buffer, 0, signal.length);
+
+      plan.realTransform(buffer, reals, imags);
+      for (int k = 0; k < half; k++) {
+        double re = reals[k] * kernelReals[k] - imags[k] * kernelImags[k];
+        double im = reals[k] * kernelImags[k] + imags[k] * kernelReals[k];
+        reals[k] = re;
+        imags[k] = im;
+      }
+      plan.realInverse(reals, imags, buffer);
+
+      double[] convolution = new double[signal.length + kernel.length - 1];
+      System.arraycopy(buffer, 0, convolution, 0, convolution.length);
+      result[i] = convolution;
+    });
+
+    return result;
+  }
+
+
+  /**
+   * Transforms the first elements (length of this plan) of larger arrays.
+   *
+   * @param reals real parts
+   * @param imags imaginary parts
+   */
+  private void transformRange(double[] reals, double[] imags) {
+    if (cosines != null) {
+      splitRadix(reals, imags);
+      permute(reals, imags);
+    }
+    else {
+      bluestein(reals, imags);
+    }
+  }
+
+
+  /**
+   * Inverse transforms the first elements (length of this plan) of larger
+   * arrays.
+   *
+   * @param reals real parts
+   * @param imags imaginary parts
+   */
+  private void inverseRange(double[] reals, double[] imags) {
+    for (int i = 0; i < length; i++) {
+      imags[i] = -imags[i];
+    }
+    transformRange(reals, imags);
+    double inverseLength = 1.0 / length;
+    for (int i = 0; i < length; i++) {
+      reals[i] *= inverseLength;
+      imags[i] *= -inverseLength;
+    }
+  }
+
+
+  /**
+   * Decimation-in-frequency split-radix kernel (Sorensen, Heideman and
+   * Burrus). The output is in bit reversed order.
+   *
+   * @param x real parts
+   * @param y imaginary parts
+   */
+  private void splitRadix(double[] x, double[] y) {
+    int n  = length;
+    int n2 = 2 * n;
+
+    // L-shaped butterflies
+    for (int stride = 1; n2 > 4; stride <<= 1) {
+      n2 >>= 1;
+      int n4 = n2 >> 2;
+
+      for (int j = 0; j < n4; j++) {
+        int    t1  = j * stride;
+        int    t3  = 3 * t1;
+        double cc1 = cosines[t1];
+        double ss1 = sines[t1];
+        double cc3 = cosines[t3];
+        double ss3 = sines[t3];
+
+        int is = j;
+        int id = 2 * n2;
+        while (is < n - 1) {
+          for (int i0 = is; i0 < n - 1; i0 += id) {
+            int i1 = i0 + n4;
+            int i2 = i1 + n4;
+            int i3 = i2 + n4;
+
+            double r1 = x[i0] - x[i2];
+            x[i0] += x[i2];
+            double r2 = x[i1] - x[i3];
+            x[i1] += x[i3];
+            double s1 = y[i0] - y[i2];
+            y[i0] += y[i2];
+            double s2 = y[i1] - y[i3];
+            y[i1] += y[i3];
+
+            double s3 = r1 - s2;
+            r1 += s2;
+            s2 = r2 - s1;
+            r2 += s1;
+
+            x[i2] = r1 * cc1 - s2 * ss1;
+            y[i2] = -s2 * cc1 - r1 * ss1;
+            x[i3] = s3 * cc3 + r2 * ss3;
+            y[i3] = r2 * cc3 - s3 * ss3;
+          }
+          is = 2 * id - n2 + j;
+          id <<= 2;
+        }
+      }
+    }
+
+    // length-2 butterflies
+    int is = 0;
+    int id = 4;
+    while (is < n - 1) {
+      for (int i0 = is; i0 < n; i0 += id) {
+        int    i1 = i0 + 1;
+        double r1 = x[i0];
+        x[i0] = r1 + x[i1];
+        x[i1] = r1 - x[i1];
+        r1 = y[i0];
+        y[i0] = r1 + y[i1];
+        y[i1] = r1 - y[i1];
+      }
+      is = 2 * id - 2;
+      id <<= 2;
+    }
+  }
+
+
+  /**
+   * Applies the bit reversal permutation.
+   *
+   * @param reals real parts
+   * @param imags imaginary parts
+   */
+  private void permute(double[] reals, double[] imags) {
+    for (int i = 0; i < swaps.length; i += 2) {
+      int    a = swaps[i];
+      int    b = swaps[i + 1];
+      double t = reals[a];
+      reals[a] = reals[b];
+      reals[b] = t;
+      t = imags[a];
+      imags[a] = imags[b];
+      imags[b] = t;
+    }
+  }
+
+
+  /**
+   * Bluestein's algorithm: the transform is calculated as a convolution with
+   * a chirp, using a power-of-two transform.
+   *
+   * @param reals real parts
+   * @param imags imaginary parts
+   */
+  private void bluestein(double[] reals, double[] imags) {
+    double[][] buffers = workspace.get();
+    double[]   ar      = buffers[0];
+    double[]   ai      = buffers[1];
+    int        size    = ar.length;
+
+    for (int k = 0; k < length; k++) {
+      double cr = chirpReals[k];
+      double ci = chirpImags[k];
+      ar[k] = reals[k] * cr - imags[k] * ci;
+      ai[k] = reals[k] * ci + imags[k] * cr;
+    }
+    for (int k = length; k < size; k++) {
+      ar[k] = 0.0;
+      ai[k] = 0.0;
+    }
+
+    convolution.transform(ar, ai);
+    for (int k = 0; k < size; k++) {
+      double re = ar[k] * filterReals[k] - ai[k] * filterImags[k];
+      double im = ar[k] * filterImags[k] + ai[k] * filterReals[k];
+      ar[k] = re;
+      ai[k] = im;
+    }
+    convolution.inverse(ar, ai);
+
+    for (int k = 0; k < length; k++) {
+      double cr = chirpReals[k];
+      double ci = chirpImags[k];
+      reals[k] = ar[k] * cr - ai[k] * ci;
+      imags[k] = ar[k] * ci + ai[k] * cr;
+    }
+  }
+
+
+  /**
+   * Returns <i>cos(2&pi;k/n)</i> for <i>k &lt;= n/2</i>.
+   *
+   * @param k index
+   * @return cosine
+   */
+  private double realCosine(int k) {
+    int quarter = realCosines.length - 1;
+    return k <= quarter ? realCosines[k] : -realCosines[length / 2 - k];
+  }
+
+
+  /**
+   * Returns <i>sin(2&pi;k/n)</i> for <i>k &lt;= n/2</i>.
+   *
+   * @param k index
+   * @return sine
+   */
+  private double realSine(int k) {
+    int quarter = realSines.length - 1;
+    return k <= quarter ? realSines[k] : realSines[length / 2 - k];
+  }
+
+
+  /**
+   * Calculates the index pairs swapped by the bit reversal permutation.
+   *
+   * @param length transform length (power of two)
+   * @return index pairs
+   */
+  private static int[] bitReversal(int length) {
+    if (length < 4) {
+      return new int[0];
+    }
+
+    int   shift = 1 + Integer.numberOfLeadingZeros(length);
+    int   count = 0;
+    int[] pairs = new int[length];
+
+    for (int k = 0; k < length; k++) {
+      int j = Integer.reverse(k) >>> shift;
+      if (j > k) {
+        pairs[count++] = k;
+        pairs[count++] = j;
+      }
+    }
+
+    int[] swaps = new int[count];
+    System.arraycopy(pairs, 0, swaps, 0, count);
+    return swaps;
+  }
+
+
+  /**
+   * Checks that an array has the length of this plan.
+   *
+   * @param arrayLength array length
+   */
+  private void checkLength(int arrayLength) {
+    if (arrayLength != length) {
+      throw new IllegalArgumentException("Expected length " + length + ", got " + arrayLength);
+    }
+  }
+
+
+  /**
+   * Checks that a batch contains as many real as imaginary parts.
+   *
+   * @param count      number of signals
+   * @param otherCount number of signals of the other array
+   */
+  private static void checkBatch(int count, int otherCount) {
+    if (count != otherCount) {
+      throw new IllegalArgumentException("Number of signals should be equal");
+    }
+  }
+}
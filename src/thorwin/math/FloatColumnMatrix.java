@@ -0,0 +1,159 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+import static java.lang.Math.min;
+
+import java.util.stream.IntStream;
+
+/**
+ * Single precision matrix that wraps an array per column, for example the
+ * channels of an event file. The column arrays are not copied, so large data
+ * sets are used without any conversion. Callers are expected not to modify
+ * the arrays while the matrix is in use.
+ * <p>
+ * Products with small matrices (projections of the data) are calculated in
+ * parallel over blocks of rows, accumulating in double precision.
+ */
+final class FloatColumnMatrix extends DefaultMatrix {
+
+  /**
+   * Column arrays.
+   */
+  private final float[][] columns;
+
+  /**
+   * Number of rows.
+   */
+  private final int rows;
+
+
+  /**
+   * Constructs a matrix from column arrays. The arrays are not copied.
+   *
+   * @param columns column arrays, all of equal length
+   */
+  FloatColumnMatrix(float[]... columns) {
+    if (columns.length == 0) {
+      throw new IllegalArgumentException("At least one column required");
+    }
+    this.rows = columns[0].length;
+    for (float[] column : columns) {
+      if (column.length != rows) {
+        throw new IllegalArgumentException("Columns should have equal length");
+      }
+    }
+    this.columns = columns.clone();
+  }
+
+
+  @Override
+  public int getRowDimension() {
+    return rows;
+  }
+
+
+  @Override
+  public int getColumnDimension() {
+    return columns.length;
+  }
+
+
+  @Override
+  public double get(int row, int column) {
+    return columns[column][row];
+  }
+
+
+  @Override
+  public Vector column(int column) {
+    return new FloatVector(columns[column]);
+  }
+
+
+  @Override
+  public FloatMatrix evaluate() {
+    return new FloatMatrix(rows, columns.length, false, toFloatArray());
+  }
+
+
+  @Override
+  public float[] toFloatArray() {
+    int     n      = columns.length;
+    float[] packed = new float[rows * n];
+    for (int j = 0; j < n; j++) {
+      float[] column = columns[j];
+      for (int i = 0; i < rows; i++) {
+        packed[i * n + j] = column[i];
+      }
+    }
+    return packed;
+  }
+
+
+  @Override
+  public FloatMatrix transpose() {
+    // the transpose is row-major packed as the concatenated columns
+    int     n      = columns.length;
+    float[] packed = new float[rows * n];
+    for (int j = 0; j < n; j++) {
+      System.arraycopy(columns[j], 0, packed, j * rows, rows);
+    }
+    return new FloatMatrix(n, rows, false, packed);
+  }
+
+
+  @Override
+  public Matrix multiply(Matrix other) {
+    if (columns.length != other.getRowDimension()) {
+      throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+    }
+
+    int      k       = columns.length;
+    int      n       = other.getColumnDimension();
+    double[] weights = other.toArray();
+    float[]  result  = new float[rows * n];
+
+    int blocks = (rows + PackedKernels.ROW_BLOCK - 1) / PackedKernels.ROW_BLOCK;
+
+    IntStream.range(0, blocks).parallel().forEach((block) -> {
+      int      start = block * PackedKernels.ROW_BLOCK;
+      int      end   = min(rows, start + PackedKernels.ROW_BLOCK);
+      double[] row   = new double[n];
+
+      for (int i = start; i < end; i++) {
+        for (int j = 0; j < n; j++) {
+          row[j] = 0.0;
+        }
+        for (int p = 0; p < k; p++) {
+          double value = columns[p][i];
+          int    base  = p * n;
+          for (int j = 0; j < n; j++) {
+            row[j] += value * weights[base + j];
+          }
+        }
+        int offset = i * n;
+        for (int j = 0; j < n; j++) {
+          result[offset + j] = (float) row[j];
+        }
+      }
+    });
+
+    return new FloatMatrix(rows, n, false, result);
+  }
+}
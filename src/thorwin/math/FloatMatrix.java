@@ -0,0 +1,280 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+/**
+ * Single precision matrix that uses a row-major packed float array for
+ * storage. Entries are stored as floats, which halves the memory footprint
+ * and doubles the number of entries per cache line compared to the double
+ * precision matrices. Products of single precision matrices are calculated
+ * by sgemm, decompositions accumulate in double precision.
+ * <p>
+ * The packed array is not copied when wrapping existing data. Callers are
+ * expected not to modify the array while the matrix is in use.
+ */
+final class FloatMatrix extends DefaultMatrix {
+
+  /**
+   * The number of rows in the packed array.
+   */
+  private final int rows;
+
+  /**
+   * The number of columns in the packed array.
+   */
+  private final int columns;
+
+  /**
+   * Transposed flag.
+   */
+  private final boolean transposed;
+
+  /**
+   * Row-major packed entries.
+   */
+  private final float[] packed;
+
+
+  /**
+   * Constructs a new single precision matrix. The packed array is not
+   * copied.
+   *
+   * @param rows       number of rows in the packed array
+   * @param columns    number of columns in the packed array
+   * @param transposed if true, this matrix is the transpose of the packed
+   *                   array
+   * @param packed     row-major packed entries
+   */
+  FloatMatrix(int rows, int columns, boolean transposed, float[] packed) {
+    if (packed.length != rows * columns) {
+      throw new IllegalArgumentException("Invalid number of entries: " + packed.length);
+    }
+    this.rows = rows;
+    this.columns = columns;
+    this.transposed = transposed;
+    this.packed = packed;
+  }
+
+
+  @Override
+  public int getRowDimension() {
+    return transposed ? columns : rows;
+  }
+
+
+  @Override
+  public int getColumnDimension() {
+    return transposed ? rows : columns;
+  }
+
+
+  @Override
+  public double get(int row, int column) {
+    if (transposed) {
+      int t = row;
+      row = column;
+      column = t;
+    }
+    if (row < 0 || row >= rows) {
+      throw new IndexOutOfBoundsException("Invalid row index: " + row);
+    }
+    if (column < 0 || column >= columns) {
+      throw new IndexOutOfBoundsException("Invalid column index: " + column);
+    }
+    return packed[row * columns + column];
+  }
+
+
+  @Override
+  public FloatMatrix transpose() {
+    return new FloatMatrix(rows, columns, !transposed, packed);
+  }
+
+
+  @Override
+  public FloatMatrix evaluate() {
+    if (transposed) {
+      return new FloatMatrix(columns, rows, false, transpose(packed, rows, columns));
+    }
+    return this;
+  }
+
+
+  @Override
+  public double[] toArray() {
+    float[]  floats = transposed ? transpose(packed, rows, columns) : packed;
+    double[] result = new double[floats.length];
+    for (int i = 0; i < floats.length; i++) {
+      result[i] = floats[i];
+    }
+    return result;
+  }
+
+
+  @Override
+  public float[] toFloatArray() {
+    return transposed ? transpose(packed, rows, columns) : packed.clone();
+  }
+
+
+  /**
+   * Returns the internal packed array, without copying it. The array is
+   * row-major for the untransposed matrix (see {@link #isTransposed()}).
+   * Callers must not modify the array.
+   *
+   * @return internal packed array
+   */
+  float[] getPacked() {
+    return packed;
+  }
+
+
+  /**
+   * Returns true if the internal packed array holds the transpose of this
+   * matrix.
+   *
+   * @return transposed flag
+   */
+  boolean isTransposed() {
+    return transposed;
+  }
+
+
+  @Override
+  public Matrix multiply(Matrix other) {
+    if (!(other instanceof FloatMatrix)) {
+      return super.multiply(other);
+    }
+    if (getColumnDimension() != other.getRowDimension()) {
+      throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+    }
+
+    FloatMatrix b = (FloatMatrix) other;
+    int         m = getRowDimension();
+    int         n = b.getColumnDimension();
+    int         k = getColumnDimension();
+    float[]     c = new float[m * n];
+
+    MatrixOperations.sgemm(packed, b.packed, c, m, n, k, transposed, b.transposed, 1.0f, 0.0f);
+
+    return new FloatMatrix(m, n, false, c);
+  }
+
+
+  @Override
+  public Vector multiply(Vector other) {
+    if (!(other instanceof FloatVector)) {
+      return super.multiply(other);
+    }
+    if (getColumnDimension() != other.getDimension()) {
+      throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+    }
+
+    int     m = getRowDimension();
+    int     k = getColumnDimension();
+    float[] c = new float[m];
+
+    MatrixOperations.sgemm(packed, ((FloatVector) other).getData(), c, m, 1, k, transposed, false, 1.0f, 0.0f);
+
+    return new FloatVector(c);
+  }
+
+
+  @Override
+  public FloatMatrix multiply(double multiplicand) {
+    float[] result = packed.clone();
+    VectorOperations.sscal((float) multiplicand, result);
+    return new FloatMatrix(rows, columns, transposed, result);
+  }
+
+
+  @Override
+  public Matrix add(Matrix other) {
+    if (!(other instanceof FloatMatrix)) {
+      return super.add(other);
+    }
+    return combine((FloatMatrix) other, 1.0f);
+  }
+
+
+  @Override
+  public Matrix subtract(Matrix other) {
+    if (!(other instanceof FloatMatrix)) {
+      return super.subtract(other);
+    }
+    return combine((FloatMatrix) other, -1.0f);
+  }
+
+
+  @Override
+  public LU lu() {
+    return DefaultLU.single(this);
+  }
+
+
+  @Override
+  public Cholesky chol() {
+    return DefaultCholesky.single(this);
+  }
+
+
+  /**
+   * Calculates <i>this + scale &times; other</i> using saxpy.
+   *
+   * @param other other matrix
+   * @param scale scale of the other matrix
+   * @return resulting matrix
+   */
+  private FloatMatrix combine(FloatMatrix other, float scale) {
+    if (getRowDimension() != other.getRowDimension() ||
+        getColumnDimension() != other.getColumnDimension()) {
+      throw new IllegalArgumentException("Matrix dimensions do not agree");
+    }
+
+    // use the storage order of this matrix for the result
+    float[] result = packed.clone();
+    float[] x      = transposed == other.transposed ? other.packed
+                                                    : transpose(other.packed, other.rows, other.columns);
+    VectorOperations.saxpy(scale, x, result);
+    return new FloatMatrix(rows, columns, transposed, result);
+  }
+
+
+  /**
+   * Creates a transposed copy of a packed array.
+   *
+   * @param packed  source array
+   * @param rows    rows of the source array
+   * @param columns columns of the source array
+   * @return transposed packed array
+   */
+  static float[] transpose(float[] packed, int rows, int columns) {
+    float[] transposed = new float[packed.length];
+    int     index1     = 0;
+    for (int i = 0; i < columns; i++) {
+      int index2 = i;
+      int fence  = index1 + rows;
+      while (index1 < fence) {
+        transposed[index1] = packed[index2];
+        index1++;
+        index2 += columns;
+      }
+    }
+    return transposed;
+  }
+}
@@ -0,0 +1,133 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * Single precision vector that uses an internal float array for storage.
+ * Dot products are accumulated in double precision.
+ */
+final class FloatVector extends DefaultVector {
+
+  private final float[] data;
+
+  /**
+   * Constructor. Note that this constructor exposes the internal data for
+   * possible modification. Provided array should not be altered after
+   * construction.
+   *
+   * @param data The vector's data
+   */
+  FloatVector(float[] data) {
+    super();
+    this.data = data;
+  }
+
+
+  /**
+   * Returns the internal array, without copying it. Callers must not modify
+   * the array.
+   *
+   * @return internal array
+   */
+  float[] getData() {
+    return data;
+  }
+
+
+  @Override
+  public double[] toArray() {
+    double[] array = new double[data.length];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = data[i];
+    }
+    return array;
+  }
+
+
+  @Override
+  public float[] toFloatArray() {
+    return data.clone();
+  }
+
+
+  @Override
+  public int getDimension() {
+    return data.length;
+  }
+
+
+  @Override
+  public double get(int index) {
+    return data[index];
+  }
+
+
+  @Override
+  public DoubleStream stream() {
+    return IntStream.range(0, data.length).mapToDouble((i) -> data[i]);
+  }
+
+
+  @Override
+  public double multiply(Vector other) {
+    if (other instanceof FloatVector && other.getDimension() == data.length) {
+      return VectorOperations.dsdot(data, ((FloatVector) other).data);
+    }
+    return super.multiply(other);
+  }
+
+
+  @Override
+  public Vector multiply(double multiplicand) {
+    float[] result = data.clone();
+    VectorOperations.sscal((float) multiplicand, result);
+    return new FloatVector(result);
+  }
+
+
+  @Override
+  public Vector add(Vector other) {
+    return add(other, 1.0);
+  }
+
+
+  @Override
+  public Vector add(Vector other, double scale) {
+    if (!(other instanceof FloatVector)) {
+      return super.add(other, scale);
+    }
+    float[] result = data.clone();
+    VectorOperations.saxpy((float) scale, ((FloatVector) other).data, result);
+    return new FloatVector(result);
+  }
+
+
+  @Override
+  public Vector subtract(Vector other) {
+    return add(other, -1.0);
+  }
+
+
+  @Override
+  public Vector subtract(Vector other, double scale) {
+    return add(other, -scale);
+  }
+}
@@ -80,8 +80,12 @@ final class FunctionMatrix implements Matrix {
 
   @Override
   public FunctionMatrix add(Matrix other) {
-    return new FunctionMatrix(columnCount,
-                              rowCount,
+    if (rowCount != other.getRowDimension() ||
+        columnCount != other.getColumnDimension()) {
+      throw new IllegalArgumentException("Matrix dimensions do not agree");
+    }
+    return new FunctionMatrix(rowCount,
+                              columnCount,
                               (rowIndex, columnIndex) -> get(rowIndex,
                                                              columnIndex) +
                                                          other.get(rowIndex,
@@ -91,8 +95,12 @@ final class FunctionMatrix implements Matrix {
 
   @Override
   public FunctionMatrix subtract(Matrix other) {
-    return new FunctionMatrix(columnCount,
-                              rowCount,
+    if (rowCount != other.getRowDimension() ||
+        columnCount != other.getColumnDimension()) {
+      throw new IllegalArgumentException("Matrix dimensions do not agree");
+    }
+    return new FunctionMatrix(rowCount,
+                              columnCount,
                               (rowIndex, columnIndex) -> get(rowIndex,
                                                              columnIndex) -
                                                          other.get(rowIndex,
@@ -100,12 +108,17 @@ final class FunctionMatrix implements Matrix {
   }
 
 
+  /**
+   * Multiplies this matrix with another matrix. The product is evaluated
+   * lazily: both operands are materialized once, when the first entry is
+   * accessed, and multiplied using dgemm. The result is memoized.
+   *
+   * @param other the other matrix
+   * @return lazy product
+   */
   @Override
-  public FunctionMatrix multiply(Matrix other) {
-    return new FunctionMatrix(rowCount,
-                              other.getColumnDimension(),
-                              (row, column) -> row(row).multiply(other.column
-                                                                           (column)));
+  public Matrix multiply(Matrix other) {
+    return lazy().multiply(other);
   }
 
 
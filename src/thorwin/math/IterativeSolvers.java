@@ -0,0 +1,272 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+
+/**
+ * Krylov subspace solvers for <i>A&times;X = B</i>. The solvers only access
+ * the matrix through matrix-vector products, which makes them suitable for
+ * large sparse matrices.
+ */
+final class IterativeSolvers {
+
+  /**
+   * Linear operator, calculates <i>y = A &times; x</i>.
+   */
+  @FunctionalInterface
+  interface Operator {
+
+    /**
+     * Applies the operator.
+     *
+     * @param x input vector
+     * @param y output vector
+     */
+    void apply(double[] x, double[] y);
+  }
+
+  private IterativeSolvers() {
+  }
+
+  /**
+   * Returns the operator of a matrix. Sparse matrices use their stored
+   * elements, other matrices are packed once and multiplied in parallel over
+   * rows.
+   *
+   * @param matrix matrix
+   * @return operator
+   */
+  static Operator operator(Matrix matrix) {
+    if (matrix instanceof SparseMatrix) {
+      SparseMatrix sparse = ((SparseMatrix) matrix).evaluate();
+      return sparse::multiply;
+    }
+
+    int      m = matrix.getRowDimension();
+    int      n = matrix.getColumnDimension();
+    double[] a = matrix.toArray();
+    return (x, y) -> IntStream.range(0, m).parallel().forEach((row) -> {
+      int    base = row * n;
+      double sum  = 0;
+      for (int j = 0; j < n; j++) {
+        sum += a[base + j] * x[j];
+      }
+      y[row] = sum;
+    });
+  }
+
+  /**
+   * Returns the inverse of the diagonal, used as (Jacobi) preconditioner.
+   *
+   * @param matrix square matrix
+   * @return inverse diagonal, or null if the diagonal contains zero's
+   */
+  static double[] inverseDiagonal(Matrix matrix) {
+    int      n        = matrix.getRowDimension();
+    double[] diagonal = matrix instanceof SparseMatrix
+                        ? ((SparseMatrix) matrix).evaluate().diagonal()
+                        : new double[n];
+
+    for (int i = 0; i < n; i++) {
+      double value = matrix instanceof SparseMatrix ? diagonal[i] : matrix.get(i, i);
+      if (value == 0.0) {
+        return null;
+      }
+      diagonal[i] = 1.0 / value;
+    }
+    return diagonal;
+  }
+
+  /**
+   * Solves <i>A&times;X = B</i> using the (Jacobi preconditioned) conjugate
+   * gradient method. <i>A</i> should be symmetric and positive definite.
+   *
+   * @param a          operator of matrix <i>A</i>
+   * @param inverse    inverse diagonal of <i>A</i> (or null)
+   * @param b          right hand side
+   * @param iterations maximum number of iterations
+   * @param tolerance  maximum absolute residual of every element
+   * @return solution, if convergence is reached
+   */
+  static Optional<Vector> conjugateGradient(Operator a,
+                                            double[] inverse,
+                                            double[] b,
+                                            int iterations,
+                                            double tolerance) {
+    int      n = b.length;
+    double[] x = new double[n];
+    double[] r = b.clone();
+    double[] z = precondition(inverse, r, new double[n]);
+    double[] p = z.clone();
+    double[] q = new double[n];
+
+    double rz = dot(r, z);
+
+    for (int k = 0; k < iterations; k++) {
+      if (norm(r) <= tolerance) {
+        return Optional.of(new ArrayVector(x));
+      }
+
+      a.apply(p, q);
+      double pq = dot(p, q);
+      if (pq <= 0.0) {
+        // matrix is not positive definite
+        return Optional.empty();
+      }
+
+      double alpha = rz / pq;
+      axpy(alpha, p, x);
+      axpy(-alpha, q, r);
+
+      precondition(inverse, r, z);
+      double next = dot(r, z);
+      double beta = next / rz;
+      for (int i = 0; i < n; i++) {
+        p[i] = z[i] + beta * p[i];
+      }
+      rz = next;
+    }
+
+    return norm(r) <= tolerance ? Optional.of(new ArrayVector(x)) : Optional.empty();
+  }
+
+  /**
+   * Solves <i>A&times;X = B</i> using the stabilized bi-conjugate gradient
+   * method (BiCGSTAB). <i>A</i> should be square, but need not be symmetric.
+   *
+   * @param a          operator of matrix <i>A</i>
+   * @param b          right hand side
+   * @param iterations maximum number of iterations
+   * @param tolerance  maximum absolute residual of every element
+   * @return solution, if convergence is reached
+   */
+  static Optional<Vector> bicgstab(Operator a,
+                                   double[] b,
+                                   int iterations,
+                                   double tolerance) {
+    int      n    = b.length;
+    double[] x    = new double[n];
+    double[] r    = b.clone();
+    double[] rHat = b.clone();
+    double[] p    = new double[n];
+    double[] v    = new double[n];
+    double[] s    = new double[n];
+    double[] t    = new double[n];
+
+    double rho   = 1;
+    double alpha = 1;
+    double omega = 1;
+
+    for (int k = 0; k < iterations; k++) {
+      if (norm(r) <= tolerance) {
+        return Optional.of(new ArrayVector(x));
+      }
+
+      double next = dot(rHat, r);
+      if (next == 0.0 || omega == 0.0) {
+        // breakdown
+        return Optional.empty();
+      }
+
+      double beta = (next / rho) * (alpha / omega);
+      for (int i = 0; i < n; i++) {
+        p[i] = r[i] + beta * (p[i] - omega * v[i]);
+      }
+
+      a.apply(p, v);
+      alpha = next / dot(rHat, v);
+
+      for (int i = 0; i < n; i++) {
+        s[i] = r[i] - alpha * v[i];
+      }
+      if (norm(s) <= tolerance) {
+        axpy(alpha, p, x);
+        return Optional.of(new ArrayVector(x));
+      }
+
+      a.apply(s, t);
+      double tt = dot(t, t);
+      if (tt == 0.0) {
+        return Optional.empty();
+      }
+      omega = dot(t, s) / tt;
+
+      for (int i = 0; i < n; i++) {
+        x[i] += alpha * p[i] + omega * s[i];
+        r[i] = s[i] - omega * t[i];
+      }
+      rho = next;
+    }
+
+    return norm(r) <= tolerance ? Optional.of(new ArrayVector(x)) : Optional.empty();
+  }
+
+  /**
+   * Applies the preconditioner.
+   *
+   * @param inverse inverse diagonal (or null)
+   * @param r       residual
+   * @param z       receives the preconditioned residual
+   * @return z
+   */
+  private static double[] precondition(double[] inverse, double[] r, double[] z) {
+    if (inverse == null) {
+      System.arraycopy(r, 0, z, 0, r.length);
+    }
+    else {
+      for (int i = 0; i < r.length; i++) {
+        z[i] = inverse[i] * r[i];
+      }
+    }
+    return z;
+  }
+
+  private static double dot(double[] x, double[] y) {
+    double s = 0;
+    for (int i = 0; i < x.length; i++) {
+      s += x[i] * y[i];
+    }
+    return s;
+  }
+
+  private static void axpy(double a, double[] x, double[] y) {
+    for (int i = 0; i < x.length; i++) {
+      y[i] += a * x[i];
+    }
+  }
+
+  /**
+   * Returns the maximum absolute element (infinity norm).
+   *
+   * @param x vector
+   * @return infinity norm
+   */
+  private static double norm(double[] x) {
+    double max = 0;
+    for (double value : x) {
+      max = max(max, abs(value));
+    }
+    return max;
+  }
+}
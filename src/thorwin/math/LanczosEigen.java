@@ -0,0 +1,286 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+
+import java.util.Random;
+
+
+/**
+ * Partial eigendecomposition of a symmetric matrix, calculating only the
+ * largest eigenvalues and their eigenvectors.
+ * <p>
+ * The Lanczos algorithm builds an orthonormal Krylov base, in which the
+ * matrix is tridiagonal. The base is fully re-orthogonalized at each step to
+ * prevent spurious eigenvalues. The base is extended until the residuals of
+ * the requested Ritz pairs have converged. Matrix-vector products are
+ * executed in parallel over row blocks.
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Lanczos_algorithm">Wikipedia on
+ * the Lanczos algorithm</a>
+ */
+final class LanczosEigen implements Eigen {
+
+  /**
+   * Relative tolerance of the Ritz pair residuals.
+   */
+  private static final double TOLERANCE = 1e-12;
+
+  /**
+   * Eigenvectors (columns).
+   */
+  private final Matrix V;
+
+  /**
+   * Eigenvalues (descending).
+   */
+  private final ComplexVector eigenvalues;
+
+  /**
+   * Constructor.
+   *
+   * @param V           eigenvectors
+   * @param eigenvalues eigenvalues
+   */
+  private LanczosEigen(Matrix V, ComplexVector eigenvalues) {
+    this.V = V;
+    this.eigenvalues = eigenvalues;
+  }
+
+  /**
+   * Calculates the largest eigenvalues, and their eigenvectors.
+   *
+   * @param matrix symmetric matrix
+   * @param count  number of eigenvalues to calculate
+   * @return partial eigendecomposition
+   */
+  static Eigen decompose(Matrix matrix, int count) {
+    if (!matrix.isSquare()) {
+      throw new IllegalArgumentException("Matrix should be square");
+    }
+
+    int n = matrix.getRowDimension();
+    if (count <= 0 || count > n) {
+      throw new IllegalArgumentException("count should be between 1 and " + n);
+    }
+
+    double[] a = matrix.toArray();
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < i; j++) {
+        if (a[i * n + j] != a[j * n + i]) {
+          throw new IllegalArgumentException("Matrix is not symmetric");
+        }
+      }
+    }
+
+    double[][] base  = new double[n][];
+    double[]   alpha = new double[n];
+    double[]   beta  = new double[n];
+    Random     rnd   = new Random(n);
+
+    int minimum = min(n, 2 * count + 8);
+    int size    = 0;
+
+    double[] q = startVector(base, 0, n, rnd);
+
+    while (size < n) {
+      base[size] = q;
+
+      double[] w = PackedKernels.multiply(a, q, n, 1, n);
+      alpha[size] = dot(w, q);
+
+      // full re-orthogonalization (twice is enough)
+      for (int pass = 0; pass < 2; pass++) {
+        for (int i = 0; i <= size; i++) {
+          axpy(-dot(w, base[i]), base[i], w);
+        }
+      }
+
+      beta[size] = sqrt(dot(w, w));
+      size++;
+
+      if (size == n) {
+        break;
+      }
+
+      boolean invariant = beta[size - 1] <= TOLERANCE * max(abs(alpha[size - 1]), 1.0);
+
+      if (size >= minimum && (invariant || converged(alpha, beta, size, count))) {
+        break;
+      }
+
+      if (invariant) {
+        // the base spans an invariant subspace, restart with a new direction
+        beta[size - 1] = 0.0;
+        q = startVector(base, size, n, rnd);
+      }
+      else {
+        q = w;
+        double scale = 1.0 / beta[size - 1];
+        for (int i = 0; i < n; i++) {
+          q[i] *= scale;
+        }
+      }
+    }
+
+    // diagonalize the tridiagonal matrix
+    double[] values = new double[size];
+    double[] offset = new double[size];
+    MatrixBuilder<?> S = tridiagonal(alpha, beta, size, values, offset);
+    DefaultEigen.tql2(size, values, offset, S);
+
+    // Ritz vectors of the largest eigenvalues, in descending order
+    double[] s = new double[size * count];
+    double[] eigenvalues = new double[count];
+    for (int j = 0; j < count; j++) {
+      int column = size - 1 - j;
+      eigenvalues[j] = values[column];
+      for (int i = 0; i < size; i++) {
+        s[i * count + j] = S.get(i, column);
+      }
+    }
+
+    double[] packed = new double[size * n];
+    for (int i = 0; i < size; i++) {
+      System.arraycopy(base[i], 0, packed, i * n, n);
+    }
+
+    double[] v = PackedKernels.multiplyTransposed(packed, s, size, n, count);
+
+    return new LanczosEigen(MatrixContext.getInstance().create(n, count, v).toMatrix(),
+                            new DefaultComplexVector(eigenvalues, new double[count]));
+  }
+
+  /**
+   * Checks if the largest Ritz values of the tridiagonal matrix have
+   * converged. The residual of a Ritz pair is the last component of its
+   * eigenvector, multiplied by the last off-diagonal element.
+   *
+   * @param alpha diagonal
+   * @param beta  off-diagonal
+   * @param size  dimension of the tridiagonal matrix
+   * @param count number of Ritz values to check
+   * @return true if converged
+   */
+  private static boolean converged(double[] alpha, double[] beta, int size, int count) {
+    double[] values = new double[size];
+    double[] offset = new double[size];
+    MatrixBuilder<?> S = tridiagonal(alpha, beta, size, values, offset);
+    DefaultEigen.tql2(size, values, offset, S);
+
+    double scale = max(abs(values[0]), abs(values[size - 1]));
+    for (int j = size - count; j < size; j++) {
+      double residual = abs(beta[size - 1] * S.get(size - 1, j));
+      if (residual > TOLERANCE * scale) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Prepares the input of the tridiagonal QL algorithm.
+   *
+   * @param alpha  diagonal
+   * @param beta   off-diagonal
+   * @param size   dimension of the tridiagonal matrix
+   * @param values receives the diagonal
+   * @param offset receives the sub-diagonal
+   * @return builder initialized with the identity matrix
+   */
+  private static MatrixBuilder<?> tridiagonal(double[] alpha,
+                                              double[] beta,
+                                              int size,
+                                              double[] values,
+                                              double[] offset) {
+    System.arraycopy(alpha, 0, values, 0, size);
+    for (int i = 1; i < size; i++) {
+      offset[i] = beta[i - 1];
+    }
+
+    MatrixBuilder<?> S = MatrixContext.getInstance().create(size, size);
+    for (int i = 0; i < size; i++) {
+      S.set(i, i, 1.0);
+    }
+    return S;
+  }
+
+  /**
+   * Creates a random unit vector, orthogonal to the existing base vectors.
+   *
+   * @param base base vectors
+   * @param size number of base vectors
+   * @param n    dimension
+   * @param rnd  random generator
+   * @return start vector
+   */
+  private static double[] startVector(double[][] base, int size, int n, Random rnd) {
+    double[] q = new double[n];
+    for (int i = 0; i < n; i++) {
+      q[i] = rnd.nextGaussian();
+    }
+    for (int pass = 0; pass < 2; pass++) {
+      for (int i = 0; i < size; i++) {
+        axpy(-dot(q, base[i]), base[i], q);
+      }
+    }
+    double scale = 1.0 / sqrt(dot(q, q));
+    for (int i = 0; i < n; i++) {
+      q[i] *= scale;
+    }
+    return q;
+  }
+
+  private static double dot(double[] x, double[] y) {
+    double s = 0;
+    for (int i = 0; i < x.length; i++) {
+      s += x[i] * y[i];
+    }
+    return s;
+  }
+
+  private static void axpy(double a, double[] x, double[] y) {
+    for (int i = 0; i < x.length; i++) {
+      y[i] += a * x[i];
+    }
+  }
+
+  @Override
+  public Matrix getV() {
+    return V;
+  }
+
+  @Override
+  public ComplexVector getEigenvalues() {
+    return eigenvalues;
+  }
+
+  @Override
+  public Matrix getD() {
+    int      n      = eigenvalues.getDimension();
+    double[] values = new double[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = eigenvalues.real(i);
+    }
+    return Matrix.diagonal(values);
+  }
+}
@@ -0,0 +1,652 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+
+/**
+ * Lazily evaluated matrix expression. Operations on a lazy matrix do not
+ * calculate anything, they build a directed acyclic graph of the expression
+ * instead. The graph is planned and calculated when the entries are needed:
+ * <ul>
+ * <li>chains of additions, subtractions and scalings are flattened into a
+ * single linear combination, calculated in one (fused) sweep</li>
+ * <li>products are calculated by dgemm, accumulating directly into the
+ * result of the enclosing linear combination</li>
+ * <li>scalings of the operands of a product are folded into the dgemm
+ * multiplicand</li>
+ * <li>subexpressions used more than once are calculated once</li>
+ * </ul>
+ * For example <i>A&times;B + C - &alpha;D</i> is calculated using one dgemm
+ * and one sweep, without intermediate matrices.
+ * <p>
+ * Evaluated (sub)expressions are memoized. This class is thread-safe.
+ */
+final class LazyMatrix extends DefaultMatrix {
+
+  /**
+   * Node holding an existing matrix.
+   */
+  private static final int LEAF = 0;
+
+  /**
+   * Node calculating the product of two nodes.
+   */
+  private static final int PRODUCT = 1;
+
+  /**
+   * Node calculating a linear combination of nodes.
+   */
+  private static final int SUM = 2;
+
+  private final int kind;
+
+  private final int rows;
+
+  private final int columns;
+
+  /**
+   * Matrix of a leaf node.
+   */
+  private final Matrix source;
+
+  /**
+   * Left operand of a product node.
+   */
+  private final LazyMatrix left;
+
+  /**
+   * Right operand of a product node.
+   */
+  private final LazyMatrix right;
+
+  /**
+   * Terms of a sum node.
+   */
+  private final LazyMatrix[] terms;
+
+  /**
+   * Coefficients of the terms of a sum node.
+   */
+  private final double[] coefficients;
+
+  /**
+   * Memoized row-major packed value, null if not (yet) evaluated.
+   */
+  private volatile double[] value;
+
+
+  /**
+   * Constructs a node.
+   *
+   * @param kind         node kind
+   * @param rows         number of rows
+   * @param columns      number of columns
+   * @param source       matrix (leaf)
+   * @param left         left operand (product)
+   * @param right        right operand (product)
+   * @param terms        terms (sum)
+   * @param coefficients coefficients of the terms (sum)
+   */
+  private LazyMatrix(int kind,
+                     int rows,
+                     int columns,
+                     Matrix source,
+                     LazyMatrix left,
+                     LazyMatrix right,
+                     LazyMatrix[] terms,
+                     double[] coefficients) {
+    this.kind = kind;
+    this.rows = rows;
+    this.columns = columns;
+    this.source = source;
+    this.left = left;
+    this.right = right;
+    this.terms = terms;
+    this.coefficients = coefficients;
+  }
+
+
+  /**
+   * Returns a lazy matrix for the specified matrix. The entries of the matrix
+   * are not accessed until the expression is evaluated.
+   *
+   * @param matrix matrix
+   * @return lazy matrix
+   */
+  static LazyMatrix valueOf(Matrix matrix) {
+    if (matrix instanceof LazyMatrix) {
+      return (LazyMatrix) matrix;
+    }
+    return new LazyMatrix(LEAF,
+                          matrix.getRowDimension(),
+                          matrix.getColumnDimension(),
+                          matrix,
+                          null,
+                          null,
+                          null,
+                          null);
+  }
+
+
+  /**
+   * Creates a product node.
+   *
+   * @param left  left operand
+   * @param right right operand
+   * @return product node
+   */
+  private static LazyMatrix product(LazyMatrix left, LazyMatrix right) {
+    return new LazyMatrix(PRODUCT,
+                          left.rows,
+                          right.columns,
+                          null,
+                          left,
+                          right,
+                          null,
+                          null);
+  }
+
+
+  /**
+   * Creates a sum node, flattening the unevaluated sum nodes in the
+   * operands.
+   *
+   * @param a  first operand
+   * @param ca coefficient of the first operand
+   * @param b  second operand (may be null)
+   * @param cb coefficient of the second operand
+   * @return sum node
+   */
+  private static LazyMatrix sum(LazyMatrix a,
+                                double ca,
+                                LazyMatrix b,
+                                double cb) {
+    List<LazyMatrix> terms        = new ArrayList<>();
+    List<Double>     coefficients = new ArrayList<>();
+
+    flatten(a, ca, terms, coefficients);
+    if (b != null) {
+      flatten(b, cb, terms, coefficients);
+    }
+
+    double[] c = new double[coefficients.size()];
+    for (int i = 0; i < c.length; i++) {
+      c[i] = coefficients.get(i);
+    }
+
+    return new LazyMatrix(SUM,
+                          a.rows,
+                          a.columns,
+                          null,
+                          null,
+                          null,
+                          terms.toArray(new LazyMatrix[terms.size()]),
+                          c);
+  }
+
+
+  /**
+   * Adds the terms of a node to a linear combination.
+   *
+   * @param node         node
+   * @param coefficient  coefficient of the node
+   * @param terms        terms of the linear combination
+   * @param coefficients coefficients of the linear combination
+   */
+  private static void flatten(LazyMatrix node,
+                              double coefficient,
+                              List<LazyMatrix> terms,
+                              List<Double> coefficients) {
+    if (node.kind == SUM && node.value == null) {
+      for (int i = 0; i < node.terms.length; i++) {
+        flatten(node.terms[i],
+                coefficient * node.coefficients[i],
+                terms,
+                coefficients);
+      }
+      return;
+    }
+
+    // merge duplicate terms, so a shared term is calculated once
+    for (int i = 0; i < terms.size(); i++) {
+      if (terms.get(i) == node) {
+        coefficients.set(i, coefficients.get(i) + coefficient);
+        return;
+      }
+    }
+    terms.add(node);
+    coefficients.add(coefficient);
+  }
+
+
+  @Override
+  public int getRowDimension() {
+    return rows;
+  }
+
+
+  @Override
+  public int getColumnDimension() {
+    return columns;
+  }
+
+
+  @Override
+  public double get(int row, int column) {
+    if (row < 0 || row >= rows) {
+      throw new IndexOutOfBoundsException("Invalid row index: " + row);
+    }
+    if (column < 0 || column >= columns) {
+      throw new IndexOutOfBoundsException("Invalid column index: " + column);
+    }
+    return value()[row * columns + column];
+  }
+
+
+  @Override
+  public LazyMatrix add(Matrix other) {
+    checkDimensions(other);
+    return sum(this, 1.0, valueOf(other), 1.0);
+  }
+
+
+  @Override
+  public LazyMatrix subtract(Matrix other) {
+    checkDimensions(other);
+    return sum(this, 1.0, valueOf(other), -1.0);
+  }
+
+
+  @Override
+  public LazyMatrix multiply(double multiplicand) {
+    return sum(this, multiplicand, null, 0.0);
+  }
+
+
+  @Override
+  public LazyMatrix negate() {
+    return multiply(-1.0);
+  }
+
+
+  @Override
+  public LazyMatrix multiply(Matrix other) {
+    if (columns != other.getRowDimension()) {
+      throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+    }
+    return product(this, valueOf(other));
+  }
+
+
+  @Override
+  public LazyMatrix transpose() {
+    double[] evaluated = value;
+    if (evaluated != null) {
+      return valueOf(new PackedMatrix(rows, columns, true, evaluated));
+    }
+
+    switch (kind) {
+      case LEAF:
+        return valueOf(source.transpose());
+      case PRODUCT:
+        return product(right.transpose(), left.transpose());
+      default:
+        LazyMatrix[] transposed = new LazyMatrix[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+          transposed[i] = terms[i].transpose();
+        }
+        return new LazyMatrix(SUM,
+                              columns,
+                              rows,
+                              null,
+                              null,
+                              null,
+                              transposed,
+                              coefficients);
+    }
+  }
+
+
+  @Override
+  public Matrix evaluate() {
+    return new PackedMatrix(rows, columns, false, value());
+  }
+
+
+  @Override
+  public double[] toArray() {
+    return value().clone();
+  }
+
+
+  /**
+   * Returns the row-major packed value of this node, evaluating the
+   * expression if necessary.
+   *
+   * @return packed value (not to be modified)
+   */
+  private double[] value() {
+    double[] evaluated = value;
+    if (evaluated == null) {
+      Map<LazyMatrix, Integer> uses = new IdentityHashMap<>();
+      count(this, uses);
+      evaluated = materialize(this, uses);
+    }
+    return evaluated;
+  }
+
+
+  /**
+   * Counts the uses of the unevaluated nodes in an expression.
+   *
+   * @param node expression
+   * @param uses receives the number of uses per node
+   */
+  private static void count(LazyMatrix node, Map<LazyMatrix, Integer> uses) {
+    Integer previous = uses.put(node, uses.getOrDefault(node, 0) + 1);
+    if (previous != null || node.value != null) {
+      return;
+    }
+    if (node.kind == PRODUCT) {
+      count(node.left, uses);
+      count(node.right, uses);
+    }
+    else if (node.kind == SUM) {
+      for (LazyMatrix term : node.terms) {
+        count(term, uses);
+      }
+    }
+  }
+
+
+  /**
+   * Calculates and memoizes the value of a node.
+   *
+   * @param node node
+   * @param uses number of uses per node
+   * @return packed value
+   */
+  private static double[] materialize(LazyMatrix node,
+                                      Map<LazyMatrix, Integer> uses) {
+    double[] result = node.value;
+    if (result != null) {
+      return result;
+    }
+
+    switch (node.kind) {
+      case LEAF:
+        Matrix matrix = node.source;
+        if (matrix instanceof PackedMatrix &&
+            !((PackedMatrix) matrix).isTransposed() &&
+            ((PackedMatrix) matrix).getPacked() != null) {
+          result = ((PackedMatrix) matrix).getPacked();
+        }
+        else {
+          result = matrix.toArray();
+        }
+        break;
+      case PRODUCT:
+        result = new double[node.rows * node.columns];
+        accumulate(node, 1.0, result, 0.0, uses);
+        break;
+      default:
+        result = new double[node.rows * node.columns];
+        combine(node, result, uses);
+        break;
+    }
+
+    node.value = result;
+    return result;
+  }
+
+
+  /**
+   * Returns true if the node is calculated as part of its consumer, instead
+   * of being materialized.
+   *
+   * @param node node
+   * @param uses number of uses per node
+   * @return true if the node is fused
+   */
+  private static boolean isFused(LazyMatrix node,
+                                 Map<LazyMatrix, Integer> uses) {
+    return node.value == null &&
+           node.kind != LEAF &&
+           uses.getOrDefault(node, 0) <= 1;
+  }
+
+
+  /**
+   * Calculates <i>c = alpha &times; product + beta &times; c</i> using dgemm.
+   *
+   * @param product product node
+   * @param alpha   multiplicand of the product
+   * @param c       row-major packed result
+   * @param beta    multiplicand of c
+   * @param uses    number of uses per node
+   */
+  private static void accumulate(LazyMatrix product,
+                                 double alpha,
+                                 double[] c,
+                                 double beta,
+                                 Map<LazyMatrix, Integer> uses) {
+    LazyMatrix a = product.left;
+    LazyMatrix b = product.right;
+
+    // fold scalings of the operands into alpha
+    while (a.kind == SUM && a.terms.length == 1 && isFused(a, uses)) {
+      alpha *= a.coefficients[0];
+      a = a.terms[0];
+    }
+    while (b.kind == SUM && b.terms.length == 1 && isFused(b, uses)) {
+      alpha *= b.coefficients[0];
+      b = b.terms[0];
+    }
+
+    boolean ta = a.isTransposedLeaf();
+    boolean tb = b.isTransposedLeaf();
+
+    double[] packedA = ta ? a.transposedPacked() : materialize(a, uses);
+    double[] packedB = tb ? b.transposedPacked() : materialize(b, uses);
+
+    MatrixOperations.dgemm(packedA,
+                           packedB,
+                           c,
+                           product.rows,
+                           product.columns,
+                           a.columns,
+                           ta,
+                           tb,
+                           alpha,
+                           beta);
+  }
+
+
+  /**
+   * Calculates a linear combination. All terms that are not products are
+   * combined in a single sweep, after which the products are accumulated
+   * using dgemm.
+   *
+   * @param sum    sum node
+   * @param result row-major packed result
+   * @param uses   number of uses per node
+   */
+  private static void combine(LazyMatrix sum,
+                              double[] result,
+                              Map<LazyMatrix, Integer> uses) {
+    List<double[]>   arrays     = new ArrayList<>();
+    List<Boolean>    transposed = new ArrayList<>();
+    List<Double>     factors    = new ArrayList<>();
+    List<LazyMatrix> products   = new ArrayList<>();
+    List<Double>     alphas     = new ArrayList<>();
+
+    for (int i = 0; i < sum.terms.length; i++) {
+      LazyMatrix term = sum.terms[i];
+      if (term.kind == PRODUCT && isFused(term, uses)) {
+        products.add(term);
+        alphas.add(sum.coefficients[i]);
+      }
+      else if (term.isTransposedLeaf()) {
+        arrays.add(term.transposedPacked());
+        transposed.add(true);
+        factors.add(sum.coefficients[i]);
+      }
+      else {
+        arrays.add(materialize(term, uses));
+        transposed.add(false);
+        factors.add(sum.coefficients[i]);
+      }
+    }
+
+    double beta = 0.0;
+    if (!arrays.isEmpty()) {
+      sweep(arrays.toArray(new double[arrays.size()][]),
+            toBooleans(transposed),
+            toDoubles(factors),
+            sum.rows,
+            sum.columns,
+            result);
+      beta = 1.0;
+    }
+
+    for (int i = 0; i < products.size(); i++) {
+      accumulate(products.get(i), alphas.get(i), result, beta, uses);
+      beta = 1.0;
+    }
+  }
+
+
+  /**
+   * Calculates a linear combination of packed arrays in a single pass, in
+   * parallel for large matrices.
+   *
+   * @param arrays     packed arrays
+   * @param transposed transposition state of the packed arrays
+   * @param factors    coefficients
+   * @param rows       number of rows
+   * @param columns    number of columns
+   * @param result     receives the linear combination
+   */
+  private static void sweep(double[][] arrays,
+                            boolean[] transposed,
+                            double[] factors,
+                            int rows,
+                            int columns,
+                            double[] result) {
+    int rowBlock = max(1, PackedKernels.ROW_BLOCK / max(1, columns));
+    int blocks   = (rows + rowBlock - 1) / rowBlock;
+
+    IntStream range = IntStream.range(0, blocks);
+    if (blocks > 1) {
+      range = range.parallel();
+    }
+
+    range.forEach((block) -> {
+      int start = block * rowBlock;
+      int end   = min(rows, start + rowBlock);
+
+      for (int row = start; row < end; row++) {
+        int offset = row * columns;
+        for (int column = 0; column < columns; column++) {
+          double sum = 0.0;
+          for (int t = 0; t < arrays.length; t++) {
+            int index = transposed[t] ? column * rows + row : offset + column;
+            sum += factors[t] * arrays[t][index];
+          }
+          result[offset + column] = sum;
+        }
+      }
+    });
+  }
+
+
+  /**
+   * Returns true if this node is a leaf holding a transposed packed matrix.
+   *
+   * @return true if transposed packed leaf
+   */
+  private boolean isTransposedLeaf() {
+    return kind == LEAF &&
+           value == null &&
+           source instanceof PackedMatrix &&
+           ((PackedMatrix) source).isTransposed() &&
+           ((PackedMatrix) source).getPacked() != null;
+  }
+
+
+  /**
+   * Returns the internal packed array of a transposed packed leaf.
+   *
+   * @return packed array of the transpose
+   */
+  private double[] transposedPacked() {
+    return ((PackedMatrix) source).getPacked();
+  }
+
+
+  /**
+   * Checks the dimensions of another matrix agree with this matrix.
+   *
+   * @param other other matrix
+   */
+  private void checkDimensions(Matrix other) {
+    if (rows != other.getRowDimension() ||
+        columns != other.getColumnDimension()) {
+      throw new IllegalArgumentException("Matrix dimensions do not agree");
+    }
+  }
+
+
+  /**
+   * Converts a list to an array.
+   *
+   * @param list list of booleans
+   * @return array
+   */
+  private static boolean[] toBooleans(List<Boolean> list) {
+    boolean[] array = new boolean[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+
+
+  /**
+   * Converts a list to an array.
+   *
+   * @param list list of doubles
+   * @return array
+   */
+  private static double[] toDoubles(List<Double> list) {
+    double[] array = new double[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+}
@@ -0,0 +1,376 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.sqrt;
+
+
+/**
+ * Streaming linear least squares solver. Observations (rows of the design
+ * matrix and the corresponding responses) are added one at a time and are
+ * not stored. The solver keeps the triangular factor <i>R</i> of the QR
+ * decomposition of the design matrix, augmented with the responses, which is
+ * updated using Givens rotations for each observation. The memory use is
+ * independent of the number of observations.
+ * <p>
+ * Observations can be removed again (downdating), which allows fits over a
+ * sliding window of observations. Observations may be weighted, and solvers
+ * of separate parts of the data can be combined, for example to fit large
+ * data sets in parallel.
+ * <p>
+ * The coefficients are calculated by back-substitution, without forming the
+ * normal equations or inverting <i>R</i>.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Givens_rotation">Wikipedia on
+ * Givens rotations</a>
+ */
+public final class LeastSquares implements java.io.Serializable {
+
+  /**
+   * Tolerance on the norm of the solved row when removing observations.
+   */
+  private static final double DOWNDATE_TOLERANCE = 1e-8;
+
+  /**
+   * Number of parameters.
+   */
+  private final int parameters;
+
+  /**
+   * Upper triangular factor of the design matrix augmented with the
+   * responses, row-major packed (parameters + 1 squared).
+   */
+  private final double[] factor;
+
+  /**
+   * Work row.
+   */
+  private final double[] work;
+
+  /**
+   * Number of observations.
+   */
+  private long count;
+
+
+  /**
+   * Constructs a solver without observations.
+   *
+   * @param parameters number of parameters (columns of the design matrix)
+   */
+  public LeastSquares(int parameters) {
+    if (parameters <= 0) {
+      throw new IllegalArgumentException("At least one parameter required");
+    }
+    this.parameters = parameters;
+    this.factor = new double[(parameters + 1) * (parameters + 1)];
+    this.work = new double[parameters + 1];
+  }
+
+
+  /**
+   * Returns the number of parameters.
+   *
+   * @return number of parameters
+   */
+  public int getParameters() {
+    return parameters;
+  }
+
+
+  /**
+   * Returns the number of observations.
+   *
+   * @return number of observations
+   */
+  public long getCount() {
+    return count;
+  }
+
+
+  /**
+   * Adds an observation.
+   *
+   * @param row      row of the design matrix
+   * @param response response
+   */
+  public void add(double[] row, double response) {
+    add(row, response, 1.0);
+  }
+
+
+  /**
+   * Adds a weighted observation. The weighted fit minimizes
+   * <i>&sum; w<sub>i</sub> (y<sub>i</sub> - x<sub>i</sub>b)<sup>2</sup></i>.
+   *
+   * @param row      row of the design matrix
+   * @param response response
+   * @param weight   weight (&gt;= 0)
+   */
+  public void add(double[] row, double response, double weight) {
+    load(row, response, weight);
+    rotate(work);
+    count++;
+  }
+
+
+  /**
+   * Adds observations.
+   *
+   * @param rows      rows of the design matrix
+   * @param responses responses
+   */
+  public void add(double[][] rows, double[] responses) {
+    if (rows.length != responses.length) {
+      throw new IllegalArgumentException("Number of rows and responses should be equal");
+    }
+    for (int i = 0; i < rows.length; i++) {
+      add(rows[i], responses[i], 1.0);
+    }
+  }
+
+
+  /**
+   * Removes an observation that was added before.
+   *
+   * @param row      row of the design matrix
+   * @param response response
+   */
+  public void remove(double[] row, double response) {
+    remove(row, response, 1.0);
+  }
+
+
+  /**
+   * Removes a weighted observation that was added before, with the same
+   * weight. Note that removing observations reduces the accuracy of the
+   * factor slightly; fits over long sliding windows remain accurate as long
+   * as the window itself is well conditioned.
+   *
+   * @param row      row of the design matrix
+   * @param response response
+   * @param weight   weight (&gt;= 0)
+   */
+  public void remove(double[] row, double response, double weight) {
+    if (count == 0) {
+      throw new IllegalStateException("No observations to remove");
+    }
+    load(row, response, weight);
+    downdate(work);
+    count--;
+  }
+
+
+  /**
+   * Combines the observations of another solver into this solver. Used to
+   * fit parts of large data sets in parallel.
+   *
+   * @param other other solver
+   */
+  public void combine(LeastSquares other) {
+    if (other.parameters != parameters) {
+      throw new IllegalArgumentException("Number of parameters should be equal");
+    }
+    int size = parameters + 1;
+    for (int i = 0; i < size; i++) {
+      System.arraycopy(other.factor, i * size, work, 0, size);
+      rotate(work);
+    }
+    count += other.count;
+  }
+
+
+  /**
+   * Calculates the least squares coefficients by back-substitution.
+   *
+   * @return coefficients
+   * @throws IllegalStateException if the design matrix is rank deficient
+   */
+  public double[] getCoefficients() {
+    int      size         = parameters + 1;
+    double[] coefficients = new double[parameters];
+
+    double scale = 0.0;
+    for (int i = 0; i < parameters; i++) {
+      scale = java.lang.Math.max(scale, abs(factor[i * size + i]));
+    }
+    double tolerance = scale * parameters * 1e-14;
+
+    for (int i = parameters - 1; i >= 0; i--) {
+      double diagonal = factor[i * size + i];
+      if (abs(diagonal) <= tolerance) {
+        throw new IllegalStateException("Design matrix is rank deficient");
+      }
+      double sum = factor[i * size + parameters];
+      for (int j = i + 1; j < parameters; j++) {
+        sum -= factor[i * size + j] * coefficients[j];
+      }
+      coefficients[i] = sum / diagonal;
+    }
+    return coefficients;
+  }
+
+
+  /**
+   * Returns the (weighted) residual sum of squares of the least squares fit.
+   *
+   * @return residual sum of squares
+   */
+  public double getResidualSumOfSquares() {
+    int    size     = parameters + 1;
+    double residual = factor[size * size - 1];
+    return residual * residual;
+  }
+
+
+  /**
+   * Returns the upper triangular factor <i>R</i> of the design matrix.
+   * <i>R&prime;R</i> equals the (weighted) normal matrix
+   * <i>X&prime;WX</i>.
+   *
+   * @return upper triangular factor
+   */
+  public Matrix getR() {
+    int              size    = parameters + 1;
+    MatrixBuilder<?> builder = MatrixContext.getInstance().create(parameters,
+                                                                  parameters);
+    for (int i = 0; i < parameters; i++) {
+      for (int j = i; j < parameters; j++) {
+        builder.set(i, j, factor[i * size + j]);
+      }
+    }
+    return builder.toMatrix();
+  }
+
+
+  /**
+   * Copies a (weighted) observation to the work row.
+   *
+   * @param row      row of the design matrix
+   * @param response response
+   * @param weight   weight
+   */
+  private void load(double[] row, double response, double weight) {
+    if (row.length != parameters) {
+      throw new IllegalArgumentException("Row should contain " + parameters + " values");
+    }
+    if (!(weight >= 0.0)) {
+      throw new IllegalArgumentException("Invalid weight: " + weight);
+    }
+    double scale = weight == 1.0 ? 1.0 : sqrt(weight);
+    for (int i = 0; i < parameters; i++) {
+      work[i] = row[i] * scale;
+    }
+    work[parameters] = response * scale;
+  }
+
+
+  /**
+   * Adds a row to the augmented factor, using Givens rotations.
+   *
+   * @param row augmented row (destroyed)
+   */
+  private void rotate(double[] row) {
+    int size = parameters + 1;
+    for (int i = 0; i < size; i++) {
+      double v = row[i];
+      if (v == 0.0) {
+        continue;
+      }
+      int    base = i * size;
+      double r    = factor[base + i];
+      double h    = sqrt(r * r + v * v);
+      double c    = r / h;
+      double s    = v / h;
+      factor[base + i] = h;
+      for (int j = i + 1; j < size; j++) {
+        double t = factor[base + j];
+        factor[base + j] = c * t + s * row[j];
+        row[j] = c * row[j] - s * t;
+      }
+    }
+  }
+
+
+  /**
+   * Removes a row from the augmented factor (LINPACK dchdd).
+   *
+   * @param row augmented row (destroyed)
+   */
+  private void downdate(double[] row) {
+    int size = parameters + 1;
+
+    // solve R' a = row
+    double norm = 0.0;
+    for (int j = 0; j < size; j++) {
+      double sum = row[j];
+      for (int i = 0; i < j; i++) {
+        sum -= factor[i * size + j] * row[i];
+      }
+      double diagonal = factor[j * size + j];
+      if (diagonal == 0.0) {
+        // a zero residual (exact fit) does not prevent removal
+        if (sum != 0.0 && j < parameters) {
+          throw new IllegalArgumentException("Observation can not be removed");
+        }
+        row[j] = 0.0;
+      }
+      else {
+        row[j] = sum / diagonal;
+      }
+      norm += row[j] * row[j];
+    }
+    // norm reaches one (up to rounding) when the remaining observations fit
+    // exactly
+    if (norm > 1.0 + DOWNDATE_TOLERANCE) {
+      throw new IllegalArgumentException("Observation can not be removed");
+    }
+
+    // determine the rotations
+    double[] c     = new double[size];
+    double[] s     = new double[size];
+    double   alpha = sqrt(java.lang.Math.max(0.0, 1.0 - norm));
+    for (int i = size - 1; i >= 0; i--) {
+      double scale = alpha + abs(row[i]);
+      if (scale == 0.0) {
+        c[i] = 1.0;
+        continue;
+      }
+      double a     = alpha / scale;
+      double b     = row[i] / scale;
+      double n     = sqrt(a * a + b * b);
+      c[i] = a / n;
+      s[i] = b / n;
+      alpha = scale * n;
+    }
+
+    // apply the rotations
+    for (int j = 0; j < size; j++) {
+      double x = 0.0;
+      for (int i = j; i >= 0; i--) {
+        double r = factor[i * size + j];
+        double t = c[i] * x + s[i] * r;
+        factor[i * size + j] = c[i] * r - s[i] * x;
+        x = t;
+      }
+    }
+  }
+}
@@ -333,7 +333,8 @@ public final class Math {
   }
 
   /**
-   * Performs a polynomial fitting
+   * Performs a polynomial fitting. See {@link PolynomialFit} for weighted,
+   * sliding window and batch fits.
    *
    * @param xs x-values
    * @param ys y-values
@@ -362,26 +363,8 @@ public final class Math {
                                              "number of input values: " + order);
     }
 
-    // Matrix from y values
-    Matrix yMatrix = Matrix.columnPacked(yLength, ys);
-
-    // Vandermonde matrix
-    Matrix vandermonde = Matrix.vandermonde(order + 1, xs);
-
-    // matrix qr decomposition
-    QR qr = vandermonde.qr();
-
-    // determine R
-    Matrix upperTriangularMatrix = qr.getR();
-
-    // determine result matrix
-    Matrix result = upperTriangularMatrix
-                        .invert()
-                        .get()
-                        .multiply(qr.getQ().transpose().multiply(yMatrix));
-
-    // determine polynomial coefficients
-    return result.transpose().row(0).reverse().toArray();
+    // streaming QR (Givens) fit, solved by back-substitution
+    return PolynomialFit.fit(xs, ys, order);
   }
 
   /**
@@ -398,20 +381,10 @@ public final class Math {
       return 0;
     }
 
-    // coefficient 0
-    double y = coefficients[0];
-
-    // Calculate polynomial terms by iterating over the coefficients
-    // using variable xn to hold the value of x^n.
-    // This will speed up the calculation as this is much faster than
-    // calling Math.pow constantly.
-    int    count = coefficients.length;
-    double xn     = x;
-
-    for (int coefficient = 1; coefficient < count; coefficient++)
-    {
-      y  += coefficients[coefficient] * xn;
-      xn *= x;
+    // Horner's method
+    double y = coefficients[coefficients.length - 1];
+    for (int i = coefficients.length - 2; i >= 0; i--) {
+      y = y * x + coefficients[i];
     }
 
     return y;
@@ -544,27 +517,67 @@ public final class Math {
   }
 
   /**
-   * Get a prime number. This method allows access to the first 10.000 prime
-   * numbers (all primes from 2 up to 104729).
-   * @param index The index of the prime number in the range [0-9999]
+   * Get a prime number. Primes are generated on demand by a segmented sieve,
+   * for all primes up to 2^31.
+   * @param index The index of the prime number (0 for prime 2)
    * @return The prime number.
-   * @throws IndexOutOfBoundsException for index greater than 9999
+   * @throws IndexOutOfBoundsException for negative indices or primes
+   * exceeding the int range
    */
   public static int prime(int index) {
-    // delegated to Primes class to lazily load known primes
+    // delegated to Primes class to lazily sieve primes
     return Primes.prime(index);
   }
 
   /**
-   * Determines if a value is a prime number. This method is limited
-   * to the first 10.000 prime numbers (prime 2...104729).
+   * Returns all prime numbers smaller than the limit. Large tables are sieved
+   * in parallel segments.
+   * @param limit upper limit (exclusive)
+   * @return primes in ascending order
+   */
+  public static int[] primes(int limit) {
+    return Primes.primes(limit);
+  }
+
+  /**
+   * Determines if a value is a prime number. The sign of the value is
+   * ignored.
    * @param value the value to test
    * @return true if the value is a prime number
-   * @throws IllegalArgumentException for values exceeding 104729
    */
   public static boolean isPrime(int value) {
-    // delegated to Primes class to lazily load known primes
     return Primes.isPrime(value);
   }
 
+  /**
+   * Determines if a value is a prime number. The sign of the value is
+   * ignored. Values beyond the sieved range are tested using a deterministic
+   * Miller-Rabin test.
+   * @param value the value to test
+   * @return true if the value is a prime number
+   */
+  public static boolean isPrime(long value) {
+    return Primes.isPrime(value);
+  }
+
+  /**
+   * Returns the smallest prime number larger than the value.
+   * @param value the value
+   * @return the next prime
+   * @throws ArithmeticException if the next prime exceeds the long range
+   */
+  public static long nextPrime(long value) {
+    return Primes.nextPrime(value);
+  }
+
+  /**
+   * Returns the largest prime number smaller than the value.
+   * @param value the value
+   * @return the previous prime
+   * @throws IllegalArgumentException if there is no smaller prime
+   */
+  public static long prevPrime(long value) {
+    return Primes.prevPrime(value);
+  }
+
 }
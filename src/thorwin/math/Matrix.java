@@ -35,7 +35,9 @@ import java.util.StringTokenizer;
  * <li><code>functional</code></li> <li><code>identity</code></li>
  * <li><code>random</code></li> <li><code>rowPacked</code></li>
  * <li><code>scalar</code></li> <li><code>matrix</code></li>
- * <li><code>vandermonde</code></li> </ul>
+ * <li><code>vandermonde</code></li> <li><code>sparse</code></li>
+ * <li><code>compressedRows</code></li> <li><code>compressedColumns</code></li>
+ * </ul>
  * <p>
  * All implementations of this interface returned by these methods are
  * immutable, and therefore completely thread safe. <h3>Implementation
@@ -105,6 +107,35 @@ public interface Matrix extends java.io.Serializable {
     return builder.toMatrix();
   }
 
+  /**
+   * Constructs a single precision matrix from a row-major packed float array.
+   * The array is not copied, so callers should not modify it while the
+   * matrix is in use. Products of single precision matrices are calculated in
+   * single precision, decompositions accumulate in double precision.
+   *
+   * @param columnCount number of columns
+   * @param data        row-major packed entries
+   * @return single precision matrix
+   */
+  static Matrix rowPacked(int columnCount, float[] data) {
+    if (columnCount <= 0 || data.length % columnCount != 0) {
+      throw new IllegalArgumentException("Invalid number of entries: " + data.length);
+    }
+    return new FloatMatrix(data.length / columnCount, columnCount, false, data);
+  }
+
+  /**
+   * Constructs a single precision matrix that wraps an array per column, for
+   * example the channels of an event file. The arrays are not copied, so
+   * callers should not modify them while the matrix is in use.
+   *
+   * @param columns column arrays, all of equal length
+   * @return single precision matrix
+   */
+  static Matrix columns(float[]... columns) {
+    return new FloatColumnMatrix(columns);
+  }
+
   /**
    * Constructs a matrix using a lambda expression. The provided lambda
    * expression is expected to be functional: <ul> <li>It needs to operate on
@@ -303,6 +334,74 @@ public interface Matrix extends java.io.Serializable {
     return builder.toMatrix();
   }
 
+  /**
+   * Creates a sparse matrix from coordinate triplets. Only the specified
+   * entries are stored, all other entries are zero. Duplicate entries are
+   * summed.
+   * <p>
+   * Sparse matrices store their entries in compressed rows. Matrix-vector
+   * products, the Jacobi and Gauss-Seidel methods and the iterative solvers
+   * (<code>conjugateGradient</code>, <code>bicgstab</code>) only visit the
+   * stored entries.
+   * @param rows          number of rows
+   * @param columns       number of columns
+   * @param rowIndices    row index of every entry
+   * @param columnIndices column index of every entry
+   * @param values        value of every entry
+   * @return sparse matrix
+   * @see <a href="https://en.wikipedia.org/wiki/Sparse_matrix">Wikipedia on
+   * Sparse Matrices</a>
+   */
+  static Matrix sparse(int rows,
+                       int columns,
+                       int[] rowIndices,
+                       int[] columnIndices,
+                       double[] values) {
+    return SparseMatrix.valueOf(rows, columns, rowIndices, columnIndices, values);
+  }
+
+  /**
+   * Creates a sparse matrix from compressed sparse rows (CSR). The entries of
+   * row <i>i</i> are found at indices <code>rowPointers[i]</code> (inclusive)
+   * to <code>rowPointers[i + 1]</code> (exclusive) of the column index and
+   * value arrays.
+   * @param rows          number of rows
+   * @param columns       number of columns
+   * @param rowPointers   start index of every row, followed by the number of
+   *                      entries (rows + 1 elements)
+   * @param columnIndices column index of every entry
+   * @param values        value of every entry
+   * @return sparse matrix
+   */
+  static Matrix compressedRows(int rows,
+                               int columns,
+                               int[] rowPointers,
+                               int[] columnIndices,
+                               double[] values) {
+    return SparseMatrix.valueOf(rows, columns, rowPointers, columnIndices, values, false);
+  }
+
+  /**
+   * Creates a sparse matrix from compressed sparse columns (CSC). The entries
+   * of column <i>j</i> are found at indices <code>columnPointers[j]</code>
+   * (inclusive) to <code>columnPointers[j + 1]</code> (exclusive) of the row
+   * index and value arrays.
+   * @param rows           number of rows
+   * @param columns        number of columns
+   * @param columnPointers start index of every column, followed by the number
+   *                       of entries (columns + 1 elements)
+   * @param rowIndices     row index of every entry
+   * @param values         value of every entry
+   * @return sparse matrix
+   */
+  static Matrix compressedColumns(int rows,
+                                  int columns,
+                                  int[] columnPointers,
+                                  int[] rowIndices,
+                                  double[] values) {
+    return SparseMatrix.valueOf(columns, rows, columnPointers, rowIndices, values, true);
+  }
+
   /**
    * Creates a band matrix.
    * <p>
@@ -477,7 +576,7 @@ public interface Matrix extends java.io.Serializable {
    * LU decomposition</a>
    */
   default LU lu() {
-    return DefaultLU.crout(this);
+    return DefaultLU.decompose(this);
   }
 
   /**
@@ -494,7 +593,7 @@ public interface Matrix extends java.io.Serializable {
    * QR Decomposition</a>
    */
   default QR qr() {
-    return DefaultQR.householder(this);
+    return DefaultQR.decompose(this);
   }
 
   /**
@@ -532,6 +631,9 @@ public interface Matrix extends java.io.Serializable {
     if (!isSquare()) {
       throw new IllegalArgumentException("Matrix is not square");
     }
+    if (other.getDimension() != getRowDimension()) {
+      throw new IllegalArgumentException("Matrix row dimensions must agree.");
+    }
 
     int n = getRowDimension();
 
@@ -569,6 +671,114 @@ public interface Matrix extends java.io.Serializable {
     return Optional.empty();
   }
 
+  /**
+   * Solves <i>X</i> for <i>A&times;X = B</i> using the Gauss-Seidel method.
+   * @param other      right hand side
+   * @param iterations maximum number of iterations to use
+   * @param tolerance  tolerance allowed for determining convergence
+   * @return Solution, if convergence is reached
+   * @see <a href="https://en.wikipedia.org/wiki/Gauss%E2%80%93Seidel_method">
+   * Wikipedia on the Gauss-Seidel method</a>
+   */
+  default Optional<? extends Vector> gaussSeidel(Vector other,
+                                                 int iterations,
+                                                 double tolerance) {
+    if (!isSquare()) {
+      throw new IllegalArgumentException("Matrix is not square");
+    }
+    if (other.getDimension() != getRowDimension()) {
+      throw new IllegalArgumentException("Matrix row dimensions must agree.");
+    }
+
+    int n = getRowDimension();
+
+    double[] x = new double[n];
+
+    for (int k = 0; k < iterations; k++) {
+
+      // update solution, using the updated elements
+      for (int i = 0; i < n; i++) {
+        double s = 0;
+        for (int j = 0; j < n; j++) {
+          if (i != j) {
+            s = s + get(i, j) * x[j];
+          }
+        }
+        x[i] = (other.get(i) - s) / get(i, i);
+      }
+
+      // determine if the solution converged enough
+      boolean convergence = true;
+      for (int i = 0; i < n; i++) {
+        double y = 0;
+        for (int j = 0; j < n; j++) {
+          y += get(i, j) * x[j];
+        }
+        if (abs(y - other.get(i)) > tolerance) {
+          convergence = false;
+          break;
+        }
+      }
+      if (convergence) {
+        return Optional.of(Vector.valueOf(x));
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Solves <i>X</i> for <i>A&times;X = B</i> using the conjugate gradient
+   * method, preconditioned with the diagonal of this matrix. This matrix
+   * should be symmetric and positive definite.
+   * @param other      right hand side
+   * @param iterations maximum number of iterations to use
+   * @param tolerance  tolerance allowed for determining convergence
+   * @return Solution, if convergence is reached
+   * @see <a href="https://en.wikipedia.org/wiki/Conjugate_gradient_method">
+   * Wikipedia on the Conjugate gradient method</a>
+   */
+  default Optional<? extends Vector> conjugateGradient(Vector other,
+                                                       int iterations,
+                                                       double tolerance) {
+    if (!isSquare()) {
+      throw new IllegalArgumentException("Matrix is not square");
+    }
+    if (other.getDimension() != getRowDimension()) {
+      throw new IllegalArgumentException("Matrix row dimensions must agree.");
+    }
+    return IterativeSolvers.conjugateGradient(IterativeSolvers.operator(this),
+                                              IterativeSolvers.inverseDiagonal(this),
+                                              other.toArray(),
+                                              iterations,
+                                              tolerance);
+  }
+
+  /**
+   * Solves <i>X</i> for <i>A&times;X = B</i> using the stabilized
+   * bi-conjugate gradient method. This matrix should be square, but need not
+   * be symmetric.
+   * @param other      right hand side
+   * @param iterations maximum number of iterations to use
+   * @param tolerance  tolerance allowed for determining convergence
+   * @return Solution, if convergence is reached
+   * @see <a href="https://en.wikipedia.org/wiki/Biconjugate_gradient_stabilized_method">
+   * Wikipedia on the Biconjugate gradient stabilized method</a>
+   */
+  default Optional<? extends Vector> bicgstab(Vector other,
+                                              int iterations,
+                                              double tolerance) {
+    if (!isSquare()) {
+      throw new IllegalArgumentException("Matrix is not square");
+    }
+    if (other.getDimension() != getRowDimension()) {
+      throw new IllegalArgumentException("Matrix row dimensions must agree.");
+    }
+    return IterativeSolvers.bicgstab(IterativeSolvers.operator(this),
+                                     other.toArray(),
+                                     iterations,
+                                     tolerance);
+  }
+
   /**
    * Returns the maximum column sum.
    *
@@ -618,6 +828,32 @@ public interface Matrix extends java.io.Serializable {
     return DefaultSVD.svd(this);
   }
 
+  /**
+   * Performs a truncated Singular Value Decomposition, calculating only the
+   * largest singular values and their singular vectors.
+   * <p>
+   * For an m-by-n matrix (<i>A</i>) and rank <i>k</i> the truncated singular
+   * value decomposition is: <ul> <li><i>U</i>, an m-by-k orthogonal matrix
+   * </li> <li><i>S</i>, a k-by-k diagonal matrix </li> <li><i>V</i>, an n-by-k
+   * orthogonal matrix </li> </ul>
+   * <p>
+   * <i>A &asymp; U&times;S&times;V&prime;</i><p> The decomposition is
+   * calculated using a randomized range finder, which is considerably faster
+   * than the full decomposition for tall matrices and small ranks. Results
+   * are reproducible.
+   * @param rank number of singular values to calculate
+   * @return truncated singular value decomposition
+   * @see <a href="http://arxiv.org/abs/0909.4061">Halko, Martinsson and Tropp,
+   * Finding structure with randomness</a>
+   */
+  default SVD svd(int rank) {
+    return RandomizedSVD.decompose(this,
+                                   rank,
+                                   RandomizedSVD.OVERSAMPLING,
+                                   RandomizedSVD.ITERATIONS,
+                                   0L);
+  }
+
   /**
    * Returns the square root of sum of squares of all elements.
    *
@@ -835,6 +1071,25 @@ public interface Matrix extends java.io.Serializable {
     return builder.toMatrix();
   }
 
+  /**
+   * Returns a lazily evaluated view of this matrix. Additions, subtractions,
+   * scalings, products and transpositions of the returned matrix build an
+   * expression instead of calculating their results. The expression is
+   * planned and calculated when its entries are accessed or when it is
+   * evaluated: chains of additions and scalings are fused into a single pass,
+   * products are calculated by dgemm directly into the result, and
+   * subexpressions that are used more than once are calculated once.
+   * Evaluated expressions are memoized.
+   * <p>
+   * The entries of this matrix are not accessed until the expression is
+   * evaluated, so this matrix should be immutable.
+   *
+   * @return lazy matrix
+   */
+  default Matrix lazy() {
+    return LazyMatrix.valueOf(this);
+  }
+
   /**
    * Returns a sub-matrix.
    *
@@ -912,6 +1167,26 @@ public interface Matrix extends java.io.Serializable {
     return DefaultEigen.decompose(this);
   }
 
+  /**
+   * Performs a partial Eigendecomposition of a symmetric matrix, calculating
+   * only the largest eigenvalues and their eigenvectors.
+   * <p>
+   * The decomposition is: <ul> <li><i>D</i>, the k-by-k diagonal matrix of the
+   * largest eigenvalues (descending)</li> <li><i>V</i>, the n-by-k orthogonal
+   * matrix of the corresponding eigenvectors</li> </ul>
+   * <p>
+   * The eigenvalues are calculated using the Lanczos algorithm, which is
+   * considerably faster than the full decomposition if only a few eigenvalues
+   * are needed (for example principal component analysis).
+   * @param count number of eigenvalues to calculate
+   * @return partial Eigendecomposition.
+   * @see <a href="https://en.wikipedia.org/wiki/Lanczos_algorithm">
+   * Wikipedia on the Lanczos algorithm</a>
+   */
+  default Eigen eig(int count) {
+    return LanczosEigen.decompose(this, count);
+  }
+
   /**
    * Performs a Cholesky Decomposition. This matrix needs to be square,
    * symmetric and positive definite.
@@ -925,7 +1200,7 @@ public interface Matrix extends java.io.Serializable {
    *   Wikipedia on Cholesky Decomposition</a>
    */
   default Cholesky chol() {
-    return DefaultCholesky.left(this);
+    return DefaultCholesky.decompose(this);
   }
 
   /**
@@ -959,6 +1234,19 @@ public interface Matrix extends java.io.Serializable {
     return builder.toMatrix();
   }
 
+  /**
+   * Create a row-major packed single precision array of the matrix.
+   * @return matrix in a a packed array
+   */
+  default float[] toFloatArray() {
+    double[] packed = toArray();
+    float[]  result = new float[packed.length];
+    for (int i = 0; i < packed.length; i++) {
+      result[i] = (float) packed[i];
+    }
+    return result;
+  }
+
   /**
    * Create a row-major packed array of the matrix.
    * @return matrix in a a packed array
@@ -41,6 +41,13 @@ class MatrixContext {
   static final long RECURSIVE =
       Integer.getInteger("thorwin.math.matrix.recursive", 128);
 
+  /**
+   * Smallest dimension from which decompositions switch to their blocked,
+   * parallel implementations.
+   */
+  static final long BLOCKED =
+      Integer.getInteger("thorwin.math.matrix.blocked", 128);
+
 
   /**
    * Returns the {@code MatrixContext} used for constructing new {@code Matrix}
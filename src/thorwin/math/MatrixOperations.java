@@ -76,4 +76,34 @@ public class MatrixOperations {
   }
 
 
+  /**
+   * Calculates <i>C<sub>out</sub> = &alpha; &times; A &times; B + &beta; &times; C</i> in
+   * single precision. The resulting matrix is stored in matrix c. This is
+   * basically the fortran SGEMM function, without the stride support.
+   *
+   * @param a     input matrix A (row-major packed)
+   * @param b     input matrix B (row-major packed)
+   * @param c     input/output matrix C (row-major packed).
+   * @param m     row count of matrix A and C
+   * @param n     column count of matrix b and C
+   * @param k     column count of matrix A and row count of matrix B
+   * @param ta    matrix A transposition state
+   * @param tb    matrix B transposition state
+   * @param alpha alpha multiplicand
+   * @param beta  beta multiplicand
+   */
+  public static void sgemm(float[] a,
+                           float[] b,
+                           float[] c,
+                           int m,
+                           int n,
+                           int k,
+                           boolean ta,
+                           boolean tb,
+                           float alpha,
+                           float beta) {
+    PROVIDER.sgemm(a, b, c, m, n, k, ta, tb, alpha, beta);
+  }
+
+
 }
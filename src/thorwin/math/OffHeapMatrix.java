@@ -0,0 +1,958 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+import static java.lang.Math.min;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+
+/**
+ * Matrix stored outside of the Java heap, in direct or memory-mapped
+ * (file-backed) buffers. Off-heap matrices are intended for matrices that
+ * are too large for the heap, such as distance or kernel matrices of many
+ * observations. A file-backed matrix may even be larger than the physical
+ * memory, the operating system pages its tiles in and out as needed.
+ * <p>
+ * The entries are stored in square tiles of {@link #TILE} &times;
+ * {@link #TILE} entries. Each tile is stored row-major and contiguous, the
+ * tiles are stored in row-major order (edge tiles are padded). Tiles are
+ * the unit of work of the operations on off-heap matrices: products are
+ * calculated tile by tile using dgemm, in parallel over the tiles of the
+ * result, and the decompositions are tiled algorithms streaming tiles
+ * through the same operations. The results of operations are off-heap
+ * matrices in direct memory.
+ * <p>
+ * Unlike the other matrices, off-heap matrices may be modified using
+ * {@link #set(int, int, double)} and {@link #fill(MatrixFunction)}, which
+ * allows them to be filled without a copy on the heap. Off-heap memory is
+ * released by {@link #close()}, after which the matrix (and its transposed
+ * views) can no longer be used. Off-heap matrices are not serializable, use
+ * a file-backed matrix for persistence.
+ */
+public final class OffHeapMatrix extends DefaultMatrix implements AutoCloseable {
+
+  /**
+   * Dimension of the square tiles.
+   */
+  public static final int TILE = 256;
+
+  /**
+   * Number of entries per tile.
+   */
+  private static final int TILE_SIZE = TILE * TILE;
+
+  /**
+   * Number of tiles per buffer (1 GB, buffers are limited to 2 GB).
+   */
+  private static final int TILES_PER_BUFFER = (1 << 30) / (TILE_SIZE * Double.BYTES);
+
+  /**
+   * Frees a direct or mapped buffer, or null if the platform does not
+   * support it.
+   */
+  private static final Consumer<ByteBuffer> FREE = free();
+
+  /**
+   * Shared storage.
+   */
+  private final transient Storage storage;
+
+  /**
+   * Transposed flag, if set this matrix is the transposed view of the
+   * storage.
+   */
+  private final boolean transposed;
+
+
+  /**
+   * Constructs an off-heap matrix.
+   *
+   * @param storage    storage
+   * @param transposed transposed flag
+   */
+  private OffHeapMatrix(Storage storage, boolean transposed) {
+    this.storage = storage;
+    this.transposed = transposed;
+  }
+
+
+  /**
+   * Allocates an off-heap matrix in direct memory. All entries are zero.
+   *
+   * @param rows    number of rows
+   * @param columns number of columns
+   * @return off-heap matrix
+   */
+  public static OffHeapMatrix allocate(int rows, int columns) {
+    Storage storage = new Storage(rows, columns, false);
+    for (int i = 0; i < storage.buffers.length; i++) {
+      storage.bytes[i] = ByteBuffer.allocateDirect(storage.bufferBytes(i))
+                                   .order(ByteOrder.nativeOrder());
+      storage.buffers[i] = storage.bytes[i].asDoubleBuffer();
+    }
+    return new OffHeapMatrix(storage, false);
+  }
+
+
+  /**
+   * Maps a file-backed off-heap matrix. The file is created if it does not
+   * exist, and grown to the required size if it is smaller. The entries
+   * already stored in the file are retained, so a matrix written earlier may
+   * be mapped again using the same dimensions. Entries are stored in the
+   * native byte order.
+   *
+   * @param file    file to map
+   * @param rows    number of rows
+   * @param columns number of columns
+   * @return file-backed off-heap matrix
+   * @throws IOException if the file could not be mapped
+   */
+  public static OffHeapMatrix map(Path file, int rows, int columns)
+      throws IOException {
+    Storage storage = new Storage(rows, columns, true);
+
+    try (FileChannel channel = FileChannel.open(file,
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE)) {
+      long position = 0;
+      for (int i = 0; i < storage.buffers.length; i++) {
+        int size = storage.bufferBytes(i);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                                              position,
+                                              size);
+        buffer.order(ByteOrder.nativeOrder());
+        storage.bytes[i] = buffer;
+        storage.buffers[i] = buffer.asDoubleBuffer();
+        position += size;
+      }
+    }
+    return new OffHeapMatrix(storage, false);
+  }
+
+
+  /**
+   * Copies a matrix into direct memory.
+   *
+   * @param matrix matrix to copy
+   * @return off-heap copy
+   */
+  public static OffHeapMatrix copyOf(Matrix matrix) {
+    OffHeapMatrix copy = allocate(matrix.getRowDimension(),
+                                  matrix.getColumnDimension());
+    copy.copyFrom(matrix);
+    return copy;
+  }
+
+
+  /**
+   * Copies a matrix into a file-backed off-heap matrix.
+   *
+   * @param matrix matrix to copy
+   * @param file   file to map
+   * @return file-backed copy
+   * @throws IOException if the file could not be mapped
+   */
+  public static OffHeapMatrix copyOf(Matrix matrix, Path file)
+      throws IOException {
+    OffHeapMatrix copy = map(file,
+                             matrix.getRowDimension(),
+                             matrix.getColumnDimension());
+    copy.copyFrom(matrix);
+    return copy;
+  }
+
+
+  @Override
+  public int getRowDimension() {
+    return transposed ? storage.columns : storage.rows;
+  }
+
+
+  @Override
+  public int getColumnDimension() {
+    return transposed ? storage.rows : storage.columns;
+  }
+
+
+  @Override
+  public double get(int row, int column) {
+    checkIndices(row, column);
+    return transposed ? storage.get(column, row) : storage.get(row, column);
+  }
+
+
+  /**
+   * Sets an entry of this matrix. Modifications are visible in all views of
+   * the storage. Concurrent modifications of distinct entries are allowed.
+   *
+   * @param row    row index
+   * @param column column index
+   * @param value  new value
+   */
+  public void set(int row, int column, double value) {
+    checkIndices(row, column);
+    if (transposed) {
+      storage.set(column, row, value);
+    }
+    else {
+      storage.set(row, column, value);
+    }
+  }
+
+
+  /**
+   * Sets all entries of this matrix to the values of a function. The function
+   * is evaluated in parallel over the tiles of the matrix, so it should be
+   * thread-safe.
+   *
+   * @param function function calculating the entries
+   * @return this matrix
+   */
+  public OffHeapMatrix fill(MatrixFunction function) {
+    int rows    = getRowDimension();
+    int columns = getColumnDimension();
+
+    forEachTile(rows, columns, (row, column) -> {
+      int      tileRows    = min(TILE, rows - row);
+      int      tileColumns = min(TILE, columns - column);
+      double[] tile        = new double[tileRows * tileColumns];
+      int      index       = 0;
+      for (int i = 0; i < tileRows; i++) {
+        for (int j = 0; j < tileColumns; j++) {
+          tile[index++] = function.apply(row + i, column + j);
+        }
+      }
+      write(row, column, tileRows, tileColumns, tile);
+    });
+    return this;
+  }
+
+
+  /**
+   * Returns true if this matrix is backed by a file.
+   *
+   * @return true if file-backed
+   */
+  public boolean isMapped() {
+    return storage.mapped;
+  }
+
+
+  /**
+   * Writes the modifications of a file-backed matrix to the file. Does
+   * nothing for matrices in direct memory.
+   */
+  public void flush() {
+    synchronized (storage) {
+      ByteBuffer[] bytes = storage.check().bytes;
+      if (storage.mapped) {
+        for (ByteBuffer buffer : bytes) {
+          ((MappedByteBuffer) buffer).force();
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Releases the off-heap memory of this matrix and all of its views.
+   * Modifications of a file-backed matrix are written to the file first.
+   * The matrix can not be used after it has been closed. Closing a closed
+   * matrix has no effect.
+   * <p>
+   * Accesses running on other threads are completed before the memory is
+   * released, later accesses throw {@link IllegalStateException}. If the
+   * platform does not support freeing buffers, the memory is released by the
+   * garbage collector instead.
+   */
+  @Override
+  public void close() {
+    synchronized (storage) {
+      if (storage.buffers == null) {
+        return;
+      }
+      flush();
+      ByteBuffer[] bytes = storage.bytes;
+      storage.buffers = null;
+      storage.bytes = null;
+      while (storage.users.get() != 0) {
+        Thread.yield();
+      }
+      if (FREE != null) {
+        for (ByteBuffer buffer : bytes) {
+          FREE.accept(buffer);
+        }
+      }
+    }
+  }
+
+
+  @Override
+  public OffHeapMatrix transpose() {
+    return new OffHeapMatrix(storage, !transposed);
+  }
+
+
+  @Override
+  public OffHeapMatrix evaluate() {
+    return this;
+  }
+
+
+  @Override
+  public double[] toArray() {
+    long size = (long) getRowDimension() * getColumnDimension();
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new IllegalStateException("Matrix too large for an array");
+    }
+    double[] packed = new double[(int) size];
+    read(0, 0, getRowDimension(), getColumnDimension(), packed);
+    return packed;
+  }
+
+
+  /**
+   * Multiplies this matrix with another matrix, tile by tile. The tiles of
+   * the result are calculated in parallel, using dgemm.
+   *
+   * @param other the other matrix
+   * @return resulting off-heap matrix (direct memory)
+   */
+  @Override
+  public OffHeapMatrix multiply(Matrix other) {
+    if (getColumnDimension() != other.getRowDimension()) {
+      throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+    }
+
+    int           m      = getRowDimension();
+    int           n      = other.getColumnDimension();
+    int           k      = getColumnDimension();
+    OffHeapMatrix result = allocate(m, n);
+
+    forEachTile(m, n, (row, column) -> {
+      int      tileRows    = min(TILE, m - row);
+      int      tileColumns = min(TILE, n - column);
+      double[] a           = new double[TILE_SIZE];
+      double[] b           = new double[TILE_SIZE];
+      double[] c           = new double[tileRows * tileColumns];
+
+      for (int p = 0; p < k; p += TILE) {
+        int depth = min(TILE, k - p);
+        read(row, p, tileRows, depth, a);
+        read(other, p, column, depth, tileColumns, b);
+        MatrixOperations.dgemm(a, b, c, tileRows, tileColumns, depth, false, false, 1.0, 1.0);
+      }
+      result.write(row, column, tileRows, tileColumns, c);
+    });
+
+    return result;
+  }
+
+
+  @Override
+  public OffHeapMatrix multiply(double multiplicand) {
+    return combine(null, multiplicand, 0.0);
+  }
+
+
+  @Override
+  public OffHeapMatrix add(Matrix other) {
+    return combine(other, 1.0, 1.0);
+  }
+
+
+  @Override
+  public OffHeapMatrix subtract(Matrix other) {
+    return combine(other, 1.0, -1.0);
+  }
+
+
+  /**
+   * Calculates the LU decomposition of a copy of this matrix (in direct
+   * memory), using the tiled algorithm.
+   *
+   * @return LU decomposition
+   */
+  @Override
+  public LU lu() {
+    return DefaultLU.tiled(copyOf(this));
+  }
+
+
+  /**
+   * Calculates the LU decomposition in place, overwriting the entries of
+   * this matrix with the factors. This avoids a copy of the matrix, for
+   * example for file-backed matrices larger than the memory.
+   *
+   * @return LU decomposition, backed by this matrix
+   */
+  public LU luInPlace() {
+    return DefaultLU.tiled(transposed ? copyOf(this) : this);
+  }
+
+
+  /**
+   * Calculates the Cholesky decomposition of a copy of this matrix (in
+   * direct memory), using the tiled algorithm.
+   *
+   * @return Cholesky decomposition
+   */
+  @Override
+  public Cholesky chol() {
+    return DefaultCholesky.tiled(copyOf(this));
+  }
+
+
+  /**
+   * Calculates the Cholesky decomposition in place, overwriting the entries
+   * of this matrix with the factor L. This avoids a copy of the matrix, for
+   * example for file-backed matrices larger than the memory.
+   *
+   * @return Cholesky decomposition, backed by this matrix
+   */
+  public Cholesky cholInPlace() {
+    return DefaultCholesky.tiled(transposed ? copyOf(this) : this);
+  }
+
+
+  /**
+   * Reads a sub-matrix into a row-major packed array.
+   *
+   * @param row     initial row
+   * @param column  initial column
+   * @param rows    number of rows
+   * @param columns number of columns
+   * @param buffer  receives the sub-matrix (row-major, packed)
+   */
+  void read(int row, int column, int rows, int columns, double[] buffer) {
+    if (transposed) {
+      double[] t = new double[rows * columns];
+      storage.read(column, row, columns, rows, t);
+      for (int i = 0; i < columns; i++) {
+        for (int j = 0; j < rows; j++) {
+          buffer[j * columns + i] = t[i * rows + j];
+        }
+      }
+    }
+    else {
+      storage.read(row, column, rows, columns, buffer);
+    }
+  }
+
+
+  /**
+   * Writes a sub-matrix from a row-major packed array.
+   *
+   * @param row     initial row
+   * @param column  initial column
+   * @param rows    number of rows
+   * @param columns number of columns
+   * @param buffer  the sub-matrix (row-major, packed)
+   */
+  void write(int row, int column, int rows, int columns, double[] buffer) {
+    if (transposed) {
+      double[] t = new double[rows * columns];
+      for (int i = 0; i < columns; i++) {
+        for (int j = 0; j < rows; j++) {
+          t[i * rows + j] = buffer[j * columns + i];
+        }
+      }
+      storage.write(column, row, columns, rows, t);
+    }
+    else {
+      storage.write(row, column, rows, columns, buffer);
+    }
+  }
+
+
+  /**
+   * Reads a sub-matrix of any matrix into a row-major packed array.
+   *
+   * @param matrix  matrix
+   * @param row     initial row
+   * @param column  initial column
+   * @param rows    number of rows
+   * @param columns number of columns
+   * @param buffer  receives the sub-matrix (row-major, packed)
+   */
+  static void read(Matrix matrix,
+                   int row,
+                   int column,
+                   int rows,
+                   int columns,
+                   double[] buffer) {
+    if (matrix instanceof OffHeapMatrix) {
+      ((OffHeapMatrix) matrix).read(row, column, rows, columns, buffer);
+    }
+    else {
+      int index = 0;
+      for (int i = 0; i < rows; i++) {
+        for (int j = 0; j < columns; j++) {
+          buffer[index++] = matrix.get(row + i, column + j);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Calls an action for the origin of every tile of a matrix, in parallel.
+   *
+   * @param rows    number of rows
+   * @param columns number of columns
+   * @param action  action, receiving the row and column of the origin of the
+   *                tile
+   */
+  static void forEachTile(int rows, int columns, TileAction action) {
+    int tileRows    = (rows + TILE - 1) / TILE;
+    int tileColumns = (columns + TILE - 1) / TILE;
+
+    IntStream.range(0, tileRows * tileColumns).parallel().forEach((tile) -> {
+      action.apply((tile / tileColumns) * TILE, (tile % tileColumns) * TILE);
+    });
+  }
+
+
+  /**
+   * Action on the origin of a tile.
+   */
+  @FunctionalInterface
+  interface TileAction {
+
+    /**
+     * Performs the action.
+     *
+     * @param row    initial row of the tile
+     * @param column initial column of the tile
+     */
+    void apply(int row, int column);
+  }
+
+
+  /**
+   * Copies all entries of a matrix into this matrix.
+   *
+   * @param matrix matrix to copy
+   */
+  private void copyFrom(Matrix matrix) {
+    int rows    = getRowDimension();
+    int columns = getColumnDimension();
+    forEachTile(rows, columns, (row, column) -> {
+      int      tileRows    = min(TILE, rows - row);
+      int      tileColumns = min(TILE, columns - column);
+      double[] tile        = new double[tileRows * tileColumns];
+      read(matrix, row, column, tileRows, tileColumns, tile);
+      write(row, column, tileRows, tileColumns, tile);
+    });
+  }
+
+
+  /**
+   * Calculates <i>alpha &times; this + beta &times; other</i>, tile by
+   * tile.
+   *
+   * @param other other matrix (ignored if null)
+   * @param alpha multiplicand of this matrix
+   * @param beta  multiplicand of the other matrix
+   * @return resulting off-heap matrix (direct memory)
+   */
+  private OffHeapMatrix combine(Matrix other, double alpha, double beta) {
+    int rows    = getRowDimension();
+    int columns = getColumnDimension();
+
+    if (other != null &&
+        (rows != other.getRowDimension() ||
+         columns != other.getColumnDimension())) {
+      throw new IllegalArgumentException("Matrix dimensions do not agree");
+    }
+
+    OffHeapMatrix result = allocate(rows, columns);
+
+    forEachTile(rows, columns, (row, column) -> {
+      int      tileRows    = min(TILE, rows - row);
+      int      tileColumns = min(TILE, columns - column);
+      double[] a           = new double[tileRows * tileColumns];
+      read(row, column, tileRows, tileColumns, a);
+
+      if (other == null) {
+        for (int i = 0; i < a.length; i++) {
+          a[i] *= alpha;
+        }
+      }
+      else {
+        double[] b = new double[a.length];
+        read(other, row, column, tileRows, tileColumns, b);
+        for (int i = 0; i < a.length; i++) {
+          a[i] = alpha * a[i] + beta * b[i];
+        }
+      }
+      result.write(row, column, tileRows, tileColumns, a);
+    });
+
+    return result;
+  }
+
+
+  /**
+   * Checks the indices of an entry.
+   *
+   * @param row    row index
+   * @param column column index
+   */
+  private void checkIndices(int row, int column) {
+    if (row < 0 || row >= getRowDimension()) {
+      throw new IndexOutOfBoundsException("Invalid row index: " + row);
+    }
+    if (column < 0 || column >= getColumnDimension()) {
+      throw new IndexOutOfBoundsException("Invalid column index: " + column);
+    }
+  }
+
+
+  /**
+   * Off-heap matrices are not serializable.
+   *
+   * @param out output stream
+   * @throws IOException always
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    throw new NotSerializableException("Off-heap matrices are not serializable");
+  }
+
+
+  /**
+   * Looks up the platform's way to free a direct or mapped buffer:
+   * Unsafe.invokeCleaner on Java 9 and later, the buffer's cleaner on
+   * Java 8.
+   *
+   * @return function freeing a buffer, or null if not supported
+   */
+  private static Consumer<ByteBuffer> free() {
+    try {
+      Class<?> type   = Class.forName("sun.misc.Unsafe");
+      Field    field  = type.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      Object   unsafe = field.get(null);
+      Method   clean  = type.getMethod("invokeCleaner", ByteBuffer.class);
+      return (buffer) -> invoke(clean, unsafe, buffer);
+    }
+    catch (ReflectiveOperationException | RuntimeException e) {
+      // Java 8
+    }
+    try {
+      Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+      Method clean   = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      return (buffer) -> invoke(clean, invoke(cleaner, buffer));
+    }
+    catch (ReflectiveOperationException | RuntimeException e) {
+      // not supported, leave it to the garbage collector
+      return null;
+    }
+  }
+
+
+  /**
+   * Invokes a method, leaving the buffer to the garbage collector if it
+   * fails.
+   *
+   * @param method    method
+   * @param target    target object
+   * @param arguments arguments
+   * @return result, or null if the invocation failed
+   */
+  private static Object invoke(Method method, Object target, Object... arguments) {
+    try {
+      return target == null ? null : method.invoke(target, arguments);
+    }
+    catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+
+  /**
+   * Tiled storage, shared by a matrix and its transposed views.
+   */
+  private static final class Storage {
+
+    private final int rows;
+
+    private final int columns;
+
+    /**
+     * Number of tiles per row of tiles.
+     */
+    private final int tileColumns;
+
+    /**
+     * Total number of tiles.
+     */
+    private final long tiles;
+
+    /**
+     * True for file-backed storage.
+     */
+    private final boolean mapped;
+
+    /**
+     * Direct or mapped buffers holding the tiles, null when closed.
+     */
+    private ByteBuffer[] bytes;
+
+    /**
+     * Double views of the buffers, null when closed.
+     */
+    private volatile DoubleBuffer[] buffers;
+
+    /**
+     * Number of accesses in progress, which {@link #close()} waits for
+     * before freeing the buffers.
+     */
+    private final AtomicInteger users = new AtomicInteger();
+
+
+    /**
+     * Constructs the storage, without allocating the buffers.
+     *
+     * @param rows    number of rows
+     * @param columns number of columns
+     * @param mapped  true for file-backed storage
+     */
+    Storage(int rows, int columns, boolean mapped) {
+      if (rows <= 0 || columns <= 0) {
+        throw new IllegalArgumentException("Invalid dimensions: " + rows + "x" + columns);
+      }
+      this.rows = rows;
+      this.columns = columns;
+      this.tileColumns = (columns + TILE - 1) / TILE;
+      this.tiles = (long) ((rows + TILE - 1) / TILE) * tileColumns;
+      this.mapped = mapped;
+      this.bytes = new ByteBuffer[(int) ((tiles + TILES_PER_BUFFER - 1) / TILES_PER_BUFFER)];
+      this.buffers = new DoubleBuffer[bytes.length];
+    }
+
+
+    /**
+     * Returns the size of a buffer in bytes.
+     *
+     * @param index buffer index
+     * @return size in bytes
+     */
+    int bufferBytes(int index) {
+      long first = (long) index * TILES_PER_BUFFER;
+      long count = min(TILES_PER_BUFFER, tiles - first);
+      return (int) (count * TILE_SIZE * Double.BYTES);
+    }
+
+
+    /**
+     * Checks the storage has not been closed.
+     *
+     * @return this storage
+     */
+    Storage check() {
+      if (buffers == null) {
+        throw new IllegalStateException("Matrix is closed");
+      }
+      return this;
+    }
+
+
+    /**
+     * Starts an access to the buffers, which should be ended by
+     * {@link #release()}.
+     *
+     * @return buffers
+     */
+    private DoubleBuffer[] acquire() {
+      users.incrementAndGet();
+      DoubleBuffer[] current = buffers;
+      if (current == null) {
+        users.decrementAndGet();
+        throw new IllegalStateException("Matrix is closed");
+      }
+      return current;
+    }
+
+
+    /**
+     * Ends an access to the buffers.
+     */
+    private void release() {
+      users.decrementAndGet();
+    }
+
+
+    /**
+     * Returns the buffer holding a tile.
+     *
+     * @param buffers buffers
+     * @param tile    tile index
+     * @return buffer
+     */
+    private static DoubleBuffer buffer(DoubleBuffer[] buffers, long tile) {
+      return buffers[(int) (tile / TILES_PER_BUFFER)];
+    }
+
+
+    /**
+     * Returns the index of an entry within its buffer.
+     *
+     * @param tile   tile index
+     * @param row    row index
+     * @param column column index
+     * @return index within the buffer
+     */
+    private static int index(long tile, int row, int column) {
+      return (int) (tile % TILES_PER_BUFFER) * TILE_SIZE +
+             (row % TILE) * TILE + (column % TILE);
+    }
+
+
+    /**
+     * Returns the index of the tile holding an entry.
+     *
+     * @param row    row index
+     * @param column column index
+     * @return tile index
+     */
+    private long tile(int row, int column) {
+      return (long) (row / TILE) * tileColumns + column / TILE;
+    }
+
+
+    /**
+     * Returns an entry.
+     *
+     * @param row    row index
+     * @param column column index
+     * @return value
+     */
+    double get(int row, int column) {
+      long           tile    = tile(row, column);
+      DoubleBuffer[] buffers = acquire();
+      try {
+        return buffer(buffers, tile).get(index(tile, row, column));
+      }
+      finally {
+        release();
+      }
+    }
+
+
+    /**
+     * Sets an entry.
+     *
+     * @param row    row index
+     * @param column column index
+     * @param value  new value
+     */
+    void set(int row, int column, double value) {
+      long           tile    = tile(row, column);
+      DoubleBuffer[] buffers = acquire();
+      try {
+        buffer(buffers, tile).put(index(tile, row, column), value);
+      }
+      finally {
+        release();
+      }
+    }
+
+
+    /**
+     * Reads a sub-matrix, one contiguous tile row segment at a time.
+     *
+     * @param row     initial row
+     * @param column  initial column
+     * @param rows    number of rows
+     * @param columns number of columns
+     * @param buffer  receives the sub-matrix (row-major, packed)
+     */
+    void read(int row, int column, int rows, int columns, double[] buffer) {
+      DoubleBuffer[] buffers = acquire();
+      try {
+        for (int i = 0; i < rows; i++) {
+          int r      = row + i;
+          int offset = i * columns;
+          int j      = 0;
+          while (j < columns) {
+            int          c      = column + j;
+            int          length = min(columns - j, TILE - c % TILE);
+            long         tile   = tile(r, c);
+            DoubleBuffer view   = buffer(buffers, tile).duplicate();
+            view.position(index(tile, r, c));
+            view.get(buffer, offset + j, length);
+            j += length;
+          }
+        }
+      }
+      finally {
+        release();
+      }
+    }
+
+
+    /**
+     * Writes a sub-matrix, one contiguous tile row segment at a time.
+     *
+     * @param row     initial row
+     * @param column  initial column
+     * @param rows    number of rows
+     * @param columns number of columns
+     * @param buffer  the sub-matrix (row-major, packed)
+     */
+    void write(int row, int column, int rows, int columns, double[] buffer) {
+      DoubleBuffer[] buffers = acquire();
+      try {
+        for (int i = 0; i < rows; i++) {
+          int r      = row + i;
+          int offset = i * columns;
+          int j      = 0;
+          while (j < columns) {
+            int          c      = column + j;
+            int          length = min(columns - j, TILE - c % TILE);
+            long         tile   = tile(r, c);
+            DoubleBuffer view   = buffer(buffers, tile).duplicate();
+            view.position(index(tile, r, c));
+            view.put(buffer, offset + j, length);
+            j += length;
+          }
+        }
+      }
+      finally {
+        release();
+      }
+    }
+  }
+}
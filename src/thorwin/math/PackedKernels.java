@@ -0,0 +1,233 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+import static java.lang.Integer.min;
+
+import java.util.stream.IntStream;
+
+
+/**
+ * Low-level kernels on row-major packed arrays, shared by the blocked
+ * decompositions. Sub-matrices are addressed by their offset (row, column)
+ * and the row stride of the array that contains them.
+ */
+final class PackedKernels {
+
+  /**
+   * Width of the panels factorized by the blocked decompositions. This is
+   * also the height of the row strips that are updated in parallel.
+   */
+  static final int PANEL = BlockMatrix.SUBMATRIX_DIMENSION;
+
+  /**
+   * Number of rows of tall matrices that are processed as a single task by
+   * the row block kernels.
+   */
+  static final int ROW_BLOCK = 4096;
+
+  private PackedKernels() {
+  }
+
+  /**
+   * Copies a sub-matrix into a new (contiguous) packed array.
+   *
+   * @param src     row-major packed source array
+   * @param stride  row stride of the source array
+   * @param row     first row of the sub-matrix
+   * @param column  first column of the sub-matrix
+   * @param rows    number of rows to copy
+   * @param columns number of columns to copy
+   * @return packed sub-matrix
+   */
+  static double[] copy(double[] src,
+                       int stride,
+                       int row,
+                       int column,
+                       int rows,
+                       int columns) {
+    double[] dst = new double[rows * columns];
+    for (int i = 0; i < rows; i++) {
+      System.arraycopy(src, (row + i) * stride + column, dst, i * columns, columns);
+    }
+    return dst;
+  }
+
+  /**
+   * Copies a contiguous packed array into a sub-matrix of another array.
+   *
+   * @param src     packed source array
+   * @param rows    number of rows in the source array
+   * @param columns number of columns in the source array
+   * @param dst     row-major packed destination array
+   * @param stride  row stride of the destination array
+   * @param row     first row in the destination
+   * @param column  first column in the destination
+   */
+  static void paste(double[] src,
+                    int rows,
+                    int columns,
+                    double[] dst,
+                    int stride,
+                    int row,
+                    int column) {
+    for (int i = 0; i < rows; i++) {
+      System.arraycopy(src, i * columns, dst, (row + i) * stride + column, columns);
+    }
+  }
+
+  /**
+   * Creates a transposed copy of a packed array.
+   *
+   * @param packed  source array
+   * @param rows    rows
+   * @param columns columns
+   * @return new transposed packed array
+   */
+  static double[] transpose(double[] packed, int rows, int columns) {
+    double[] transposed = new double[packed.length];
+    int      index1     = 0;
+    for (int i = 0; i < columns; i++) {
+      int index2 = i;
+      int fence  = index1 + rows;
+      while (index1 < fence) {
+        transposed[index1] = packed[index2];
+        index1++;
+        index2 += columns;
+      }
+    }
+    return transposed;
+  }
+
+  /**
+   * Calculates <i>C<sub>out</sub> = &alpha; &times; A &times; B + C</i>,
+   * where <i>C</i> is a sub-matrix of a larger array. The update is split in
+   * row strips that are multiplied in parallel through
+   * {@link MatrixOperations#dgemm}.
+   * <p>
+   * If {@code lower} is set, a strip only updates the columns up to its last
+   * row. This restricts a symmetric update to the lower triangle (and the
+   * diagonal blocks).
+   *
+   * @param a      matrix A, m-by-k (packed)
+   * @param b      matrix B, k-by-n (packed)
+   * @param c      row-major packed array containing matrix C
+   * @param stride row stride of array c
+   * @param row    first row of C
+   * @param column first column of C
+   * @param m      rows of A and C
+   * @param n      columns of B and C
+   * @param k      columns of A, rows of B
+   * @param alpha  alpha multiplicand
+   * @param lower  true to only update the lower part
+   */
+  static void update(double[] a,
+                     double[] b,
+                     double[] c,
+                     int stride,
+                     int row,
+                     int column,
+                     int m,
+                     int n,
+                     int k,
+                     double alpha,
+                     boolean lower) {
+    int strips = (m + PANEL - 1) / PANEL;
+
+    IntStream.range(0, strips).parallel().forEach((strip) -> {
+      int start   = strip * PANEL;
+      int rows    = min(PANEL, m - start);
+      int columns = lower ? min(n, start + rows) : n;
+
+      double[] as = new double[rows * k];
+      System.arraycopy(a, start * k, as, 0, as.length);
+
+      double[] bs = columns == n ? b : copy(b, n, 0, 0, k, columns);
+      double[] cs = copy(c, stride, row + start, column, rows, columns);
+
+      MatrixOperations.dgemm(as, bs, cs, rows, columns, k, false, false, alpha, 1);
+
+      paste(cs, rows, columns, c, stride, row + start, column);
+    });
+  }
+
+  /**
+   * Calculates <i>C = A &times; B</i> for a tall matrix <i>A</i>. The rows of
+   * <i>A</i> are multiplied in blocks, in parallel.
+   *
+   * @param a matrix A, m-by-k (packed)
+   * @param b matrix B, k-by-n (packed)
+   * @param m rows of A
+   * @param n columns of B
+   * @param k columns of A, rows of B
+   * @return matrix C, m-by-n (packed)
+   */
+  static double[] multiply(double[] a, double[] b, int m, int n, int k) {
+    double[] c      = new double[m * n];
+    int      blocks = (m + ROW_BLOCK - 1) / ROW_BLOCK;
+
+    IntStream.range(0, blocks).parallel().forEach((block) -> {
+      int start = block * ROW_BLOCK;
+      int rows  = min(ROW_BLOCK, m - start);
+
+      double[] as = new double[rows * k];
+      double[] cs = new double[rows * n];
+      System.arraycopy(a, start * k, as, 0, as.length);
+
+      MatrixOperations.dgemm(as, b, cs, rows, n, k, false, false, 1, 0);
+
+      System.arraycopy(cs, 0, c, start * n, cs.length);
+    });
+    return c;
+  }
+
+  /**
+   * Calculates <i>C = A&prime; &times; B</i> for tall matrices <i>A</i> and
+   * <i>B</i>. Partial products of row blocks are calculated in parallel and
+   * summed.
+   *
+   * @param a matrix A, m-by-n (packed)
+   * @param b matrix B, m-by-k (packed)
+   * @param m rows of A and B
+   * @param n columns of A
+   * @param k columns of B
+   * @return matrix C, n-by-k (packed)
+   */
+  static double[] multiplyTransposed(double[] a, double[] b, int m, int n, int k) {
+    int blocks = (m + ROW_BLOCK - 1) / ROW_BLOCK;
+
+    return IntStream.range(0, blocks).parallel().mapToObj((block) -> {
+      int start = block * ROW_BLOCK;
+      int rows  = min(ROW_BLOCK, m - start);
+
+      double[] as = new double[rows * n];
+      double[] bs = new double[rows * k];
+      double[] cs = new double[n * k];
+      System.arraycopy(a, start * n, as, 0, as.length);
+      System.arraycopy(b, start * k, bs, 0, bs.length);
+
+      MatrixOperations.dgemm(as, bs, cs, n, k, rows, true, false, 1, 0);
+      return cs;
+    }).reduce((x, y) -> {
+      for (int i = 0; i < x.length; i++) {
+        x[i] += y[i];
+      }
+      return x;
+    }).orElseGet(() -> new double[n * k]);
+  }
+}
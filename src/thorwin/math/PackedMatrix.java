@@ -447,6 +447,30 @@ final class PackedMatrix extends DefaultMatrix {
   }
 
 
+  /**
+   * Returns the internal packed array, without copying it. The array is
+   * row-major for the untransposed matrix (see {@link #isTransposed()}), and
+   * is null if the matrix contains only zeros. Callers must not modify the
+   * array.
+   *
+   * @return internal packed array, or null
+   */
+  double[] getPacked() {
+    return packed;
+  }
+
+
+  /**
+   * Returns true if the internal packed array holds the transpose of this
+   * matrix.
+   *
+   * @return transposed flag
+   */
+  boolean isTransposed() {
+    return transposed;
+  }
+
+
   /**
    * Constructs a builder initialized with the data from this matrix.
    *
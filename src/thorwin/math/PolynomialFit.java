@@ -0,0 +1,304 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+import static java.lang.Math.min;
+
+import java.util.stream.IntStream;
+
+
+/**
+ * Streaming polynomial least squares fit. Points are added (and removed) one
+ * at a time, without being stored, using {@link LeastSquares}. The
+ * coefficients are in ascending order, as used by
+ * {@link Math#polynomial(double, double...)}.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class PolynomialFit implements java.io.Serializable {
+
+  /**
+   * Number of points per block when fitting large data sets in parallel.
+   */
+  private static final int BLOCK = PackedKernels.ROW_BLOCK;
+
+  /**
+   * Order of the polynomial.
+   */
+  private final int order;
+
+  /**
+   * Least squares solver.
+   */
+  private final LeastSquares solver;
+
+  /**
+   * Powers of x.
+   */
+  private final double[] powers;
+
+
+  /**
+   * Constructs a polynomial fit without points.
+   *
+   * @param order order of the polynomial (&gt;= 0)
+   */
+  public PolynomialFit(int order) {
+    if (order < 0) {
+      throw new IllegalArgumentException("order should be positive");
+    }
+    this.order = order;
+    this.solver = new LeastSquares(order + 1);
+    this.powers = new double[order + 1];
+  }
+
+
+  /**
+   * Returns the order of the polynomial.
+   *
+   * @return order
+   */
+  public int getOrder() {
+    return order;
+  }
+
+
+  /**
+   * Returns the number of points.
+   *
+   * @return number of points
+   */
+  public long getCount() {
+    return solver.getCount();
+  }
+
+
+  /**
+   * Adds a point.
+   *
+   * @param x x-value
+   * @param y y-value
+   */
+  public void add(double x, double y) {
+    solver.add(powers(x), y, 1.0);
+  }
+
+
+  /**
+   * Adds a weighted point.
+   *
+   * @param x      x-value
+   * @param y      y-value
+   * @param weight weight (&gt;= 0)
+   */
+  public void add(double x, double y, double weight) {
+    solver.add(powers(x), y, weight);
+  }
+
+
+  /**
+   * Adds a range of points.
+   *
+   * @param xs   x-values
+   * @param ys   y-values
+   * @param from index of the first point (inclusive)
+   * @param to   index of the last point (exclusive)
+   */
+  public void add(double[] xs, double[] ys, int from, int to) {
+    for (int i = from; i < to; i++) {
+      solver.add(powers(xs[i]), ys[i], 1.0);
+    }
+  }
+
+
+  /**
+   * Removes a point that was added before.
+   *
+   * @param x x-value
+   * @param y y-value
+   */
+  public void remove(double x, double y) {
+    solver.remove(powers(x), y, 1.0);
+  }
+
+
+  /**
+   * Removes a weighted point that was added before, with the same weight.
+   *
+   * @param x      x-value
+   * @param y      y-value
+   * @param weight weight (&gt;= 0)
+   */
+  public void remove(double x, double y, double weight) {
+    solver.remove(powers(x), y, weight);
+  }
+
+
+  /**
+   * Combines the points of another fit into this fit.
+   *
+   * @param other fit of the same order
+   */
+  public void combine(PolynomialFit other) {
+    solver.combine(other.solver);
+  }
+
+
+  /**
+   * Calculates the polynomial coefficients, in ascending order.
+   *
+   * @return coefficients
+   * @throws IllegalStateException if there are not enough (distinct) points
+   */
+  public double[] getCoefficients() {
+    return solver.getCoefficients();
+  }
+
+
+  /**
+   * Returns the residual sum of squares of the fit.
+   *
+   * @return residual sum of squares
+   */
+  public double getResidualSumOfSquares() {
+    return solver.getResidualSumOfSquares();
+  }
+
+
+  /**
+   * Fits a polynomial. Large data sets are fitted in parallel over blocks of
+   * points.
+   *
+   * @param xs    x-values
+   * @param ys    y-values
+   * @param order order of the polynomial
+   * @return coefficients, in ascending order
+   */
+  public static double[] fit(double[] xs, double[] ys, int order) {
+    return fit(xs, ys, null, order);
+  }
+
+
+  /**
+   * Fits a polynomial to weighted points. Large data sets are fitted in
+   * parallel over blocks of points.
+   *
+   * @param xs      x-values
+   * @param ys      y-values
+   * @param weights weights (null for unweighted points)
+   * @param order   order of the polynomial
+   * @return coefficients, in ascending order
+   */
+  public static double[] fit(double[] xs, double[] ys, double[] weights, int order) {
+    if (xs.length != ys.length || (weights != null && weights.length != xs.length)) {
+      throw new IllegalArgumentException("x and y data arrays should have same length");
+    }
+
+    int blocks = (xs.length + BLOCK - 1) / BLOCK;
+
+    PolynomialFit fit = IntStream.range(0, blocks).parallel().mapToObj((block) -> {
+      PolynomialFit part = new PolynomialFit(order);
+      int           end  = min(xs.length, (block + 1) * BLOCK);
+      for (int i = block * BLOCK; i < end; i++) {
+        part.add(xs[i], ys[i], weights == null ? 1.0 : weights[i]);
+      }
+      return part;
+    }).reduce((a, b) -> {
+      a.combine(b);
+      return a;
+    }).orElseGet(() -> new PolynomialFit(order));
+
+    return fit.getCoefficients();
+  }
+
+
+  /**
+   * Fits polynomials to many independent series, in parallel.
+   *
+   * @param xs    x-values per series
+   * @param ys    y-values per series
+   * @param order order of the polynomials
+   * @return coefficients per series, in ascending order
+   */
+  public static double[][] fit(double[][] xs, double[][] ys, int order) {
+    if (xs.length != ys.length) {
+      throw new IllegalArgumentException("Number of series should be equal");
+    }
+
+    double[][] result = new double[xs.length][];
+    IntStream.range(0, xs.length).parallel().forEach((i) -> {
+      PolynomialFit fit = new PolynomialFit(order);
+      if (xs[i].length != ys[i].length) {
+        throw new IllegalArgumentException("x and y data arrays should have same length");
+      }
+      fit.add(xs[i], ys[i], 0, xs[i].length);
+      result[i] = fit.getCoefficients();
+    });
+    return result;
+  }
+
+
+  /**
+   * Fits polynomials over a sliding window of points. The window is moved
+   * one point at a time by adding the next point and removing the oldest
+   * point.
+   *
+   * @param xs     x-values
+   * @param ys     y-values
+   * @param order  order of the polynomials
+   * @param window number of points in the window
+   * @return coefficients per window position (number of points - window + 1
+   * positions), in ascending order
+   */
+  public static double[][] sliding(double[] xs, double[] ys, int order, int window) {
+    if (xs.length != ys.length) {
+      throw new IllegalArgumentException("x and y data arrays should have same length");
+    }
+    if (window <= order || window > xs.length) {
+      throw new IllegalArgumentException("Invalid window: " + window);
+    }
+
+    double[][]    result = new double[xs.length - window + 1][];
+    PolynomialFit fit    = new PolynomialFit(order);
+    fit.add(xs, ys, 0, window);
+    result[0] = fit.getCoefficients();
+
+    for (int i = window; i < xs.length; i++) {
+      fit.add(xs[i], ys[i]);
+      fit.remove(xs[i - window], ys[i - window]);
+      result[i - window + 1] = fit.getCoefficients();
+    }
+    return result;
+  }
+
+
+  /**
+   * Calculates the powers of x, in the work array.
+   *
+   * @param x x-value
+   * @return powers of x
+   */
+  private double[] powers(double x) {
+    double xn = 1.0;
+    for (int i = 0; i <= order; i++) {
+      powers[i] = xn;
+      xn *= x;
+    }
+    return powers;
+  }
+}
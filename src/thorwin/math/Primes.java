@@ -17,32 +17,56 @@
 
 package thorwin.math;
 
-import java.io.DataInputStream;
-import java.io.IOException;
 import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
- * This class contains the first 10.000 prime numbers. This class is used
- * by the <code>Math.prime</code>. This table is stored in a separate class
- * so the data will only be loaded when used.
+ * Prime number services used by <code>Math.prime</code> and
+ * <code>Math.isPrime</code>. Primes are generated on demand by a segmented
+ * sieve of Eratosthenes, over an odd-only bit set. The sieved range is
+ * extended lazily (doubling) when larger primes are requested; large
+ * extensions are sieved in parallel segments. Values beyond the sieved range
+ * are tested using a deterministic Miller-Rabin test, which is exact for all
+ * 64 bit values.
  */
 final class Primes {
 
-  private static final int PRIME_COUNT = 10_000;
+  /**
+   * Upper limit of the sieve (primes are int values).
+   */
+  private static final long MAX_LIMIT = 1L << 31;
 
-  static final int[] PRIMES = new int[PRIME_COUNT];
-  static {
-    try {
-      try (DataInputStream in = new DataInputStream(Primes.class.getResourceAsStream("primes.bin"))) {
-        for (int i = 0; i < PRIME_COUNT; i++) {
-          PRIMES[i] = in.readInt();
-        }
-      }
-    }
-    catch (IOException e) {
-      throw new IllegalStateException(e);
-    }
-  }
+  /**
+   * Initial sieve limit.
+   */
+  private static final long INITIAL_LIMIT = 1L << 12;
+
+  /**
+   * Number of 64 bit words per sieve segment (32 KB, fits in the L1 cache).
+   */
+  private static final int SEGMENT_WORDS = 1 << 12;
+
+  /**
+   * Largest prime that fits in a long.
+   */
+  private static final long MAX_PRIME = 9_223_372_036_854_775_783L;
+
+  /**
+   * Miller-Rabin bases that are deterministic for values below 2^32.
+   */
+  private static final long[] BASES_32 = {2, 7, 61};
+
+  /**
+   * Miller-Rabin bases that are deterministic for all 64 bit values (Jim
+   * Sinclair).
+   */
+  private static final long[] BASES_64 = {2, 325, 9375, 28178, 450775,
+                                          9780504, 1795265022};
+
+  /**
+   * Current sieve state.
+   */
+  private static volatile Table table = initial();
 
   /**
    * Private constructor to prevent instantiation.
@@ -50,33 +74,415 @@ final class Primes {
   private Primes() {}
 
   /**
-   * Get a prime number. This method allows access to the first 10.000 prime
-   * numbers (all primes from 2 up to 104729).
-   * @param index The index of the prime number in the range [0-9999]
+   * Get a prime number. The sieve is extended when necessary.
+   * @param index The index of the prime number
    * @return The prime number.
-   * @throws IndexOutOfBoundsException for index greater than 9999
+   * @throws IndexOutOfBoundsException for negative indices or indices of
+   * primes that exceed the int range
    */
   static int prime(int index) {
-    return PRIMES[index];
+    if (index < 0) {
+      throw new IndexOutOfBoundsException("Invalid prime index: " + index);
+    }
+    Table current = table;
+    if (index >= current.count) {
+      current = extend(bound(index + 1L));
+      if (index >= current.count) {
+        throw new IndexOutOfBoundsException("Prime exceeds int range: " + index);
+      }
+    }
+    return current.primes[index];
   }
 
   /**
-   * Determines if a value is a prime number. This method is limited
-   * to the first 10.000 prime numbers (prime 2...104729).
+   * Returns all primes smaller than the limit. The sieve is extended
+   * (in parallel segments) when necessary.
+   * @param limit upper limit (exclusive)
+   * @return primes in ascending order
+   */
+  static int[] primes(int limit) {
+    Table current = table;
+    if (limit > current.limit) {
+      current = extend(limit);
+    }
+    int count = Arrays.binarySearch(current.primes, 0, current.count, limit);
+    return Arrays.copyOf(current.primes, count >= 0 ? count : -count - 1);
+  }
+
+  /**
+   * Determines if a value is a prime number. The sign of the value is
+   * ignored.
    * @param value the value to test
    * @return true if the value is a prime number
-   * @throws IllegalArgumentException for values exceeding 104729
    */
-  static boolean isPrime(int value) {
-
+  static boolean isPrime(long value) {
     // get the absolute value to determine prime number
-    value = java.lang.Math.abs(value);
+    if (value < 0) {
+      if (value == Long.MIN_VALUE) {
+        return false;
+      }
+      value = -value;
+    }
 
-    if (value > PRIMES[PRIMES.length -1]) {
-      throw new IllegalArgumentException("Value exceeds maximum known prime: " + value);
+    Table current = table;
+    if (value < current.limit) {
+      return current.isPrime((int) value);
+    }
+    if ((value & 1) == 0) {
+      return false;
     }
-    int index = Arrays.binarySearch(PRIMES, value);
-    return index >= 0;
+
+    // trial division removes most composites cheaply
+    for (int i = 1; i < 16; i++) {
+      if (value % current.primes[i] == 0) {
+        return false;
+      }
+    }
+    return millerRabin(value);
+  }
+
+  /**
+   * Returns the smallest prime larger than the value.
+   * @param value the value
+   * @return next prime
+   * @throws ArithmeticException if the next prime exceeds the long range
+   */
+  static long nextPrime(long value) {
+    if (value < 2) {
+      return 2;
+    }
+    if (value >= MAX_PRIME) {
+      throw new ArithmeticException("Next prime exceeds long range: " + value);
+    }
+    long candidate = (value + 1) | 1;
+    while (!isPrime(candidate)) {
+      candidate += 2;
+    }
+    return candidate;
+  }
+
+  /**
+   * Returns the largest prime smaller than the value.
+   * @param value the value
+   * @return previous prime
+   * @throws IllegalArgumentException if there is no smaller prime
+   */
+  static long prevPrime(long value) {
+    if (value <= 2) {
+      throw new IllegalArgumentException("No prime smaller than " + value);
+    }
+    if (value == 3) {
+      return 2;
+    }
+    long candidate = (value - 2) | 1;
+    while (!isPrime(candidate)) {
+      candidate -= 2;
+    }
+    return candidate;
+  }
+
+  /**
+   * Calculates an upper bound for the value of the n-th prime (Rosser).
+   * @param n number of primes
+   * @return upper bound
+   */
+  private static long bound(long n) {
+    if (n < 6) {
+      return 16;
+    }
+    double log = java.lang.Math.log(n);
+    return (long) (n * (log + java.lang.Math.log(log))) + 1;
+  }
+
+  /**
+   * Creates the initial sieve.
+   * @return initial table
+   */
+  private static Table initial() {
+    long[] composite = new long[(int) (INITIAL_LIMIT >> 7)];
+    composite[0] = 1L; // one is not prime
+    sieve(composite, 0, composite.length, null);
+    return new Table(INITIAL_LIMIT, composite);
+  }
+
+  /**
+   * Extends the sieve to (at least) the specified limit.
+   * @param required required limit
+   * @return the extended table
+   */
+  private static synchronized Table extend(long required) {
+    Table current = grow(table, required);
+    table = current;
+    return current;
+  }
+
+  /**
+   * Sieves the primes smaller than the limit from scratch, without using or
+   * extending the shared sieve. Used to measure the sieve itself.
+   * @param limit upper limit (exclusive)
+   * @return primes in ascending order
+   */
+  static int[] sieve(int limit) {
+    Table current = grow(initial(), limit);
+    int   count   = Arrays.binarySearch(current.primes, 0, current.count, limit);
+    return Arrays.copyOf(current.primes, count >= 0 ? count : -count - 1);
   }
-}
 
+  /**
+   * Extends a sieve to (at least) the specified limit, doubling it until
+   * the limit is reached.
+   * @param current sieve to extend
+   * @param required required limit
+   * @return the extended table (current if it reaches the limit)
+   */
+  private static Table grow(Table current, long required) {
+    required = java.lang.Math.min(required, MAX_LIMIT);
+
+    while (current.limit < required) {
+      // double the sieve, the base primes are then always available
+      long limit = java.lang.Math.min(MAX_LIMIT,
+                                      java.lang.Math.max(required, current.limit << 1));
+      limit = java.lang.Math.min(limit, current.limit * current.limit);
+      limit = (limit + 127) & ~127L;
+
+      long[] composite = Arrays.copyOf(current.composite, (int) (limit >> 7));
+      sieve(composite, current.composite.length, composite.length, current);
+      current = new Table(limit, composite);
+    }
+    return current;
+  }
+
+  /**
+   * Sieves a range of words of the odd-only composite bit set. Bit i of the
+   * set represents the odd value 2i+1. Large ranges are sieved in parallel
+   * segments.
+   * @param composite composite bit set
+   * @param from first word (inclusive)
+   * @param to last word (exclusive)
+   * @param base table containing the base primes, or null to sieve using
+   *             the bit set itself (from should be 0)
+   */
+  private static void sieve(long[] composite, int from, int to, Table base) {
+    if (base == null) {
+      // bootstrap: primes are found while sieving
+      long limit = (long) to << 7;
+      for (long p = 3; p * p < limit; p += 2) {
+        if ((composite[(int) (p >>> 7)] & (1L << (p >>> 1))) == 0) {
+          cross(composite, from, to, p);
+        }
+      }
+      return;
+    }
+
+    int     segments = (to - from + SEGMENT_WORDS - 1) / SEGMENT_WORDS;
+    IntStream stream = IntStream.range(0, segments);
+    if (segments > 1) {
+      stream = stream.parallel();
+    }
+    stream.forEach((segment) -> {
+      int  start = from + segment * SEGMENT_WORDS;
+      int  end   = java.lang.Math.min(to, start + SEGMENT_WORDS);
+      long limit = (long) end << 7;
+      for (int i = 1; i < base.count; i++) {
+        long p = base.primes[i];
+        if (p * p >= limit) {
+          break;
+        }
+        cross(composite, start, end, p);
+      }
+    });
+  }
+
+  /**
+   * Marks the odd multiples of a prime as composite, within a range of
+   * words of the bit set.
+   * @param composite composite bit set
+   * @param from first word (inclusive)
+   * @param to last word (exclusive)
+   * @param p odd prime
+   */
+  private static void cross(long[] composite, int from, int to, long p) {
+    long low  = (long) from << 7;
+    long high = (long) to << 7;
+
+    // first odd multiple of p in the range, not below p^2
+    long start = java.lang.Math.max(p * p, (low + p - 1) / p * p);
+    if ((start & 1) == 0) {
+      start += p;
+    }
+    for (long bit = start >>> 1, end = high >>> 1; bit < end; bit += p) {
+      composite[(int) (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  /**
+   * Deterministic Miller-Rabin test for odd values larger than 2, using
+   * Montgomery multiplication.
+   * @param n odd value
+   * @return true if the value is prime
+   */
+  private static boolean millerRabin(long n) {
+    // inverse of n modulo 2^64 (Newton)
+    long inverse = n;
+    for (int i = 0; i < 5; i++) {
+      inverse *= 2 - n * inverse;
+    }
+
+    // Montgomery representations of one, minus one and R^2
+    long one = Long.remainderUnsigned(-n, n);
+    long minusOne = n - one;
+    long r2 = one;
+    for (int i = 0; i < 64; i++) {
+      r2 <<= 1;
+      if (r2 < 0 || r2 >= n) {
+        r2 -= n;
+      }
+    }
+
+    long d = n - 1;
+    int  s = Long.numberOfTrailingZeros(d);
+    d >>>= s;
+
+    for (long base : n < (1L << 32) ? BASES_32 : BASES_64) {
+      long a = base % n;
+      if (a == 0) {
+        continue;
+      }
+
+      // x = a^d in Montgomery form
+      long m = multiply(a, r2, n, inverse);
+      long x = one;
+      for (long e = d; e != 0; e >>>= 1) {
+        if ((e & 1) != 0) {
+          x = multiply(x, m, n, inverse);
+        }
+        m = multiply(m, m, n, inverse);
+      }
+
+      if (x == one || x == minusOne) {
+        continue;
+      }
+      boolean composite = true;
+      for (int i = 1; i < s; i++) {
+        x = multiply(x, x, n, inverse);
+        if (x == minusOne) {
+          composite = false;
+          break;
+        }
+      }
+      if (composite) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Montgomery multiplication: a b R^-1 mod n, for a, b &lt; n &lt; 2^63.
+   * @param a first factor
+   * @param b second factor
+   * @param n odd modulus
+   * @param inverse inverse of n modulo 2^64
+   * @return product in Montgomery form
+   */
+  private static long multiply(long a, long b, long n, long inverse) {
+    long high = multiplyHigh(a, b);
+    long m    = a * b * inverse;
+    long mn   = multiplyHigh(m, n) + ((m >> 63) & n);
+    long r    = high - mn;
+    return r < 0 ? r + n : r;
+  }
+
+  /**
+   * High 64 bits of the signed 128 bit product of two values, multiplying
+   * 32 bit halves (Hacker's Delight, 8-2).
+   * @param x first factor
+   * @param y second factor
+   * @return high 64 bits of the product
+   */
+  private static long multiplyHigh(long x, long y) {
+    long x1 = x >> 32;
+    long x2 = x & 0xffffffffL;
+    long y1 = y >> 32;
+    long y2 = y & 0xffffffffL;
+    long t  = x1 * y2 + ((x2 * y2) >>> 32);
+    long z1 = (t & 0xffffffffL) + x2 * y1;
+    return x1 * y1 + (t >> 32) + (z1 >> 32);
+  }
+
+  /**
+   * Immutable sieve state: the composite bit set and the primes below the
+   * limit.
+   */
+  private static final class Table {
+
+    /**
+     * Sieve limit (exclusive, multiple of 128).
+     */
+    final long limit;
+
+    /**
+     * Odd-only composite bit set.
+     */
+    final long[] composite;
+
+    /**
+     * Primes below the limit.
+     */
+    final int[] primes;
+
+    /**
+     * Number of primes below the limit.
+     */
+    final int count;
+
+    /**
+     * Constructs a table, collecting the primes from the bit set (in
+     * parallel segments).
+     * @param limit sieve limit
+     * @param composite composite bit set
+     */
+    Table(long limit, long[] composite) {
+      this.limit = limit;
+      this.composite = composite;
+
+      int   segments = (composite.length + SEGMENT_WORDS - 1) / SEGMENT_WORDS;
+      int[] offsets  = new int[segments + 1];
+      IntStream.range(0, segments).parallel().forEach((segment) -> {
+        int end   = java.lang.Math.min(composite.length, (segment + 1) * SEGMENT_WORDS);
+        int count = 0;
+        for (int i = segment * SEGMENT_WORDS; i < end; i++) {
+          count += Long.bitCount(~composite[i]);
+        }
+        offsets[segment + 1] = count;
+      });
+      Arrays.parallelPrefix(offsets, Integer::sum);
+
+      // prime 2 is not represented by the odd-only bit set
+      this.count = offsets[segments] + 1;
+      this.primes = new int[count];
+      this.primes[0] = 2;
+      IntStream.range(0, segments).parallel().forEach((segment) -> {
+        int end   = java.lang.Math.min(composite.length, (segment + 1) * SEGMENT_WORDS);
+        int index = offsets[segment] + 1;
+        for (int i = segment * SEGMENT_WORDS; i < end; i++) {
+          for (long word = ~composite[i]; word != 0; word &= word - 1) {
+            primes[index++] = (int) ((((long) i << 6) + Long.numberOfTrailingZeros(word)) * 2 + 1);
+          }
+        }
+      });
+    }
+
+    /**
+     * Looks up a value below the limit.
+     * @param value value
+     * @return true if the value is a prime number
+     */
+    boolean isPrime(int value) {
+      if ((value & 1) == 0) {
+        return value == 2;
+      }
+      return (composite[value >>> 7] & (1L << (value >>> 1))) == 0;
+    }
+  }
+}
@@ -0,0 +1,296 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.pow;
+import static java.lang.Math.sqrt;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+
+/**
+ * Truncated singular value decomposition, calculated using a randomized range
+ * finder with power iterations.
+ * <p>
+ * The range of the matrix is sampled by multiplying it with a random
+ * gaussian matrix. Power iterations sharpen the sampled range for slowly
+ * decaying singular values. The matrix is then projected on the orthonormal
+ * base of the range, and the (small) projected matrix is decomposed using
+ * the full singular value decomposition. All operations on the matrix
+ * itself are executed in parallel over row blocks.
+ *
+ * @see <a href="http://arxiv.org/abs/0909.4061">Halko, Martinsson and Tropp,
+ * Finding structure with randomness</a>
+ */
+final class RandomizedSVD implements SVD {
+
+  /**
+   * Number of additional samples used to improve the accuracy of the range.
+   */
+  static final int OVERSAMPLING = 10;
+
+  /**
+   * Number of power iterations.
+   */
+  static final int ITERATIONS = 2;
+
+  /**
+   * Left singular vectors.
+   */
+  private final Matrix u;
+
+  /**
+   * Right singular vectors.
+   */
+  private final Matrix v;
+
+  /**
+   * Singular values (descending).
+   */
+  private final Vector singularValues;
+
+  /**
+   * Constructs a new truncated Singular Value Decomposition
+   *
+   * @param u              matrix <i>U</i>
+   * @param v              matrix <i>V</i>
+   * @param singularValues singular values
+   */
+  private RandomizedSVD(Matrix u, Matrix v, Vector singularValues) {
+    this.u = u;
+    this.v = v;
+    this.singularValues = singularValues;
+  }
+
+  /**
+   * Calculates the truncated singular value decomposition.
+   *
+   * @param matrix       matrix to decompose
+   * @param rank         number of singular values to calculate
+   * @param oversampling number of additional samples of the range
+   * @param iterations   number of power iterations
+   * @param seed         seed of the random sampling matrix
+   * @return truncated singular value decomposition
+   */
+  static SVD decompose(Matrix matrix,
+                       int rank,
+                       int oversampling,
+                       int iterations,
+                       long seed) {
+    int m = matrix.getRowDimension();
+    int n = matrix.getColumnDimension();
+
+    if (rank <= 0 || rank > min(m, n)) {
+      throw new IllegalArgumentException("rank should be between 1 and " +
+                                         min(m, n));
+    }
+
+    int      l = min(rank + oversampling, min(m, n));
+    double[] a = matrix.toArray();
+
+    // sample the range of the matrix
+    Random   random = new Random(seed);
+    double[] omega  = new double[n * l];
+    for (int i = 0; i < omega.length; i++) {
+      omega[i] = random.nextGaussian();
+    }
+
+    double[] q = orthonormalize(PackedKernels.multiply(a, omega, m, l, n), m, l);
+
+    for (int i = 0; i < iterations; i++) {
+      double[] z = orthonormalize(PackedKernels.multiplyTransposed(a, q, m, n, l), n, l);
+      q = orthonormalize(PackedKernels.multiply(a, z, m, l, n), m, l);
+    }
+
+    // project the matrix on the range: B = Q' * A. The transposed projection
+    // (n-by-l) is decomposed, since the decomposition requires rows >= columns
+    double[] b  = PackedKernels.multiplyTransposed(q, a, m, l, n);
+    Matrix   bt = MatrixContext.getInstance()
+                               .create(n, l, PackedKernels.transpose(b, l, n))
+                               .toMatrix();
+
+    SVD svd = DefaultSVD.svd(bt);
+
+    // A = Q * B = (Q * Vb) * S * Ub'
+    double[] vb = svd.getV().toArray();
+    double[] ub = svd.getU().toArray();
+    double[] uq = PackedKernels.multiply(q, vb, m, l, l);
+
+    Matrix u = MatrixContext.getInstance()
+                            .create(m, rank, truncate(uq, m, l, rank))
+                            .toMatrix();
+    Matrix v = MatrixContext.getInstance()
+                            .create(n, rank, truncate(ub, n, l, rank))
+                            .toMatrix();
+
+    double[] values = new double[rank];
+    for (int i = 0; i < rank; i++) {
+      values[i] = svd.getSingularValues().get(i);
+    }
+
+    return new RandomizedSVD(u, v, VectorContext.getInstance().create(values).toVector());
+  }
+
+  /**
+   * Orthonormalizes the columns of a tall matrix using the Cholesky QR
+   * algorithm, applied twice for numerical stability. Falls back to the
+   * householder QR decomposition if the columns are (nearly) dependent.
+   *
+   * @param y       matrix (packed), m-by-n
+   * @param m       number of rows
+   * @param n       number of columns
+   * @return orthonormal base (packed), m-by-n
+   */
+  static double[] orthonormalize(double[] y, int m, int n) {
+    for (int pass = 0; pass < 2; pass++) {
+      double[] l = cholesky(PackedKernels.multiplyTransposed(y, y, m, n, n), n);
+      if (l == null) {
+        Matrix matrix = MatrixContext.getInstance().create(m, n, y).toMatrix();
+        return matrix.qr().getQ().toArray();
+      }
+      y = solveRows(y, l, m, n);
+    }
+    return y;
+  }
+
+  /**
+   * Cholesky decomposition of a small, packed, symmetric matrix.
+   *
+   * @param g matrix (packed), n-by-n
+   * @param n dimension
+   * @return lower triangular matrix L (packed), or null if the matrix is not
+   * (numerically) positive definite
+   */
+  private static double[] cholesky(double[] g, int n) {
+    double   scale = 0;
+    for (int i = 0; i < n; i++) {
+      scale = max(scale, g[i * n + i]);
+    }
+    double tolerance = scale * n * pow(2.0, -52.0) * 1e3;
+
+    double[] l = new double[n * n];
+    for (int j = 0; j < n; j++) {
+      double d = g[j * n + j];
+      for (int k = 0; k < j; k++) {
+        d -= l[j * n + k] * l[j * n + k];
+      }
+      if (d <= tolerance) {
+        return null;
+      }
+      double diagonal = sqrt(d);
+      l[j * n + j] = diagonal;
+      for (int i = j + 1; i < n; i++) {
+        double s = g[i * n + j];
+        for (int k = 0; k < j; k++) {
+          s -= l[i * n + k] * l[j * n + k];
+        }
+        l[i * n + j] = s / diagonal;
+      }
+    }
+    return l;
+  }
+
+  /**
+   * Solves <i>X &times; L&prime; = Y</i> for every row of <i>Y</i>, in
+   * parallel.
+   *
+   * @param y matrix Y (packed), m-by-n
+   * @param l lower triangular matrix L (packed), n-by-n
+   * @param m number of rows
+   * @param n number of columns
+   * @return matrix X (packed), m-by-n
+   */
+  private static double[] solveRows(double[] y, double[] l, int m, int n) {
+    double[] x = new double[m * n];
+    IntStream.range(0, m).parallel().forEach((row) -> {
+      int base = row * n;
+      for (int j = 0; j < n; j++) {
+        double s = y[base + j];
+        for (int k = 0; k < j; k++) {
+          s -= x[base + k] * l[j * n + k];
+        }
+        x[base + j] = s / l[j * n + j];
+      }
+    });
+    return x;
+  }
+
+  /**
+   * Returns the first columns of a packed matrix.
+   *
+   * @param packed  matrix (packed)
+   * @param rows    number of rows
+   * @param columns number of columns
+   * @param count   number of columns to keep
+   * @return packed matrix, rows-by-count
+   */
+  private static double[] truncate(double[] packed, int rows, int columns, int count) {
+    if (columns == count) {
+      return packed;
+    }
+    return PackedKernels.copy(packed, columns, 0, 0, rows, count);
+  }
+
+  @Override
+  public double condition() {
+    return singularValues.get(0) / singularValues.get(singularValues.getDimension() - 1);
+  }
+
+  @Override
+  public Matrix getS() {
+    return Matrix.diagonal(singularValues);
+  }
+
+  @Override
+  public Vector getSingularValues() {
+    return singularValues;
+  }
+
+  @Override
+  public Matrix getU() {
+    return u;
+  }
+
+  @Override
+  public Matrix getV() {
+    return v;
+  }
+
+  @Override
+  public int rank() {
+    int m = u.getRowDimension();
+    int n = v.getRowDimension();
+    double eps = pow(2.0, -52.0);
+    double tol = max(m, n) * norm2() * eps;
+    int r = 0;
+    for (int i = 0; i < singularValues.getDimension(); i++) {
+      if (singularValues.get(i) > tol) {
+        r++;
+      }
+    }
+    return r;
+  }
+
+  @Override
+  public double norm2() {
+    return singularValues.get(0);
+  }
+}
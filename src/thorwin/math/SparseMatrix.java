@@ -0,0 +1,679 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math;
+
+import static java.lang.Integer.min;
+import static java.lang.Math.abs;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+
+/**
+ * Implementation of a sparse matrix that stores its non-zero elements in
+ * compressed sparse row (CSR) format. A transposed sparse matrix shares the
+ * storage of the original, which makes it a compressed sparse column (CSC)
+ * matrix.
+ * <p>
+ * Matrix-vector products, the Jacobi method and the iterative solvers only
+ * visit the stored elements. Products of a non-transposed matrix are
+ * executed in parallel over row blocks.
+ * <p>
+ * This class is immutable.
+ */
+final class SparseMatrix extends DefaultMatrix {
+
+  /**
+   * The number of rows in the stored matrix.
+   */
+  private final int rows;
+
+  /**
+   * The number of columns in the stored matrix.
+   */
+  private final int columns;
+
+  /**
+   * Start index of every row in the column index and value arrays. This
+   * array contains an additional element, which is the number of stored
+   * elements.
+   */
+  private final int[] rowPointers;
+
+  /**
+   * Column index of every stored element, sorted within a row.
+   */
+  private final int[] columnIndices;
+
+  /**
+   * Value of every stored element.
+   */
+  private final double[] values;
+
+  /**
+   * Transposed flag.
+   */
+  private final boolean transposed;
+
+
+  /**
+   * Constructs a new sparse matrix. This (package-private) constructor does
+   * not copy or validate the arrays. Callers are expected to maintain
+   * encapsulation and immutability.
+   *
+   * @param rows          number of rows in the stored matrix
+   * @param columns       number of columns in the stored matrix
+   * @param rowPointers   row start indices (rows + 1 elements)
+   * @param columnIndices column indices, sorted within a row
+   * @param values        element values
+   * @param transposed    if true, this matrix has been transposed
+   */
+  SparseMatrix(int rows,
+               int columns,
+               int[] rowPointers,
+               int[] columnIndices,
+               double[] values,
+               boolean transposed) {
+    assert rowPointers.length == rows + 1;
+    this.rows = rows;
+    this.columns = columns;
+    this.rowPointers = rowPointers;
+    this.columnIndices = columnIndices;
+    this.values = values;
+    this.transposed = transposed;
+  }
+
+
+  /**
+   * Constructs a sparse matrix from coordinate triplets. Duplicate entries
+   * are summed.
+   *
+   * @param rows          number of rows
+   * @param columns       number of columns
+   * @param rowIndices    row index of every entry
+   * @param columnIndices column index of every entry
+   * @param values        value of every entry
+   * @return sparse matrix
+   */
+  static SparseMatrix valueOf(int rows,
+                              int columns,
+                              int[] rowIndices,
+                              int[] columnIndices,
+                              double[] values) {
+    if (rowIndices.length != values.length ||
+        columnIndices.length != values.length) {
+      throw new IllegalArgumentException("index and value arrays should have equal length");
+    }
+
+    // count the entries of every row
+    int[] pointers = new int[rows + 1];
+    for (int i = 0; i < rowIndices.length; i++) {
+      int row    = rowIndices[i];
+      int column = columnIndices[i];
+      if (row < 0 || row >= rows) {
+        throw new IndexOutOfBoundsException("Invalid row index: " + row);
+      }
+      if (column < 0 || column >= columns) {
+        throw new IndexOutOfBoundsException("Invalid column index: " + column);
+      }
+      pointers[row + 1]++;
+    }
+    for (int row = 0; row < rows; row++) {
+      pointers[row + 1] += pointers[row];
+    }
+
+    // distribute the entries over the rows
+    int[]    next     = Arrays.copyOf(pointers, rows);
+    int[]    indices  = new int[values.length];
+    double[] elements = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      int index = next[rowIndices[i]]++;
+      indices[index] = columnIndices[i];
+      elements[index] = values[i];
+    }
+
+    return compress(rows, columns, pointers, indices, elements);
+  }
+
+
+  /**
+   * Constructs a sparse matrix from compressed rows. The arrays are copied.
+   * Compressed columns are the compressed rows of the transposed matrix.
+   *
+   * @param rows          number of rows of the stored matrix
+   * @param columns       number of columns of the stored matrix
+   * @param rowPointers   row start indices (rows + 1 elements)
+   * @param columnIndices column indices
+   * @param values        element values
+   * @param transposed    true to return the transposed (compressed column)
+   *                      matrix
+   * @return sparse matrix
+   */
+  static SparseMatrix valueOf(int rows,
+                              int columns,
+                              int[] rowPointers,
+                              int[] columnIndices,
+                              double[] values,
+                              boolean transposed) {
+    if (rowPointers.length != rows + 1 ||
+        rowPointers[0] != 0 ||
+        rowPointers[rows] != values.length ||
+        columnIndices.length != values.length) {
+      throw new IllegalArgumentException("Invalid compressed matrix");
+    }
+
+    for (int row = 0; row < rows; row++) {
+      if (rowPointers[row] > rowPointers[row + 1]) {
+        throw new IllegalArgumentException("Pointers should be ascending");
+      }
+    }
+
+    for (int column : columnIndices) {
+      if (column < 0 || column >= columns) {
+        throw new IndexOutOfBoundsException("Invalid index: " + column);
+      }
+    }
+
+    SparseMatrix matrix = compress(rows,
+                                   columns,
+                                   rowPointers.clone(),
+                                   columnIndices.clone(),
+                                   values.clone());
+
+    return transposed ? matrix.transpose() : matrix;
+  }
+
+
+  /**
+   * Sorts the elements within every row, sums duplicates and removes zero
+   * elements.
+   *
+   * @param rows     number of rows
+   * @param columns  number of columns
+   * @param pointers row start indices (altered)
+   * @param indices  column indices (altered)
+   * @param elements element values (altered)
+   * @return sparse matrix
+   */
+  private static SparseMatrix compress(int rows,
+                                       int columns,
+                                       int[] pointers,
+                                       int[] indices,
+                                       double[] elements) {
+    int size  = 0;
+    int start = 0;
+
+    for (int row = 0; row < rows; row++) {
+      int end = pointers[row + 1];
+
+      // sort the row by column index (rows are short, use insertion sort)
+      for (int i = start + 1; i < end; i++) {
+        int    column = indices[i];
+        double value  = elements[i];
+        int    j      = i - 1;
+        while (j >= start && indices[j] > column) {
+          indices[j + 1] = indices[j];
+          elements[j + 1] = elements[j];
+          j--;
+        }
+        indices[j + 1] = column;
+        elements[j + 1] = value;
+      }
+
+      // sum duplicates and skip zero's
+      pointers[row] = size;
+      for (int i = start; i < end; i++) {
+        double value = elements[i];
+        while (i + 1 < end && indices[i + 1] == indices[i]) {
+          value += elements[++i];
+        }
+        if (value != 0.0) {
+          indices[size] = indices[i];
+          elements[size] = value;
+          size++;
+        }
+      }
+      start = end;
+    }
+    pointers[rows] = size;
+
+    return new SparseMatrix(rows,
+                            columns,
+                            pointers,
+                            Arrays.copyOf(indices, size),
+                            Arrays.copyOf(elements, size),
+                            false);
+  }
+
+
+  @Override
+  public int getRowDimension() {
+    return transposed ? columns : rows;
+  }
+
+
+  @Override
+  public int getColumnDimension() {
+    return transposed ? rows : columns;
+  }
+
+
+  /**
+   * Returns the number of stored (non-zero) elements.
+   *
+   * @return number of non-zero elements
+   */
+  int getNonZeroCount() {
+    return values.length;
+  }
+
+
+  @Override
+  public double get(int row, int column) {
+    if (row < 0 || row >= getRowDimension()) {
+      throw new IndexOutOfBoundsException("Invalid row index: " + row);
+    }
+    if (column < 0 || column >= getColumnDimension()) {
+      throw new IndexOutOfBoundsException("Invalid column index: " + column);
+    }
+    return transposed ? find(column, row) : find(row, column);
+  }
+
+
+  /**
+   * Finds a stored element.
+   *
+   * @param row    row index in the stored matrix
+   * @param column column index in the stored matrix
+   * @return element value, or zero if not stored
+   */
+  private double find(int row, int column) {
+    int index = Arrays.binarySearch(columnIndices,
+                                    rowPointers[row],
+                                    rowPointers[row + 1],
+                                    column);
+    return index >= 0 ? values[index] : 0.0;
+  }
+
+
+  @Override
+  public SparseMatrix transpose() {
+    return new SparseMatrix(rows, columns, rowPointers, columnIndices, values, !transposed);
+  }
+
+
+  /**
+   * Evaluates the matrix. A transposed matrix is converted to compressed rows,
+   * which allows parallel matrix-vector products.
+   *
+   * @return matrix stored in compressed rows
+   */
+  @Override
+  public SparseMatrix evaluate() {
+    if (!transposed) {
+      return this;
+    }
+
+    int[]    pointers = new int[columns + 1];
+    int[]    indices  = new int[values.length];
+    double[] elements = new double[values.length];
+
+    for (int column : columnIndices) {
+      pointers[column + 1]++;
+    }
+    for (int column = 0; column < columns; column++) {
+      pointers[column + 1] += pointers[column];
+    }
+
+    int[] next = Arrays.copyOf(pointers, columns);
+    for (int row = 0; row < rows; row++) {
+      for (int i = rowPointers[row]; i < rowPointers[row + 1]; i++) {
+        int index = next[columnIndices[i]]++;
+        indices[index] = row;
+        elements[index] = values[i];
+      }
+    }
+
+    return new SparseMatrix(columns, rows, pointers, indices, elements, false);
+  }
+
+
+  @Override
+  public SparseMatrix multiply(double multiplicand) {
+    double[] scaled = new double[values.length];
+    for (int i = 0; i < scaled.length; i++) {
+      scaled[i] = values[i] * multiplicand;
+    }
+    return new SparseMatrix(rows, columns, rowPointers, columnIndices, scaled, transposed);
+  }
+
+
+  @Override
+  public Vector multiply(Vector other) {
+    if (other.getDimension() != getColumnDimension()) {
+      throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+    }
+    double[] y = new double[getRowDimension()];
+    multiply(other.toArray(), y);
+    return new ArrayVector(y);
+  }
+
+
+  /**
+   * Calculates <i>y = A &times; x</i>. Products of a non-transposed matrix
+   * are calculated in parallel over row blocks.
+   *
+   * @param x input vector (column dimension)
+   * @param y output vector (row dimension)
+   */
+  void multiply(double[] x, double[] y) {
+    if (transposed) {
+      // scatter the stored rows into the result
+      Arrays.fill(y, 0.0);
+      for (int row = 0; row < rows; row++) {
+        double value = x[row];
+        if (value != 0.0) {
+          for (int i = rowPointers[row]; i < rowPointers[row + 1]; i++) {
+            y[columnIndices[i]] += values[i] * value;
+          }
+        }
+      }
+    }
+    else {
+      int blocks = (rows + PackedKernels.ROW_BLOCK - 1) / PackedKernels.ROW_BLOCK;
+      IntStream.range(0, blocks).parallel().forEach((block) -> {
+        int end = min(rows, (block + 1) * PackedKernels.ROW_BLOCK);
+        for (int row = block * PackedKernels.ROW_BLOCK; row < end; row++) {
+          double sum = 0;
+          for (int i = rowPointers[row]; i < rowPointers[row + 1]; i++) {
+            sum += values[i] * x[columnIndices[i]];
+          }
+          y[row] = sum;
+        }
+      });
+    }
+  }
+
+
+  @Override
+  public Matrix multiply(Matrix other) {
+    if (getColumnDimension() != other.getRowDimension()) {
+      throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+    }
+    if (transposed) {
+      return evaluate().multiply(other);
+    }
+
+    int      n = other.getColumnDimension();
+    double[] b = other.toArray();
+    double[] c = new double[rows * n];
+
+    IntStream.range(0, rows).parallel().forEach((row) -> {
+      int base = row * n;
+      for (int i = rowPointers[row]; i < rowPointers[row + 1]; i++) {
+        double value  = values[i];
+        int    offset = columnIndices[i] * n;
+        for (int j = 0; j < n; j++) {
+          c[base + j] += value * b[offset + j];
+        }
+      }
+    });
+
+    return MatrixContext.getInstance().create(rows, n, c).toMatrix();
+  }
+
+
+  @Override
+  public Matrix add(Matrix other) {
+    if (other instanceof SparseMatrix) {
+      return combine((SparseMatrix) other, 1.0);
+    }
+    return super.add(other);
+  }
+
+
+  @Override
+  public Matrix subtract(Matrix other) {
+    if (other instanceof SparseMatrix) {
+      return combine((SparseMatrix) other, -1.0);
+    }
+    return super.subtract(other);
+  }
+
+
+  /**
+   * Calculates <i>A + s &times; B</i> by merging the stored rows.
+   *
+   * @param other matrix B
+   * @param scale scale of matrix B
+   * @return sparse matrix
+   */
+  private SparseMatrix combine(SparseMatrix other, double scale) {
+    if (getRowDimension() != other.getRowDimension() ||
+        getColumnDimension() != other.getColumnDimension()) {
+      throw new IllegalArgumentException("Matrix dimensions do not agree");
+    }
+
+    SparseMatrix a = this.evaluate();
+    SparseMatrix b = other.evaluate();
+
+    int[]    pointers = new int[a.rows + 1];
+    int[]    indices  = new int[a.values.length + b.values.length];
+    double[] elements = new double[indices.length];
+    int      size     = 0;
+
+    for (int row = 0; row < a.rows; row++) {
+      int i    = a.rowPointers[row];
+      int iEnd = a.rowPointers[row + 1];
+      int j    = b.rowPointers[row];
+      int jEnd = b.rowPointers[row + 1];
+
+      while (i < iEnd || j < jEnd) {
+        int    column;
+        double value;
+        if (j == jEnd || (i < iEnd && a.columnIndices[i] < b.columnIndices[j])) {
+          column = a.columnIndices[i];
+          value = a.values[i++];
+        }
+        else if (i == iEnd || b.columnIndices[j] < a.columnIndices[i]) {
+          column = b.columnIndices[j];
+          value = scale * b.values[j++];
+        }
+        else {
+          column = a.columnIndices[i];
+          value = a.values[i++] + scale * b.values[j++];
+        }
+        if (value != 0.0) {
+          indices[size] = column;
+          elements[size] = value;
+          size++;
+        }
+      }
+      pointers[row + 1] = size;
+    }
+
+    return new SparseMatrix(a.rows,
+                            a.columns,
+                            pointers,
+                            Arrays.copyOf(indices, size),
+                            Arrays.copyOf(elements, size),
+                            false);
+  }
+
+
+  @Override
+  public Vector row(int row) {
+    if (row < 0 || row >= getRowDimension()) {
+      throw new IndexOutOfBoundsException("Invalid row index: " + row);
+    }
+    if (transposed) {
+      return super.row(row);
+    }
+    double[] data = new double[columns];
+    for (int i = rowPointers[row]; i < rowPointers[row + 1]; i++) {
+      data[columnIndices[i]] = values[i];
+    }
+    return new ArrayVector(data);
+  }
+
+
+  @Override
+  public double[] toArray() {
+    int      columnDimension = getColumnDimension();
+    double[] packed          = new double[getRowDimension() * columnDimension];
+    for (int row = 0; row < rows; row++) {
+      for (int i = rowPointers[row]; i < rowPointers[row + 1]; i++) {
+        if (transposed) {
+          packed[columnIndices[i] * columnDimension + row] = values[i];
+        }
+        else {
+          packed[row * columnDimension + columnIndices[i]] = values[i];
+        }
+      }
+    }
+    return packed;
+  }
+
+
+  /**
+   * Returns the diagonal elements.
+   *
+   * @return diagonal
+   */
+  double[] diagonal() {
+    int      n        = min(rows, columns);
+    double[] diagonal = new double[n];
+    for (int i = 0; i < n; i++) {
+      diagonal[i] = find(i, i);
+    }
+    return diagonal;
+  }
+
+
+  @Override
+  public Optional<? extends Vector> jacobi(Vector other,
+                                           int iterations,
+                                           double tolerance) {
+    if (!isSquare()) {
+      throw new IllegalArgumentException("Matrix is not square");
+    }
+    if (other.getDimension() != getRowDimension()) {
+      throw new IllegalArgumentException("Matrix row dimensions must agree.");
+    }
+    if (transposed) {
+      return evaluate().jacobi(other, iterations, tolerance);
+    }
+
+    int      n        = rows;
+    double[] b        = other.toArray();
+    double[] diagonal = diagonal();
+    double[] x        = new double[n];
+    double[] next     = new double[n];
+    double[] residual = new double[n];
+    int      blocks   = (n + PackedKernels.ROW_BLOCK - 1) / PackedKernels.ROW_BLOCK;
+
+    for (int k = 0; k < iterations; k++) {
+      final double[] current = x;
+      final double[] updated = next;
+
+      IntStream.range(0, blocks).parallel().forEach((block) -> {
+        int end = min(n, (block + 1) * PackedKernels.ROW_BLOCK);
+        for (int row = block * PackedKernels.ROW_BLOCK; row < end; row++) {
+          double s = 0;
+          for (int i = rowPointers[row]; i < rowPointers[row + 1]; i++) {
+            if (columnIndices[i] != row) {
+              s += values[i] * current[columnIndices[i]];
+            }
+          }
+          updated[row] = (b[row] - s) / diagonal[row];
+        }
+      });
+
+      next = x;
+      x = updated;
+
+      // determine if the solution converged enough
+      multiply(x, residual);
+      if (converged(residual, b, tolerance)) {
+        return Optional.of(new ArrayVector(x));
+      }
+    }
+    return Optional.empty();
+  }
+
+
+  @Override
+  public Optional<? extends Vector> gaussSeidel(Vector other,
+                                               int iterations,
+                                               double tolerance) {
+    if (!isSquare()) {
+      throw new IllegalArgumentException("Matrix is not square");
+    }
+    if (other.getDimension() != getRowDimension()) {
+      throw new IllegalArgumentException("Matrix row dimensions must agree.");
+    }
+    if (transposed) {
+      return evaluate().gaussSeidel(other, iterations, tolerance);
+    }
+
+    int      n        = rows;
+    double[] b        = other.toArray();
+    double[] diagonal = diagonal();
+    double[] x        = new double[n];
+    double[] residual = new double[n];
+
+    for (int k = 0; k < iterations; k++) {
+      for (int row = 0; row < n; row++) {
+        double s = 0;
+        for (int i = rowPointers[row]; i < rowPointers[row + 1]; i++) {
+          if (columnIndices[i] != row) {
+            s += values[i] * x[columnIndices[i]];
+          }
+        }
+        x[row] = (b[row] - s) / diagonal[row];
+      }
+
+      // determine if the solution converged enough
+      multiply(x, residual);
+      if (converged(residual, b, tolerance)) {
+        return Optional.of(new ArrayVector(x));
+      }
+    }
+    return Optional.empty();
+  }
+
+
+  /**
+   * Checks if all elements of <i>A &times; x</i> are within tolerance of
+   * <i>b</i>.
+   *
+   * @param y         product <i>A &times; x</i>
+   * @param b         right hand side
+   * @param tolerance tolerance
+   * @return true if converged
+   */
+  private static boolean converged(double[] y, double[] b, double tolerance) {
+    for (int i = 0; i < y.length; i++) {
+      if (abs(y[i] - b[i]) > tolerance) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
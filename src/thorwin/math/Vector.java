@@ -46,6 +46,17 @@ public interface Vector extends java.io.Serializable {
     return builder.toVector();
   }
 
+  /**
+   * Constructs a single precision vector. The array is not copied, so callers
+   * should not modify it while the vector is in use.
+   *
+   * @param data single precision elements
+   * @return vector
+   */
+  static Vector valueOf(float[] data) {
+    return new FloatVector(data);
+  }
+
   /**
    * Create a vector from a text string. Entries are separated by space
    * characters.
@@ -95,6 +106,19 @@ public interface Vector extends java.io.Serializable {
     return array;
   }
 
+  /**
+   * Convert this vector to a single precision array.
+   *
+   * @return The array
+   */
+  default float[] toFloatArray() {
+    float[] array = new float[getDimension()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = (float) get(i);
+    }
+    return array;
+  }
+
   /**
    * The dimension (number of elements) of this vector.
    *
@@ -243,7 +267,7 @@ public interface Vector extends java.io.Serializable {
     VectorBuilder<?> builder = VectorContext.getInstance().create(dimension);
 
     for (int i = 0; i < dimension; i++) {
-      builder.set(i, get(i) + multiplicand);
+      builder.set(i, get(i) * multiplicand);
     }
 
     return builder.toVector();
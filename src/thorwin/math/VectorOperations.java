@@ -69,4 +69,38 @@ public class VectorOperations {
   public static void daxpy(double a, double[] x, double[] y) {
     PROVIDER.daxpy(a,x,y);
   }
+
+
+  /**
+   * Calculates <i>X<sub>out</sub> = &alpha; &times; X</i> in single
+   * precision.
+   * @param alpha scaling factor
+   * @param x vector X
+   */
+  public static void sscal(float alpha, float[] x) {
+    PROVIDER.sscal(alpha, x);
+  }
+
+
+  /**
+   * Calculates <i>Y<sub>out</sub> = A&times;X + Y</i> in single precision.
+   * @param a value A
+   * @param x input vector X
+   * @param y input/output vector Y
+   */
+  public static void saxpy(float a, float[] x, float[] y) {
+    PROVIDER.saxpy(a, x, y);
+  }
+
+
+  /**
+   * Calculates the dot product of single precision vectors, accumulated in
+   * double precision.
+   * @param x vector X
+   * @param y vector Y
+   * @return dot product
+   */
+  public static double dsdot(float[] x, float[] y) {
+    return PROVIDER.dsdot(x, y);
+  }
 }
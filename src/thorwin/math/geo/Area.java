@@ -0,0 +1,44 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import java.io.Serializable;
+
+
+/**
+ * Interface to 2-dimensional shapes.
+ */
+public interface Area extends Serializable {
+
+  /**
+   * Returns the bounding rectangle of the shape. The rectangle has a
+   * non-negative width and height.
+   * @return bounding rectangle
+   */
+  Rectangle2D getBounds();
+
+  /**
+   * Tests if the shape contains a point. Defaults to testing the bounds.
+   * @param x x-coordinate of the point to test
+   * @param y y-coordinate of the point to test
+   * @return true if the shape contains the coordinate
+   */
+  default boolean contains(double x, double y) {
+    return getBounds().contains(x, y);
+  }
+}
@@ -0,0 +1,1037 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.OptionalDouble;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import thorwin.math.Vector3D;
+
+
+/**
+ * Bounding volume hierarchy over a triangle soup. The triangles are stored
+ * in a flat coordinate array (nine values per triangle: x, y and z of the
+ * three vertices), which is referenced, not copied. After the vertices have
+ * been moved (for example by a deformation of the mesh), {@link #refit()}
+ * updates the bounds of the hierarchy without rebuilding it.
+ * <p>
+ * The hierarchy is a binary tree built top-down using the surface area
+ * heuristic (SAH), evaluated over a fixed number of bins per axis. Large
+ * meshes are built in parallel. Nodes are stored in flat arrays, with the
+ * two children of a node stored consecutively.
+ * <p>
+ * Queries: closest-hit and any-hit ray casting, overlap of two hierarchies
+ * (bounding box broadphase followed by {@link Triangle3D#intersects}),
+ * frustrum culling and box selection. Triangles are identified by their
+ * index in the coordinate array (divided by nine). Queries can run
+ * concurrently, but not concurrently with {@link #refit()}.
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Bounding_volume_hierarchy">
+ * Wikipedia on Bounding volume hierarchies</a>
+ */
+public final class BVH {
+
+  /**
+   * Number of SAH bins per axis.
+   */
+  private static final int BINS = 16;
+
+  /**
+   * Number of triangles below which the SAH may choose a leaf.
+   */
+  private static final int MAX_LEAF = 8;
+
+  /**
+   * Number of triangles above which subtrees are built in parallel.
+   */
+  private static final int PARALLEL = 4096;
+
+  /**
+   * Cost of traversing a node, relative to intersecting a triangle.
+   */
+  private static final double TRAVERSAL_COST = 1.0;
+
+  /**
+   * Triangle coordinates (nine per triangle).
+   */
+  private final double[] triangles;
+
+  /**
+   * Triangle indices, leaves refer to ranges of this array.
+   */
+  private final int[] order;
+
+  /**
+   * Node bounds (min x, max x, min y, max y, min z, max z per node).
+   */
+  private final double[] bounds;
+
+  /**
+   * First child (internal nodes) or first index in the order (leaves).
+   */
+  private final int[] first;
+
+  /**
+   * Number of triangles of leaves, zero for internal nodes.
+   */
+  private final int[] count;
+
+  /**
+   * Number of nodes.
+   */
+  private final int nodes;
+
+
+  /**
+   * Private constructor used by the builder.
+   */
+  private BVH(double[] triangles, int[] order, double[] bounds, int[] first, int[] count,
+              int nodes) {
+    this.triangles = triangles;
+    this.order = order;
+    this.bounds = bounds;
+    this.first = first;
+    this.count = count;
+    this.nodes = nodes;
+  }
+
+
+  /**
+   * Builds a bounding volume hierarchy over triangles.
+   *
+   * @param triangles triangles
+   * @return bounding volume hierarchy
+   */
+  public static BVH build(Collection<Triangle3D> triangles) {
+    double[] coordinates = new double[9 * triangles.size()];
+    int      offset      = 0;
+    for (Triangle3D triangle : triangles) {
+      for (Vector3D p : triangle) {
+        coordinates[offset++] = p.getX();
+        coordinates[offset++] = p.getY();
+        coordinates[offset++] = p.getZ();
+      }
+    }
+    return build(coordinates);
+  }
+
+
+  /**
+   * Builds a bounding volume hierarchy over a triangle soup. The coordinate
+   * array is referenced by the hierarchy, not copied.
+   *
+   * @param triangles triangle coordinates: x, y and z of the three vertices
+   *                  of every triangle
+   * @return bounding volume hierarchy
+   */
+  public static BVH build(double[] triangles) {
+    if (triangles.length % 9 != 0) {
+      throw new IllegalArgumentException("Number of coordinates should be a multiple of 9");
+    }
+    int n = triangles.length / 9;
+
+    int[]    order     = new int[n];
+    double[] centroids = new double[3 * n];
+    IntStream.range(0, n).parallel().forEach((i) -> {
+      order[i] = i;
+      int o = 9 * i;
+      centroids[3 * i] = (triangles[o] + triangles[o + 3] + triangles[o + 6]) / 3.0;
+      centroids[3 * i + 1] = (triangles[o + 1] + triangles[o + 4] + triangles[o + 7]) / 3.0;
+      centroids[3 * i + 2] = (triangles[o + 2] + triangles[o + 5] + triangles[o + 8]) / 3.0;
+    });
+
+    int           capacity = max(1, 2 * n - 1);
+    double[]      bounds   = new double[6 * capacity];
+    int[]         first    = new int[capacity];
+    int[]         count    = new int[capacity];
+    AtomicInteger nodes    = new AtomicInteger(1);
+
+    Builder builder = new Builder(triangles, centroids, order, bounds, first, count, nodes,
+                                  0, 0, n);
+    if (n > PARALLEL) {
+      ForkJoinPool.commonPool().invoke(builder);
+    }
+    else {
+      builder.compute();
+    }
+
+    return new BVH(triangles, order, bounds, first, count, nodes.get());
+  }
+
+
+  /**
+   * Returns the number of triangles.
+   *
+   * @return number of triangles
+   */
+  public int size() {
+    return order.length;
+  }
+
+
+  /**
+   * Returns the number of nodes.
+   *
+   * @return number of nodes
+   */
+  public int nodeCount() {
+    return nodes;
+  }
+
+
+  /**
+   * Returns the triangle coordinates referenced by this hierarchy. Call
+   * {@link #refit()} after modifying them.
+   *
+   * @return triangle coordinates
+   */
+  public double[] getTriangles() {
+    return triangles;
+  }
+
+
+  /**
+   * Returns a triangle.
+   *
+   * @param index triangle index
+   * @return triangle
+   */
+  public Triangle3D getTriangle(int index) {
+    int o = 9 * index;
+    return new Triangle3D(triangles[o], triangles[o + 1], triangles[o + 2],
+                          triangles[o + 3], triangles[o + 4], triangles[o + 5],
+                          triangles[o + 6], triangles[o + 7], triangles[o + 8]);
+  }
+
+
+  /**
+   * Returns the bounds of all triangles.
+   *
+   * @return bounding box
+   */
+  public AABB getBounds() {
+    return box(0);
+  }
+
+
+  /**
+   * Updates the bounds of the hierarchy after the triangle coordinates have
+   * changed. The structure of the hierarchy is kept, so queries remain
+   * correct, but become slower when the mesh deforms a lot; rebuild in that
+   * case.
+   */
+  public void refit() {
+    IntStream.range(0, nodes).parallel().filter((node) -> count[node] > 0).forEach((node) -> {
+      leafBounds(triangles, order, bounds, node, first[node], first[node] + count[node]);
+    });
+
+    // children are always stored after their parent
+    for (int node = nodes - 1; node >= 0; node--) {
+      if (count[node] == 0 && order.length > 0) {
+        int o = 6 * node;
+        int l = 6 * first[node];
+        int r = l + 6;
+        bounds[o] = min(bounds[l], bounds[r]);
+        bounds[o + 1] = max(bounds[l + 1], bounds[r + 1]);
+        bounds[o + 2] = min(bounds[l + 2], bounds[r + 2]);
+        bounds[o + 3] = max(bounds[l + 3], bounds[r + 3]);
+        bounds[o + 4] = min(bounds[l + 4], bounds[r + 4]);
+        bounds[o + 5] = max(bounds[l + 5], bounds[r + 5]);
+      }
+    }
+  }
+
+
+  /**
+   * Calculates the distance to the closest triangle hit by a ray.
+   *
+   * @param ray ray
+   * @return distance along the ray (in units of the ray direction), if any
+   * triangle is hit
+   */
+  public OptionalDouble intersectionDistance(Ray3D ray) {
+    double[] distance = new double[1];
+    int      hit      = closestHit(ray, Double.POSITIVE_INFINITY, distance);
+    return hit < 0 ? OptionalDouble.empty() : OptionalDouble.of(distance[0]);
+  }
+
+
+  /**
+   * Finds the closest triangle hit by a ray.
+   *
+   * @param ray         ray
+   * @param maxDistance maximum distance along the ray
+   * @param distance    receives the distance to the triangle (may be null)
+   * @return index of the triangle, or -1 if no triangle is hit
+   */
+  public int closestHit(Ray3D ray, double maxDistance, double[] distance) {
+    Vector3D o = ray.getOrigin();
+    Vector3D d = ray.getDirection();
+    return closestHit(o.getX(), o.getY(), o.getZ(), d.getX(), d.getY(), d.getZ(),
+                      maxDistance, distance);
+  }
+
+
+  /**
+   * Finds the closest triangle hit by a ray. The children of every node are
+   * visited near to far, and nodes beyond the closest hit found so far are
+   * skipped.
+   *
+   * @param ox          x-coordinate of the ray origin
+   * @param oy          y-coordinate of the ray origin
+   * @param oz          z-coordinate of the ray origin
+   * @param dx          x-component of the ray direction
+   * @param dy          y-component of the ray direction
+   * @param dz          z-component of the ray direction
+   * @param maxDistance maximum distance along the ray
+   * @param distance    receives the distance to the triangle (may be null)
+   * @return index of the triangle, or -1 if no triangle is hit
+   */
+  public int closestHit(double ox, double oy, double oz,
+                        double dx, double dy, double dz,
+                        double maxDistance, double[] distance) {
+    return traverse(ox, oy, oz, dx, dy, dz, maxDistance, distance, false);
+  }
+
+
+  /**
+   * Determines if a ray hits any triangle within a distance (for example
+   * for shadow or line of sight tests). Stops at the first hit found.
+   *
+   * @param ray         ray
+   * @param maxDistance maximum distance along the ray
+   * @return true if any triangle is hit
+   */
+  public boolean anyHit(Ray3D ray, double maxDistance) {
+    Vector3D o = ray.getOrigin();
+    Vector3D d = ray.getDirection();
+    return anyHit(o.getX(), o.getY(), o.getZ(), d.getX(), d.getY(), d.getZ(), maxDistance);
+  }
+
+
+  /**
+   * Determines if a ray hits any triangle within a distance. Stops at the
+   * first hit found.
+   *
+   * @param ox          x-coordinate of the ray origin
+   * @param oy          y-coordinate of the ray origin
+   * @param oz          z-coordinate of the ray origin
+   * @param dx          x-component of the ray direction
+   * @param dy          y-component of the ray direction
+   * @param dz          z-component of the ray direction
+   * @param maxDistance maximum distance along the ray
+   * @return true if any triangle is hit
+   */
+  public boolean anyHit(double ox, double oy, double oz,
+                        double dx, double dy, double dz,
+                        double maxDistance) {
+    return traverse(ox, oy, oz, dx, dy, dz, maxDistance, null, true) >= 0;
+  }
+
+
+  /**
+   * Traverses the hierarchy along a ray.
+   *
+   * @param ox          x-coordinate of the ray origin
+   * @param oy          y-coordinate of the ray origin
+   * @param oz          z-coordinate of the ray origin
+   * @param dx          x-component of the ray direction
+   * @param dy          y-component of the ray direction
+   * @param dz          z-component of the ray direction
+   * @param maxDistance maximum distance along the ray
+   * @param distance    receives the distance to the triangle (may be null)
+   * @param any         true to stop at the first hit
+   * @return index of the triangle, or -1 if no triangle is hit
+   */
+  private int traverse(double ox, double oy, double oz,
+                       double dx, double dy, double dz,
+                       double maxDistance, double[] distance, boolean any) {
+    if (order.length == 0) {
+      return -1;
+    }
+
+    double ix = 1.0 / dx;
+    double iy = 1.0 / dy;
+    double iz = 1.0 / dz;
+
+    double best  = maxDistance;
+    int    hit   = -1;
+    int[]  stack = new int[64];
+    int    top   = 0;
+
+    if (slab(0, ox, oy, oz, ix, iy, iz) < best) {
+      stack[top++] = 0;
+    }
+
+    while (top > 0) {
+      int node = stack[--top];
+
+      if (count[node] > 0) {
+        for (int i = first[node], end = i + count[node]; i < end; i++) {
+          int    triangle = order[i];
+          double t        = intersect(triangle, ox, oy, oz, dx, dy, dz);
+          if (t < best) {
+            best = t;
+            hit = triangle;
+            if (any) {
+              return hit;
+            }
+          }
+        }
+      }
+      else {
+        int    left  = first[node];
+        int    right = left + 1;
+        double tl    = slab(left, ox, oy, oz, ix, iy, iz);
+        double tr    = slab(right, ox, oy, oz, ix, iy, iz);
+
+        if (top + 2 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length << 1);
+        }
+        // push the far child first, so the near child is visited first
+        if (tl <= tr) {
+          if (tr < best) {
+            stack[top++] = right;
+          }
+          if (tl < best) {
+            stack[top++] = left;
+          }
+        }
+        else {
+          if (tl < best) {
+            stack[top++] = left;
+          }
+          if (tr < best) {
+            stack[top++] = right;
+          }
+        }
+      }
+    }
+
+    if (hit >= 0 && distance != null) {
+      distance[0] = best;
+    }
+    return hit;
+  }
+
+
+  /**
+   * Calculates the entry distance of a ray into the bounds of a node.
+   *
+   * @param node node
+   * @param ox   x-coordinate of the ray origin
+   * @param oy   y-coordinate of the ray origin
+   * @param oz   z-coordinate of the ray origin
+   * @param ix   inverse x-component of the ray direction
+   * @param iy   inverse y-component of the ray direction
+   * @param iz   inverse z-component of the ray direction
+   * @return entry distance (zero if the origin is inside), or infinity if
+   * the bounds are missed
+   */
+  private double slab(int node, double ox, double oy, double oz,
+                      double ix, double iy, double iz) {
+    return Ray3D.slab(bounds, 6 * node, ox, oy, oz, ix, iy, iz);
+  }
+
+
+  /**
+   * Intersects a ray with a triangle, using the algorithm by Thomas Moller
+   * (as {@link Ray3D#intersectionDistance(Vector3D, Vector3D, Vector3D,
+   * Vector3D, Vector3D, double)}).
+   *
+   * @param triangle triangle index
+   * @param ox       x-coordinate of the ray origin
+   * @param oy       y-coordinate of the ray origin
+   * @param oz       z-coordinate of the ray origin
+   * @param dx       x-component of the ray direction
+   * @param dy       y-component of the ray direction
+   * @param dz       z-component of the ray direction
+   * @return intersection distance, or infinity if the triangle is missed
+   */
+  private double intersect(int triangle,
+                           double ox, double oy, double oz,
+                           double dx, double dy, double dz) {
+    return Ray3D.intersect(triangles, 9 * triangle, ox, oy, oz, dx, dy, dz);
+  }
+
+
+  /**
+   * Receives pairs of triangles.
+   */
+  @FunctionalInterface
+  public interface PairVisitor {
+
+    /**
+     * Receives a pair of triangles.
+     *
+     * @param triangle      index of the triangle of the first hierarchy
+     * @param otherTriangle index of the triangle of the second hierarchy
+     */
+    void accept(int triangle, int otherTriangle);
+  }
+
+
+  /**
+   * Finds the intersecting triangles of this and another hierarchy (for
+   * example for collision detection). Both hierarchies are descended
+   * simultaneously, pairs of leaves with overlapping bounds are tested
+   * using {@link Triangle3D#intersects(Triangle3D)}.
+   *
+   * @param other   other hierarchy (may be this hierarchy)
+   * @param visitor receives the intersecting triangles
+   */
+  public void overlap(BVH other, PairVisitor visitor) {
+    if (order.length == 0 || other.order.length == 0) {
+      return;
+    }
+
+    int[] stack = new int[128];
+    int   top   = 0;
+    stack[top++] = 0;
+    stack[top++] = 0;
+
+    while (top > 0) {
+      int b = stack[--top];
+      int a = stack[--top];
+      if (!overlaps(bounds, 6 * a, other.bounds, 6 * b)) {
+        continue;
+      }
+
+      boolean leafA = count[a] > 0;
+      boolean leafB = other.count[b] > 0;
+      if (leafA && leafB) {
+        for (int i = first[a]; i < first[a] + count[a]; i++) {
+          int ta = order[i];
+          for (int j = other.first[b]; j < other.first[b] + other.count[b]; j++) {
+            int tb = other.order[j];
+            if (overlaps(triangleBounds(ta), 0, other.triangleBounds(tb), 0) &&
+                getTriangle(ta).intersects(other.getTriangle(tb))) {
+              visitor.accept(ta, tb);
+            }
+          }
+        }
+        continue;
+      }
+
+      if (top + 4 > stack.length) {
+        stack = Arrays.copyOf(stack, stack.length << 1);
+      }
+      // descend the larger (or only internal) node
+      if (leafB || (!leafA && volume(bounds, 6 * a) >= volume(other.bounds, 6 * b))) {
+        stack[top++] = first[a];
+        stack[top++] = b;
+        stack[top++] = first[a] + 1;
+        stack[top++] = b;
+      }
+      else {
+        stack[top++] = a;
+        stack[top++] = other.first[b];
+        stack[top++] = a;
+        stack[top++] = other.first[b] + 1;
+      }
+    }
+  }
+
+
+  /**
+   * Visits the triangles whose bounds are (partially) inside a frustrum.
+   * Nodes completely inside the frustrum are reported without testing their
+   * triangles.
+   *
+   * @param frustrum frustrum
+   * @param visitor  receives the triangle indices
+   */
+  public void select(Frustrum3D frustrum, IntConsumer visitor) {
+    if (order.length == 0) {
+      return;
+    }
+
+    int[] stack = new int[64];
+    int   top   = 0;
+    stack[top++] = 0;
+
+    while (top > 0) {
+      int          node         = stack[--top];
+      Intersection intersection = frustrum.intersects(box(node));
+      if (intersection == Intersection.OUTSIDE) {
+        continue;
+      }
+      if (intersection == Intersection.INSIDE) {
+        visit(node, visitor);
+      }
+      else if (count[node] > 0) {
+        for (int i = first[node]; i < first[node] + count[node]; i++) {
+          double[] b = triangleBounds(order[i]);
+          if (frustrum.intersects(new AABB(b[0], b[1], b[2], b[3], b[4], b[5])) !=
+              Intersection.OUTSIDE) {
+            visitor.accept(order[i]);
+          }
+        }
+      }
+      else {
+        if (top + 2 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length << 1);
+        }
+        stack[top++] = first[node];
+        stack[top++] = first[node] + 1;
+      }
+    }
+  }
+
+
+  /**
+   * Visits the triangles whose bounds intersect a box.
+   *
+   * @param box     box
+   * @param visitor receives the triangle indices
+   */
+  public void select(AABB box, IntConsumer visitor) {
+    if (order.length == 0) {
+      return;
+    }
+
+    double[] query = {box.getMinX(), box.getMaxX(), box.getMinY(), box.getMaxY(),
+                      box.getMinZ(), box.getMaxZ()};
+    int[]    stack = new int[64];
+    int      top   = 0;
+    stack[top++] = 0;
+
+    while (top > 0) {
+      int node = stack[--top];
+      if (!overlaps(bounds, 6 * node, query, 0)) {
+        continue;
+      }
+      if (count[node] > 0) {
+        for (int i = first[node]; i < first[node] + count[node]; i++) {
+          if (overlaps(triangleBounds(order[i]), 0, query, 0)) {
+            visitor.accept(order[i]);
+          }
+        }
+      }
+      else {
+        if (top + 2 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length << 1);
+        }
+        stack[top++] = first[node];
+        stack[top++] = first[node] + 1;
+      }
+    }
+  }
+
+
+  /**
+   * Visits all triangles below a node.
+   *
+   * @param node    node
+   * @param visitor receives the triangle indices
+   */
+  private void visit(int node, IntConsumer visitor) {
+    // the leaves below a node cover a contiguous range of the order
+    int start = Integer.MAX_VALUE;
+    int end   = 0;
+    int[] stack = new int[64];
+    int   top   = 0;
+    stack[top++] = node;
+    while (top > 0) {
+      int n = stack[--top];
+      if (count[n] > 0) {
+        start = min(start, first[n]);
+        end = max(end, first[n] + count[n]);
+      }
+      else {
+        if (top + 2 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length << 1);
+        }
+        stack[top++] = first[n];
+        stack[top++] = first[n] + 1;
+      }
+    }
+    for (int i = start; i < end; i++) {
+      visitor.accept(order[i]);
+    }
+  }
+
+
+  /**
+   * Returns the bounds of a node.
+   *
+   * @param node node
+   * @return bounding box
+   */
+  private AABB box(int node) {
+    int o = 6 * node;
+    return new AABB(bounds[o], bounds[o + 1], bounds[o + 2], bounds[o + 3], bounds[o + 4],
+                    bounds[o + 5]);
+  }
+
+
+  /**
+   * Calculates the bounds of a triangle.
+   *
+   * @param triangle triangle index
+   * @return bounds (min x, max x, min y, max y, min z, max z)
+   */
+  private double[] triangleBounds(int triangle) {
+    int o = 9 * triangle;
+    return new double[]{min(triangles[o], min(triangles[o + 3], triangles[o + 6])),
+                        max(triangles[o], max(triangles[o + 3], triangles[o + 6])),
+                        min(triangles[o + 1], min(triangles[o + 4], triangles[o + 7])),
+                        max(triangles[o + 1], max(triangles[o + 4], triangles[o + 7])),
+                        min(triangles[o + 2], min(triangles[o + 5], triangles[o + 8])),
+                        max(triangles[o + 2], max(triangles[o + 5], triangles[o + 8]))};
+  }
+
+
+  /**
+   * Determines if two packed boxes overlap.
+   *
+   * @param a       first boxes
+   * @param offsetA offset of the first box
+   * @param b       second boxes
+   * @param offsetB offset of the second box
+   * @return true if the boxes overlap
+   */
+  private static boolean overlaps(double[] a, int offsetA, double[] b, int offsetB) {
+    return a[offsetA] <= b[offsetB + 1] && a[offsetA + 1] >= b[offsetB] &&
+           a[offsetA + 2] <= b[offsetB + 3] && a[offsetA + 3] >= b[offsetB + 2] &&
+           a[offsetA + 4] <= b[offsetB + 5] && a[offsetA + 5] >= b[offsetB + 4];
+  }
+
+
+  /**
+   * Calculates the volume of a packed box.
+   *
+   * @param boxes  packed boxes
+   * @param offset offset of the box
+   * @return volume
+   */
+  private static double volume(double[] boxes, int offset) {
+    return (boxes[offset + 1] - boxes[offset]) *
+           (boxes[offset + 3] - boxes[offset + 2]) *
+           (boxes[offset + 5] - boxes[offset + 4]);
+  }
+
+
+  /**
+   * Calculates the bounds of a leaf.
+   *
+   * @param triangles triangle coordinates
+   * @param order     triangle order
+   * @param bounds    node bounds
+   * @param node      node
+   * @param start     first index in the order (inclusive)
+   * @param end       last index in the order (exclusive)
+   */
+  private static void leafBounds(double[] triangles, int[] order, double[] bounds, int node,
+                                 int start, int end) {
+    double minX = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    double minZ = Double.POSITIVE_INFINITY;
+    double maxZ = Double.NEGATIVE_INFINITY;
+    for (int i = start; i < end; i++) {
+      int o = 9 * order[i];
+      for (int v = o; v < o + 9; v += 3) {
+        minX = min(minX, triangles[v]);
+        maxX = max(maxX, triangles[v]);
+        minY = min(minY, triangles[v + 1]);
+        maxY = max(maxY, triangles[v + 1]);
+        minZ = min(minZ, triangles[v + 2]);
+        maxZ = max(maxZ, triangles[v + 2]);
+      }
+    }
+    int o = 6 * node;
+    bounds[o] = minX;
+    bounds[o + 1] = maxX;
+    bounds[o + 2] = minY;
+    bounds[o + 3] = maxY;
+    bounds[o + 4] = minZ;
+    bounds[o + 5] = maxZ;
+  }
+
+
+  /**
+   * Builds a subtree, forking the children of large nodes.
+   */
+  private static final class Builder extends RecursiveAction {
+
+    private final double[] triangles;
+    private final double[] centroids;
+    private final int[] order;
+    private final double[] bounds;
+    private final int[] first;
+    private final int[] count;
+    private final AtomicInteger nodes;
+    private final int node;
+    private final int start;
+    private final int end;
+
+
+    /**
+     * Constructs a builder of a subtree.
+     *
+     * @param triangles triangle coordinates
+     * @param centroids triangle centroids
+     * @param order     triangle order
+     * @param bounds    node bounds
+     * @param first     node first child or triangle
+     * @param count     node triangle count
+     * @param nodes     node counter
+     * @param node      node to build
+     * @param start     first index in the order (inclusive)
+     * @param end       last index in the order (exclusive)
+     */
+    Builder(double[] triangles, double[] centroids, int[] order, double[] bounds, int[] first,
+            int[] count, AtomicInteger nodes, int node, int start, int end) {
+      this.triangles = triangles;
+      this.centroids = centroids;
+      this.order = order;
+      this.bounds = bounds;
+      this.first = first;
+      this.count = count;
+      this.nodes = nodes;
+      this.node = node;
+      this.start = start;
+      this.end = end;
+    }
+
+
+    @Override
+    protected void compute() {
+      leafBounds(triangles, order, bounds, node, start, end);
+      int n = end - start;
+      if (n <= 1) {
+        first[node] = start;
+        count[node] = n;
+        return;
+      }
+
+      // centroid bounds
+      double[] low  = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+      double[] high = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+      for (int i = start; i < end; i++) {
+        int c = 3 * order[i];
+        for (int axis = 0; axis < 3; axis++) {
+          low[axis] = min(low[axis], centroids[c + axis]);
+          high[axis] = max(high[axis], centroids[c + axis]);
+        }
+      }
+
+      // SAH over the bins of every axis
+      double   bestCost = Double.POSITIVE_INFINITY;
+      int      bestAxis = -1;
+      int      bestBin  = 0;
+      int[]    binCount = new int[BINS];
+      double[] binBounds = new double[6 * BINS];
+      double[] rightArea = new double[BINS];
+      int[]    rightCount = new int[BINS];
+
+      for (int axis = 0; axis < 3; axis++) {
+        double extent = high[axis] - low[axis];
+        if (!(extent > 0)) {
+          continue;
+        }
+        double scale = BINS / extent;
+
+        Arrays.fill(binCount, 0);
+        for (int b = 0; b < BINS; b++) {
+          empty(binBounds, 6 * b);
+        }
+        for (int i = start; i < end; i++) {
+          int triangle = order[i];
+          int b        = bin(centroids[3 * triangle + axis], low[axis], scale);
+          binCount[b]++;
+          include(binBounds, 6 * b, triangles, 9 * triangle);
+        }
+
+        // sweep from the right
+        double[] box = new double[6];
+        empty(box, 0);
+        int    total = 0;
+        for (int b = BINS - 1; b > 0; b--) {
+          union(box, binBounds, 6 * b);
+          total += binCount[b];
+          rightArea[b] = area(box);
+          rightCount[b] = total;
+        }
+
+        // sweep from the left, split between bin b - 1 and b
+        empty(box, 0);
+        total = 0;
+        for (int b = 1; b < BINS; b++) {
+          union(box, binBounds, 6 * (b - 1));
+          total += binCount[b - 1];
+          if (total == 0 || rightCount[b] == 0) {
+            continue;
+          }
+          double cost = area(box) * total + rightArea[b] * rightCount[b];
+          if (cost < bestCost) {
+            bestCost = cost;
+            bestAxis = axis;
+            bestBin = b;
+          }
+        }
+      }
+
+      double nodeArea = area(bounds, 6 * node);
+      double splitCost = nodeArea > 0 ? TRAVERSAL_COST + bestCost / nodeArea : bestCost;
+      if (n <= MAX_LEAF && (bestAxis < 0 || splitCost >= n)) {
+        first[node] = start;
+        count[node] = n;
+        return;
+      }
+
+      // partition, or split in the middle if all centroids coincide
+      int middle;
+      if (bestAxis >= 0) {
+        double scale = BINS / (high[bestAxis] - low[bestAxis]);
+        int    i     = start;
+        int    j     = end - 1;
+        while (i <= j) {
+          if (bin(centroids[3 * order[i] + bestAxis], low[bestAxis], scale) < bestBin) {
+            i++;
+          }
+          else {
+            int t = order[i];
+            order[i] = order[j];
+            order[j--] = t;
+          }
+        }
+        middle = i;
+      }
+      else {
+        middle = (start + end) >>> 1;
+      }
+
+      int children = nodes.getAndAdd(2);
+      first[node] = children;
+      count[node] = 0;
+
+      Builder left  = new Builder(triangles, centroids, order, bounds, first, count, nodes,
+                                  children, start, middle);
+      Builder right = new Builder(triangles, centroids, order, bounds, first, count, nodes,
+                                  children + 1, middle, end);
+      if (n > PARALLEL) {
+        invokeAll(left, right);
+      }
+      else {
+        left.compute();
+        right.compute();
+      }
+    }
+
+
+    /**
+     * Returns the bin of a centroid coordinate.
+     *
+     * @param value centroid coordinate
+     * @param low   lowest centroid coordinate
+     * @param scale number of bins per unit
+     * @return bin
+     */
+    private static int bin(double value, double low, double scale) {
+      return min(BINS - 1, (int) ((value - low) * scale));
+    }
+
+
+    /**
+     * Initializes an empty packed box.
+     *
+     * @param box    packed boxes
+     * @param offset offset of the box
+     */
+    private static void empty(double[] box, int offset) {
+      for (int i = 0; i < 6; i += 2) {
+        box[offset + i] = Double.POSITIVE_INFINITY;
+        box[offset + i + 1] = Double.NEGATIVE_INFINITY;
+      }
+    }
+
+
+    /**
+     * Grows a packed box to include a triangle.
+     *
+     * @param box       packed boxes
+     * @param offset    offset of the box
+     * @param triangles triangle coordinates
+     * @param t         offset of the triangle
+     */
+    private static void include(double[] box, int offset, double[] triangles, int t) {
+      for (int v = t; v < t + 9; v += 3) {
+        for (int axis = 0; axis < 3; axis++) {
+          box[offset + 2 * axis] = min(box[offset + 2 * axis], triangles[v + axis]);
+          box[offset + 2 * axis + 1] = max(box[offset + 2 * axis + 1], triangles[v + axis]);
+        }
+      }
+    }
+
+
+    /**
+     * Grows a box to include another packed box.
+     *
+     * @param box    box (offset zero)
+     * @param boxes  packed boxes
+     * @param offset offset of the other box
+     */
+    private static void union(double[] box, double[] boxes, int offset) {
+      for (int i = 0; i < 6; i += 2) {
+        box[i] = min(box[i], boxes[offset + i]);
+        box[i + 1] = max(box[i + 1], boxes[offset + i + 1]);
+      }
+    }
+
+
+    /**
+     * Calculates the surface area (halved) of a box.
+     *
+     * @param box box (offset zero)
+     * @return area, zero for an empty box
+     */
+    private static double area(double[] box) {
+      return area(box, 0);
+    }
+
+
+    /**
+     * Calculates the surface area (halved) of a packed box.
+     *
+     * @param boxes  packed boxes
+     * @param offset offset of the box
+     * @return area, zero for an empty box
+     */
+    private static double area(double[] boxes, int offset) {
+      double x = boxes[offset + 1] - boxes[offset];
+      double y = boxes[offset + 3] - boxes[offset + 2];
+      double z = boxes[offset + 5] - boxes[offset + 4];
+      if (!(x >= 0)) {
+        return 0;
+      }
+      return x * y + y * z + z * x;
+    }
+  }
+}
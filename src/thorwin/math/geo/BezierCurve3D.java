@@ -136,39 +136,19 @@ public final class BezierCurve3D implements java.io.Serializable  {
    * @return vectors compromising the flattened curve
    */
   public Vector3D[] flatten(double threshold) {
-    return flatten(threshold * threshold, 0.0, 1.0);
+    return FlattenedCurve.flatten(this, threshold).toPoints();
   }
 
   /**
-   * Recursively flattens the curve
+   * Flattens the curve into a polyline with an arc length table, for
+   * parameterization by arc length and closest point queries.
    *
-   * @param thresholdSquared threshold (squared for performance reasons)
-   * @param t0               minimum time
-   * @param t1               maximum time
-   * @return flattened curve vectors
+   * @param tolerance maximum distance between the polyline and the curve
+   * @return flattened curve
+   * @see CurveCache
    */
-  private Vector3D[] flatten(double thresholdSquared, double t0, double t1) {
-    double tMid = (t0 + t1) * 0.5;
-    Vector3D pMid = calculate(tMid);
-    Vector3D p0 = calculate(t0);
-    Vector3D p1 = calculate(t1);
-
-    if (p0.mid(p1).subtract(pMid).lengthSquared() < thresholdSquared) {
-      return new Vector3D[]{p0, pMid, p1};
-    }
-
-    // recurse into left and right parts
-    Vector3D[] left = flatten(thresholdSquared, t0, tMid);
-    Vector3D[] right = flatten(thresholdSquared, tMid, t1);
-
-    // construct resulting array
-    Vector3D[] points = new Vector3D[left.length + right.length - 1];
-
-    // copy left, mid and right points
-    System.arraycopy(left, 0, points, 0, left.length);
-    System.arraycopy(right, 0, points, left.length - 1, right.length);
-
-    return points;
+  public FlattenedCurve toFlattenedCurve(double tolerance) {
+    return FlattenedCurve.flatten(this, tolerance);
   }
 
   /**
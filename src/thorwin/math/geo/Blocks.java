@@ -0,0 +1,89 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static java.lang.Math.min;
+
+import java.util.stream.IntStream;
+
+
+/**
+ * Runs computations over ranges of indices, in parallel blocks if the range
+ * is large (at least {@link Transform3D#PARALLEL_THRESHOLD} indices).
+ */
+final class Blocks {
+
+  /**
+   * Default number of indices per block.
+   */
+  static final int SIZE = 4096;
+
+
+  /**
+   * Private constructor to prevent instantiation.
+   */
+  private Blocks() {}
+
+
+  /**
+   * Runs a computation over a range of indices, in parallel blocks of the
+   * default size if the range is large.
+   *
+   * @param count number of indices
+   * @param range computation over a range of indices
+   */
+  static void run(int count, Range range) {
+    run(count, SIZE, range);
+  }
+
+
+  /**
+   * Runs a computation over a range of indices, in parallel blocks if the
+   * range is large.
+   *
+   * @param count number of indices
+   * @param block number of indices per block
+   * @param range computation over a range of indices
+   */
+  static void run(int count, int block, Range range) {
+    if (count >= Transform3D.PARALLEL_THRESHOLD) {
+      IntStream.range(0, (count + block - 1) / block)
+               .parallel()
+               .forEach((b) -> range.apply(b * block, min(count, (b + 1) * block)));
+    }
+    else {
+      range.apply(0, count);
+    }
+  }
+
+
+  /**
+   * Computation over a range of indices.
+   */
+  @FunctionalInterface
+  interface Range {
+
+    /**
+     * Computes a range of indices.
+     *
+     * @param from first index (inclusive)
+     * @param to   last index (exclusive)
+     */
+    void apply(int from, int to);
+  }
+}
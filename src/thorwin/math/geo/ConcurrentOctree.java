@@ -0,0 +1,662 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+
+/**
+ * A mutable, thread-safe loose octree of 3D volumes. Where {@link Octree}
+ * is persistent (every insert copies the path to the root), this octree is
+ * updated in place, which suits a stream of moving objects (animated nodes,
+ * live tracks).
+ * <p>
+ * Readers never lock: every node publishes its entries and children as
+ * immutable arrays through volatile fields, which writers replace
+ * (copy-on-write). Writers lock only the node they modify, and operations
+ * on the same entry are serialized by a per-entry lock, so unrelated
+ * updates proceed in parallel.
+ * <p>
+ * Entries are stored in the deepest node whose bounds contain the center of
+ * the entry and whose loose bounds contain the bounds of the entry. When a
+ * volume moves, {@link #update(Volume)} leaves it in place as long as its
+ * node still fits it, and otherwise moves it directly to its new node
+ * (without a delete from and insert at the root). Entries outside the
+ * bounds of the octree are kept at the root.
+ * <p>
+ * Queries are not atomic with respect to concurrent updates. A moving entry
+ * is added to its new node before it is removed from its old node, but a
+ * query that has already passed the new node and reaches the old node after
+ * the removal does not see it. A query running concurrently with a move may
+ * therefore report the moving entry twice, or miss it. Entries that do not
+ * move during the query are always reported exactly once.
+ * <p>
+ * {@link #snapshot()} publishes the current entries as a persistent
+ * {@link Octree}, {@link #pack()} as a {@link PackedOctree}.
+ */
+@SuppressWarnings("unchecked")
+public final class ConcurrentOctree<D extends Volume> {
+
+  /**
+   * Default looseness factor of the nodes.
+   */
+  private static final double DEFAULT_LOOSENESS = 1.5;
+
+  /**
+   * Default maximum number of entries of a leaf before it is split.
+   */
+  private static final int DEFAULT_MAX_ELEMENTS = 32;
+
+  /**
+   * Maximum depth of a node; deeper leaves are not split.
+   */
+  private static final int MAX_DEPTH = 16;
+
+  /**
+   * Entries of an empty node.
+   */
+  private static final Volume[] EMPTY = new Volume[0];
+
+  /**
+   * Root node.
+   */
+  private final Node root;
+
+  /**
+   * The looseness of this octree.
+   */
+  private final double looseness;
+
+  /**
+   * The maximum number of entries of a leaf before it is split.
+   */
+  private final int max;
+
+  /**
+   * Location of every entry.
+   */
+  private final ConcurrentHashMap<D, Handle> handles = new ConcurrentHashMap<>();
+
+
+  /**
+   * Constructs an empty octree.
+   *
+   * @param bounds bounding box of the root of this octree
+   */
+  public ConcurrentOctree(AABB bounds) {
+    this(bounds, DEFAULT_LOOSENESS, DEFAULT_MAX_ELEMENTS);
+  }
+
+
+  /**
+   * Constructs an empty octree.
+   *
+   * @param bounds    bounding box of the root of this octree
+   * @param looseness looseness factor to use
+   * @param max       maximum number of entries a leaf may hold before
+   *                  splitting it
+   */
+  public ConcurrentOctree(AABB bounds, double looseness, int max) {
+    this.root = new Node(bounds, bounds.grow(looseness), null, 0);
+    this.looseness = looseness;
+    this.max = max;
+  }
+
+
+  /**
+   * Returns the bounding box of this octree
+   *
+   * @return bounding box
+   */
+  public AABB getBounds() {
+    return root.bounds;
+  }
+
+
+  /**
+   * Returns the number of entries.
+   *
+   * @return number of entries
+   */
+  public int size() {
+    return handles.size();
+  }
+
+
+  /**
+   * Determines if this octree contains an entry.
+   *
+   * @param entry entry
+   * @return true if the entry is present
+   */
+  public boolean contains(D entry) {
+    return handles.containsKey(entry);
+  }
+
+
+  /**
+   * Inserts an entry.
+   *
+   * @param entry entry (not null)
+   * @return true if inserted, false if the entry is already present
+   */
+  public boolean insert(D entry) {
+    Handle handle = new Handle();
+    synchronized (handle) {
+      if (handles.putIfAbsent(entry, handle) != null) {
+        return false;
+      }
+      handle.node = place(entry, root, entry.getBounds());
+      return true;
+    }
+  }
+
+
+  /**
+   * Removes an entry. Note that this removal will not reduce the depth of
+   * the octree.
+   *
+   * @param entry entry to remove
+   * @return true if removed, false if the entry was not present
+   */
+  public boolean delete(D entry) {
+    Handle handle = handles.get(entry);
+    if (handle == null) {
+      return false;
+    }
+    synchronized (handle) {
+      if (handle.node == null) {
+        return false;
+      }
+      handle.node.remove(entry);
+      handle.node = null;
+      handles.remove(entry, handle);
+      return true;
+    }
+  }
+
+
+  /**
+   * Updates the location of an entry after its bounds have changed. If the
+   * node of the entry still fits its bounds, nothing changes. Otherwise the
+   * entry is moved to the deepest node that fits it, searching from the
+   * nearest ancestor that fits.
+   *
+   * @param entry entry that moved
+   * @return true if the entry is present
+   */
+  public boolean update(D entry) {
+    Handle handle = handles.get(entry);
+    if (handle == null) {
+      return false;
+    }
+    synchronized (handle) {
+      Node current = handle.node;
+      if (current == null) {
+        return false;
+      }
+      AABB bounds = entry.getBounds();
+      if (current.fits(bounds)) {
+        return true;
+      }
+      move(handle, entry, entry, bounds);
+      return true;
+    }
+  }
+
+
+  /**
+   * Replaces an entry by another (for example an immutable volume by its
+   * moved copy). If the node of the entry fits the replacement, the entry is
+   * replaced within the node atomically.
+   *
+   * @param entry       entry to replace
+   * @param replacement replacement
+   * @return true if replaced, false if the entry is not present or the
+   * replacement is already present
+   */
+  public boolean replace(D entry, D replacement) {
+    Handle handle = handles.get(entry);
+    if (handle == null) {
+      return false;
+    }
+    synchronized (handle) {
+      Node current = handle.node;
+      if (current == null || handles.putIfAbsent(replacement, handle) != null) {
+        return false;
+      }
+      handles.remove(entry, handle);
+
+      AABB bounds = replacement.getBounds();
+      if (current.fits(bounds)) {
+        current.replace(entry, replacement);
+      }
+      else {
+        move(handle, entry, replacement, bounds);
+      }
+      return true;
+    }
+  }
+
+
+  /**
+   * Moves an entry to the deepest node that fits its bounds. The entry is
+   * inserted in the new node before it is removed from its current node.
+   * A concurrent reader may see it in both nodes, or (if it scanned the new
+   * node before the insert and the old node after the removal) in neither.
+   *
+   * @param handle      handle of the entry (locked)
+   * @param entry       entry to remove
+   * @param replacement entry to insert
+   * @param bounds      bounds of the replacement
+   */
+  private void move(Handle handle, D entry, D replacement, AABB bounds) {
+    Node current = handle.node;
+    Node start   = current;
+    while (start.parent != null && !start.fits(bounds)) {
+      start = start.parent;
+    }
+    Node target = place(replacement, start, bounds);
+    if (target != current || entry != replacement) {
+      current.remove(entry);
+    }
+    handle.node = target;
+  }
+
+
+  /**
+   * Adds an entry to the deepest node below a start node that fits its
+   * bounds, splitting the node when it becomes full.
+   *
+   * @param entry  entry
+   * @param node   start node
+   * @param bounds bounds of the entry
+   * @return the node that received the entry
+   */
+  private Node place(D entry, Node node, AABB bounds) {
+    while (true) {
+      Node[] children = node.children;
+      Node   next     = null;
+      if (children != null) {
+        for (Node child : children) {
+          if (child.fits(bounds)) {
+            next = child;
+            break;
+          }
+        }
+      }
+      if (next != null) {
+        node = next;
+        continue;
+      }
+
+      synchronized (node) {
+        // retry if the node was split meanwhile
+        if (node.children != children) {
+          continue;
+        }
+        node.add(entry);
+        if (children == null && node.entries.length > max && node.depth < MAX_DEPTH) {
+          node.split(looseness);
+        }
+        return node;
+      }
+    }
+  }
+
+
+  /**
+   * Selects all entries intersecting the specified bounds.
+   *
+   * @param bounds bounding box to select
+   * @return list of selected entries
+   */
+  public List<D> select(AABB bounds) {
+    List<D> selected = new ArrayList<>();
+    select(bounds, selected::add);
+    return selected;
+  }
+
+
+  /**
+   * Visits all entries intersecting the specified bounds. Does not lock.
+   *
+   * @param bounds  bounding box to select
+   * @param visitor receives the selected entries
+   */
+  public void select(AABB bounds, Consumer<? super D> visitor) {
+    select(root, bounds, visitor);
+  }
+
+
+  /**
+   * Visits the entries of a node and its children intersecting the
+   * specified bounds.
+   *
+   * @param node    node
+   * @param bounds  bounding box to select
+   * @param visitor receives the selected entries
+   */
+  private static <D> void select(Node node, AABB bounds, Consumer<? super D> visitor) {
+    for (Volume entry : node.entries) {
+      if (entry.getBounds().intersects(bounds)) {
+        visitor.accept((D) entry);
+      }
+    }
+    Node[] children = node.children;
+    if (children != null) {
+      for (Node child : children) {
+        if (child.looseBounds.intersects(bounds)) {
+          select(child, bounds, visitor);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Visits all entries whose bounds are (partially) inside the frustrum.
+   * Does not lock.
+   *
+   * @param frustrum frustrum
+   * @param visitor  receives the visible entries
+   */
+  public void select(Frustrum3D frustrum, Consumer<? super D> visitor) {
+    select(root, frustrum, visitor, false);
+  }
+
+
+  /**
+   * Visits the entries of a node and its children that are visible in a
+   * frustrum.
+   *
+   * @param node     node
+   * @param frustrum frustrum
+   * @param visitor  receives the visible entries
+   * @param inside   true if the node is known to be inside the frustrum
+   */
+  private static <D> void select(Node node, Frustrum3D frustrum, Consumer<? super D> visitor,
+                                 boolean inside) {
+    for (Volume entry : node.entries) {
+      if (inside || frustrum.intersects(entry.getBounds()) != Intersection.OUTSIDE) {
+        visitor.accept((D) entry);
+      }
+    }
+    Node[] children = node.children;
+    if (children != null) {
+      for (Node child : children) {
+        Intersection intersection = inside ? Intersection.INSIDE :
+                                    frustrum.intersects(child.looseBounds);
+        if (intersection != Intersection.OUTSIDE) {
+          select(child, frustrum, visitor, intersection == Intersection.INSIDE);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Returns a persistent snapshot of this octree. Concurrent updates may or
+   * may not be part of the snapshot.
+   *
+   * @return persistent octree
+   */
+  public Octree<D> snapshot() {
+    return new Octree<D>(root.bounds, looseness, max).insert(entries());
+  }
+
+
+  /**
+   * Returns a packed snapshot of this octree, for fast queries. Concurrent
+   * updates may or may not be part of the snapshot.
+   *
+   * @return packed octree
+   */
+  public PackedOctree<D> pack() {
+    return PackedOctree.build(entries());
+  }
+
+
+  /**
+   * Collects the entries, without locking.
+   *
+   * @return entries
+   */
+  private List<D> entries() {
+    List<D> entries = new ArrayList<>(handles.size());
+    collect(root, entries);
+    return entries;
+  }
+
+
+  /**
+   * Collects the entries of a node and its children.
+   *
+   * @param node    node
+   * @param entries receives the entries
+   */
+  private static <D> void collect(Node node, List<D> entries) {
+    for (Volume entry : node.entries) {
+      entries.add((D) entry);
+    }
+    Node[] children = node.children;
+    if (children != null) {
+      for (Node child : children) {
+        collect(child, entries);
+      }
+    }
+  }
+
+
+  /**
+   * Returns the depth the octree.
+   *
+   * @return depth
+   */
+  public int depth() {
+    return depth(root);
+  }
+
+
+  /**
+   * Returns the depth of a node.
+   *
+   * @param node node
+   * @return depth
+   */
+  private static int depth(Node node) {
+    Node[] children = node.children;
+    if (children == null) {
+      return 0;
+    }
+    int depth = 0;
+    for (Node child : children) {
+      depth = Math.max(depth, depth(child));
+    }
+    return depth + 1;
+  }
+
+
+  /**
+   * Location of an entry. Operations on an entry lock its handle.
+   */
+  private static final class Handle {
+
+    /**
+     * Node holding the entry, or null once removed.
+     */
+    volatile Node node;
+  }
+
+
+  /**
+   * Octree node. Entries and children are immutable arrays, replaced under
+   * the node's lock.
+   */
+  private static final class Node {
+
+    /**
+     * The node's bounding box.
+     */
+    final AABB bounds;
+
+    /**
+     * The node's loose bounding box.
+     */
+    final AABB looseBounds;
+
+    /**
+     * Parent node, or null for the root.
+     */
+    final Node parent;
+
+    /**
+     * Depth of the node.
+     */
+    final int depth;
+
+    /**
+     * Entries of this node.
+     */
+    volatile Volume[] entries = EMPTY;
+
+    /**
+     * Children of this node, or null for a leaf.
+     */
+    volatile Node[] children;
+
+
+    /**
+     * Constructs a node.
+     *
+     * @param bounds      bounds of the node
+     * @param looseBounds loose bounds of the node
+     * @param parent      parent node
+     * @param depth       depth of the node
+     */
+    Node(AABB bounds, AABB looseBounds, Node parent, int depth) {
+      this.bounds = bounds;
+      this.looseBounds = looseBounds;
+      this.parent = parent;
+      this.depth = depth;
+    }
+
+
+    /**
+     * Determines if this node can hold an entry: its bounds contain the
+     * center of the entry, and its loose bounds contain the entry. The root
+     * holds all entries.
+     *
+     * @param box bounds of the entry
+     * @return true if the entry fits
+     */
+    boolean fits(AABB box) {
+      return parent == null ||
+             (bounds.contains(box.getCenterX(), box.getCenterY(), box.getCenterZ()) &&
+              looseBounds.contains(box));
+    }
+
+
+    /**
+     * Adds an entry (the caller holds the lock).
+     *
+     * @param entry entry
+     */
+    void add(Volume entry) {
+      Volume[] entries = java.util.Arrays.copyOf(this.entries, this.entries.length + 1);
+      entries[entries.length - 1] = entry;
+      this.entries = entries;
+    }
+
+
+    /**
+     * Removes an entry.
+     *
+     * @param entry entry
+     */
+    synchronized void remove(Volume entry) {
+      Volume[] entries = this.entries;
+      for (int i = 0; i < entries.length; i++) {
+        if (entries[i] == entry) {
+          Volume[] copy = new Volume[entries.length - 1];
+          System.arraycopy(entries, 0, copy, 0, i);
+          System.arraycopy(entries, i + 1, copy, i, copy.length - i);
+          this.entries = copy;
+          return;
+        }
+      }
+    }
+
+
+    /**
+     * Replaces an entry within this node.
+     *
+     * @param entry       entry
+     * @param replacement replacement
+     */
+    synchronized void replace(Volume entry, Volume replacement) {
+      Volume[] entries = this.entries;
+      for (int i = 0; i < entries.length; i++) {
+        if (entries[i] == entry) {
+          Volume[] copy = entries.clone();
+          copy[i] = replacement;
+          this.entries = copy;
+          return;
+        }
+      }
+    }
+
+
+    /**
+     * Creates the children of this node (the caller holds the lock). The
+     * entries stay in this node, so their locations do not change; new
+     * entries are added to the children.
+     *
+     * @param looseness looseness factor
+     */
+    void split(double looseness) {
+      double midX = bounds.getMinX() / 2 + bounds.getMaxX() / 2;
+      double midY = bounds.getMinY() / 2 + bounds.getMaxY() / 2;
+      double midZ = bounds.getMinZ() / 2 + bounds.getMaxZ() / 2;
+      double minX = bounds.getMinX();
+      double maxX = bounds.getMaxX();
+      double minY = bounds.getMinY();
+      double maxY = bounds.getMaxY();
+      double minZ = bounds.getMinZ();
+      double maxZ = bounds.getMaxZ();
+
+      AABB[] boxes = {new AABB(minX, midX, minY, midY, minZ, midZ),
+                      new AABB(minX, midX, minY, midY, midZ, maxZ),
+                      new AABB(minX, midX, midY, maxY, minZ, midZ),
+                      new AABB(minX, midX, midY, maxY, midZ, maxZ),
+                      new AABB(midX, maxX, minY, midY, minZ, midZ),
+                      new AABB(midX, maxX, minY, midY, midZ, maxZ),
+                      new AABB(midX, maxX, midY, maxY, minZ, midZ),
+                      new AABB(midX, maxX, midY, maxY, midZ, maxZ)};
+
+      Node[] children = new Node[boxes.length];
+      for (int i = 0; i < boxes.length; i++) {
+        children[i] = new Node(boxes[i], boxes[i].grow(looseness), this, depth + 1);
+      }
+      this.children = children;
+    }
+  }
+}
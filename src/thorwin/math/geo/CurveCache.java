@@ -0,0 +1,185 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Cache of flattened curves with least-recently-used eviction. Curves are
+ * keyed by their control points and tolerance, so a curve that did not
+ * change is flattened only once, for instance when the edges of a diagram
+ * are hit tested on every mouse move. The cache is thread-safe; curves are
+ * flattened outside the lock.
+ */
+public final class CurveCache {
+
+  /**
+   * Maximum number of curves.
+   */
+  private final int capacity;
+
+  /**
+   * Curves in access order.
+   */
+  private final Map<Key, FlattenedCurve> curves;
+
+
+  /**
+   * Constructs a cache.
+   *
+   * @param capacity maximum number of curves
+   */
+  public CurveCache(int capacity) {
+    super();
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity should be at least 1");
+    }
+    this.capacity = capacity;
+    this.curves = new LinkedHashMap<Key, FlattenedCurve>(16, 0.75f, true) {
+      private static final long serialVersionUID = 6145308217330468126L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, FlattenedCurve> eldest) {
+        return size() > CurveCache.this.capacity;
+      }
+    };
+  }
+
+
+  /**
+   * Returns a flattened 2-dimensional cubic curve.
+   *
+   * @param x0        x-coordinate of the start point
+   * @param y0        y-coordinate of the start point
+   * @param x1        x-coordinate of the first control point
+   * @param y1        y-coordinate of the first control point
+   * @param x2        x-coordinate of the second control point
+   * @param y2        y-coordinate of the second control point
+   * @param x3        x-coordinate of the end point
+   * @param y3        y-coordinate of the end point
+   * @param tolerance maximum distance between the polyline and the curve
+   * @return flattened curve
+   */
+  public FlattenedCurve flatten(double x0, double y0, double x1, double y1,
+                                double x2, double y2, double x3, double y3,
+                                double tolerance) {
+    return flatten(FlattenedCurve.controls(x0, y0, x1, y1, x2, y2, x3, y3), tolerance);
+  }
+
+
+  /**
+   * Returns a flattened 3-dimensional cubic curve.
+   *
+   * @param curve     curve
+   * @param tolerance maximum distance between the polyline and the curve
+   * @return flattened curve
+   */
+  public FlattenedCurve flatten(BezierCurve3D curve, double tolerance) {
+    return flatten(FlattenedCurve.controls(curve), tolerance);
+  }
+
+
+  /**
+   * Returns a flattened curve, flattening it if it is not cached.
+   *
+   * @param controls  coordinates (x, y, z) of the four control points
+   * @param tolerance maximum distance between the polyline and the curve
+   * @return flattened curve
+   */
+  private FlattenedCurve flatten(double[] controls, double tolerance) {
+    Key            key = new Key(controls, tolerance);
+    FlattenedCurve curve;
+    synchronized (curves) {
+      curve = curves.get(key);
+    }
+    if (curve == null) {
+      curve = FlattenedCurve.flatten(controls, tolerance);
+      synchronized (curves) {
+        curves.put(key, curve);
+      }
+    }
+    return curve;
+  }
+
+
+  /**
+   * Returns the number of cached curves.
+   *
+   * @return number of curves
+   */
+  public int size() {
+    synchronized (curves) {
+      return curves.size();
+    }
+  }
+
+
+  /**
+   * Removes all curves.
+   */
+  public void clear() {
+    synchronized (curves) {
+      curves.clear();
+    }
+  }
+
+
+  /**
+   * Key of a curve: control points and tolerance.
+   */
+  private static final class Key {
+
+    /**
+     * Coordinates of the control points and the tolerance.
+     */
+    private final double[] values;
+
+    /**
+     * Hash code of the values.
+     */
+    private final int hash;
+
+
+    /**
+     * Constructs a key.
+     *
+     * @param controls  coordinates of the control points
+     * @param tolerance tolerance
+     */
+    private Key(double[] controls, double tolerance) {
+      values = Arrays.copyOf(controls, controls.length + 1);
+      values[controls.length] = tolerance;
+      hash = Arrays.hashCode(values);
+    }
+
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Key && Arrays.equals(values, ((Key) obj).values);
+    }
+  }
+}
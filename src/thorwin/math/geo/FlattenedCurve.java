@@ -0,0 +1,685 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static java.lang.Math.ceil;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+
+import thorwin.math.Vector3D;
+
+
+/**
+ * Cubic B&eacute;zier curve flattened into a polyline, with an arc length
+ * table. The number of segments follows from the bound on the second
+ * derivative of the curve (Wang's formula), so the polyline deviates at most
+ * the tolerance from the curve; the points are generated at uniform
+ * parameter steps by forward differencing into primitive arrays. Besides the
+ * polyline, the curve supports conversion between parameter and arc length
+ * and closest-point queries for hit testing.
+ * <p>
+ * Flattened curves are immutable; use a {@link CurveCache} to reuse them for
+ * curves that are flattened repeatedly. 2-dimensional curves have z = 0.
+ */
+public final class FlattenedCurve {
+
+  /**
+   * Maximum number of segments. Curves that need more segments for the
+   * requested tolerance are flattened with a larger tolerance, as reported
+   * by {@link #getTolerance()}.
+   */
+  public static final int MAX_SEGMENTS = 4096;
+
+  /**
+   * Number of forward differencing steps between exactly evaluated points,
+   * which keeps the accumulated rounding error negligible.
+   */
+  private static final int STEPS = 64;
+
+  /**
+   * Number of Newton iterations refining a closest point.
+   */
+  private static final int ITERATIONS = 4;
+
+  /**
+   * Number of golden-section steps bracketing a closest point within a
+   * segment, which narrows the bracket to 1e-13 of the segment.
+   */
+  private static final int GOLDEN_STEPS = 63;
+
+  /**
+   * Inverse of the golden ratio.
+   */
+  private static final double GOLDEN = (sqrt(5) - 1) / 2;
+
+  /**
+   * Polynomial coefficients (t^3, t^2, t, 1) per coordinate (x, y, z).
+   */
+  private final double[] coefficients;
+
+  /**
+   * Tolerance of the flattening.
+   */
+  private final double tolerance;
+
+  /**
+   * X-coordinates of the points.
+   */
+  private final double[] xs;
+
+  /**
+   * Y-coordinates of the points.
+   */
+  private final double[] ys;
+
+  /**
+   * Z-coordinates of the points.
+   */
+  private final double[] zs;
+
+  /**
+   * Arc length of the polyline up to every point.
+   */
+  private final double[] lengths;
+
+  /**
+   * Bounds of the points: minimum x, y, z and maximum x, y, z.
+   */
+  private final double[] bounds;
+
+
+  /**
+   * Flattens a curve.
+   *
+   * @param controls  coordinates (x, y, z) of the four control points
+   * @param tolerance maximum distance between the polyline and the curve
+   */
+  private FlattenedCurve(double[] controls, double tolerance) {
+    super();
+    if (!(tolerance > 0)) {
+      throw new IllegalArgumentException("Tolerance should be positive");
+    }
+
+    // polynomial form and the bound on the second derivative
+    coefficients = new double[12];
+    double curvature = 0;
+    for (int i = 0; i < 3; i++) {
+      double p0 = controls[i];
+      double p1 = controls[3 + i];
+      double p2 = controls[6 + i];
+      double p3 = controls[9 + i];
+      coefficients[4 * i] = -p0 + 3 * p1 - 3 * p2 + p3;
+      coefficients[4 * i + 1] = 3 * p0 - 6 * p1 + 3 * p2;
+      coefficients[4 * i + 2] = 3 * (p1 - p0);
+      coefficients[4 * i + 3] = p0;
+    }
+    for (int j = 0; j < 2; j++) {
+      double dx = controls[3 * j] - 2 * controls[3 * j + 3] + controls[3 * j + 6];
+      double dy = controls[3 * j + 1] - 2 * controls[3 * j + 4] + controls[3 * j + 7];
+      double dz = controls[3 * j + 2] - 2 * controls[3 * j + 5] + controls[3 * j + 8];
+      curvature = max(curvature, sqrt(dx * dx + dy * dy + dz * dz));
+    }
+
+    // the chord of a segment of parameter length h deviates at most
+    // h^2 / 8 max|B''| <= 6 h^2 / 8 curvature from the curve
+    double segments = ceil(sqrt(0.75 * curvature / tolerance));
+    int    n        = (int) max(1, min(MAX_SEGMENTS, segments));
+
+    // beyond the maximum the bound of the segments is the tolerance
+    this.tolerance = segments > MAX_SEGMENTS ? 0.75 * curvature / ((double) n * n) : tolerance;
+
+    xs = new double[n + 1];
+    ys = new double[n + 1];
+    zs = new double[n + 1];
+    differences(0, n, xs);
+    differences(1, n, ys);
+    differences(2, n, zs);
+    xs[n] = controls[9];
+    ys[n] = controls[10];
+    zs[n] = controls[11];
+
+    lengths = new double[n + 1];
+    bounds = new double[]{xs[0], ys[0], zs[0], xs[0], ys[0], zs[0]};
+    for (int i = 1; i <= n; i++) {
+      double dx = xs[i] - xs[i - 1];
+      double dy = ys[i] - ys[i - 1];
+      double dz = zs[i] - zs[i - 1];
+      lengths[i] = lengths[i - 1] + sqrt(dx * dx + dy * dy + dz * dz);
+      bounds[0] = min(bounds[0], xs[i]);
+      bounds[1] = min(bounds[1], ys[i]);
+      bounds[2] = min(bounds[2], zs[i]);
+      bounds[3] = max(bounds[3], xs[i]);
+      bounds[4] = max(bounds[4], ys[i]);
+      bounds[5] = max(bounds[5], zs[i]);
+    }
+  }
+
+
+  /**
+   * Flattens a 2-dimensional cubic curve.
+   *
+   * @param x0        x-coordinate of the start point
+   * @param y0        y-coordinate of the start point
+   * @param x1        x-coordinate of the first control point
+   * @param y1        y-coordinate of the first control point
+   * @param x2        x-coordinate of the second control point
+   * @param y2        y-coordinate of the second control point
+   * @param x3        x-coordinate of the end point
+   * @param y3        y-coordinate of the end point
+   * @param tolerance maximum distance between the polyline and the curve
+   * @return flattened curve
+   */
+  public static FlattenedCurve flatten(double x0, double y0, double x1, double y1,
+                                       double x2, double y2, double x3, double y3,
+                                       double tolerance) {
+    return new FlattenedCurve(controls(x0, y0, x1, y1, x2, y2, x3, y3), tolerance);
+  }
+
+
+  /**
+   * Flattens a 3-dimensional cubic curve.
+   *
+   * @param curve     curve
+   * @param tolerance maximum distance between the polyline and the curve
+   * @return flattened curve
+   */
+  public static FlattenedCurve flatten(BezierCurve3D curve, double tolerance) {
+    return new FlattenedCurve(controls(curve), tolerance);
+  }
+
+
+  /**
+   * Flattens a curve from its control point coordinates.
+   *
+   * @param controls  coordinates (x, y, z) of the four control points
+   * @param tolerance maximum distance between the polyline and the curve
+   * @return flattened curve
+   */
+  static FlattenedCurve flatten(double[] controls, double tolerance) {
+    return new FlattenedCurve(controls, tolerance);
+  }
+
+
+  /**
+   * Returns the control point coordinates of a 2-dimensional curve.
+   *
+   * @param x0 x-coordinate of the start point
+   * @param y0 y-coordinate of the start point
+   * @param x1 x-coordinate of the first control point
+   * @param y1 y-coordinate of the first control point
+   * @param x2 x-coordinate of the second control point
+   * @param y2 y-coordinate of the second control point
+   * @param x3 x-coordinate of the end point
+   * @param y3 y-coordinate of the end point
+   * @return coordinates (x, y, z) of the four control points
+   */
+  static double[] controls(double x0, double y0, double x1, double y1,
+                           double x2, double y2, double x3, double y3) {
+    return new double[]{x0, y0, 0, x1, y1, 0, x2, y2, 0, x3, y3, 0};
+  }
+
+
+  /**
+   * Returns the control point coordinates of a 3-dimensional curve.
+   *
+   * @param curve curve
+   * @return coordinates (x, y, z) of the four control points
+   */
+  static double[] controls(BezierCurve3D curve) {
+    Vector3D[] points   = {curve.getP0(), curve.getP1(), curve.getP2(), curve.getP3()};
+    double[]   controls = new double[12];
+    for (int i = 0; i < 4; i++) {
+      controls[3 * i] = points[i].getX();
+      controls[3 * i + 1] = points[i].getY();
+      controls[3 * i + 2] = points[i].getZ();
+    }
+    return controls;
+  }
+
+
+  /**
+   * Generates one coordinate of the points at uniform parameter steps by
+   * forward differencing, restarting from an exactly evaluated point every
+   * {@link #STEPS} steps.
+   *
+   * @param axis coordinate (0 = x, 1 = y, 2 = z)
+   * @param n    number of segments
+   * @param out  receives the coordinates of points 0 to n - 1
+   */
+  private void differences(int axis, int n, double[] out) {
+    double a  = coefficients[4 * axis];
+    double b  = coefficients[4 * axis + 1];
+    double c  = coefficients[4 * axis + 2];
+    double h  = 1.0 / n;
+    double h2 = h * h;
+    double h3 = h2 * h;
+    for (int start = 0; start < n; start += STEPS) {
+      double t = start * h;
+
+      // value and forward differences of the polynomial at t
+      double f   = evaluate(axis, t);
+      double df  = a * (3 * t * t * h + 3 * t * h2 + h3) + b * (2 * t * h + h2) + c * h;
+      double ddf = a * (6 * t * h2 + 6 * h3) + 2 * b * h2;
+      double d3f = 6 * a * h3;
+
+      int end = min(n, start + STEPS);
+      for (int i = start; i < end; i++) {
+        out[i] = f;
+        f += df;
+        df += ddf;
+        ddf += d3f;
+      }
+    }
+  }
+
+
+  /**
+   * Evaluates one coordinate of the curve.
+   *
+   * @param axis coordinate (0 = x, 1 = y, 2 = z)
+   * @param t    parameter
+   * @return coordinate
+   */
+  private double evaluate(int axis, double t) {
+    int i = 4 * axis;
+    return ((coefficients[i] * t + coefficients[i + 1]) * t + coefficients[i + 2]) * t +
+           coefficients[i + 3];
+  }
+
+
+  /**
+   * Evaluates the derivative of one coordinate of the curve.
+   *
+   * @param axis coordinate (0 = x, 1 = y, 2 = z)
+   * @param t    parameter
+   * @return derivative
+   */
+  private double derivative(int axis, double t) {
+    int i = 4 * axis;
+    return (3 * coefficients[i] * t + 2 * coefficients[i + 1]) * t + coefficients[i + 2];
+  }
+
+
+  /**
+   * Evaluates the second derivative of one coordinate of the curve.
+   *
+   * @param axis coordinate (0 = x, 1 = y, 2 = z)
+   * @param t    parameter
+   * @return second derivative
+   */
+  private double secondDerivative(int axis, double t) {
+    int i = 4 * axis;
+    return 6 * coefficients[i] * t + 2 * coefficients[i + 1];
+  }
+
+
+  /**
+   * Returns the tolerance of the flattening. This is the requested
+   * tolerance, unless the curve needs more than {@link #MAX_SEGMENTS}
+   * segments for it: then it is the (larger) distance reached with the
+   * maximum number of segments.
+   *
+   * @return maximum distance between the polyline and the curve
+   */
+  public double getTolerance() {
+    return tolerance;
+  }
+
+
+  /**
+   * Returns the number of points of the polyline.
+   *
+   * @return number of points (number of segments + 1)
+   */
+  public int size() {
+    return xs.length;
+  }
+
+
+  /**
+   * Returns the x-coordinate of a point of the polyline.
+   *
+   * @param index index of the point
+   * @return x-coordinate
+   */
+  public double getX(int index) {
+    return xs[index];
+  }
+
+
+  /**
+   * Returns the y-coordinate of a point of the polyline.
+   *
+   * @param index index of the point
+   * @return y-coordinate
+   */
+  public double getY(int index) {
+    return ys[index];
+  }
+
+
+  /**
+   * Returns the z-coordinate of a point of the polyline.
+   *
+   * @param index index of the point
+   * @return z-coordinate
+   */
+  public double getZ(int index) {
+    return zs[index];
+  }
+
+
+  /**
+   * Returns the parameter of a point of the polyline.
+   *
+   * @param index index of the point
+   * @return parameter in range 0.0 - 1.0
+   */
+  public double getParameter(int index) {
+    return (double) index / (xs.length - 1);
+  }
+
+
+  /**
+   * Returns the points of the polyline.
+   *
+   * @return points
+   */
+  public Vector3D[] toPoints() {
+    Vector3D[] points = new Vector3D[xs.length];
+    for (int i = 0; i < points.length; i++) {
+      points[i] = new Vector3D(xs[i], ys[i], zs[i]);
+    }
+    return points;
+  }
+
+
+  /**
+   * Copies the x- and y-coordinates of the polyline, interleaved, as used
+   * by 2-dimensional polylines.
+   *
+   * @param out    receives x0, y0, x1, y1, ...
+   * @param offset position of the first coordinate
+   */
+  public void copyXY(double[] out, int offset) {
+    for (int i = 0; i < xs.length; i++) {
+      out[offset + 2 * i] = xs[i];
+      out[offset + 2 * i + 1] = ys[i];
+    }
+  }
+
+
+  /**
+   * Evaluates the curve (not the polyline).
+   *
+   * @param t   parameter in range 0.0 - 1.0
+   * @param out receives the coordinates x, y and z
+   */
+  public void evaluate(double t, double[] out) {
+    out[0] = evaluate(0, t);
+    out[1] = evaluate(1, t);
+    out[2] = evaluate(2, t);
+  }
+
+
+  /**
+   * Returns the arc length of the polyline.
+   *
+   * @return length
+   */
+  public double length() {
+    return lengths[lengths.length - 1];
+  }
+
+
+  /**
+   * Returns the arc length of the polyline up to a parameter.
+   *
+   * @param t parameter in range 0.0 - 1.0
+   * @return arc length
+   */
+  public double arcLength(double t) {
+    int    n        = xs.length - 1;
+    double position = max(0, min(n, t * n));
+    int    index    = min(n - 1, (int) position);
+    return lengths[index] + (position - index) * (lengths[index + 1] - lengths[index]);
+  }
+
+
+  /**
+   * Returns the parameter at an arc length of the polyline, for instance to
+   * place points at equal distances along the curve.
+   *
+   * @param length arc length in range 0.0 - {@link #length()}
+   * @return parameter in range 0.0 - 1.0
+   */
+  public double parameter(double length) {
+    int n = xs.length - 1;
+    if (!(length > 0)) {
+      return 0;
+    }
+    if (length >= lengths[n]) {
+      return 1;
+    }
+
+    // last point with an arc length not larger than the length
+    int low  = 0;
+    int high = n;
+    while (high - low > 1) {
+      int middle = (low + high) >>> 1;
+      if (lengths[middle] <= length) {
+        low = middle;
+      }
+      else {
+        high = middle;
+      }
+    }
+    double segment = lengths[low + 1] - lengths[low];
+    double fraction = segment > 0 ? (length - lengths[low]) / segment : 0;
+    return (low + fraction) / n;
+  }
+
+
+  /**
+   * Finds the parameter of the point of the curve closest to a point. The
+   * curve is within the tolerance of the polyline, so the closest point lies
+   * on a segment whose distance to the point is at most twice the tolerance
+   * more than that of the closest segment. The parameter is bracketed on the
+   * curve by a golden-section search over each of these segments, and
+   * refined by Newton iterations.
+   *
+   * @param x x-coordinate of the point
+   * @param y y-coordinate of the point
+   * @param z z-coordinate of the point
+   * @return parameter in range 0.0 - 1.0
+   */
+  public double closest(double x, double y, double z) {
+    int      n         = xs.length - 1;
+    double[] distances = new double[n];
+    double   nearest   = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < n; i++) {
+      distances[i] = sqrt(segmentDistanceSquared(i, x, y, z));
+      nearest = min(nearest, distances[i]);
+    }
+
+    // golden-section search within the candidate segments
+    double limit = nearest + 2 * tolerance;
+    double t     = 0;
+    double best  = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < n; i++) {
+      if (distances[i] > limit) {
+        continue;
+      }
+      double low  = (double) i / n;
+      double high = (double) (i + 1) / n;
+      double a    = high - GOLDEN * (high - low);
+      double b    = low + GOLDEN * (high - low);
+      double fa   = distanceSquared(a, x, y, z);
+      double fb   = distanceSquared(b, x, y, z);
+      for (int step = 0; step < GOLDEN_STEPS; step++) {
+        if (fa <= fb) {
+          high = b;
+          b = a;
+          fb = fa;
+          a = high - GOLDEN * (high - low);
+          fa = distanceSquared(a, x, y, z);
+        }
+        else {
+          low = a;
+          a = b;
+          fa = fb;
+          b = low + GOLDEN * (high - low);
+          fb = distanceSquared(b, x, y, z);
+        }
+      }
+      double candidate = fa <= fb ? a : b;
+      double distance  = min(fa, fb);
+      double start     = distanceSquared((double) i / n, x, y, z);
+      double end       = distanceSquared((double) (i + 1) / n, x, y, z);
+      if (start < distance) {
+        candidate = (double) i / n;
+        distance = start;
+      }
+      if (end < distance) {
+        candidate = (double) (i + 1) / n;
+        distance = end;
+      }
+      if (distance < best) {
+        best = distance;
+        t = candidate;
+      }
+    }
+
+    // minimize the squared distance on the curve
+    for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+      double gradient  = 0;
+      double curvature = 0;
+      for (int axis = 0; axis < 3; axis++) {
+        double e  = evaluate(axis, t) - (axis == 0 ? x : axis == 1 ? y : z);
+        double d1 = derivative(axis, t);
+        gradient += e * d1;
+        curvature += d1 * d1 + e * secondDerivative(axis, t);
+      }
+      if (!(curvature > 0)) {
+        break;
+      }
+      double next     = max(0, min(1, t - gradient / curvature));
+      double distance = distanceSquared(next, x, y, z);
+      if (!(distance < best)) {
+        break;
+      }
+      t = next;
+      best = distance;
+    }
+    return t;
+  }
+
+
+  /**
+   * Calculates the distance between a point and the curve.
+   *
+   * @param x x-coordinate of the point
+   * @param y y-coordinate of the point
+   * @param z z-coordinate of the point
+   * @return distance
+   */
+  public double distance(double x, double y, double z) {
+    return sqrt(distanceSquared(closest(x, y, z), x, y, z));
+  }
+
+
+  /**
+   * Tests if a point is within a distance of the curve, for hit testing.
+   * Points outside the bounds of the polyline or clearly near or far from
+   * the polyline are decided without refining on the curve.
+   *
+   * @param x      x-coordinate of the point
+   * @param y      y-coordinate of the point
+   * @param z      z-coordinate of the point
+   * @param radius distance
+   * @return true if within the distance
+   */
+  public boolean isWithin(double x, double y, double z, double radius) {
+    double margin = radius + tolerance;
+    if (x < bounds[0] - margin || y < bounds[1] - margin || z < bounds[2] - margin ||
+        x > bounds[3] + margin || y > bounds[4] + margin || z > bounds[5] + margin) {
+      return false;
+    }
+
+    // the curve is within the tolerance of the polyline
+    double near = radius - tolerance;
+    double far  = radius + tolerance;
+    double best = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < xs.length - 1; i++) {
+      double distance = segmentDistanceSquared(i, x, y, z);
+      if (near >= 0 && distance <= near * near) {
+        return true;
+      }
+      best = min(best, distance);
+    }
+    if (best > far * far) {
+      return false;
+    }
+    return distance(x, y, z) <= radius;
+  }
+
+
+  /**
+   * Calculates the squared distance between a segment of the polyline and a
+   * point.
+   *
+   * @param i index of the segment
+   * @param x x-coordinate of the point
+   * @param y y-coordinate of the point
+   * @param z z-coordinate of the point
+   * @return squared distance
+   */
+  private double segmentDistanceSquared(int i, double x, double y, double z) {
+    double dx      = xs[i + 1] - xs[i];
+    double dy      = ys[i + 1] - ys[i];
+    double dz      = zs[i + 1] - zs[i];
+    double squared = dx * dx + dy * dy + dz * dz;
+    double u       = 0;
+    if (squared > 0) {
+      u = max(0, min(1, ((x - xs[i]) * dx + (y - ys[i]) * dy + (z - zs[i]) * dz) / squared));
+    }
+    double ex = xs[i] + u * dx - x;
+    double ey = ys[i] + u * dy - y;
+    double ez = zs[i] + u * dz - z;
+    return ex * ex + ey * ey + ez * ez;
+  }
+
+
+  /**
+   * Calculates the squared distance between a point of the curve and a
+   * point.
+   *
+   * @param t parameter of the point of the curve
+   * @param x x-coordinate of the point
+   * @param y y-coordinate of the point
+   * @param z z-coordinate of the point
+   * @return squared distance
+   */
+  private double distanceSquared(double t, double x, double y, double z) {
+    double dx = evaluate(0, t) - x;
+    double dy = evaluate(1, t) - y;
+    double dz = evaluate(2, t) - z;
+    return dx * dx + dy * dy + dz * dz;
+  }
+}
@@ -67,6 +67,12 @@ public final class Frustrum3D implements Serializable {
    */
   private final Plane3D[] planes;
 
+  /**
+   * The planes as coefficients (nx, ny, nz, d) with unit normals, such that
+   * n . p + d is the signed distance of p to the plane.
+   */
+  private final double[] coefficients;
+
   /**
    * The far rectangle.
    */
@@ -151,6 +157,16 @@ public final class Frustrum3D implements Serializable {
 
     planes = new Plane3D[]{topPlane, bottomPlane, leftPlane, rightPlane,
                            nearPlane, farPlane};
+
+    coefficients = new double[4 * planes.length];
+    for (int i = 0; i < planes.length; i++) {
+      Vector3D normal = planes[i].getNormal();
+      double   scale  = 1 / normal.length();
+      coefficients[4 * i] = normal.getX() * scale;
+      coefficients[4 * i + 1] = normal.getY() * scale;
+      coefficients[4 * i + 2] = normal.getZ() * scale;
+      coefficients[4 * i + 3] = -normal.multiply(planes[i].getOrigin()) * scale;
+    }
   }
 
   /**
@@ -321,10 +337,24 @@ public final class Frustrum3D implements Serializable {
    * @return intersection
    */
   public Intersection intersects(Vector3D origin, double radius) {
+    return intersects(origin.getX(), origin.getY(), origin.getZ(), radius);
+  }
+
+  /**
+   * Determine the intersection of a sphere with this frustrum.
+   *
+   * @param x      x-coordinate of the origin of the sphere
+   * @param y      y-coordinate of the origin of the sphere
+   * @param z      z-coordinate of the origin of the sphere
+   * @param radius radius of the sphere
+   * @return intersection
+   */
+  public Intersection intersects(double x, double y, double z, double radius) {
 
     Intersection intersection = Intersection.INSIDE;
-    for (Plane3D plane : planes) {
-      double distance = plane.distance(origin);
+    for (int i = 0; i < coefficients.length; i += 4) {
+      double distance = coefficients[i] * x + coefficients[i + 1] * y +
+                        coefficients[i + 2] * z + coefficients[i + 3];
       if (distance < -radius) {
         return Intersection.OUTSIDE;
       } else if (distance < radius) {
@@ -342,34 +372,58 @@ public final class Frustrum3D implements Serializable {
    * @return intersection with the bounding box
    */
   public Intersection intersects(AABB bounds) {
-    Intersection intersection = Intersection.INSIDE;
+    return intersects(bounds.getMinX(), bounds.getMaxX(), bounds.getMinY(),
+                      bounds.getMaxY(), bounds.getMinZ(), bounds.getMaxZ());
+  }
 
-    for (Plane3D plane : planes) {
-      Vector3D normal = plane.getNormal();
+  /**
+   * Determine the intersection with an axis-aligned-bounding-box, given by
+   * its ranges (in the order of the {@link AABB} constructor). Per plane,
+   * the corner furthest along the normal decides if the box is outside, and
+   * the opposite corner if it is inside.
+   *
+   * @param minX minimum x-coordinate
+   * @param maxX maximum x-coordinate
+   * @param minY minimum y-coordinate
+   * @param maxY maximum y-coordinate
+   * @param minZ minimum z-coordinate
+   * @param maxZ maximum z-coordinate
+   * @return intersection with the bounding box
+   */
+  public Intersection intersects(double minX, double maxX, double minY,
+                                 double maxY, double minZ, double maxZ) {
+    Intersection intersection = Intersection.INSIDE;
 
-      Vector3D p = new Vector3D(normal.getX() >= 0 ? bounds.getMaxX() :
-                                bounds.getMinX(),
-                                normal.getY() >= 0 ? bounds.getMaxY() :
-                                bounds.getMinY(),
-                                normal.getZ() >= 0 ? bounds.getMaxZ() :
-                                bounds.getMinZ());
+    for (int i = 0; i < coefficients.length; i += 4) {
+      double nx = coefficients[i];
+      double ny = coefficients[i + 1];
+      double nz = coefficients[i + 2];
+      double d  = coefficients[i + 3];
 
-      if (plane.distance(p) < 0) {
+      double positive = nx * (nx >= 0 ? maxX : minX) + ny * (ny >= 0 ? maxY : minY) +
+                        nz * (nz >= 0 ? maxZ : minZ) + d;
+      if (positive < 0) {
         return Intersection.OUTSIDE;
       }
 
-      Vector3D n = new Vector3D(normal.getX() >= 0 ? bounds.getMinX() :
-                                bounds.getMaxX(),
-                                normal.getY() >= 0 ? bounds.getMinY() :
-                                bounds.getMaxY(),
-                                normal.getZ() >= 0 ? bounds.getMinZ() :
-                                bounds.getMaxZ());
-
-      if (plane.distance(n) < 0) {
+      double negative = nx * (nx >= 0 ? minX : maxX) + ny * (ny >= 0 ? minY : maxY) +
+                        nz * (nz >= 0 ? minZ : maxZ) + d;
+      if (negative < 0) {
         intersection = Intersection.INTERSECT;
       }
     }
     return intersection;
   }
 
+  /**
+   * Returns the planes as coefficients (nx, ny, nz, d) with unit normals,
+   * such that n . p + d is the signed distance of p to the plane (positive
+   * inside). The array should not be modified.
+   *
+   * @return coefficients of the top, bottom, left, right, near and far plane
+   */
+  double[] getCoefficients() {
+    return coefficients;
+  }
+
 }
@@ -0,0 +1,370 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.tan;
+
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import thorwin.math.Vector3D;
+
+
+/**
+ * Culls packed bounding volumes against a {@link Frustrum3D} and estimates
+ * their size on screen for level-of-detail selection. Bounding spheres are
+ * packed as x, y, z, radius (4 elements per sphere) and bounding boxes as
+ * minimum and maximum x, y and z (6 elements per box, in the order of the
+ * {@link AABB} constructor).
+ * <p>
+ * The six planes are kept in locals and every volume is tested against all
+ * of them without early exits, so the loops are free of data dependent
+ * branches except for storing the result. Large batches are culled in
+ * parallel blocks; the visible indices are reported in increasing order.
+ * <p>
+ * The screen size of a volume is the diameter of its bounding sphere
+ * projected at its depth, as a fraction of the height of the viewport
+ * (multiply by the viewport height for pixels). Volumes at or before the
+ * near plane are projected at the near plane.
+ */
+public final class FrustrumCuller {
+
+  /**
+   * Number of volumes per block when culling in parallel.
+   */
+  private static final int BLOCK = 4096;
+
+  /**
+   * Frustrum.
+   */
+  private final Frustrum3D frustrum;
+
+  /**
+   * Planes as coefficients (nx, ny, nz, d).
+   */
+  private final double[] planes;
+
+  /**
+   * Absolute values of the plane normals (same layout as the planes).
+   */
+  private final double[] bounds;
+
+  /**
+   * X-coordinate of the viewing direction.
+   */
+  private final double dx;
+
+  /**
+   * Y-coordinate of the viewing direction.
+   */
+  private final double dy;
+
+  /**
+   * Z-coordinate of the viewing direction.
+   */
+  private final double dz;
+
+  /**
+   * Depth of the origin of the coordinate system.
+   */
+  private final double depth0;
+
+  /**
+   * Reciprocal of the half height of the viewport at unit depth.
+   */
+  private final double scale;
+
+
+  /**
+   * Constructs a culler.
+   *
+   * @param frustrum frustrum
+   */
+  public FrustrumCuller(Frustrum3D frustrum) {
+    super();
+    this.frustrum = frustrum;
+    this.planes = frustrum.getCoefficients();
+    this.bounds = new double[planes.length];
+    for (int i = 0; i < planes.length; i++) {
+      bounds[i] = i % 4 == 3 ? 0 : abs(planes[i]);
+    }
+    Vector3D direction = frustrum.getDirection();
+    Vector3D origin    = frustrum.getOrigin();
+    this.dx = direction.getX();
+    this.dy = direction.getY();
+    this.dz = direction.getZ();
+    this.depth0 = -direction.multiply(origin);
+    this.scale = 1 / tan(frustrum.getFieldOfView() * 0.5);
+  }
+
+
+  /**
+   * Returns the frustrum.
+   *
+   * @return frustrum
+   */
+  public Frustrum3D getFrustrum() {
+    return frustrum;
+  }
+
+
+  /**
+   * Culls bounding spheres.
+   *
+   * @param spheres packed spheres (x, y, z, radius)
+   * @param visible receives the indices of the visible spheres, in
+   *                increasing order (length at least the number of spheres)
+   * @param sizes   receives the screen sizes of the visible spheres, at the
+   *                same positions as their indices (may be null)
+   * @return number of visible spheres
+   */
+  public int cullSpheres(double[] spheres, int[] visible, double[] sizes) {
+    if (spheres.length % 4 != 0) {
+      throw new IllegalArgumentException("Array length should be a multiple of 4");
+    }
+    return cull(spheres.length / 4, visible, sizes,
+                (from, to, offset) -> spheres(spheres, from, to, visible, sizes, offset));
+  }
+
+
+  /**
+   * Culls bounding boxes.
+   *
+   * @param boxes   packed boxes (minimum x, maximum x, ..., maximum z)
+   * @param visible receives the indices of the visible boxes, in increasing
+   *                order (length at least the number of boxes)
+   * @param sizes   receives the screen sizes of the visible boxes, at the
+   *                same positions as their indices (may be null)
+   * @return number of visible boxes
+   */
+  public int cullBoxes(double[] boxes, int[] visible, double[] sizes) {
+    if (boxes.length % 6 != 0) {
+      throw new IllegalArgumentException("Array length should be a multiple of 6");
+    }
+    return cull(boxes.length / 6, visible, sizes,
+                (from, to, offset) -> boxes(boxes, from, to, visible, sizes, offset));
+  }
+
+
+  /**
+   * Calculates the screen size of a bounding sphere.
+   *
+   * @param x      x-coordinate of the center
+   * @param y      y-coordinate of the center
+   * @param z      z-coordinate of the center
+   * @param radius radius
+   * @return size as fraction of the viewport height
+   */
+  public double size(double x, double y, double z, double radius) {
+    double depth = max(frustrum.getNearPlaneDistance(), dx * x + dy * y + dz * z + depth0);
+    return radius * scale / depth;
+  }
+
+
+  /**
+   * Selects a level of detail by screen size.
+   *
+   * @param size       screen size
+   * @param thresholds minimum screen sizes of the levels of detail, from the
+   *                   most detailed level (0) down, decreasing
+   * @return level of detail, or the number of thresholds if the size is
+   * below all of them
+   */
+  public static int lod(double size, double... thresholds) {
+    int level = 0;
+    while (level < thresholds.length && size < thresholds[level]) {
+      level++;
+    }
+    return level;
+  }
+
+
+  /**
+   * Visits the volumes of an octree that are visible, traversing the tree
+   * hierarchically: nodes completely outside the frustrum are skipped and
+   * the volumes of nodes completely inside are visited without testing.
+   *
+   * @param octree  octree
+   * @param visitor receives the visible volumes
+   * @param <D>     type of the volumes
+   */
+  public <D extends Volume> void select(PackedOctree<D> octree, Consumer<? super D> visitor) {
+    octree.select(frustrum, visitor);
+  }
+
+
+  /**
+   * Visits the volumes of an octree that are visible, traversing the tree
+   * hierarchically.
+   *
+   * @param octree  octree
+   * @param visitor receives the visible volumes
+   * @param <D>     type of the volumes
+   */
+  public <D extends Volume> void select(Octree<D> octree, Consumer<? super D> visitor) {
+    octree.select(frustrum, visitor);
+  }
+
+
+  /**
+   * Culls a number of volumes, in parallel blocks if the number is large.
+   * Every block writes its results at its own offset, after which the
+   * results are moved together.
+   *
+   * @param count   number of volumes
+   * @param visible receives the indices of the visible volumes
+   * @param sizes   receives the screen sizes (may be null)
+   * @param kernel  culls a range of volumes
+   * @return number of visible volumes
+   */
+  private static int cull(int count, int[] visible, double[] sizes, Kernel kernel) {
+    if (visible.length < count || (sizes != null && sizes.length < count)) {
+      throw new IllegalArgumentException("Output arrays should be at least as long as the number of volumes");
+    }
+    if (count < Transform3D.PARALLEL_THRESHOLD) {
+      return kernel.apply(0, count, 0);
+    }
+
+    int   blocks = (count + BLOCK - 1) / BLOCK;
+    int[] counts = new int[blocks];
+    IntStream.range(0, blocks).parallel().forEach((block) -> {
+      int from = block * BLOCK;
+      counts[block] = kernel.apply(from, min(count, from + BLOCK), from);
+    });
+
+    int total = counts[0];
+    for (int block = 1; block < blocks; block++) {
+      System.arraycopy(visible, block * BLOCK, visible, total, counts[block]);
+      if (sizes != null) {
+        System.arraycopy(sizes, block * BLOCK, sizes, total, counts[block]);
+      }
+      total += counts[block];
+    }
+    return total;
+  }
+
+
+  /**
+   * Culls a range of spheres.
+   *
+   * @param spheres packed spheres
+   * @param from    first sphere (inclusive)
+   * @param to      last sphere (exclusive)
+   * @param visible receives the indices of the visible spheres
+   * @param sizes   receives the screen sizes (may be null)
+   * @param offset  position of the first result
+   * @return number of visible spheres
+   */
+  private int spheres(double[] spheres, int from, int to, int[] visible, double[] sizes,
+                      int offset) {
+    double ax = planes[0], ay = planes[1], az = planes[2], ad = planes[3];
+    double bx = planes[4], by = planes[5], bz = planes[6], bd = planes[7];
+    double cx = planes[8], cy = planes[9], cz = planes[10], cd = planes[11];
+    double ex = planes[12], ey = planes[13], ez = planes[14], ed = planes[15];
+    double fx = planes[16], fy = planes[17], fz = planes[18], fd = planes[19];
+    double gx = planes[20], gy = planes[21], gz = planes[22], gd = planes[23];
+
+    int count = offset;
+    for (int i = from; i < to; i++) {
+      double x = spheres[4 * i];
+      double y = spheres[4 * i + 1];
+      double z = spheres[4 * i + 2];
+      double r = -spheres[4 * i + 3];
+
+      // outside if the center is further than the radius behind any plane
+      boolean outside = (ax * x + ay * y + az * z + ad < r) |
+                        (bx * x + by * y + bz * z + bd < r) |
+                        (cx * x + cy * y + cz * z + cd < r) |
+                        (ex * x + ey * y + ez * z + ed < r) |
+                        (fx * x + fy * y + fz * z + fd < r) |
+                        (gx * x + gy * y + gz * z + gd < r);
+      if (!outside) {
+        if (sizes != null) {
+          sizes[count] = size(x, y, z, -r);
+        }
+        visible[count++] = i;
+      }
+    }
+    return count - offset;
+  }
+
+
+  /**
+   * Culls a range of boxes.
+   *
+   * @param boxes   packed boxes
+   * @param from    first box (inclusive)
+   * @param to      last box (exclusive)
+   * @param visible receives the indices of the visible boxes
+   * @param sizes   receives the screen sizes (may be null)
+   * @param offset  position of the first result
+   * @return number of visible boxes
+   */
+  private int boxes(double[] boxes, int from, int to, int[] visible, double[] sizes,
+                    int offset) {
+    double[] planes = this.planes;
+    double[] bounds = this.bounds;
+    int      count  = offset;
+    for (int i = from; i < to; i++) {
+      // half extents and center of the box
+      double hx = 0.5 * (boxes[6 * i + 1] - boxes[6 * i]);
+      double hy = 0.5 * (boxes[6 * i + 3] - boxes[6 * i + 2]);
+      double hz = 0.5 * (boxes[6 * i + 5] - boxes[6 * i + 4]);
+      double x  = boxes[6 * i] + hx;
+      double y  = boxes[6 * i + 2] + hy;
+      double z  = boxes[6 * i + 4] + hz;
+
+      // outside if the corner furthest along the normal of any plane is
+      // behind it: the center distance plus the projected half extents
+      boolean outside = false;
+      for (int p = 0; p < 24; p += 4) {
+        outside |= planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] +
+                   bounds[p] * hx + bounds[p + 1] * hy + bounds[p + 2] * hz < 0;
+      }
+      if (!outside) {
+        if (sizes != null) {
+          sizes[count] = size(x, y, z, sqrt(hx * hx + hy * hy + hz * hz));
+        }
+        visible[count++] = i;
+      }
+    }
+    return count - offset;
+  }
+
+
+  /**
+   * Culling of a range of volumes.
+   */
+  @FunctionalInterface
+  private interface Kernel {
+
+    /**
+     * Culls a range of volumes.
+     *
+     * @param from   first volume (inclusive)
+     * @param to     last volume (exclusive)
+     * @param offset position of the first result
+     * @return number of visible volumes
+     */
+    int apply(int from, int to, int offset);
+  }
+}
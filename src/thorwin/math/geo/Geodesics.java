@@ -0,0 +1,754 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.asin;
+import static java.lang.Math.atan2;
+import static java.lang.Math.cos;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.pow;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.tan;
+import static thorwin.math.geo.Geodetic.WGS84_EARTH_RADIUS;
+import static thorwin.math.geo.Geodetic.WGS84_FIRST_ECCENTRICITY_SQ;
+import static thorwin.math.geo.Geodetic.WGS84_SEMI_MAJOR_AXIS;
+import static thorwin.math.geo.Geodetic.WGS84_SEMI_MINOR_AXIS;
+
+import java.util.stream.IntStream;
+
+
+/**
+ * Batch geodesic computations over coordinate arrays: the array variants of
+ * {@link Geodetic#haversine}, {@link Geodetic#vincenty},
+ * {@link Geodetic#forwardAzimuth}, {@link Geodetic#destination} and
+ * {@link Geodetic#toECEF}. Latitudes, longitudes and angles are in radians,
+ * distances in meters. Large batches are computed in parallel.
+ * <p>
+ * Distance matrices and nearest station joins are computed from the unit
+ * vectors of the locations: the chord between two unit vectors gives the
+ * central angle without any trigonometric function per pair, so the
+ * trigonometric functions of every location are calculated only once. The
+ * <i>tolerance</i> variants replace the final arc tangent by a series
+ * wherever its truncation error is guaranteed to be below the tolerance
+ * (relative to the exact spherical distance). Note that the sphere itself
+ * deviates up to about 0.5% from the WGS84 spheroid; use {@code vincenty} for
+ * accurate distances.
+ */
+public final class Geodesics {
+
+  /**
+   * Precision of the Vincenty iteration.
+   */
+  private static final double VINCENTY_PRECISION = 1.0e-12;
+
+  /**
+   * Maximum number of Vincenty iterations.
+   */
+  private static final int VINCENTY_ITERATIONS = 100;
+
+  /**
+   * Coefficient of the first omitted (ninth order) term of the series of the
+   * central angle in the chord: 2 asin(c/2) = c + c^3/24 + 3c^5/640 +
+   * 5c^7/7168 + 35c^9/294912 + ...
+   */
+  private static final double SERIES_REMAINDER = 35.0 / 294912.0;
+
+  /**
+   * Relative error of a distance calculated from the chord between unit
+   * vectors, times the chord: the differences of the coordinates cancel
+   * for nearby locations.
+   */
+  private static final double CHORD_ERROR = 4.0e-16;
+
+  /**
+   * Smallest tolerance used to decide on the chord between unit vectors
+   * (tolerance 0).
+   */
+  private static final double CHORD_TOLERANCE = 1.0e-15;
+
+
+  /**
+   * Private constructor to prevent instantiation.
+   */
+  private Geodesics() {}
+
+
+  /**
+   * Calculates the great-circle distances from one location to many
+   * locations using the Haversine formula.
+   *
+   * @param lat0      latitude of the first location
+   * @param lon0      longitude of the first location
+   * @param lats      latitudes of the other locations
+   * @param lons      longitudes of the other locations
+   * @param distances receives the distances
+   */
+  public static void haversine(double lat0, double lon0, double[] lats, double[] lons,
+                               double[] distances) {
+    haversine(lat0, lon0, lats, lons, distances, 0.0);
+  }
+
+
+  /**
+   * Calculates the great-circle distances from one location to many
+   * locations, with a relative error below a tolerance. The trigonometric
+   * functions of the first location are calculated once.
+   *
+   * @param lat0      latitude of the first location
+   * @param lon0      longitude of the first location
+   * @param lats      latitudes of the other locations
+   * @param lons      longitudes of the other locations
+   * @param distances receives the distances
+   * @param tolerance maximum relative error (0 for exact)
+   */
+  public static void haversine(double lat0, double lon0, double[] lats, double[] lons,
+                               double[] distances, double tolerance) {
+    check(lats, lons, distances);
+    double cosLat0 = cos(lat0);
+    double limit   = seriesLimit(tolerance);
+
+    Blocks.run(lats.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        double sinDLat = sin(0.5 * (lats[i] - lat0));
+        double sinDLon = sin(0.5 * (lons[i] - lon0));
+        double h       = sinDLat * sinDLat + cosLat0 * cos(lats[i]) * sinDLon * sinDLon;
+        distances[i] = WGS84_EARTH_RADIUS * angle(4 * h, limit);
+      }
+    });
+  }
+
+
+  /**
+   * Calculates the great-circle distances between pairs of locations using
+   * the Haversine formula.
+   *
+   * @param lats0     latitudes of the first locations
+   * @param lons0     longitudes of the first locations
+   * @param lats1     latitudes of the second locations
+   * @param lons1     longitudes of the second locations
+   * @param distances receives the distances
+   */
+  public static void haversine(double[] lats0, double[] lons0, double[] lats1, double[] lons1,
+                               double[] distances) {
+    check(lats0, lons0, distances);
+    check(lats1, lons1, distances);
+
+    Blocks.run(lats0.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        distances[i] = Geodetic.haversine(lats0[i], lons0[i], lats1[i], lons1[i]);
+      }
+    });
+  }
+
+
+  /**
+   * Calculates the matrix of great-circle distances between two sets of
+   * locations using the Haversine formula.
+   *
+   * @param lats0 latitudes of the first locations (rows)
+   * @param lons0 longitudes of the first locations
+   * @param lats1 latitudes of the second locations (columns)
+   * @param lons1 longitudes of the second locations
+   * @return distances, row by row
+   */
+  public static double[] distances(double[] lats0, double[] lons0, double[] lats1,
+                                   double[] lons1) {
+    return distances(lats0, lons0, lats1, lons1, 0.0);
+  }
+
+
+  /**
+   * Calculates the matrix of great-circle distances between two sets of
+   * locations, with a relative error below a tolerance. The unit vectors of
+   * all locations are calculated once, after which every distance takes a
+   * square root and, outside the range of the series, an arc tangent. The
+   * chord between unit vectors loses precision for nearby locations; if it
+   * is too short for the tolerance, it is recalculated with the Haversine
+   * formula.
+   *
+   * @param lats0     latitudes of the first locations (rows)
+   * @param lons0     longitudes of the first locations
+   * @param lats1     latitudes of the second locations (columns)
+   * @param lons1     longitudes of the second locations
+   * @param tolerance maximum relative error (0 for exact)
+   * @return distances, row by row
+   */
+  public static double[] distances(double[] lats0, double[] lons0, double[] lats1,
+                                   double[] lons1, double tolerance) {
+    double[] units0    = units(lats0, lons0);
+    double[] units1    = units(lats1, lons1);
+    int      rows      = lats0.length;
+    int      columns   = lats1.length;
+    double[] distances = new double[rows * columns];
+    double   limit     = seriesLimit(tolerance);
+    double   shortest  = chordLimit(tolerance);
+    double[] cos0      = cosines(lats0);
+    double[] cos1      = cosines(lats1);
+
+    IntStream stream = IntStream.range(0, rows);
+    if ((long) rows * columns >= Transform3D.PARALLEL_THRESHOLD) {
+      stream = stream.parallel();
+    }
+    stream.forEach((row) -> {
+      double x      = units0[3 * row];
+      double y      = units0[3 * row + 1];
+      double z      = units0[3 * row + 2];
+      int    offset = row * columns;
+      for (int column = 0; column < columns; column++) {
+        double dx     = units1[3 * column] - x;
+        double dy     = units1[3 * column + 1] - y;
+        double dz     = units1[3 * column + 2] - z;
+        double chord2 = dx * dx + dy * dy + dz * dz;
+        if (chord2 < shortest) {
+          chord2 = chord2(lats0[row], lons0[row], cos0[row],
+                          lats1[column], lons1[column], cos1[column]);
+        }
+        distances[offset + column] = WGS84_EARTH_RADIUS * angle(chord2, limit);
+      }
+    });
+    return distances;
+  }
+
+
+  /**
+   * Finds the nearest station of every location (great-circle distance). The
+   * nearest station has the shortest chord, so the search itself needs no
+   * trigonometric functions.
+   *
+   * @param lats        latitudes of the locations
+   * @param lons        longitudes of the locations
+   * @param stationLats latitudes of the stations
+   * @param stationLons longitudes of the stations
+   * @param indices     receives the indices of the nearest stations (-1 if
+   *                    there are no stations)
+   * @param distances   receives the distances to the nearest stations (may
+   *                    be null)
+   */
+  public static void nearest(double[] lats, double[] lons, double[] stationLats,
+                             double[] stationLons, int[] indices, double[] distances) {
+    check(lats, lons, distances == null ? lats : distances);
+    if (indices.length != lats.length) {
+      throw new IllegalArgumentException("Array lengths should be equal");
+    }
+    double[] stations = units(stationLats, stationLons);
+    int      count    = stationLats.length;
+
+    Blocks.run(lats.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        double cosLat = cos(lats[i]);
+        double x      = cosLat * cos(lons[i]);
+        double y      = cosLat * sin(lons[i]);
+        double z      = sin(lats[i]);
+        double best   = Double.POSITIVE_INFINITY;
+        int    index  = -1;
+        for (int station = 0; station < count; station++) {
+          double dx     = stations[3 * station] - x;
+          double dy     = stations[3 * station + 1] - y;
+          double dz     = stations[3 * station + 2] - z;
+          double chord2 = dx * dx + dy * dy + dz * dz;
+          if (chord2 < best) {
+            best = chord2;
+            index = station;
+          }
+        }
+        indices[i] = index;
+        if (distances != null && index >= 0 && best < chordLimit(0.0)) {
+          best = chord2(lats[i], lons[i], cosLat,
+                        stationLats[index], stationLons[index], cos(stationLats[index]));
+        }
+        if (distances != null) {
+          distances[i] = index < 0 ? Double.NaN : WGS84_EARTH_RADIUS * angle(best, 0.0);
+        }
+      }
+    });
+  }
+
+
+  /**
+   * Calculates the distances and azimuths from one location to many
+   * locations on the WGS84 spheroid using Vincenty's formulae. The reduced
+   * latitude of the first location is calculated once, and every pair stops
+   * iterating as soon as it has converged. Pairs that do not converge
+   * (nearly antipodal locations) yield NaN.
+   *
+   * @param lat0      latitude of the first location
+   * @param lon0      longitude of the first location
+   * @param lats      latitudes of the other locations
+   * @param lons      longitudes of the other locations
+   * @param distances receives the distances
+   * @param forward   receives the forward azimuths (may be null)
+   * @param reverse   receives the reverse azimuths (may be null)
+   */
+  public static void vincenty(double lat0, double lon0, double[] lats, double[] lons,
+                              double[] distances, double[] forward, double[] reverse) {
+    check(lats, lons, distances);
+    double[] u0 = new double[2];
+    reduced(lat0, u0);
+
+    Blocks.run(lats.length, (from, to) -> {
+      double[] u      = new double[2];
+      double[] result = new double[3];
+      for (int i = from; i < to; i++) {
+        reduced(lats[i], u);
+        vincenty(u0[0], u0[1], u[0], u[1], lons[i] - lon0, result);
+        store(result, i, distances, forward, reverse);
+      }
+    });
+  }
+
+
+  /**
+   * Calculates the distances and azimuths between pairs of locations on the
+   * WGS84 spheroid using Vincenty's formulae. Pairs that do not converge
+   * (nearly antipodal locations) yield NaN.
+   *
+   * @param lats0     latitudes of the first locations
+   * @param lons0     longitudes of the first locations
+   * @param lats1     latitudes of the second locations
+   * @param lons1     longitudes of the second locations
+   * @param distances receives the distances
+   * @param forward   receives the forward azimuths (may be null)
+   * @param reverse   receives the reverse azimuths (may be null)
+   */
+  public static void vincenty(double[] lats0, double[] lons0, double[] lats1, double[] lons1,
+                              double[] distances, double[] forward, double[] reverse) {
+    check(lats0, lons0, distances);
+    check(lats1, lons1, distances);
+
+    Blocks.run(lats0.length, (from, to) -> {
+      double[] u0     = new double[2];
+      double[] u1     = new double[2];
+      double[] result = new double[3];
+      for (int i = from; i < to; i++) {
+        reduced(lats0[i], u0);
+        reduced(lats1[i], u1);
+        vincenty(u0[0], u0[1], u1[0], u1[1], lons1[i] - lons0[i], result);
+        store(result, i, distances, forward, reverse);
+      }
+    });
+  }
+
+
+  /**
+   * Calculates the forward azimuths from one location to many locations.
+   *
+   * @param lat0     latitude of the first location
+   * @param lon0     longitude of the first location
+   * @param lats     latitudes of the other locations
+   * @param lons     longitudes of the other locations
+   * @param azimuths receives the forward azimuths in the range [-PI,PI]
+   */
+  public static void forwardAzimuth(double lat0, double lon0, double[] lats, double[] lons,
+                                    double[] azimuths) {
+    check(lats, lons, azimuths);
+    double sinLat0 = sin(lat0);
+    double cosLat0 = cos(lat0);
+
+    Blocks.run(lats.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        double dlon    = lons[i] - lon0;
+        double cosLat1 = cos(lats[i]);
+        azimuths[i] = atan2(sin(dlon) * cosLat1,
+                            cosLat0 * sin(lats[i]) - sinLat0 * cosLat1 * cos(dlon));
+      }
+    });
+  }
+
+
+  /**
+   * Calculates the forward azimuths between pairs of locations.
+   *
+   * @param lats0    latitudes of the first locations
+   * @param lons0    longitudes of the first locations
+   * @param lats1    latitudes of the second locations
+   * @param lons1    longitudes of the second locations
+   * @param azimuths receives the forward azimuths in the range [-PI,PI]
+   */
+  public static void forwardAzimuth(double[] lats0, double[] lons0, double[] lats1,
+                                    double[] lons1, double[] azimuths) {
+    check(lats0, lons0, azimuths);
+    check(lats1, lons1, azimuths);
+
+    Blocks.run(lats0.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        azimuths[i] = Geodetic.forwardAzimuth(lats0[i], lons0[i], lats1[i], lons1[i]);
+      }
+    });
+  }
+
+
+  /**
+   * Calculates the destinations when travelling from one location along many
+   * bearings and distances (on a sphere).
+   *
+   * @param lat       latitude of the start
+   * @param lon       longitude of the start
+   * @param bearings  bearings
+   * @param distances distances in meters
+   * @param outLats   receives the latitudes of the destinations
+   * @param outLons   receives the longitudes of the destinations, in the
+   *                  range [-PI,PI]
+   */
+  public static void destination(double lat, double lon, double[] bearings, double[] distances,
+                                 double[] outLats, double[] outLons) {
+    check(bearings, distances, outLats);
+    check(bearings, distances, outLons);
+    double sinLat = sin(lat);
+    double cosLat = cos(lat);
+
+    Blocks.run(bearings.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        destination(sinLat, cosLat, lon, bearings[i], distances[i], i, outLats, outLons);
+      }
+    });
+  }
+
+
+  /**
+   * Calculates the destinations when travelling from many locations along
+   * bearings over distances (on a sphere).
+   *
+   * @param lats      latitudes of the starts
+   * @param lons      longitudes of the starts
+   * @param bearings  bearings
+   * @param distances distances in meters
+   * @param outLats   receives the latitudes of the destinations
+   * @param outLons   receives the longitudes of the destinations, in the
+   *                  range [-PI,PI]
+   */
+  public static void destination(double[] lats, double[] lons, double[] bearings,
+                                 double[] distances, double[] outLats, double[] outLons) {
+    check(lats, lons, bearings);
+    check(lats, distances, outLats);
+    check(lats, outLons, outLons);
+
+    Blocks.run(lats.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        destination(sin(lats[i]), cos(lats[i]), lons[i], bearings[i], distances[i], i,
+                    outLats, outLons);
+      }
+    });
+  }
+
+
+  /**
+   * Converts geodetic coordinates to Earth-Centered-Earth-Fixed coordinates.
+   *
+   * @param lats      latitudes
+   * @param lons      longitudes
+   * @param altitudes altitudes in meters (may be null, NaN is taken as 0)
+   * @param xs        receives the x-coordinates
+   * @param ys        receives the y-coordinates
+   * @param zs        receives the z-coordinates
+   */
+  public static void toECEF(double[] lats, double[] lons, double[] altitudes, double[] xs,
+                            double[] ys, double[] zs) {
+    check(lats, lons, altitudes == null ? lats : altitudes);
+    check(lats, xs, ys);
+    check(lats, zs, zs);
+    double a  = WGS84_SEMI_MAJOR_AXIS;
+    double e2 = WGS84_FIRST_ECCENTRICITY_SQ;
+
+    Blocks.run(lats.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        double h      = altitudes == null || Double.isNaN(altitudes[i]) ? 0 : altitudes[i];
+        double cosLat = cos(lats[i]);
+        double sinLat = sin(lats[i]);
+        double n      = a / sqrt(1 - (e2 * sinLat * sinLat));
+        xs[i] = (n + h) * cosLat * cos(lons[i]);
+        ys[i] = (n + h) * cosLat * sin(lons[i]);
+        zs[i] = ((n * (1 - e2)) + h) * sinLat;
+      }
+    });
+  }
+
+
+  /**
+   * Calculates a destination on a sphere.
+   *
+   * @param sinLat   sine of the latitude of the start
+   * @param cosLat   cosine of the latitude of the start
+   * @param lon      longitude of the start
+   * @param bearing  bearing
+   * @param distance distance in meters
+   * @param i        index of the destination
+   * @param outLats  receives the latitude of the destination
+   * @param outLons  receives the longitude of the destination
+   */
+  private static void destination(double sinLat, double cosLat, double lon, double bearing,
+                                  double distance, int i, double[] outLats, double[] outLons) {
+    double dr      = distance / WGS84_EARTH_RADIUS;
+    double sinDr   = sin(dr);
+    double cosDr   = cos(dr);
+    double sinLat1 = sinLat * cosDr + cosLat * sinDr * cos(bearing);
+    outLats[i] = asin(sinLat1);
+    outLons[i] = normalize(lon + atan2(sin(bearing) * sinDr * cosLat, cosDr - sinLat * sinLat1));
+  }
+
+
+  /**
+   * Calculates the central angle from the squared chord between two unit
+   * vectors. Below the series limit the arc tangent is replaced by the
+   * series of the angle up to the seventh order.
+   *
+   * @param chord2 squared chord
+   * @param limit  squared chord below which the series is used
+   * @return central angle in radians
+   */
+  private static double angle(double chord2, double limit) {
+    if (chord2 < limit) {
+      return sqrt(chord2) *
+             (1 + chord2 * (1.0 / 24 + chord2 * (3.0 / 640 + chord2 * (5.0 / 7168))));
+    }
+    double h = 0.25 * min(4.0, chord2);
+    return 2 * atan2(sqrt(h), sqrt(1 - h));
+  }
+
+
+  /**
+   * Calculates the squared chord below which the series of the central angle
+   * has a relative error below a tolerance. The terms of the series decrease
+   * by at least a factor c^2/4, so the relative remainder is at most
+   * 35/294912 c^8 / (1 - c^2/4), which is at most 4/3 of the first omitted
+   * term for c^2 &lt;= 1.
+   *
+   * @param tolerance maximum relative error
+   * @return squared chord limit (0 if the series should not be used)
+   */
+  private static double seriesLimit(double tolerance) {
+    if (!(tolerance > 0)) {
+      return 0.0;
+    }
+    return min(1.0, pow(0.75 * tolerance / SERIES_REMAINDER, 0.25));
+  }
+
+
+  /**
+   * Calculates the squared chord below which the chord between unit vectors
+   * has a relative error above a tolerance.
+   *
+   * @param tolerance maximum relative error
+   * @return squared chord limit
+   */
+  private static double chordLimit(double tolerance) {
+    double chord = CHORD_ERROR / max(tolerance, CHORD_TOLERANCE);
+    return chord * chord;
+  }
+
+
+  /**
+   * Calculates the squared chord between two locations on the unit sphere
+   * with the Haversine formula, which is accurate for nearby locations.
+   *
+   * @param lat0    latitude of the first location
+   * @param lon0    longitude of the first location
+   * @param cosLat0 cosine of the latitude of the first location
+   * @param lat1    latitude of the second location
+   * @param lon1    longitude of the second location
+   * @param cosLat1 cosine of the latitude of the second location
+   * @return squared chord
+   */
+  private static double chord2(double lat0, double lon0, double cosLat0,
+                               double lat1, double lon1, double cosLat1) {
+    double sinDLat = sin(0.5 * (lat1 - lat0));
+    double sinDLon = sin(0.5 * (lon1 - lon0));
+    return 4 * (sinDLat * sinDLat + cosLat0 * cosLat1 * sinDLon * sinDLon);
+  }
+
+
+  /**
+   * Calculates the cosines of latitudes.
+   *
+   * @param lats latitudes
+   * @return cosines
+   */
+  private static double[] cosines(double[] lats) {
+    double[] cosines = new double[lats.length];
+    Blocks.run(lats.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        cosines[i] = cos(lats[i]);
+      }
+    });
+    return cosines;
+  }
+
+
+  /**
+   * Calculates the unit vectors of locations.
+   *
+   * @param lats latitudes
+   * @param lons longitudes
+   * @return unit vectors (x, y and z per location)
+   */
+  private static double[] units(double[] lats, double[] lons) {
+    check(lats, lons, lons);
+    double[] units = new double[3 * lats.length];
+
+    Blocks.run(lats.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        double cosLat = cos(lats[i]);
+        units[3 * i] = cosLat * cos(lons[i]);
+        units[3 * i + 1] = cosLat * sin(lons[i]);
+        units[3 * i + 2] = sin(lats[i]);
+      }
+    });
+    return units;
+  }
+
+
+  /**
+   * Calculates the sine and cosine of the reduced latitude on the WGS84
+   * spheroid from tan(U) = (1 - f) tan(latitude), without calculating the
+   * reduced latitude itself.
+   *
+   * @param latitude latitude
+   * @param u        receives the sine and cosine
+   */
+  private static void reduced(double latitude, double[] u) {
+    double tanU = (WGS84_SEMI_MINOR_AXIS / WGS84_SEMI_MAJOR_AXIS) * tan(latitude);
+    double cosU = 1 / sqrt(1 + tanU * tanU);
+    u[0] = tanU * cosU;
+    u[1] = cosU;
+  }
+
+
+  /**
+   * Vincenty's inverse formula on the WGS84 spheroid, as
+   * {@link Spheroid3D#vincenty}, without throwing if the iteration does not
+   * converge.
+   *
+   * @param sinU1  sine of the reduced latitude of the first location
+   * @param cosU1  cosine of the reduced latitude of the first location
+   * @param sinU2  sine of the reduced latitude of the second location
+   * @param cosU2  cosine of the reduced latitude of the second location
+   * @param l      difference in longitude
+   * @param result receives the distance, forward and reverse azimuth (NaN if
+   *               not converged)
+   */
+  private static void vincenty(double sinU1, double cosU1, double sinU2, double cosU2, double l,
+                               double[] result) {
+    double a = WGS84_SEMI_MAJOR_AXIS;
+    double c = WGS84_SEMI_MINOR_AXIS;
+    double f = 1 - c / a;
+
+    double lambda = l;
+    for (int i = 0; i < VINCENTY_ITERATIONS; i++) {
+      double sinLambda = sin(lambda);
+      double cosLambda = cos(lambda);
+      double t         = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+      double sinSigma  = sqrt(cosU2 * sinLambda * cosU2 * sinLambda + t * t);
+
+      if (sinSigma == 0) {
+        result[0] = 0;
+        result[1] = Double.NaN;
+        result[2] = Double.NaN;
+        return;
+      }
+
+      double cosSigma   = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+      double sigma      = atan2(sinSigma, cosSigma);
+      double sinAlpha   = cosU1 * cosU2 * sinLambda / sinSigma;
+      double cosSqAlpha = 1 - sinAlpha * sinAlpha;
+      double cos2SigmaM = cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha;
+      if (Double.isNaN(cos2SigmaM)) {
+        cos2SigmaM = 0;
+      }
+
+      double d              = f / 16 * cosSqAlpha * (4 + f * (4 - 3 * cosSqAlpha));
+      double previousLambda = lambda;
+      lambda = l + (1 - d) * f * sinAlpha *
+                   (sigma + d * sinSigma *
+                            (cos2SigmaM + d * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+
+      if (abs(lambda - previousLambda) < VINCENTY_PRECISION) {
+        double uSq        = cosSqAlpha * (a * a - c * c) / (c * c);
+        double la         = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
+        double lb         = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
+        double deltaSigma = lb * sinSigma *
+                            (cos2SigmaM + lb / 4 *
+                                          (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM) -
+                                           lb / 6 * cos2SigmaM *
+                                           (-3 + 4 * sinSigma * sinSigma) *
+                                           (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+
+        result[0] = c * la * (sigma - deltaSigma);
+        result[1] = atan2(cosU2 * sinLambda, t);
+        result[2] = atan2(cosU1 * sinLambda, -sinU1 * cosU2 + cosU1 * sinU2 * cosLambda);
+        return;
+      }
+    }
+
+    result[0] = Double.NaN;
+    result[1] = Double.NaN;
+    result[2] = Double.NaN;
+  }
+
+
+  /**
+   * Stores a Vincenty result.
+   *
+   * @param result    distance, forward and reverse azimuth
+   * @param i         index
+   * @param distances receives the distance
+   * @param forward   receives the forward azimuth (may be null)
+   * @param reverse   receives the reverse azimuth (may be null)
+   */
+  private static void store(double[] result, int i, double[] distances, double[] forward,
+                            double[] reverse) {
+    distances[i] = result[0];
+    if (forward != null) {
+      forward[i] = result[1];
+    }
+    if (reverse != null) {
+      reverse[i] = result[2];
+    }
+  }
+
+
+  /**
+   * Normalizes a longitude to the range [-PI,PI].
+   *
+   * @param longitude longitude
+   * @return normalized longitude
+   */
+  static double normalize(double longitude) {
+    if (longitude > PI || longitude < -PI) {
+      return longitude - 2 * PI * floor((longitude + PI) / (2 * PI));
+    }
+    return longitude;
+  }
+
+
+  /**
+   * Checks whether three arrays have equal lengths.
+   *
+   * @param a first array
+   * @param b second array
+   * @param c third array
+   */
+  private static void check(double[] a, double[] b, double[] c) {
+    if (a.length != b.length || a.length != c.length) {
+      throw new IllegalArgumentException("Array lengths should be equal");
+    }
+  }
+}
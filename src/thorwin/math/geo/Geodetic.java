@@ -376,9 +376,9 @@ public final class Geodetic implements Serializable {
     double cosDr  = cos(dr);
     double lat1   = asin((sinLat * cosDr) + (cosLat * sinDr * cos(bearing)));
     double lon1 = lon + atan2(sin(bearing) * sinDr * cosLat,
-                              cosDr - (sinLat * sin(lat)));
+                              cosDr - (sinLat * sin(lat1)));
 
-    return new Geodetic(lat1, lon1);
+    return new Geodetic(lat1, Geodesics.normalize(lon1));
   }
 
 
@@ -282,16 +282,23 @@ public final class GeodeticBounds implements java.io.Serializable {
    * @return true if this bounds share any area with the other
    */
   public boolean intersects(GeodeticBounds other) {
-    Rectangle2D r1 = new Rectangle2D(west,
-                                     south,
-                                     getLongitudeExtent(),
-                                     getLatitudeExtent());
-    Rectangle2D r2 = new Rectangle2D(other.west,
-                                     other.south,
-                                     other.getLongitudeExtent(),
-                                     other.getLatitudeExtent());
-
-    return r1.intersects(r2);
+    if (south > other.north || north < other.south) {
+      return false;
+    }
+
+    // bounds that both wrap around the anti-meridian share it
+    if (isOverAntiMeridian() && other.isOverAntiMeridian()) {
+      return true;
+    }
+
+    // wrapping bounds cover [west, PI] and [-PI, east]
+    if (isOverAntiMeridian()) {
+      return other.east >= west || other.west <= east;
+    }
+    if (other.isOverAntiMeridian()) {
+      return east >= other.west || west <= other.east;
+    }
+    return west <= other.east && east >= other.west;
   }
 
   /**
@@ -0,0 +1,668 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.asin;
+import static java.lang.Math.atan2;
+import static java.lang.Math.cos;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sin;
+import static thorwin.math.geo.Geodetic.WGS84_EARTH_RADIUS;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+
+/**
+ * Hierarchical 64-bit cell identifiers of the geodetic quadtree. The cells of
+ * a level are the bounds of {@code WORLD.subdivide(level)}: a cell at level
+ * <i>L</i> is identified by its index <i>p</i> in that array, encoded as
+ * <i>(2p + 1) &lt;&lt; 2(30 - L)</i>. The trailing one bit marks the level,
+ * so the identifiers of all descendants of a cell form the contiguous range
+ * {@code [rangeMin(cell), rangeMax(cell)]}, and sorting points by their leaf
+ * cell (level 30, about 2 cm) groups them by every coarser cell as well.
+ * <p>
+ * Coverings approximate a region by a sorted set of disjoint cells, to be
+ * used as range scans over a sorted cell index (see {@link GeodeticIndex}).
+ * Regions over the anti-meridian are supported.
+ */
+public final class GeodeticCell {
+
+  /**
+   * Maximum (leaf) level.
+   */
+  public static final int MAX_LEVEL = 30;
+
+  /**
+   * Number of significant bits of a cell identifier.
+   */
+  static final int BITS = 2 * MAX_LEVEL + 1;
+
+  /**
+   * Bounds of the root cell: the world.
+   */
+  public static final GeodeticBounds WORLD = new GeodeticBounds(-PI / 2, -PI, PI / 2, PI);
+
+  /**
+   * Identifier of the root cell.
+   */
+  public static final long ROOT = 1L << (2 * MAX_LEVEL);
+
+  /**
+   * Relation of a region that does not share any area with a cell.
+   */
+  static final int DISJOINT = 0;
+
+  /**
+   * Relation of a region that shares area with a cell.
+   */
+  static final int INTERSECTS = 1;
+
+  /**
+   * Relation of a region that contains a cell.
+   */
+  static final int CONTAINS = 2;
+
+  /**
+   * Margin (in radians) of the relations of spherical caps, to account for
+   * rounding errors.
+   */
+  private static final double MARGIN = 1.0e-7;
+
+
+  /**
+   * Private constructor to prevent instantiation.
+   */
+  private GeodeticCell() {}
+
+
+  /**
+   * Returns the cell that contains a location. Locations on the border of
+   * two cells belong to the north-eastern cell.
+   *
+   * @param latitude  latitude in radians
+   * @param longitude longitude in radians
+   * @param level     level of the cell
+   * @return cell identifier
+   */
+  public static long cell(double latitude, double longitude, int level) {
+    checkLevel(level);
+    if (!Geodetic.isValid(latitude, longitude)) {
+      throw new IllegalArgumentException("Not a valid geodetic coordinate");
+    }
+
+    double south    = -PI / 2;
+    double west     = -PI;
+    double north    = PI / 2;
+    double east     = PI;
+    long   position = 0;
+    for (int i = 0; i < level; i++) {
+      double clat = south / 2.0 + north / 2.0;
+      double clon = west / 2.0 + east / 2.0;
+      int    quadrant;
+      if (latitude < clat) {
+        north = clat;
+        if (longitude < clon) {
+          east = clon;
+          quadrant = 0;
+        }
+        else {
+          west = clon;
+          quadrant = 3;
+        }
+      }
+      else {
+        south = clat;
+        if (longitude < clon) {
+          east = clon;
+          quadrant = 1;
+        }
+        else {
+          west = clon;
+          quadrant = 2;
+        }
+      }
+      position = (position << 2) | quadrant;
+    }
+    return ((position << 1) | 1) << (2 * (MAX_LEVEL - level));
+  }
+
+
+  /**
+   * Returns the cell that contains a location.
+   *
+   * @param location location
+   * @param level    level of the cell
+   * @return cell identifier
+   */
+  public static long cell(Geodetic location, int level) {
+    return cell(location.getLatitude(), location.getLongitude(), level);
+  }
+
+
+  /**
+   * Returns the cell with an index in {@code WORLD.subdivide(level)}.
+   *
+   * @param level    level of the cell
+   * @param position index of the cell
+   * @return cell identifier
+   */
+  public static long fromPosition(int level, long position) {
+    checkLevel(level);
+    if (position < 0 || position >= (1L << (2 * level))) {
+      throw new IllegalArgumentException("Invalid cell position");
+    }
+    return ((position << 1) | 1) << (2 * (MAX_LEVEL - level));
+  }
+
+
+  /**
+   * Returns the index of a cell in {@code WORLD.subdivide(level(cell))}.
+   *
+   * @param cell cell identifier
+   * @return index of the cell
+   */
+  public static long position(long cell) {
+    return cell >>> (2 * (MAX_LEVEL - level(cell)) + 1);
+  }
+
+
+  /**
+   * Tests whether a value is a valid cell identifier.
+   *
+   * @param cell value to test
+   * @return true if valid
+   */
+  public static boolean isValid(long cell) {
+    return cell > 0 && cell < (1L << BITS) && (Long.numberOfTrailingZeros(cell) & 1) == 0;
+  }
+
+
+  /**
+   * Returns the level of a cell.
+   *
+   * @param cell cell identifier
+   * @return level
+   */
+  public static int level(long cell) {
+    return MAX_LEVEL - (Long.numberOfTrailingZeros(cell) >> 1);
+  }
+
+
+  /**
+   * Returns the parent of a cell.
+   *
+   * @param cell cell identifier (not the root)
+   * @return parent cell identifier
+   */
+  public static long parent(long cell) {
+    return parent(cell, level(cell) - 1);
+  }
+
+
+  /**
+   * Returns the ancestor of a cell at a level.
+   *
+   * @param cell  cell identifier
+   * @param level level of the ancestor (at most the level of the cell)
+   * @return ancestor cell identifier
+   */
+  public static long parent(long cell, int level) {
+    if (level < 0 || level > level(cell)) {
+      throw new IllegalArgumentException("Invalid level");
+    }
+    long lsb = 1L << (2 * (MAX_LEVEL - level));
+    return (cell & -lsb) | lsb;
+  }
+
+
+  /**
+   * Returns a child of a cell. The children are ordered as the parts of
+   * {@link GeodeticBounds#subdivide()}: south-west, north-west, north-east
+   * and south-east.
+   *
+   * @param cell     cell identifier (not a leaf)
+   * @param quadrant index of the child (0-3)
+   * @return child cell identifier
+   */
+  public static long child(long cell, int quadrant) {
+    if (level(cell) >= MAX_LEVEL) {
+      throw new IllegalArgumentException("Leaf cells have no children");
+    }
+    if (quadrant < 0 || quadrant > 3) {
+      throw new IllegalArgumentException("Invalid quadrant");
+    }
+    long lsb = Long.lowestOneBit(cell);
+    return cell - lsb + (lsb >>> 2) * (2 * quadrant + 1);
+  }
+
+
+  /**
+   * Returns the smallest leaf cell identifier contained by a cell.
+   *
+   * @param cell cell identifier
+   * @return smallest descendant leaf identifier
+   */
+  public static long rangeMin(long cell) {
+    return cell - (Long.lowestOneBit(cell) - 1);
+  }
+
+
+  /**
+   * Returns the largest leaf cell identifier contained by a cell.
+   *
+   * @param cell cell identifier
+   * @return largest descendant leaf identifier
+   */
+  public static long rangeMax(long cell) {
+    return cell + (Long.lowestOneBit(cell) - 1);
+  }
+
+
+  /**
+   * Tests whether a cell contains another cell (or is equal to it).
+   *
+   * @param cell  cell identifier
+   * @param other other cell identifier
+   * @return true if the cell contains the other cell
+   */
+  public static boolean contains(long cell, long other) {
+    return other >= rangeMin(cell) && other <= rangeMax(cell);
+  }
+
+
+  /**
+   * Returns the bounds of a cell. These are equal to
+   * {@code WORLD.subdivide(level(cell))[position(cell)]}.
+   *
+   * @param cell cell identifier
+   * @return bounds of the cell
+   */
+  public static GeodeticBounds getBounds(long cell) {
+    double[] bounds = new double[4];
+    bounds(cell, bounds);
+    return new GeodeticBounds(bounds[0], bounds[1], bounds[2], bounds[3]);
+  }
+
+
+  /**
+   * Computes a covering of geodetic bounds, with at most 8 cells.
+   *
+   * @param bounds bounds to cover (may be over the anti-meridian)
+   * @return sorted, disjoint cell identifiers
+   */
+  public static long[] covering(GeodeticBounds bounds) {
+    return covering(bounds, 8, MAX_LEVEL);
+  }
+
+
+  /**
+   * Computes a covering of geodetic bounds.
+   *
+   * @param bounds   bounds to cover (may be over the anti-meridian)
+   * @param maxCells maximum number of cells (at least 1)
+   * @param maxLevel maximum level of the cells
+   * @return sorted, disjoint cell identifiers
+   */
+  public static long[] covering(GeodeticBounds bounds, int maxCells, int maxLevel) {
+    return covering(box(bounds), maxCells, maxLevel);
+  }
+
+
+  /**
+   * Computes a covering of the locations within a great-circle distance of
+   * a location, with at most 8 cells.
+   *
+   * @param latitude  latitude of the center in radians
+   * @param longitude longitude of the center in radians
+   * @param radius    distance in meters
+   * @return sorted, disjoint cell identifiers
+   */
+  public static long[] covering(double latitude, double longitude, double radius) {
+    return covering(latitude, longitude, radius, 8, MAX_LEVEL);
+  }
+
+
+  /**
+   * Computes a covering of the locations within a great-circle distance of
+   * a location.
+   *
+   * @param latitude  latitude of the center in radians
+   * @param longitude longitude of the center in radians
+   * @param radius    distance in meters
+   * @param maxCells  maximum number of cells (at least 1)
+   * @param maxLevel  maximum level of the cells
+   * @return sorted, disjoint cell identifiers
+   */
+  public static long[] covering(double latitude, double longitude, double radius, int maxCells,
+                                int maxLevel) {
+    return covering(cap(latitude, longitude, radius), maxCells, maxLevel);
+  }
+
+
+  /**
+   * Computes the covering of a region. Cells are refined level by level,
+   * largest first, as long as the refined covering fits in the maximum
+   * number of cells. Cells contained by the region are not refined.
+   *
+   * @param region   region to cover
+   * @param maxCells maximum number of cells (at least 1)
+   * @param maxLevel maximum level of the cells
+   * @return sorted, disjoint cell identifiers
+   */
+  static long[] covering(Region region, int maxCells, int maxLevel) {
+    checkLevel(maxLevel);
+    if (maxCells < 1) {
+      throw new IllegalArgumentException("Maximum number of cells should be at least 1");
+    }
+
+    double[]         bounds   = new double[4];
+    long[]           result   = new long[maxCells];
+    long[]           children = new long[4];
+    ArrayDeque<Long> queue    = new ArrayDeque<>();
+    int              count    = 0;
+
+    bounds(ROOT, bounds);
+    if (region.relate(bounds) != DISJOINT) {
+      queue.add(ROOT);
+    }
+
+    while (!queue.isEmpty()) {
+      long cell = queue.poll();
+      bounds(cell, bounds);
+      if (level(cell) >= maxLevel || region.relate(bounds) == CONTAINS) {
+        result[count++] = cell;
+        continue;
+      }
+
+      int intersecting = 0;
+      for (int quadrant = 0; quadrant < 4; quadrant++) {
+        long child = child(cell, quadrant);
+        bounds(child, bounds);
+        if (region.relate(bounds) != DISJOINT) {
+          children[intersecting++] = child;
+        }
+      }
+
+      if (count + queue.size() + intersecting <= maxCells) {
+        for (int i = 0; i < intersecting; i++) {
+          queue.add(children[i]);
+        }
+      }
+      else {
+        result[count++] = cell;
+      }
+    }
+
+    long[] covering = Arrays.copyOf(result, count);
+    Arrays.sort(covering);
+    return covering;
+  }
+
+
+  /**
+   * Computes the bounds of a cell by subdividing the world as
+   * {@link GeodeticBounds#subdivide()} does.
+   *
+   * @param cell   cell identifier
+   * @param bounds receives the south, west, north and east
+   */
+  static void bounds(long cell, double[] bounds) {
+    int    level    = level(cell);
+    long   position = position(cell);
+    double south    = -PI / 2;
+    double west     = -PI;
+    double north    = PI / 2;
+    double east     = PI;
+    for (int i = level - 1; i >= 0; i--) {
+      int    quadrant = (int) (position >>> (2 * i)) & 3;
+      double clat     = south / 2.0 + north / 2.0;
+      double clon     = west / 2.0 + east / 2.0;
+      if (quadrant == 0 || quadrant == 3) {
+        north = clat;
+      }
+      else {
+        south = clat;
+      }
+      if (quadrant == 0 || quadrant == 1) {
+        east = clon;
+      }
+      else {
+        west = clon;
+      }
+    }
+    bounds[0] = south;
+    bounds[1] = west;
+    bounds[2] = north;
+    bounds[3] = east;
+  }
+
+
+  /**
+   * Creates the region of geodetic bounds.
+   *
+   * @param bounds bounds (may be over the anti-meridian)
+   * @return region
+   */
+  static Region box(GeodeticBounds bounds) {
+    double  south = bounds.getSouth();
+    double  west  = bounds.getWest();
+    double  north = bounds.getNorth();
+    double  east  = bounds.getEast();
+    boolean wraps = bounds.isOverAntiMeridian();
+
+    return (cell) -> {
+      if (cell[0] > north || cell[2] < south) {
+        return DISJOINT;
+      }
+      boolean latitudes = cell[0] >= south && cell[2] <= north;
+      if (wraps) {
+        // [west, PI] and [-PI, east]
+        boolean contained = cell[1] >= west || cell[3] <= east;
+        if (contained) {
+          return latitudes ? CONTAINS : INTERSECTS;
+        }
+        return cell[3] >= west || cell[1] <= east ? INTERSECTS : DISJOINT;
+      }
+      if (cell[1] > east || cell[3] < west) {
+        return DISJOINT;
+      }
+      return latitudes && cell[1] >= west && cell[3] <= east ? CONTAINS : INTERSECTS;
+    };
+  }
+
+
+  /**
+   * Creates the region of the locations within a great-circle distance of a
+   * location (a spherical cap).
+   *
+   * @param latitude  latitude of the center in radians
+   * @param longitude longitude of the center in radians
+   * @param radius    distance in meters
+   * @return region
+   */
+  static Region cap(double latitude, double longitude, double radius) {
+    if (!Geodetic.isValid(latitude, longitude)) {
+      throw new IllegalArgumentException("Not a valid geodetic coordinate");
+    }
+    if (!(radius >= 0)) {
+      throw new IllegalArgumentException("Radius should not be negative");
+    }
+
+    double angle     = radius / WGS84_EARTH_RADIUS;
+    double sinLat    = sin(latitude);
+    double cosLat    = cos(latitude);
+    double antipodal = longitude > 0 ? longitude - PI : longitude + PI;
+
+    if (angle >= PI) {
+      return (cell) -> CONTAINS;
+    }
+
+    // cosines of the central angles within which cells are contained or
+    // intersected
+    double contained   = angle > MARGIN ? cos(angle - MARGIN) : 2.0;
+    double intersected = cos(min(PI, angle + MARGIN));
+
+    // geodetic bounds of the cap, for quickly rejecting cells
+    double  south  = latitude - angle - MARGIN;
+    double  north  = latitude + angle + MARGIN;
+    boolean pole   = south <= -PI / 2 || north >= PI / 2;
+    double  extent = pole ? PI : asin(min(1.0, sin(angle) / cosLat)) + MARGIN;
+
+    return (cell) -> {
+      if (cell[0] > north || cell[2] < south ||
+          !pole && !overlaps(cell[1], cell[3], longitude - extent, longitude + extent)) {
+        return DISJOINT;
+      }
+
+      double sinSouth = sin(cell[0]);
+      double cosSouth = cos(cell[0]);
+      double sinNorth = sin(cell[2]);
+      double cosNorth = cos(cell[2]);
+      double cosWest  = cos(cell[1] - longitude);
+      double cosEast  = cos(cell[3] - longitude);
+
+      // cosines of the central angles to the corners
+      double southWest = sinLat * sinSouth + cosLat * cosSouth * cosWest;
+      double southEast = sinLat * sinSouth + cosLat * cosSouth * cosEast;
+      double northWest = sinLat * sinNorth + cosLat * cosNorth * cosWest;
+      double northEast = sinLat * sinNorth + cosLat * cosNorth * cosEast;
+
+      // the farthest point is a corner or on a meridian edge, unless the
+      // cell contains the anti-meridian of the center
+      double farthest = min(min(southWest, southEast), min(northWest, northEast));
+      farthest = min(farthest, farthestOnMeridian(sinLat, cosLat, cosWest, cell[0], cell[2]));
+      farthest = min(farthest, farthestOnMeridian(sinLat, cosLat, cosEast, cell[0], cell[2]));
+      if (farthest >= contained && !(antipodal > cell[1] && antipodal < cell[3])) {
+        return CONTAINS;
+      }
+
+      boolean meridian = longitude >= cell[1] && longitude <= cell[3];
+      if (meridian && latitude >= cell[0] && latitude <= cell[2]) {
+        return INTERSECTS;
+      }
+
+      // the nearest point is a corner, on a meridian edge or on a parallel
+      // edge at the longitude of the center
+      double nearest = max(max(southWest, southEast), max(northWest, northEast));
+      nearest = max(nearest, nearestOnMeridian(sinLat, cosLat, cosWest, cell[0], cell[2]));
+      nearest = max(nearest, nearestOnMeridian(sinLat, cosLat, cosEast, cell[0], cell[2]));
+      if (meridian) {
+        nearest = max(nearest, sinLat * sinSouth + cosLat * cosSouth);
+        nearest = max(nearest, sinLat * sinNorth + cosLat * cosNorth);
+      }
+      return nearest >= intersected ? INTERSECTS : DISJOINT;
+    };
+  }
+
+
+  /**
+   * Tests whether a longitude range overlaps another longitude range, which
+   * may extend beyond [-PI,PI].
+   *
+   * @param west western boundary of the range
+   * @param east eastern boundary of the range
+   * @param from western boundary of the other range
+   * @param to   eastern boundary of the other range
+   * @return true if the ranges overlap
+   */
+  private static boolean overlaps(double west, double east, double from, double to) {
+    return (west <= to && east >= from) ||
+           (west <= to - 2 * PI && east >= from - 2 * PI) ||
+           (west <= to + 2 * PI && east >= from + 2 * PI);
+  }
+
+
+  /**
+   * Calculates the cosine of the central angle between the center of a cap
+   * and the nearest point of a meridian segment, if that point is not an end
+   * of the segment. Along a meridian the cosine equals
+   * <i>r cos(lat - lat*)</i>, which is maximal at <i>lat*</i>.
+   *
+   * @param sinLat sine of the latitude of the center
+   * @param cosLat cosine of the latitude of the center
+   * @param cosLon cosine of the longitude difference of the meridian
+   * @param south  southern end of the segment
+   * @param north  northern end of the segment
+   * @return cosine of the central angle (-1 if the nearest point is an end)
+   */
+  private static double nearestOnMeridian(double sinLat, double cosLat, double cosLon,
+                                          double south, double north) {
+    double lat = atan2(sinLat, cosLat * cosLon);
+    if (lat > south && lat < north) {
+      return sinLat * sin(lat) + cosLat * cos(lat) * cosLon;
+    }
+    return -1.0;
+  }
+
+
+  /**
+   * Calculates the cosine of the central angle between the center of a cap
+   * and the farthest point of a meridian segment, if that point is not an
+   * end of the segment. Along a meridian the cosine equals
+   * <i>r cos(lat - lat*)</i>, which is minimal at <i>lat* - PI</i> (or
+   * <i>lat* + PI</i>); that point is only a latitude if the meridian is more
+   * than a quarter turn from the center.
+   *
+   * @param sinLat sine of the latitude of the center
+   * @param cosLat cosine of the latitude of the center
+   * @param cosLon cosine of the longitude difference of the meridian
+   * @param south  southern end of the segment
+   * @param north  northern end of the segment
+   * @return cosine of the central angle (2 if the farthest point is an end)
+   */
+  private static double farthestOnMeridian(double sinLat, double cosLat, double cosLon,
+                                           double south, double north) {
+    double nearest = atan2(sinLat, cosLat * cosLon);
+    double lat     = nearest > 0 ? nearest - PI : nearest + PI;
+    if (lat > south && lat < north) {
+      return sinLat * sin(lat) + cosLat * cos(lat) * cosLon;
+    }
+    return 2.0;
+  }
+
+
+  /**
+   * Checks a level.
+   *
+   * @param level level
+   */
+  private static void checkLevel(int level) {
+    if (level < 0 || level > MAX_LEVEL) {
+      throw new IllegalArgumentException("Level should be in range [0," + MAX_LEVEL + "]");
+    }
+  }
+
+
+  /**
+   * Region on the earth that can be covered by cells.
+   */
+  @FunctionalInterface
+  interface Region {
+
+    /**
+     * Determines the relation of the region with the bounds of a cell.
+     *
+     * @param cell south, west, north and east of the cell
+     * @return {@link #DISJOINT}, {@link #INTERSECTS} or {@link #CONTAINS}
+     */
+    int relate(double[] cell);
+  }
+}
@@ -0,0 +1,293 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static thorwin.math.geo.GeodeticCell.CONTAINS;
+import static thorwin.math.geo.GeodeticCell.MAX_LEVEL;
+
+import java.util.Collection;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+
+/**
+ * Immutable index of geodetic points, sorted by their leaf
+ * {@link GeodeticCell}. Every cell corresponds to a contiguous range of the
+ * index, so a region query computes a covering of the region and scans the
+ * ranges of its cells: only the points of the cells on the border of the
+ * region are tested individually. Queries take <i>O(k log n + m)</i> time for
+ * <i>k</i> covering cells and <i>m</i> points in them, and are correct for
+ * regions over the anti-meridian.
+ * <p>
+ * Points are identified by their index in the arrays or collection the index
+ * was built from.
+ */
+public final class GeodeticIndex {
+
+  /**
+   * Maximum number of cells of the coverings of queries.
+   */
+  private static final int QUERY_CELLS = 16;
+
+  /**
+   * Sorted leaf cells of the points.
+   */
+  private final long[] cells;
+
+  /**
+   * Latitudes in cell order.
+   */
+  private final double[] latitudes;
+
+  /**
+   * Longitudes in cell order.
+   */
+  private final double[] longitudes;
+
+  /**
+   * Indices of the points in cell order.
+   */
+  private final int[] order;
+
+
+  /**
+   * Constructs an index.
+   *
+   * @param cells      sorted leaf cells of the points
+   * @param latitudes  latitudes in cell order
+   * @param longitudes longitudes in cell order
+   * @param order      indices of the points in cell order
+   */
+  private GeodeticIndex(long[] cells, double[] latitudes, double[] longitudes, int[] order) {
+    this.cells = cells;
+    this.latitudes = latitudes;
+    this.longitudes = longitudes;
+    this.order = order;
+  }
+
+
+  /**
+   * Builds an index of points. The coordinates are copied.
+   *
+   * @param latitudes  latitudes in radians
+   * @param longitudes longitudes in radians
+   * @return index
+   */
+  public static GeodeticIndex build(double[] latitudes, double[] longitudes) {
+    if (latitudes.length != longitudes.length) {
+      throw new IllegalArgumentException("Number of latitudes and longitudes should be equal");
+    }
+    int    n     = latitudes.length;
+    long[] codes = new long[n];
+    Blocks.run(n, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        codes[i] = GeodeticCell.cell(latitudes[i], longitudes[i], MAX_LEVEL);
+      }
+    });
+
+    int[]    order  = Morton.sort(codes, GeodeticCell.BITS);
+    long[]   cells  = new long[n];
+    double[] lats   = new double[n];
+    double[] lons   = new double[n];
+    Blocks.run(n, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        cells[i] = codes[order[i]];
+        lats[i] = latitudes[order[i]];
+        lons[i] = longitudes[order[i]];
+      }
+    });
+    return new GeodeticIndex(cells, lats, lons, order);
+  }
+
+
+  /**
+   * Builds an index of locations.
+   *
+   * @param locations locations
+   * @return index
+   */
+  public static GeodeticIndex build(Collection<Geodetic> locations) {
+    double[] latitudes  = new double[locations.size()];
+    double[] longitudes = new double[locations.size()];
+    int      i          = 0;
+    for (Geodetic location : locations) {
+      latitudes[i] = location.getLatitude();
+      longitudes[i] = location.getLongitude();
+      i++;
+    }
+    return build(latitudes, longitudes);
+  }
+
+
+  /**
+   * Returns the number of points.
+   *
+   * @return number of points
+   */
+  public int size() {
+    return cells.length;
+  }
+
+
+  /**
+   * Selects the points within geodetic bounds.
+   *
+   * @param bounds bounds (may be over the anti-meridian)
+   * @return indices of the points, in cell order
+   */
+  public int[] select(GeodeticBounds bounds) {
+    IntStream.Builder builder = IntStream.builder();
+    select(bounds, builder);
+    return builder.build().toArray();
+  }
+
+
+  /**
+   * Selects the points within geodetic bounds.
+   *
+   * @param bounds   bounds (may be over the anti-meridian)
+   * @param consumer receives the indices of the points, in cell order
+   */
+  public void select(GeodeticBounds bounds, IntConsumer consumer) {
+    select(GeodeticCell.box(bounds), (i) -> bounds.contains(latitudes[i], longitudes[i]),
+           consumer);
+  }
+
+
+  /**
+   * Selects the points within a great-circle distance (Haversine) of a
+   * location.
+   *
+   * @param latitude  latitude of the center in radians
+   * @param longitude longitude of the center in radians
+   * @param radius    distance in meters
+   * @return indices of the points, in cell order
+   */
+  public int[] select(double latitude, double longitude, double radius) {
+    IntStream.Builder builder = IntStream.builder();
+    select(latitude, longitude, radius, builder);
+    return builder.build().toArray();
+  }
+
+
+  /**
+   * Selects the points within a great-circle distance (Haversine) of a
+   * location.
+   *
+   * @param latitude  latitude of the center in radians
+   * @param longitude longitude of the center in radians
+   * @param radius    distance in meters
+   * @param consumer  receives the indices of the points, in cell order
+   */
+  public void select(double latitude, double longitude, double radius, IntConsumer consumer) {
+    select(GeodeticCell.cap(latitude, longitude, radius),
+           (i) -> Geodetic.haversine(latitude, longitude, latitudes[i], longitudes[i]) <= radius,
+           consumer);
+  }
+
+
+  /**
+   * Selects the points within a cell: a single range scan.
+   *
+   * @param cell     cell identifier
+   * @param consumer receives the indices of the points, in cell order
+   */
+  public void select(long cell, IntConsumer consumer) {
+    int end = lowerBound(GeodeticCell.rangeMax(cell) + 1);
+    for (int i = lowerBound(GeodeticCell.rangeMin(cell)); i < end; i++) {
+      consumer.accept(order[i]);
+    }
+  }
+
+
+  /**
+   * Counts the points within a cell.
+   *
+   * @param cell cell identifier
+   * @return number of points
+   */
+  public int count(long cell) {
+    return lowerBound(GeodeticCell.rangeMax(cell) + 1) - lowerBound(GeodeticCell.rangeMin(cell));
+  }
+
+
+  /**
+   * Selects the points in a region by scanning the ranges of its covering.
+   * The points of cells that are contained by the region are accepted
+   * without testing.
+   *
+   * @param region   region
+   * @param test     tests a point (by position in the index)
+   * @param consumer receives the indices of the points
+   */
+  private void select(GeodeticCell.Region region, Test test, IntConsumer consumer) {
+    double[] bounds = new double[4];
+    for (long cell : GeodeticCell.covering(region, QUERY_CELLS, MAX_LEVEL)) {
+      int start = lowerBound(GeodeticCell.rangeMin(cell));
+      int end   = lowerBound(GeodeticCell.rangeMax(cell) + 1);
+      if (start == end) {
+        continue;
+      }
+      GeodeticCell.bounds(cell, bounds);
+      boolean contained = region.relate(bounds) == CONTAINS;
+      for (int i = start; i < end; i++) {
+        if (contained || test.test(i)) {
+          consumer.accept(order[i]);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Finds the first position of which the cell is not smaller than a value.
+   *
+   * @param value cell value
+   * @return position
+   */
+  private int lowerBound(long value) {
+    int low  = 0;
+    int high = cells.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (cells[middle] < value) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+
+  /**
+   * Test of a point.
+   */
+  @FunctionalInterface
+  private interface Test {
+
+    /**
+     * Tests a point.
+     *
+     * @param i position of the point in the index
+     * @return true if the point is accepted
+     */
+    boolean test(int i);
+  }
+}
@@ -0,0 +1,717 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import thorwin.math.Vector2D;
+
+
+/**
+ * Clips polygons against all cells (tiles) of a regular grid at once. The
+ * edges of a polygon are walked once, splitting them at the vertical grid
+ * lines and distributing the pieces to column strips; every strip is then
+ * split at the horizontal grid lines into the tiles. Keeping, for every
+ * tile, the boundary points that lie within the tile is equivalent to
+ * Sutherland-Hodgman clipping against the four sides of the tile (as
+ * {@link Polygon2D#clip(Rectangle2D)}), but takes time proportional to the
+ * number of vertices and grid crossings instead of the number of tiles
+ * times the number of vertices. Coordinates are kept in primitive buffers.
+ * <p>
+ * Column <i>c</i> and row <i>r</i> cover the closed range
+ * <i>[x + c w, x + (c + 1) w] x [y + r h, y + (r + 1) h]</i> of the extent;
+ * points on a grid line belong to the tiles on both sides.
+ * <p>
+ * Unlike {@link Polygon2D#clip(Rectangle2D)}, fragments with fewer than three
+ * distinct vertices are omitted. A tile that the polygon only touches, at a
+ * point or along a grid line, therefore gets no fragment, where
+ * {@code Polygon2D.clip} returns a degenerate polygon of repeated vertices.
+ * Zero-area fragments of three or more distinct (collinear) vertices are
+ * kept.
+ */
+public final class GridClipper {
+
+  /**
+   * Extent of the grid.
+   */
+  private final Rectangle2D extent;
+
+  /**
+   * Number of columns.
+   */
+  private final int columns;
+
+  /**
+   * Number of rows.
+   */
+  private final int rows;
+
+
+  /**
+   * Constructs a grid clipper.
+   *
+   * @param extent  extent of the grid
+   * @param columns number of columns
+   * @param rows    number of rows
+   */
+  public GridClipper(Rectangle2D extent, int columns, int rows) {
+    super();
+    if (columns < 1 || rows < 1) {
+      throw new IllegalArgumentException("Number of columns and rows should be at least 1");
+    }
+    Rectangle2D normalized = extent.normalize();
+    if (!(normalized.getWidth() > 0) || !(normalized.getHeight() > 0)) {
+      throw new IllegalArgumentException("Extent should not be empty");
+    }
+    this.extent = normalized;
+    this.columns = columns;
+    this.rows = rows;
+  }
+
+
+  /**
+   * Returns the extent of the grid.
+   *
+   * @return extent
+   */
+  public Rectangle2D getExtent() {
+    return extent;
+  }
+
+
+  /**
+   * Returns the number of columns.
+   *
+   * @return number of columns
+   */
+  public int getColumns() {
+    return columns;
+  }
+
+
+  /**
+   * Returns the number of rows.
+   *
+   * @return number of rows
+   */
+  public int getRows() {
+    return rows;
+  }
+
+
+  /**
+   * Returns the bounds of a tile.
+   *
+   * @param column column
+   * @param row    row
+   * @return bounds of the tile
+   */
+  public Rectangle2D getBounds(int column, int row) {
+    double x0 = line(extent.getX(), extent.getWidth(), columns, column);
+    double x1 = line(extent.getX(), extent.getWidth(), columns, column + 1);
+    double y0 = line(extent.getY(), extent.getHeight(), rows, row);
+    double y1 = line(extent.getY(), extent.getHeight(), rows, row + 1);
+    return new Rectangle2D(x0, y0, x1 - x0, y1 - y0);
+  }
+
+
+  /**
+   * Clips a polygon against all tiles.
+   *
+   * @param polygon polygon
+   * @return fragments of the polygon (feature 0), ordered by column and row;
+   * degenerate fragments are omitted (see {@link GridClipper})
+   */
+  public Fragments clip(Polygon2D polygon) {
+    int      n  = polygon.size();
+    double[] xs = new double[n];
+    double[] ys = new double[n];
+    for (int i = 0; i < n; i++) {
+      Vector2D vertex = polygon.getVertex(i);
+      xs[i] = vertex.getX();
+      ys[i] = vertex.getY();
+    }
+    return clip(xs, ys);
+  }
+
+
+  /**
+   * Clips a polygon against all tiles.
+   *
+   * @param xs x-coordinates of the vertices
+   * @param ys y-coordinates of the vertices
+   * @return fragments of the polygon (feature 0), ordered by column and row;
+   * degenerate fragments are omitted (see {@link GridClipper})
+   */
+  public Fragments clip(double[] xs, double[] ys) {
+    Fragments fragments = new Fragments();
+    clip(0, xs, ys, xs.length, fragments);
+    return fragments;
+  }
+
+
+  /**
+   * Clips polygons against all tiles, in parallel.
+   *
+   * @param xs x-coordinates of the vertices of every polygon
+   * @param ys y-coordinates of the vertices of every polygon
+   * @return fragments of the polygons, ordered by feature (index of the
+   * polygon), column and row; degenerate fragments are omitted (see
+   * {@link GridClipper})
+   */
+  public Fragments clip(double[][] xs, double[][] ys) {
+    if (xs.length != ys.length) {
+      throw new IllegalArgumentException("Number of x and y coordinate arrays should be equal");
+    }
+    return IntStream.range(0, xs.length).parallel().mapToObj((feature) -> {
+      Fragments fragments = new Fragments();
+      clip(feature, xs[feature], ys[feature], xs[feature].length, fragments);
+      return fragments;
+    }).collect(Fragments::new, Fragments::append, Fragments::append);
+  }
+
+
+  /**
+   * Clips a polygon against the tiles its bounds overlap.
+   *
+   * @param feature   index of the polygon
+   * @param xs        x-coordinates of the vertices
+   * @param ys        y-coordinates of the vertices
+   * @param n         number of vertices
+   * @param fragments receives the fragments
+   */
+  private void clip(int feature, double[] xs, double[] ys, int n, Fragments fragments) {
+    if (ys.length != xs.length) {
+      throw new IllegalArgumentException("Number of x and y coordinates should be equal");
+    }
+    if (n < 3) {
+      return;
+    }
+
+    double minX = xs[0];
+    double maxX = minX;
+    double minY = ys[0];
+    double maxY = minY;
+    for (int i = 1; i < n; i++) {
+      minX = min(minX, xs[i]);
+      maxX = max(maxX, xs[i]);
+      minY = min(minY, ys[i]);
+      maxY = max(maxY, ys[i]);
+    }
+
+    double x = extent.getX();
+    double y = extent.getY();
+    double w = extent.getWidth();
+    double h = extent.getHeight();
+    if (maxX < x || minX > x + w || maxY < y || minY > y + h) {
+      return;
+    }
+
+    // the columns and rows overlapped by the bounds of the polygon
+    int column0 = first(x, w, columns, minX);
+    int column1 = last(x, w, columns, maxX);
+    int row0    = first(y, h, rows, minY);
+    int row1    = last(y, h, rows, maxY);
+
+    Buffer[] strips = split(xs, ys, n, x, w, columns, column0, column1);
+    Buffer   tile   = new Buffer();
+    for (int column = column0; column <= column1; column++) {
+      Buffer strip = strips[column - column0];
+      if (strip.size < 3) {
+        continue;
+      }
+
+      // split the strip at the horizontal lines (with x and y swapped)
+      Buffer[] tiles = split(strip.ys, strip.xs, strip.size, y, h, rows, row0, row1);
+      for (int row = row0; row <= row1; row++) {
+        Buffer part = tiles[row - row0];
+        tile.size = 0;
+        for (int i = 0; i < part.size; i++) {
+          tile.add(part.ys[i], part.xs[i]);
+        }
+        tile.compact();
+        if (tile.size >= 3) {
+          fragments.add(feature, column, row, tile);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Splits a closed polygon into strips between the lines <i>u = origin +
+   * k size / count</i>. Every strip receives, in order, the points of the
+   * boundary of the polygon (including the crossings with the lines) that
+   * lie within the strip.
+   *
+   * @param us     coordinates perpendicular to the lines
+   * @param vs     coordinates along the lines
+   * @param n      number of vertices
+   * @param origin origin of the lines
+   * @param size   extent of all strips
+   * @param count  number of strips
+   * @param first  first strip to compute
+   * @param last   last strip to compute
+   * @return buffers of the strips first to last, with the coordinates in the
+   * same (u, v) order
+   */
+  private static Buffer[] split(double[] us, double[] vs, int n, double origin, double size,
+                                int count, int first, int last) {
+    Buffer[] strips = new Buffer[last - first + 1];
+    for (int i = 0; i < strips.length; i++) {
+      strips[i] = new Buffer();
+    }
+
+    double previousU = us[n - 1];
+    double previousV = vs[n - 1];
+    for (int i = 0; i < n; i++) {
+      double u = us[i];
+      double v = vs[i];
+
+      // crossings with the lines strictly between the previous and current
+      // point, in the direction of the edge
+      if (u > previousU) {
+        int to = min(last + 1, last(origin, size, count, u) + 1);
+        for (int k = max(first, first(origin, size, count, previousU)); k <= to; k++) {
+          double line = line(origin, size, count, k);
+          if (line > previousU && line < u) {
+            emit(strips, first, k, line, crossing(previousU, previousV, u, v, line));
+          }
+        }
+      }
+      else if (u < previousU) {
+        int from = max(first, first(origin, size, count, u));
+        for (int k = min(last + 1, last(origin, size, count, previousU) + 1); k >= from; k--) {
+          double line = line(origin, size, count, k);
+          if (line < previousU && line > u) {
+            emit(strips, first, k, line, crossing(previousU, previousV, u, v, line));
+          }
+        }
+      }
+
+      // the current point in all strips that contain it
+      if (u >= origin && u <= origin + size) {
+        int to = min(last, last(origin, size, count, u));
+        for (int k = max(first, first(origin, size, count, u)); k <= to; k++) {
+          strips[k - first].add(u, v);
+        }
+      }
+
+      previousU = u;
+      previousV = v;
+    }
+    return strips;
+  }
+
+
+  /**
+   * Adds a crossing with line <i>k</i> to the strips on both sides of it.
+   *
+   * @param strips buffers of the strips
+   * @param first  first strip in the buffers
+   * @param k      index of the line
+   * @param u      coordinate of the line
+   * @param v      coordinate of the crossing along the line
+   */
+  private static void emit(Buffer[] strips, int first, int k, double u, double v) {
+    if (k - 1 >= first && k - 1 < first + strips.length) {
+      strips[k - 1 - first].add(u, v);
+    }
+    if (k >= first && k < first + strips.length) {
+      strips[k - first].add(u, v);
+    }
+  }
+
+
+  /**
+   * Calculates where an edge crosses a line.
+   *
+   * @param u0   perpendicular coordinate of the start of the edge
+   * @param v0   coordinate along the line of the start of the edge
+   * @param u1   perpendicular coordinate of the end of the edge
+   * @param v1   coordinate along the line of the end of the edge
+   * @param line perpendicular coordinate of the line
+   * @return coordinate of the crossing along the line
+   */
+  private static double crossing(double u0, double v0, double u1, double v1, double line) {
+    return v0 + (line - u0) * (v1 - v0) / (u1 - u0);
+  }
+
+
+  /**
+   * Returns the coordinate of a grid line.
+   *
+   * @param origin origin of the grid
+   * @param size   extent of the grid
+   * @param count  number of cells
+   * @param k      index of the line (0 to count)
+   * @return coordinate of the line
+   */
+  private static double line(double origin, double size, int count, int k) {
+    return k == count ? origin + size : origin + k * (size / count);
+  }
+
+
+  /**
+   * Returns the first cell that contains a coordinate (clamped to the grid).
+   *
+   * @param origin origin of the grid
+   * @param size   extent of the grid
+   * @param count  number of cells
+   * @param u      coordinate
+   * @return index of the cell
+   */
+  private static int first(double origin, double size, int count, double u) {
+    int k = (int) max(0, min(count - 1, floor((u - origin) / (size / count))));
+    while (k > 0 && line(origin, size, count, k) >= u) {
+      k--;
+    }
+    while (k < count - 1 && line(origin, size, count, k + 1) < u) {
+      k++;
+    }
+    return k;
+  }
+
+
+  /**
+   * Returns the last cell that contains a coordinate (clamped to the grid).
+   *
+   * @param origin origin of the grid
+   * @param size   extent of the grid
+   * @param count  number of cells
+   * @param u      coordinate
+   * @return index of the cell
+   */
+  private static int last(double origin, double size, int count, double u) {
+    int k = (int) max(0, min(count - 1, floor((u - origin) / (size / count))));
+    while (k > 0 && line(origin, size, count, k) > u) {
+      k--;
+    }
+    while (k < count - 1 && line(origin, size, count, k + 1) <= u) {
+      k++;
+    }
+    return k;
+  }
+
+
+  /**
+   * Fragments of clipped polygons, in compressed primitive buffers: the
+   * vertices of fragment <i>i</i> are at positions <i>getOffset(i)</i> to
+   * <i>getOffset(i + 1)</i> of the coordinate arrays. The arrays can be
+   * consumed directly, for instance by a renderer, or converted to polygons
+   * for a {@link PackedRTree}.
+   */
+  public static final class Fragments {
+
+    /**
+     * Number of fragments.
+     */
+    private int size;
+
+    /**
+     * Offsets of the vertices of the fragments (size + 1 used).
+     */
+    private int[] offsets = new int[16];
+
+    /**
+     * Columns of the fragments.
+     */
+    private int[] columns = new int[16];
+
+    /**
+     * Rows of the fragments.
+     */
+    private int[] rows = new int[16];
+
+    /**
+     * Features of the fragments.
+     */
+    private int[] features = new int[16];
+
+    /**
+     * X-coordinates of the vertices.
+     */
+    private double[] xs = new double[64];
+
+    /**
+     * Y-coordinates of the vertices.
+     */
+    private double[] ys = new double[64];
+
+
+    /**
+     * Constructs empty fragments.
+     */
+    private Fragments() {
+      super();
+    }
+
+
+    /**
+     * Adds a fragment.
+     *
+     * @param feature index of the polygon
+     * @param column  column of the tile
+     * @param row     row of the tile
+     * @param tile    vertices of the fragment
+     */
+    private void add(int feature, int column, int row, Buffer tile) {
+      if (size + 2 > offsets.length) {
+        int length = offsets.length * 2;
+        offsets = Arrays.copyOf(offsets, length);
+        columns = Arrays.copyOf(columns, length);
+        rows = Arrays.copyOf(rows, length);
+        features = Arrays.copyOf(features, length);
+      }
+      int offset = offsets[size];
+      reserve(offset + tile.size);
+      System.arraycopy(tile.xs, 0, xs, offset, tile.size);
+      System.arraycopy(tile.ys, 0, ys, offset, tile.size);
+      columns[size] = column;
+      rows[size] = row;
+      features[size] = feature;
+      offsets[++size] = offset + tile.size;
+    }
+
+
+    /**
+     * Appends other fragments.
+     *
+     * @param other fragments
+     */
+    private void append(Fragments other) {
+      if (size + other.size + 1 > offsets.length) {
+        int length = max(offsets.length * 2, size + other.size + 1);
+        offsets = Arrays.copyOf(offsets, length);
+        columns = Arrays.copyOf(columns, length);
+        rows = Arrays.copyOf(rows, length);
+        features = Arrays.copyOf(features, length);
+      }
+      int offset = offsets[size];
+      int count  = other.offsets[other.size];
+      reserve(offset + count);
+      System.arraycopy(other.xs, 0, xs, offset, count);
+      System.arraycopy(other.ys, 0, ys, offset, count);
+      System.arraycopy(other.columns, 0, columns, size, other.size);
+      System.arraycopy(other.rows, 0, rows, size, other.size);
+      System.arraycopy(other.features, 0, features, size, other.size);
+      for (int i = 1; i <= other.size; i++) {
+        offsets[size + i] = offset + other.offsets[i];
+      }
+      size += other.size;
+    }
+
+
+    /**
+     * Ensures the capacity of the coordinate arrays.
+     *
+     * @param capacity number of vertices
+     */
+    private void reserve(int capacity) {
+      if (capacity > xs.length) {
+        int length = max(xs.length * 2, capacity);
+        xs = Arrays.copyOf(xs, length);
+        ys = Arrays.copyOf(ys, length);
+      }
+    }
+
+
+    /**
+     * Returns the number of fragments.
+     *
+     * @return number of fragments
+     */
+    public int size() {
+      return size;
+    }
+
+
+    /**
+     * Returns the column of the tile of a fragment.
+     *
+     * @param index index of the fragment
+     * @return column
+     */
+    public int getColumn(int index) {
+      return columns[check(index)];
+    }
+
+
+    /**
+     * Returns the row of the tile of a fragment.
+     *
+     * @param index index of the fragment
+     * @return row
+     */
+    public int getRow(int index) {
+      return rows[check(index)];
+    }
+
+
+    /**
+     * Returns the feature (index of the clipped polygon) of a fragment.
+     *
+     * @param index index of the fragment
+     * @return feature
+     */
+    public int getFeature(int index) {
+      return features[check(index)];
+    }
+
+
+    /**
+     * Returns the position of the first vertex of a fragment in the
+     * coordinate arrays.
+     *
+     * @param index index of the fragment (up to and including size)
+     * @return offset
+     */
+    public int getOffset(int index) {
+      if (index < 0 || index > size) {
+        throw new IndexOutOfBoundsException("Index out of range: " + index);
+      }
+      return offsets[index];
+    }
+
+
+    /**
+     * Returns the x-coordinates of the vertices of all fragments. The array
+     * may be longer than the number of vertices and should not be modified.
+     *
+     * @return x-coordinates
+     */
+    public double[] getXs() {
+      return xs;
+    }
+
+
+    /**
+     * Returns the y-coordinates of the vertices of all fragments. The array
+     * may be longer than the number of vertices and should not be modified.
+     *
+     * @return y-coordinates
+     */
+    public double[] getYs() {
+      return ys;
+    }
+
+
+    /**
+     * Returns a fragment as polygon.
+     *
+     * @param index index of the fragment
+     * @return polygon
+     */
+    public Polygon2D getPolygon(int index) {
+      int offset = offsets[check(index)];
+      return new Polygon2D(xs, ys, offset, offsets[index + 1] - offset);
+    }
+
+
+    /**
+     * Returns all fragments as polygons.
+     *
+     * @return polygons, in fragment order
+     */
+    public Polygon2D[] toPolygons() {
+      Polygon2D[] polygons = new Polygon2D[size];
+      for (int i = 0; i < size; i++) {
+        polygons[i] = getPolygon(i);
+      }
+      return polygons;
+    }
+
+
+    /**
+     * Checks the index of a fragment.
+     *
+     * @param index index
+     * @return index
+     */
+    private int check(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index out of range: " + index);
+      }
+      return index;
+    }
+  }
+
+
+  /**
+   * Growable buffer of vertices.
+   */
+  private static final class Buffer {
+
+    /**
+     * Number of vertices.
+     */
+    private int size;
+
+    /**
+     * X-coordinates (or perpendicular coordinates while splitting).
+     */
+    private double[] xs = new double[16];
+
+    /**
+     * Y-coordinates (or coordinates along the lines while splitting).
+     */
+    private double[] ys = new double[16];
+
+
+    /**
+     * Adds a vertex.
+     *
+     * @param x x-coordinate
+     * @param y y-coordinate
+     */
+    private void add(double x, double y) {
+      if (size == xs.length) {
+        xs = Arrays.copyOf(xs, size * 2);
+        ys = Arrays.copyOf(ys, size * 2);
+      }
+      xs[size] = x;
+      ys[size] = y;
+      size++;
+    }
+
+
+    /**
+     * Removes consecutive duplicate vertices, including a last vertex equal
+     * to the first.
+     */
+    private void compact() {
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        if (count == 0 || xs[i] != xs[count - 1] || ys[i] != ys[count - 1]) {
+          xs[count] = xs[i];
+          ys[count] = ys[i];
+          count++;
+        }
+      }
+      while (count > 1 && xs[count - 1] == xs[0] && ys[count - 1] == ys[0]) {
+        count--;
+      }
+      size = count;
+    }
+  }
+}
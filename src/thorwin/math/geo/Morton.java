@@ -0,0 +1,603 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.stream.IntStream;
+
+
+/**
+ * Morton (Z-order) codes, Hilbert codes and sorting. Morton codes interleave
+ * the bits of quantized coordinates, so sorting by Morton code groups
+ * spatially close objects. Hilbert codes are the positions along the Hilbert
+ * curve, which has no jumps and groups objects even better. Used to
+ * bulk-load spatial indices, and to lay out columnar data (for example point
+ * coordinates and their attributes) so that spatial queries and rendering
+ * access memory in order:
+ * <pre>
+ * int[] order = Morton.order(Morton.Curve.HILBERT, xs, ys, bounds);
+ * xs = Morton.permute(xs, order);
+ * ys = Morton.permute(ys, order);
+ * </pre>
+ */
+public final class Morton {
+
+  /**
+   * Number of bits per coordinate of 2D codes.
+   */
+  public static final int BITS_2D = 31;
+
+  /**
+   * Number of bits per coordinate of 3D codes.
+   */
+  public static final int BITS_3D = 21;
+
+  /**
+   * Number of bits per coordinate of the 2D Hilbert codes of packed R-trees.
+   */
+  static final int BITS_HILBERT_2D = 16;
+
+  /**
+   * 2D Hilbert codes of nibbles, see {@link #hilbert2D()}.
+   */
+  private static final int[] HILBERT_2D = hilbert2D();
+
+  /**
+   * 3D Hilbert codes of two levels, see {@link #hilbert3D()}.
+   */
+  private static final int[] HILBERT_3D = hilbert3D();
+
+  /**
+   * Number of keys per block of the parallel radix sort.
+   */
+  private static final int BLOCK = 1 << 16;
+
+  /**
+   * Number of bits per radix sort pass.
+   */
+  private static final int RADIX = 8;
+
+
+  /**
+   * Private constructor to prevent instantiation.
+   */
+  private Morton() {}
+
+
+  /**
+   * Space-filling curves.
+   */
+  public enum Curve {
+
+    /**
+     * Morton (Z-order) curve: cheapest to encode.
+     */
+    MORTON,
+
+    /**
+     * Hilbert curve: best locality.
+     */
+    HILBERT
+  }
+
+
+  /**
+   * Calculates the 2D Morton code of quantized coordinates.
+   *
+   * @param x x-coordinate (31 bits)
+   * @param y y-coordinate (31 bits)
+   * @return 62 bit Morton code
+   */
+  public static long encode(int x, int y) {
+    return (spread2(x) << 1) | spread2(y);
+  }
+
+
+  /**
+   * Calculates the 3D Morton code of quantized coordinates.
+   *
+   * @param x x-coordinate (21 bits)
+   * @param y y-coordinate (21 bits)
+   * @param z z-coordinate (21 bits)
+   * @return 63 bit Morton code
+   */
+  public static long encode(int x, int y, int z) {
+    return (spread(x) << 2) | (spread(y) << 1) | spread(z);
+  }
+
+
+  /**
+   * Spreads the lower 31 bits of a value so there is a zero bit between
+   * consecutive bits.
+   *
+   * @param value value
+   * @return spread value
+   */
+  private static long spread2(int value) {
+    long x = value & 0x7fffffffL;
+    x = (x | x << 16) & 0x0000ffff0000ffffL;
+    x = (x | x << 8) & 0x00ff00ff00ff00ffL;
+    x = (x | x << 4) & 0x0f0f0f0f0f0f0f0fL;
+    x = (x | x << 2) & 0x3333333333333333L;
+    x = (x | x << 1) & 0x5555555555555555L;
+    return x;
+  }
+
+
+  /**
+   * Spreads the lower 21 bits of a value so there are two zero bits between
+   * consecutive bits.
+   *
+   * @param value value
+   * @return spread value
+   */
+  private static long spread(int value) {
+    long x = value & 0x1fffffL;
+    x = (x | x << 32) & 0x1f00000000ffffL;
+    x = (x | x << 16) & 0x1f0000ff0000ffL;
+    x = (x | x << 8) & 0x100f00f00f00f00fL;
+    x = (x | x << 4) & 0x10c30c30c30c30c3L;
+    x = (x | x << 2) & 0x1249249249249249L;
+    return x;
+  }
+
+
+  /**
+   * Calculates the 2D Hilbert code of quantized coordinates. Four bits of
+   * both coordinates are encoded per step using {@link #HILBERT_2D}.
+   *
+   * @param x    x-coordinate
+   * @param y    y-coordinate
+   * @param bits number of bits per coordinate (at most 31)
+   * @return Hilbert code (2 * bits bits)
+   */
+  public static long hilbert(int x, int y, int bits) {
+    int mask = (1 << bits) - 1;
+    x &= mask;
+    y &= mask;
+
+    // leading zero bits pad the coordinates to whole nibbles; an odd number
+    // of them swaps the coordinates, so start swapped to cancel that out
+    int  pad   = -bits & 3;
+    int  state = pad & 1;
+    long code  = 0;
+    for (int shift = bits + pad - 4; shift >= 0; shift -= 4) {
+      int entry = HILBERT_2D[state << 8 | ((x >>> shift) & 15) << 4 | ((y >>> shift) & 15)];
+      code = code << 8 | (entry & 0xff);
+      state = entry >>> 8;
+    }
+    return code;
+  }
+
+
+  /**
+   * Builds the table of 2D Hilbert codes of nibbles. The orientation of a
+   * quadrant is a combination of swapping and inverting the coordinates,
+   * giving four states. The entry of a state (bit 0 swapped, bit 1 inverted)
+   * and the nibbles of x and y holds the 8 code bits, and the state of the
+   * next nibble in bits 8 and 9.
+   *
+   * @return table
+   */
+  private static int[] hilbert2D() {
+    int[] table = new int[4 << 8];
+    for (int entry = 0; entry < table.length; entry++) {
+      int state = entry >>> 8;
+      int code  = 0;
+      for (int bit = 3; bit >= 0; bit--) {
+        int rx = (entry >>> (4 + bit)) & 1;
+        int ry = (entry >>> bit) & 1;
+        if ((state & 1) != 0) {
+          int t = rx;
+          rx = ry;
+          ry = t;
+        }
+        rx ^= state >>> 1;
+        ry ^= state >>> 1;
+        code = code << 2 | ((3 * rx) ^ ry);
+
+        // rotate the quadrant
+        if (ry == 0) {
+          state ^= rx == 1 ? 3 : 1;
+        }
+      }
+      table[entry] = state << 8 | code;
+    }
+    return table;
+  }
+
+
+  /**
+   * Calculates the 3D Hilbert code of quantized coordinates. The bits of
+   * the coordinates are interleaved into the Morton code, of which two
+   * levels are encoded per step using {@link #HILBERT_3D}.
+   *
+   * @param x    x-coordinate
+   * @param y    y-coordinate
+   * @param z    z-coordinate
+   * @param bits number of bits per coordinate (at most 21)
+   * @return Hilbert code (3 * bits bits)
+   */
+  public static long hilbert(int x, int y, int z, int bits) {
+    int  mask   = (1 << bits) - 1;
+    long morton = encode(x & mask, y & mask, z & mask);
+
+    // a leading zero level keeps the curve in the first octant
+    int  state = 0;
+    long code  = 0;
+    for (int shift = 3 * (bits + (bits & 1)) - 6; shift >= 0; shift -= 6) {
+      int entry = HILBERT_3D[state << 6 | (int) (morton >>> shift) & 63];
+      code = code << 6 | (entry & 63);
+      state = entry >>> 6;
+    }
+    return code;
+  }
+
+
+  /**
+   * Builds the table of 3D Hilbert codes of two levels, using the algorithm
+   * by Chris Hamilton ("Compact Hilbert Indices"). The orientation of an
+   * octant is given by its entry corner <i>e</i> and direction <i>d</i>,
+   * giving 24 states. The entry of a state (<i>e</i> in bits 2 to 4,
+   * <i>d</i> in bits 0 and 1) and the 6 Morton bits holds the 6 code bits,
+   * and the state of the next levels from bit 6.
+   *
+   * @return table
+   */
+  private static int[] hilbert3D() {
+    int[] table = new int[32 << 6];
+    for (int entry = 0; entry < table.length; entry++) {
+      int e    = (entry >>> 8) & 7;
+      int d    = (entry >>> 6) & 3;
+      int code = 0;
+      if (d > 2) {
+        continue;
+      }
+      for (int level = 1; level >= 0; level--) {
+        // transform the octant to the orientation of the curve
+        int l = (entry >>> (3 * level) & 7) ^ e;
+        l = rotate(l, 3 - (d + 1) % 3);
+
+        // inverse Gray code of the octant
+        int w = l ^ (l >>> 1) ^ (l >>> 2);
+        code = code << 3 | w;
+
+        // entry corner and direction of the sub-octant
+        int entryCorner = w == 0 ? 0 : gray(2 * ((w - 1) / 2));
+        int direction   = w == 0 ? 0 : (w & 1) == 0 ? trailingOnes(w - 1) : trailingOnes(w);
+        e ^= rotate(entryCorner, (d + 1) % 3);
+        d = (d + direction + 1) % 3;
+      }
+      table[entry] = (e << 2 | d) << 6 | code;
+    }
+    return table;
+  }
+
+
+  /**
+   * Rotates 3 bits to the left.
+   *
+   * @param value  3 bits
+   * @param shift  number of bits to rotate (0 to 2)
+   * @return rotated bits
+   */
+  private static int rotate(int value, int shift) {
+    return ((value << shift) | (value >>> (3 - shift))) & 7;
+  }
+
+
+  /**
+   * Calculates the Gray code of a value.
+   *
+   * @param value value
+   * @return Gray code
+   */
+  private static int gray(int value) {
+    return value ^ (value >>> 1);
+  }
+
+
+  /**
+   * Counts the trailing one bits of a value.
+   *
+   * @param value value
+   * @return number of trailing one bits
+   */
+  private static int trailingOnes(int value) {
+    return Integer.numberOfTrailingZeros(~value);
+  }
+
+
+  /**
+   * Calculates the codes of 2D points, quantized to {@link #BITS_2D} bits
+   * per coordinate within bounds. Points outside the bounds are clamped.
+   *
+   * @param curve  space-filling curve
+   * @param xs     x-coordinates
+   * @param ys     y-coordinates
+   * @param bounds bounds of the points
+   * @return codes ({@code 2 * BITS_2D} bits)
+   */
+  public static long[] encode(Curve curve, double[] xs, double[] ys, Rectangle2D bounds) {
+    if (xs.length != ys.length) {
+      throw new IllegalArgumentException("Array lengths should be equal");
+    }
+    int    cells  = (1 << BITS_2D) - 1;
+    double minX   = bounds.getX();
+    double minY   = bounds.getY();
+    double scaleX = bounds.getWidth() > 0 ? cells / bounds.getWidth() : 0.0;
+    double scaleY = bounds.getHeight() > 0 ? cells / bounds.getHeight() : 0.0;
+    long[] codes  = new long[xs.length];
+    Blocks.run(xs.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        int x = quantize(xs[i], minX, scaleX, cells);
+        int y = quantize(ys[i], minY, scaleY, cells);
+        codes[i] = curve == Curve.MORTON ? encode(x, y) : hilbert(x, y, BITS_2D);
+      }
+    });
+    return codes;
+  }
+
+
+  /**
+   * Calculates the codes of 3D points, quantized to {@link #BITS_3D} bits
+   * per coordinate within bounds. Points outside the bounds are clamped.
+   *
+   * @param curve  space-filling curve
+   * @param xs     x-coordinates
+   * @param ys     y-coordinates
+   * @param zs     z-coordinates
+   * @param bounds bounds of the points
+   * @return codes ({@code 3 * BITS_3D} bits)
+   */
+  public static long[] encode(Curve curve, double[] xs, double[] ys, double[] zs, AABB bounds) {
+    if (xs.length != ys.length || xs.length != zs.length) {
+      throw new IllegalArgumentException("Array lengths should be equal");
+    }
+    int    cells  = (1 << BITS_3D) - 1;
+    double minX   = bounds.getMinX();
+    double minY   = bounds.getMinY();
+    double minZ   = bounds.getMinZ();
+    double scaleX = bounds.getLengthX() > 0 ? cells / bounds.getLengthX() : 0.0;
+    double scaleY = bounds.getLengthY() > 0 ? cells / bounds.getLengthY() : 0.0;
+    double scaleZ = bounds.getLengthZ() > 0 ? cells / bounds.getLengthZ() : 0.0;
+    long[] codes  = new long[xs.length];
+    Blocks.run(xs.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        int x = quantize(xs[i], minX, scaleX, cells);
+        int y = quantize(ys[i], minY, scaleY, cells);
+        int z = quantize(zs[i], minZ, scaleZ, cells);
+        codes[i] = curve == Curve.MORTON ? encode(x, y, z) : hilbert(x, y, z, BITS_3D);
+      }
+    });
+    return codes;
+  }
+
+
+  /**
+   * Calculates the order of 2D points along a space-filling curve.
+   *
+   * @param curve  space-filling curve
+   * @param xs     x-coordinates
+   * @param ys     y-coordinates
+   * @param bounds bounds of the points
+   * @return permutation: indices of the points in curve order
+   */
+  public static int[] order(Curve curve, double[] xs, double[] ys, Rectangle2D bounds) {
+    return sort(encode(curve, xs, ys, bounds), 2 * BITS_2D);
+  }
+
+
+  /**
+   * Calculates the order of 3D points along a space-filling curve.
+   *
+   * @param curve  space-filling curve
+   * @param xs     x-coordinates
+   * @param ys     y-coordinates
+   * @param zs     z-coordinates
+   * @param bounds bounds of the points
+   * @return permutation: indices of the points in curve order
+   */
+  public static int[] order(Curve curve, double[] xs, double[] ys, double[] zs, AABB bounds) {
+    return sort(encode(curve, xs, ys, zs, bounds), 3 * BITS_3D);
+  }
+
+
+  /**
+   * Reorders values by a permutation.
+   *
+   * @param values values
+   * @param order  permutation (as returned by {@link #sort(long[], int)})
+   * @return values in permutation order
+   */
+  public static double[] permute(double[] values, int[] order) {
+    checkPermutation(values.length, order);
+    double[] result = new double[order.length];
+    Blocks.run(order.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        result[i] = values[order[i]];
+      }
+    });
+    return result;
+  }
+
+
+  /**
+   * Reorders values by a permutation.
+   *
+   * @param values values
+   * @param order  permutation (as returned by {@link #sort(long[], int)})
+   * @return values in permutation order
+   */
+  public static int[] permute(int[] values, int[] order) {
+    checkPermutation(values.length, order);
+    int[] result = new int[order.length];
+    Blocks.run(order.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        result[i] = values[order[i]];
+      }
+    });
+    return result;
+  }
+
+
+  /**
+   * Reorders values by a permutation.
+   *
+   * @param values values
+   * @param order  permutation (as returned by {@link #sort(long[], int)})
+   * @return values in permutation order
+   */
+  public static long[] permute(long[] values, int[] order) {
+    checkPermutation(values.length, order);
+    long[] result = new long[order.length];
+    Blocks.run(order.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        result[i] = values[order[i]];
+      }
+    });
+    return result;
+  }
+
+
+  /**
+   * Reorders values by a permutation.
+   *
+   * @param values values
+   * @param order  permutation (as returned by {@link #sort(long[], int)})
+   * @param <T>    type of the values
+   * @return values in permutation order
+   */
+  public static <T> T[] permute(T[] values, int[] order) {
+    checkPermutation(values.length, order);
+    T[] result = values.clone();
+    Blocks.run(order.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        result[i] = values[order[i]];
+      }
+    });
+    return result;
+  }
+
+
+  /**
+   * Checks the length of a permutation against the number of values.
+   *
+   * @param length number of values
+   * @param order  permutation
+   */
+  private static void checkPermutation(int length, int[] order) {
+    if (order.length != length) {
+      throw new IllegalArgumentException("Array lengths should be equal");
+    }
+  }
+
+
+  /**
+   * Quantizes a coordinate to a cell, clamped to the bounds.
+   *
+   * @param value coordinate
+   * @param min   minimum coordinate of the bounds
+   * @param scale number of cells per unit
+   * @param cells maximum cell
+   * @return cell
+   */
+  private static int quantize(double value, double min, double scale, int cells) {
+    return (int) max(0.0, min(cells, (value - min) * scale));
+  }
+
+
+  /**
+   * Sorts codes using a (stable, least significant digit first) radix sort.
+   * Large arrays are sorted in parallel blocks.
+   *
+   * @param codes codes to sort (not modified, non-negative)
+   * @param bits  number of significant bits of the codes
+   * @return permutation: indices of the codes in ascending order
+   */
+  public static int[] sort(long[] codes, int bits) {
+    int    n     = codes.length;
+    long[] keys  = codes.clone();
+    long[] swap  = new long[n];
+    int[]  order = new int[n];
+    int[]  moved = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+
+    int blocks = (n + BLOCK - 1) / BLOCK;
+    int mask   = (1 << RADIX) - 1;
+
+    for (int shift = 0; shift < bits; shift += RADIX) {
+      int      s      = shift;
+      long[]   from   = keys;
+      int[]    fromOrder = order;
+      long[]   to     = swap;
+      int[]    toOrder = moved;
+      int[][]  counts = new int[blocks][1 << RADIX];
+
+      IntStream.range(0, blocks).parallel().forEach((block) -> {
+        int[] count = counts[block];
+        int   end   = min(n, (block + 1) * BLOCK);
+        for (int i = block * BLOCK; i < end; i++) {
+          count[(int) (from[i] >>> s) & mask]++;
+        }
+      });
+
+      // skip passes in which all keys have the same digit
+      boolean skip = false;
+      for (int digit = 0; digit <= mask && !skip; digit++) {
+        int total = 0;
+        for (int[] count : counts) {
+          total += count[digit];
+        }
+        skip = total == n;
+      }
+      if (skip) {
+        continue;
+      }
+
+      int offset = 0;
+      for (int digit = 0; digit <= mask; digit++) {
+        for (int[] count : counts) {
+          int c = count[digit];
+          count[digit] = offset;
+          offset += c;
+        }
+      }
+
+      IntStream.range(0, blocks).parallel().forEach((block) -> {
+        int[] position = counts[block];
+        int   end      = min(n, (block + 1) * BLOCK);
+        for (int i = block * BLOCK; i < end; i++) {
+          int index = position[(int) (from[i] >>> s) & mask]++;
+          to[index] = from[i];
+          toOrder[index] = fromOrder[i];
+        }
+      });
+
+      keys = to;
+      swap = from;
+      order = toOrder;
+      moved = fromOrder;
+    }
+    return order;
+  }
+}
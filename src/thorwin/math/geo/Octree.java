@@ -24,6 +24,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 
@@ -153,36 +154,89 @@ public final class Octree<D extends Volume> {
 
     List<D> selected = new ArrayList<>();
 
-    select(bounds, selected);
+    select(bounds, selected::add);
 
     return selected;
   }
 
 
   /**
-   * Selects all objects intersecting the specified bounds and stores the result
-   * in the specified list.
+   * Visits all objects intersecting the specified bounds, without collecting
+   * them in a list.
    *
-   * @param bounds bounds
-   * @param out    output list
+   * @param bounds  bounds
+   * @param visitor receives the selected objects
    */
-  private void select(AABB bounds, List<D> out) {
+  public void select(AABB bounds, Consumer<? super D> visitor) {
     for (Volume element : this.entries) {
       if (element.getBounds().intersects(bounds)) {
-        out.add((D) element);
+        visitor.accept((D) element);
       }
     }
 
     if (this.children != null) {
       for (Octree<D> child : this.children) {
         if (child.getLooseBounds().intersects(bounds)) {
-          child.select(bounds, out);
+          child.select(bounds, visitor);
         }
       }
     }
   }
 
 
+  /**
+   * Visits all objects whose bounds are (partially) inside the frustrum.
+   * Subtrees completely outside the frustrum are skipped, and the objects of
+   * subtrees completely inside are visited without testing.
+   *
+   * @param frustrum frustrum
+   * @param visitor  receives the visible objects
+   */
+  public void select(Frustrum3D frustrum, Consumer<? super D> visitor) {
+    select(frustrum, visitor, false);
+  }
+
+
+  /**
+   * Visits the objects of this node and its children that are visible in a
+   * frustrum.
+   *
+   * @param frustrum frustrum
+   * @param visitor  receives the visible objects
+   * @param inside   true if this node is known to be inside the frustrum
+   */
+  private void select(Frustrum3D frustrum, Consumer<? super D> visitor, boolean inside) {
+    for (Volume element : this.entries) {
+      if (inside || frustrum.intersects(element.getBounds()) != Intersection.OUTSIDE) {
+        visitor.accept((D) element);
+      }
+    }
+
+    if (this.children != null) {
+      for (Octree<D> child : this.children) {
+        Intersection intersection = inside ? Intersection.INSIDE :
+                                    frustrum.intersects(child.getLooseBounds());
+        if (intersection != Intersection.OUTSIDE) {
+          child.select(frustrum, visitor, intersection == Intersection.INSIDE);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Returns a packed octree with the entries of this octree, for fast
+   * queries.
+   *
+   * @return packed octree
+   */
+  public PackedOctree<D> pack() {
+    List<D> entries = new ArrayList<>(size());
+    select(looseBounds, entries::add);
+    return PackedOctree.build(entries);
+  }
+
+
   /**
    * Removes an entry. Note that this removal will not reduce the depth of the
    * octree.
@@ -0,0 +1,863 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+
+import thorwin.math.Vector3D;
+
+
+/**
+ * A bulk-loaded, immutable octree of 3D volumes, stored in flat arrays. The
+ * volumes are sorted by the Morton code of the center of their bounds, so
+ * every node of the tree covers a contiguous range of the sorted volumes.
+ * The nodes are stored breadth-first, with the children of a node stored
+ * consecutively. Every node stores the tight bounds of its volumes.
+ * <p>
+ * Compared to {@link Octree}, which is built by inserting volumes one by
+ * one, building a packed octree takes a single (parallel) sort, and queries
+ * touch less memory. Queries report the selected volumes to a visitor, so
+ * no result lists need to be allocated. Supported queries are box
+ * selection, frustum culling, ray casting (first and all hits) and k nearest
+ * neighbours.
+ * <p>
+ * A packed octree is immutable and thread-safe.
+ */
+@SuppressWarnings("unchecked")
+public final class PackedOctree<D extends Volume> {
+
+  /**
+   * Default maximum number of volumes per leaf.
+   */
+  private static final int DEFAULT_LEAF_SIZE = 16;
+
+  /**
+   * Maximum depth of the tree (Morton code resolution).
+   */
+  private static final int MAX_DEPTH = Morton.BITS_3D;
+
+  /**
+   * Number of volumes per block when building in parallel.
+   */
+  private static final int BLOCK = 4096;
+
+  /**
+   * Volumes, in Morton order.
+   */
+  private final Volume[] entries;
+
+  /**
+   * Bounds of the volumes (min x, max x, min y, max y, min z, max z per
+   * volume).
+   */
+  private final double[] boxes;
+
+  /**
+   * Index of the first volume of every node.
+   */
+  private final int[] starts;
+
+  /**
+   * Index after the last volume of every node.
+   */
+  private final int[] ends;
+
+  /**
+   * Index of the first child of every node, or -1 for leaves.
+   */
+  private final int[] children;
+
+  /**
+   * Number of children of every node.
+   */
+  private final byte[] childCounts;
+
+  /**
+   * Bounds of every node.
+   */
+  private final AABB[] bounds;
+
+  /**
+   * Depth of the tree.
+   */
+  private final int depth;
+
+
+  /**
+   * Private constructor used by the builder.
+   */
+  private PackedOctree(Volume[] entries,
+                       double[] boxes,
+                       int[] starts,
+                       int[] ends,
+                       int[] children,
+                       byte[] childCounts,
+                       AABB[] bounds,
+                       int depth) {
+    this.entries = entries;
+    this.boxes = boxes;
+    this.starts = starts;
+    this.ends = ends;
+    this.children = children;
+    this.childCounts = childCounts;
+    this.bounds = bounds;
+    this.depth = depth;
+  }
+
+
+  /**
+   * Builds a packed octree.
+   *
+   * @param volumes volumes to index
+   * @param <D>     volume type
+   * @return packed octree
+   */
+  public static <D extends Volume> PackedOctree<D> build(Collection<? extends D> volumes) {
+    return build(volumes, DEFAULT_LEAF_SIZE);
+  }
+
+
+  /**
+   * Builds a packed octree. The volumes are sorted by the Morton code of the
+   * centers of their bounds (in parallel), after which the nodes are
+   * derived from the sorted codes and the node bounds are calculated bottom
+   * up.
+   *
+   * @param volumes  volumes to index
+   * @param leafSize maximum number of volumes per leaf (leaves at the
+   *                 maximum depth may hold more)
+   * @param <D>      volume type
+   * @return packed octree
+   */
+  public static <D extends Volume> PackedOctree<D> build(Collection<? extends D> volumes,
+                                                         int leafSize) {
+    if (leafSize <= 0) {
+      throw new IllegalArgumentException("Leaf size should be positive");
+    }
+
+    Volume[] input = volumes.toArray(new Volume[0]);
+    int      n     = input.length;
+
+    // bounds of the volumes and of their centers
+    double[] inputBoxes = new double[6 * n];
+    double[] range = IntStream.range(0, (n + BLOCK - 1) / BLOCK).parallel().mapToObj((block) -> {
+      double[] r   = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                      Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                      Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+      int      end = min(n, (block + 1) * BLOCK);
+      for (int i = block * BLOCK; i < end; i++) {
+        AABB box = input[i].getBounds();
+        int  o   = 6 * i;
+        inputBoxes[o] = box.getMinX();
+        inputBoxes[o + 1] = box.getMaxX();
+        inputBoxes[o + 2] = box.getMinY();
+        inputBoxes[o + 3] = box.getMaxY();
+        inputBoxes[o + 4] = box.getMinZ();
+        inputBoxes[o + 5] = box.getMaxZ();
+        for (int axis = 0; axis < 3; axis++) {
+          double center = center(inputBoxes, o, axis);
+          r[2 * axis] = min(r[2 * axis], center);
+          r[2 * axis + 1] = max(r[2 * axis + 1], center);
+        }
+      }
+      return r;
+    }).reduce((a, b) -> new double[]{min(a[0], b[0]), max(a[1], b[1]),
+                                     min(a[2], b[2]), max(a[3], b[3]),
+                                     min(a[4], b[4]), max(a[5], b[5])})
+      .orElse(new double[6]);
+
+    // Morton codes of the quantized centers
+    double   cells = (1 << Morton.BITS_3D) - 1;
+    double[] scale = new double[3];
+    for (int axis = 0; axis < 3; axis++) {
+      double extent = range[2 * axis + 1] - range[2 * axis];
+      scale[axis] = extent > 0 ? cells / extent : 0.0;
+    }
+    long[] codes = new long[n];
+    IntStream.range(0, n).parallel().forEach((i) -> {
+      int x = (int) ((center(inputBoxes, 6 * i, 0) - range[0]) * scale[0]);
+      int y = (int) ((center(inputBoxes, 6 * i, 1) - range[2]) * scale[1]);
+      int z = (int) ((center(inputBoxes, 6 * i, 2) - range[4]) * scale[2]);
+      codes[i] = Morton.encode(x, y, z);
+    });
+
+    // sort the volumes
+    int[]    order   = Morton.sort(codes, 3 * Morton.BITS_3D);
+    Volume[] entries = new Volume[n];
+    double[] boxes   = new double[6 * n];
+    long[]   sorted  = new long[n];
+    IntStream.range(0, n).parallel().forEach((i) -> {
+      int source = order[i];
+      entries[i] = input[source];
+      sorted[i] = codes[source];
+      System.arraycopy(inputBoxes, 6 * source, boxes, 6 * i, 6);
+    });
+
+    return nodes(entries, boxes, sorted, leafSize);
+  }
+
+
+  /**
+   * Derives the nodes from the sorted Morton codes, and calculates the node
+   * bounds.
+   *
+   * @param entries  sorted volumes
+   * @param boxes    bounds of the sorted volumes
+   * @param codes    sorted Morton codes
+   * @param leafSize maximum number of volumes per leaf
+   * @param <D>      volume type
+   * @return packed octree
+   */
+  private static <D extends Volume> PackedOctree<D> nodes(Volume[] entries,
+                                                          double[] boxes,
+                                                          long[] codes,
+                                                          int leafSize) {
+    int   capacity    = 16;
+    int[] starts      = new int[capacity];
+    int[] ends        = new int[capacity];
+    int[] children    = new int[capacity];
+    int[] depths      = new int[capacity];
+    byte[] childCounts = new byte[capacity];
+
+    starts[0] = 0;
+    ends[0] = entries.length;
+    int count    = 1;
+    int maxDepth = 0;
+
+    // breadth-first, so children are stored consecutively
+    for (int node = 0; node < count; node++) {
+      int start = starts[node];
+      int end   = ends[node];
+      int level = depths[node];
+      children[node] = -1;
+
+      // skip levels at which all codes are in the same octant
+      while (end - start > leafSize && level < MAX_DEPTH &&
+             digit(codes[start], level) == digit(codes[end - 1], level)) {
+        level++;
+      }
+      maxDepth = max(maxDepth, depths[node]);
+      if (end - start <= leafSize || level >= MAX_DEPTH) {
+        continue;
+      }
+
+      if (count + 8 > capacity) {
+        capacity <<= 1;
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        children = Arrays.copyOf(children, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        childCounts = Arrays.copyOf(childCounts, capacity);
+      }
+
+      children[node] = count;
+      for (int first = start; first < end; ) {
+        int  digit = digit(codes[first], level);
+        int  last  = first + 1;
+        while (last < end && digit(codes[last], level) == digit) {
+          last++;
+        }
+        starts[count] = first;
+        ends[count] = last;
+        depths[count] = depths[node] + 1;
+        count++;
+        childCounts[node]++;
+        first = last;
+      }
+    }
+
+    // node bounds, leaves in parallel, then bottom up
+    AABB[] bounds = new AABB[count];
+    int[]  s      = starts;
+    int[]  e      = ends;
+    int[]  c      = children;
+    IntStream.range(0, count).parallel().filter((node) -> c[node] < 0).forEach((node) -> {
+      bounds[node] = union(boxes, s[node], e[node]);
+    });
+    for (int node = count - 1; node >= 0; node--) {
+      if (c[node] >= 0) {
+        AABB union = bounds[c[node]];
+        for (int child = c[node] + 1; child < c[node] + childCounts[node]; child++) {
+          union = union.union(bounds[child]);
+        }
+        bounds[node] = union;
+      }
+    }
+
+    return new PackedOctree<>(entries,
+                              boxes,
+                              Arrays.copyOf(starts, count),
+                              Arrays.copyOf(ends, count),
+                              Arrays.copyOf(children, count),
+                              Arrays.copyOf(childCounts, count),
+                              bounds,
+                              maxDepth);
+  }
+
+
+  /**
+   * Returns the octant of a Morton code at a level of the tree.
+   *
+   * @param code  Morton code
+   * @param level level (0 for the root)
+   * @return octant
+   */
+  private static int digit(long code, int level) {
+    return (int) (code >>> (3 * (MAX_DEPTH - 1 - level))) & 7;
+  }
+
+
+  /**
+   * Returns the center of a packed box along an axis.
+   *
+   * @param boxes  packed boxes
+   * @param offset offset of the box
+   * @param axis   axis (0 = x, 1 = y, 2 = z)
+   * @return center
+   */
+  private static double center(double[] boxes, int offset, int axis) {
+    return boxes[offset + 2 * axis] / 2 + boxes[offset + 2 * axis + 1] / 2;
+  }
+
+
+  /**
+   * Calculates the union of a range of packed boxes.
+   *
+   * @param boxes packed boxes
+   * @param start first box (inclusive)
+   * @param end   last box (exclusive)
+   * @return union of the boxes (an empty box at the origin for an empty
+   * range)
+   */
+  private static AABB union(double[] boxes, int start, int end) {
+    if (start == end) {
+      return new AABB(0, 0, 0, 0, 0, 0);
+    }
+    double minX = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    double minZ = Double.POSITIVE_INFINITY;
+    double maxZ = Double.NEGATIVE_INFINITY;
+    for (int i = start; i < end; i++) {
+      int o = 6 * i;
+      minX = min(minX, boxes[o]);
+      maxX = max(maxX, boxes[o + 1]);
+      minY = min(minY, boxes[o + 2]);
+      maxY = max(maxY, boxes[o + 3]);
+      minZ = min(minZ, boxes[o + 4]);
+      maxZ = max(maxZ, boxes[o + 5]);
+    }
+    return new AABB(minX, maxX, minY, maxY, minZ, maxZ);
+  }
+
+
+  /**
+   * Returns the number of volumes in this octree.
+   *
+   * @return number of volumes
+   */
+  public int size() {
+    return entries.length;
+  }
+
+
+  /**
+   * Returns the number of nodes in this octree.
+   *
+   * @return number of nodes
+   */
+  public int nodeCount() {
+    return starts.length;
+  }
+
+
+  /**
+   * Returns the depth of this octree.
+   *
+   * @return depth
+   */
+  public int depth() {
+    return depth;
+  }
+
+
+  /**
+   * Returns the bounds of all volumes in this octree.
+   *
+   * @return bounding box (an empty box at the origin for an empty octree)
+   */
+  public AABB getBounds() {
+    return bounds[0];
+  }
+
+
+  /**
+   * Selects all volumes intersecting the specified bounds.
+   *
+   * @param bounds bounding box to select
+   * @return list of selected volumes
+   */
+  public List<D> select(AABB bounds) {
+    List<D> selected = new ArrayList<>();
+    select(bounds, selected::add);
+    return selected;
+  }
+
+
+  /**
+   * Visits all volumes intersecting the specified bounds.
+   *
+   * @param bounds  bounding box to select
+   * @param visitor receives the selected volumes
+   */
+  public void select(AABB bounds, Consumer<? super D> visitor) {
+    if (entries.length == 0) {
+      return;
+    }
+
+    double minX = bounds.getMinX();
+    double maxX = bounds.getMaxX();
+    double minY = bounds.getMinY();
+    double maxY = bounds.getMaxY();
+    double minZ = bounds.getMinZ();
+    double maxZ = bounds.getMaxZ();
+
+    int[] stack = new int[8 * (depth + 1)];
+    int   top   = 0;
+    stack[top++] = 0;
+
+    while (top > 0) {
+      int  node = stack[--top];
+      AABB box  = this.bounds[node];
+      if (!box.intersects(bounds)) {
+        continue;
+      }
+      if (bounds.contains(box)) {
+        visit(starts[node], ends[node], visitor);
+      }
+      else if (children[node] < 0) {
+        for (int i = starts[node]; i < ends[node]; i++) {
+          int o = 6 * i;
+          if (boxes[o] <= maxX && boxes[o + 1] >= minX &&
+              boxes[o + 2] <= maxY && boxes[o + 3] >= minY &&
+              boxes[o + 4] <= maxZ && boxes[o + 5] >= minZ) {
+            visitor.accept((D) entries[i]);
+          }
+        }
+      }
+      else {
+        for (int child = children[node]; child < children[node] + childCounts[node]; child++) {
+          stack[top++] = child;
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Visits all volumes whose bounds are (partially) inside the frustrum.
+   * Nodes that are completely inside the frustrum are reported without
+   * testing their volumes.
+   *
+   * @param frustrum frustrum
+   * @param visitor  receives the visible volumes
+   */
+  public void select(Frustrum3D frustrum, Consumer<? super D> visitor) {
+    if (entries.length == 0) {
+      return;
+    }
+
+    int[] stack = new int[8 * (depth + 1)];
+    int   top   = 0;
+    stack[top++] = 0;
+
+    while (top > 0) {
+      int          node         = stack[--top];
+      Intersection intersection = frustrum.intersects(bounds[node]);
+      if (intersection == Intersection.OUTSIDE) {
+        continue;
+      }
+      if (intersection == Intersection.INSIDE) {
+        visit(starts[node], ends[node], visitor);
+      }
+      else if (children[node] < 0) {
+        for (int i = starts[node]; i < ends[node]; i++) {
+          if (frustrum.intersects(entries[i].getBounds()) != Intersection.OUTSIDE) {
+            visitor.accept((D) entries[i]);
+          }
+        }
+      }
+      else {
+        for (int child = children[node]; child < children[node] + childCounts[node]; child++) {
+          stack[top++] = child;
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Visits all volumes whose bounds are hit by the ray (in no particular
+   * order).
+   *
+   * @param ray     ray
+   * @param visitor receives the volumes that are hit
+   */
+  public void intersect(Ray3D ray, Consumer<? super D> visitor) {
+    if (entries.length == 0) {
+      return;
+    }
+
+    int[] stack = new int[8 * (depth + 1)];
+    int   top   = 0;
+    stack[top++] = 0;
+
+    while (top > 0) {
+      int node = stack[--top];
+      if (Double.isInfinite(distance(ray, bounds[node]))) {
+        continue;
+      }
+      if (children[node] < 0) {
+        for (int i = starts[node]; i < ends[node]; i++) {
+          if (!Double.isInfinite(distance(ray, entries[i].getBounds()))) {
+            visitor.accept((D) entries[i]);
+          }
+        }
+      }
+      else {
+        for (int child = children[node]; child < children[node] + childCounts[node]; child++) {
+          stack[top++] = child;
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Returns the volume whose bounds are hit first by the ray.
+   *
+   * @param ray ray
+   * @return the first volume hit, if any
+   */
+  public Optional<D> firstHit(Ray3D ray) {
+    return firstHit(ray, (volume) -> distance(ray, volume.getBounds()));
+  }
+
+
+  /**
+   * Returns the volume that is hit first by the ray, using an exact
+   * intersection distance for the volumes (for example the distance to a
+   * triangle). The bounds of the nodes are traversed front to back, so most
+   * volumes are never tested.
+   *
+   * @param ray      ray
+   * @param distance intersection distance from the origin of the ray to a
+   *                 volume, or a negative value or NaN if the volume is
+   *                 missed
+   * @return the first volume hit, if any
+   */
+  public Optional<D> firstHit(Ray3D ray, ToDoubleFunction<? super D> distance) {
+    if (entries.length == 0) {
+      return Optional.empty();
+    }
+
+    double   best      = Double.POSITIVE_INFINITY;
+    int      hit       = -1;
+    int[]    stack     = new int[8 * (depth + 1)];
+    double[] distances = new double[stack.length];
+    int      top       = 0;
+
+    distances[top] = distance(ray, bounds[0]);
+    stack[top++] = 0;
+
+    while (top > 0) {
+      top--;
+      int node = stack[top];
+      if (distances[top] >= best) {
+        continue;
+      }
+
+      if (children[node] < 0) {
+        for (int i = starts[node]; i < ends[node]; i++) {
+          if (distance(ray, entries[i].getBounds()) < best) {
+            double d = distance.applyAsDouble((D) entries[i]);
+            if (d >= 0 && d < best) {
+              best = d;
+              hit = i;
+            }
+          }
+        }
+      }
+      else {
+        // push the children far to near, so the nearest is visited first
+        int first = top;
+        for (int child = children[node]; child < children[node] + childCounts[node]; child++) {
+          double d = distance(ray, bounds[child]);
+          if (d < best) {
+            int j = top++;
+            while (j > first && distances[j - 1] < d) {
+              distances[j] = distances[j - 1];
+              stack[j] = stack[j - 1];
+              j--;
+            }
+            distances[j] = d;
+            stack[j] = child;
+          }
+        }
+      }
+    }
+
+    return hit < 0 ? Optional.empty() : Optional.of((D) entries[hit]);
+  }
+
+
+  /**
+   * Returns the k volumes nearest to a point. The distance to a volume is
+   * the distance to its bounds (zero if the point is inside the bounds).
+   *
+   * @param point point
+   * @param k     number of volumes
+   * @return the nearest volumes, nearest first
+   */
+  public List<D> nearest(Vector3D point, int k) {
+    return nearest(point.getX(), point.getY(), point.getZ(), k);
+  }
+
+
+  /**
+   * Returns the k volumes nearest to a point. The distance to a volume is
+   * the distance to its bounds (zero if the point is inside the bounds). The
+   * nodes are visited nearest first, and the k nearest volumes found so far
+   * are kept in a bounded priority queue, which prunes the nodes that are
+   * further away.
+   *
+   * @param x x-coordinate of the point
+   * @param y y-coordinate of the point
+   * @param z z-coordinate of the point
+   * @param k number of volumes
+   * @return the nearest volumes, nearest first
+   */
+  public List<D> nearest(double x, double y, double z, int k) {
+    if (k <= 0 || entries.length == 0) {
+      return Collections.emptyList();
+    }
+    k = min(k, entries.length);
+
+    // bounded max-heap of the nearest volumes
+    double[] found      = new double[k];
+    int[]    foundIndex = new int[k];
+    int      foundCount = 0;
+
+    // min-heap of nodes to visit
+    double[] queue      = new double[64];
+    int[]    queueNode  = new int[64];
+    int      queueCount = 0;
+
+    queue[0] = distance(bounds[0], x, y, z);
+    queueNode[0] = 0;
+    queueCount++;
+
+    while (queueCount > 0) {
+      double d    = queue[0];
+      int    node = queueNode[0];
+      queueCount--;
+      siftDown(queue, queueNode, queueCount, queue[queueCount], queueNode[queueCount], false);
+
+      if (foundCount == k && d >= found[0]) {
+        break;
+      }
+
+      if (children[node] < 0) {
+        for (int i = starts[node]; i < ends[node]; i++) {
+          double e = distance(boxes, 6 * i, x, y, z);
+          if (foundCount < k) {
+            siftUp(found, foundIndex, foundCount++, e, i, true);
+          }
+          else if (e < found[0]) {
+            siftDown(found, foundIndex, k, e, i, true);
+          }
+        }
+      }
+      else {
+        for (int child = children[node]; child < children[node] + childCounts[node]; child++) {
+          double e = distance(bounds[child], x, y, z);
+          if (foundCount < k || e < found[0]) {
+            if (queueCount == queue.length) {
+              queue = Arrays.copyOf(queue, queueCount << 1);
+              queueNode = Arrays.copyOf(queueNode, queueCount << 1);
+            }
+            siftUp(queue, queueNode, queueCount++, e, child, false);
+          }
+        }
+      }
+    }
+
+    // empty the max-heap, furthest first
+    Volume[] nearest = new Volume[foundCount];
+    for (int i = foundCount - 1; i >= 0; i--) {
+      nearest[i] = entries[foundIndex[0]];
+      siftDown(found, foundIndex, i, found[i], foundIndex[i], true);
+    }
+    return Arrays.asList((D[]) nearest);
+  }
+
+
+  /**
+   * Visits a range of volumes.
+   *
+   * @param start   first volume (inclusive)
+   * @param end     last volume (exclusive)
+   * @param visitor visitor
+   */
+  private void visit(int start, int end, Consumer<? super D> visitor) {
+    for (int i = start; i < end; i++) {
+      visitor.accept((D) entries[i]);
+    }
+  }
+
+
+  /**
+   * Calculates the distance along a ray to a box: zero if the origin of the
+   * ray is inside the box, infinite if the box is missed or behind the ray.
+   *
+   * @param ray ray
+   * @param box box
+   * @return distance
+   */
+  private static double distance(Ray3D ray, AABB box) {
+    OptionalDouble distance = ray.intersectionDistance(box);
+    if (!distance.isPresent()) {
+      return Double.POSITIVE_INFINITY;
+    }
+    if (distance.getAsDouble() >= 0) {
+      return distance.getAsDouble();
+    }
+    return box.contains(ray.getOrigin()) ? 0.0 : Double.POSITIVE_INFINITY;
+  }
+
+
+  /**
+   * Calculates the squared distance from a point to a box.
+   *
+   * @param box box
+   * @param x   x-coordinate of the point
+   * @param y   y-coordinate of the point
+   * @param z   z-coordinate of the point
+   * @return squared distance
+   */
+  private static double distance(AABB box, double x, double y, double z) {
+    double dx = max(0, max(box.getMinX() - x, x - box.getMaxX()));
+    double dy = max(0, max(box.getMinY() - y, y - box.getMaxY()));
+    double dz = max(0, max(box.getMinZ() - z, z - box.getMaxZ()));
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+
+  /**
+   * Calculates the squared distance from a point to a packed box.
+   *
+   * @param boxes  packed boxes
+   * @param offset offset of the box
+   * @param x      x-coordinate of the point
+   * @param y      y-coordinate of the point
+   * @param z      z-coordinate of the point
+   * @return squared distance
+   */
+  private static double distance(double[] boxes, int offset, double x, double y, double z) {
+    double dx = max(0, max(boxes[offset] - x, x - boxes[offset + 1]));
+    double dy = max(0, max(boxes[offset + 2] - y, y - boxes[offset + 3]));
+    double dz = max(0, max(boxes[offset + 4] - z, z - boxes[offset + 5]));
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+
+  /**
+   * Inserts a value at the bottom of a binary heap and moves it up.
+   *
+   * @param keys    heap keys
+   * @param values  heap values
+   * @param index   index of the new value (current heap size)
+   * @param key     key to insert
+   * @param value   value to insert
+   * @param maxHeap true for a max-heap, false for a min-heap
+   */
+  private static void siftUp(double[] keys, int[] values, int index, double key, int value,
+                             boolean maxHeap) {
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (maxHeap ? keys[parent] >= key : keys[parent] <= key) {
+        break;
+      }
+      keys[index] = keys[parent];
+      values[index] = values[parent];
+      index = parent;
+    }
+    keys[index] = key;
+    values[index] = value;
+  }
+
+
+  /**
+   * Replaces the top of a binary heap by a value and moves it down.
+   *
+   * @param keys    heap keys
+   * @param values  heap values
+   * @param size    heap size
+   * @param key     key to insert
+   * @param value   value to insert
+   * @param maxHeap true for a max-heap, false for a min-heap
+   */
+  private static void siftDown(double[] keys, int[] values, int size, double key, int value,
+                               boolean maxHeap) {
+    if (size == 0) {
+      return;
+    }
+    int index = 0;
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size &&
+          (maxHeap ? keys[child + 1] > keys[child] : keys[child + 1] < keys[child])) {
+        child++;
+      }
+      if (maxHeap ? keys[child] <= key : keys[child] >= key) {
+        break;
+      }
+      keys[index] = keys[child];
+      values[index] = values[child];
+      index = child;
+    }
+    keys[index] = key;
+    values[index] = value;
+  }
+}
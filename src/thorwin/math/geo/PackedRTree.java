@@ -0,0 +1,571 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+
+
+/**
+ * A bulk-loaded, immutable R-tree of 2D shapes (packed Hilbert R-tree). The
+ * shapes are sorted by the Hilbert code of the center of their bounds, and
+ * the tree is built bottom up by grouping consecutive shapes (and then
+ * consecutive nodes) into nodes of a fixed size. All nodes are full, except
+ * the last node of every level, and all bounds are stored in a single flat
+ * array.
+ * <p>
+ * Queries report the selected shapes to a visitor and do not allocate.
+ * Supported queries are window selection, point stabbing (tested using
+ * {@link Area#contains(double, double)}, which is exact for
+ * {@link Polygon2D}) and k nearest neighbours. Use {@link RTree} for a
+ * tree that can be modified.
+ * <p>
+ * A packed R-tree is immutable and thread-safe.
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Hilbert_R-tree">
+ * Wikipedia on Hilbert R-trees</a>
+ */
+@SuppressWarnings("unchecked")
+public final class PackedRTree<D extends Area> {
+
+  /**
+   * Default number of children per node.
+   */
+  private static final int DEFAULT_NODE_SIZE = 16;
+
+  /**
+   * Number of shapes per block when building in parallel.
+   */
+  private static final int BLOCK = 4096;
+
+  /**
+   * Shapes, in Hilbert order.
+   */
+  private final Area[] entries;
+
+  /**
+   * Bounds of the shapes followed by the bounds of the nodes, level by
+   * level, the root last (min x, max x, min y, max y per slot).
+   */
+  private final double[] boxes;
+
+  /**
+   * First child slot of every node (indexed by slot minus the number of
+   * shapes).
+   */
+  private final int[] children;
+
+  /**
+   * End slot of every level, level zero holds the shapes.
+   */
+  private final int[] levels;
+
+  /**
+   * Maximum number of children per node.
+   */
+  private final int nodeSize;
+
+
+  /**
+   * Private constructor used by the builder.
+   */
+  private PackedRTree(Area[] entries, double[] boxes, int[] children, int[] levels,
+                      int nodeSize) {
+    this.entries = entries;
+    this.boxes = boxes;
+    this.children = children;
+    this.levels = levels;
+    this.nodeSize = nodeSize;
+  }
+
+
+  /**
+   * Builds a packed R-tree.
+   *
+   * @param shapes shapes to index
+   * @param <D>    shape type
+   * @return packed R-tree
+   */
+  public static <D extends Area> PackedRTree<D> build(Collection<? extends D> shapes) {
+    return build(shapes, DEFAULT_NODE_SIZE);
+  }
+
+
+  /**
+   * Builds a packed R-tree. The shapes are sorted by the Hilbert code of the
+   * centers of their bounds (in parallel), after which the nodes are built
+   * level by level.
+   *
+   * @param shapes   shapes to index
+   * @param nodeSize number of children per node
+   * @param <D>      shape type
+   * @return packed R-tree
+   */
+  public static <D extends Area> PackedRTree<D> build(Collection<? extends D> shapes,
+                                                      int nodeSize) {
+    if (nodeSize < 2) {
+      throw new IllegalArgumentException("Node size should be at least 2");
+    }
+
+    Area[] input = shapes.toArray(new Area[0]);
+    int    n     = input.length;
+
+    // bounds of the shapes and of their centers
+    double[] inputBoxes = new double[4 * n];
+    double[] range = IntStream.range(0, (n + BLOCK - 1) / BLOCK).parallel().mapToObj((block) -> {
+      double[] r   = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                      Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+      int      end = min(n, (block + 1) * BLOCK);
+      for (int i = block * BLOCK; i < end; i++) {
+        Rectangle2D bounds = input[i].getBounds();
+        int         o      = 4 * i;
+        inputBoxes[o] = bounds.getX();
+        inputBoxes[o + 1] = bounds.getX() + bounds.getWidth();
+        inputBoxes[o + 2] = bounds.getY();
+        inputBoxes[o + 3] = bounds.getY() + bounds.getHeight();
+        double x = 0.5 * (inputBoxes[o] + inputBoxes[o + 1]);
+        double y = 0.5 * (inputBoxes[o + 2] + inputBoxes[o + 3]);
+        r[0] = min(r[0], x);
+        r[1] = max(r[1], x);
+        r[2] = min(r[2], y);
+        r[3] = max(r[3], y);
+      }
+      return r;
+    }).reduce((a, b) -> new double[]{min(a[0], b[0]), max(a[1], b[1]),
+                                     min(a[2], b[2]), max(a[3], b[3])})
+      .orElse(new double[4]);
+
+    // Hilbert codes of the quantized centers
+    double cells  = (1 << Morton.BITS_HILBERT_2D) - 1;
+    double scaleX = range[1] > range[0] ? cells / (range[1] - range[0]) : 0.0;
+    double scaleY = range[3] > range[2] ? cells / (range[3] - range[2]) : 0.0;
+    long[] codes  = new long[n];
+    IntStream.range(0, n).parallel().forEach((i) -> {
+      int o = 4 * i;
+      int x = (int) ((0.5 * (inputBoxes[o] + inputBoxes[o + 1]) - range[0]) * scaleX);
+      int y = (int) ((0.5 * (inputBoxes[o + 2] + inputBoxes[o + 3]) - range[2]) * scaleY);
+      codes[i] = Morton.hilbert(x, y, Morton.BITS_HILBERT_2D);
+    });
+
+    // number of slots per level
+    int   slots  = n;
+    int[] levels = {n};
+    for (int count = n; count > 1 || levels.length == 1 && n > 0; ) {
+      count = (count + nodeSize - 1) / nodeSize;
+      slots += count;
+      levels = Arrays.copyOf(levels, levels.length + 1);
+      levels[levels.length - 1] = slots;
+    }
+
+    // sort the shapes
+    int[]    order   = Morton.sort(codes, 2 * Morton.BITS_HILBERT_2D);
+    Area[]   entries = new Area[n];
+    double[] boxes   = new double[4 * slots];
+    IntStream.range(0, n).parallel().forEach((i) -> {
+      entries[i] = input[order[i]];
+      System.arraycopy(inputBoxes, 4 * order[i], boxes, 4 * i, 4);
+    });
+
+    // nodes, level by level
+    int[] children = new int[slots - n];
+    for (int level = 1; level < levels.length; level++) {
+      int start = levels[level - 1];
+      int end   = levels[level];
+      int below = level == 1 ? 0 : levels[level - 2];
+      int limit = start;
+      IntStream.range(start, end).parallel().forEach((node) -> {
+        int first = below + (node - start) * nodeSize;
+        int last  = min(first + nodeSize, limit);
+        children[node - n] = first;
+        union(boxes, first, last, node);
+      });
+    }
+
+    return new PackedRTree<>(entries, boxes, children, levels, nodeSize);
+  }
+
+
+  /**
+   * Returns the number of shapes.
+   *
+   * @return number of shapes
+   */
+  public int size() {
+    return entries.length;
+  }
+
+
+  /**
+   * Returns the depth of the tree (the number of node levels).
+   *
+   * @return depth
+   */
+  public int depth() {
+    return levels.length - 1;
+  }
+
+
+  /**
+   * Returns the bounds of all shapes.
+   *
+   * @return bounding rectangle, an empty rectangle at the origin if the tree
+   * is empty
+   */
+  public Rectangle2D getBounds() {
+    if (entries.length == 0) {
+      return new Rectangle2D(0, 0, 0, 0);
+    }
+    int o = 4 * (boxes.length / 4 - 1);
+    return new Rectangle2D(boxes[o], boxes[o + 2], boxes[o + 1] - boxes[o],
+                           boxes[o + 3] - boxes[o + 2]);
+  }
+
+
+  /**
+   * Selects all shapes whose bounds intersect a window.
+   *
+   * @param window window to select
+   * @return list of selected shapes
+   */
+  public List<D> select(Rectangle2D window) {
+    List<D> selected = new ArrayList<>();
+    select(window, selected::add);
+    return selected;
+  }
+
+
+  /**
+   * Visits all shapes whose bounds intersect a window.
+   *
+   * @param window  window to select
+   * @param visitor receives the selected shapes
+   */
+  public void select(Rectangle2D window, Consumer<? super D> visitor) {
+    Rectangle2D w = window.normalize();
+    select(w.getX(), w.getY(), w.getX() + w.getWidth(), w.getY() + w.getHeight(), visitor);
+  }
+
+
+  /**
+   * Visits all shapes whose bounds intersect a window.
+   *
+   * @param minX    minimum x-coordinate of the window
+   * @param minY    minimum y-coordinate of the window
+   * @param maxX    maximum x-coordinate of the window
+   * @param maxY    maximum y-coordinate of the window
+   * @param visitor receives the selected shapes
+   */
+  public void select(double minX, double minY, double maxX, double maxY,
+                     Consumer<? super D> visitor) {
+    if (entries.length > 0) {
+      select(levels[levels.length - 1] - 1, levels.length - 1, minX, minY, maxX, maxY, visitor);
+    }
+  }
+
+
+  /**
+   * Visits the shapes of a node whose bounds intersect a window.
+   *
+   * @param node    node slot
+   * @param level   level of the node
+   * @param minX    minimum x-coordinate of the window
+   * @param minY    minimum y-coordinate of the window
+   * @param maxX    maximum x-coordinate of the window
+   * @param maxY    maximum y-coordinate of the window
+   * @param visitor receives the selected shapes
+   */
+  private void select(int node, int level, double minX, double minY, double maxX, double maxY,
+                      Consumer<? super D> visitor) {
+    int first = children[node - entries.length];
+    int last  = min(first + nodeSize, levels[level - 1]);
+    for (int child = first; child < last; child++) {
+      int o = 4 * child;
+      if (boxes[o] <= maxX && boxes[o + 1] >= minX &&
+          boxes[o + 2] <= maxY && boxes[o + 3] >= minY) {
+        if (level == 1) {
+          visitor.accept((D) entries[child]);
+        }
+        else {
+          select(child, level - 1, minX, minY, maxX, maxY, visitor);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Visits all shapes containing a point (for example for hit testing). The
+   * bounds are tested first, after which {@link Area#contains(double,
+   * double)} is called.
+   *
+   * @param x       x-coordinate of the point
+   * @param y       y-coordinate of the point
+   * @param visitor receives the shapes containing the point
+   */
+  public void stab(double x, double y, Consumer<? super D> visitor) {
+    if (entries.length > 0) {
+      stab(levels[levels.length - 1] - 1, levels.length - 1, x, y, visitor);
+    }
+  }
+
+
+  /**
+   * Visits the shapes of a node containing a point.
+   *
+   * @param node    node slot
+   * @param level   level of the node
+   * @param x       x-coordinate of the point
+   * @param y       y-coordinate of the point
+   * @param visitor receives the shapes containing the point
+   */
+  private void stab(int node, int level, double x, double y, Consumer<? super D> visitor) {
+    int first = children[node - entries.length];
+    int last  = min(first + nodeSize, levels[level - 1]);
+    for (int child = first; child < last; child++) {
+      int o = 4 * child;
+      if (boxes[o] <= x && boxes[o + 1] >= x && boxes[o + 2] <= y && boxes[o + 3] >= y) {
+        if (level > 1) {
+          stab(child, level - 1, x, y, visitor);
+        }
+        else if (entries[child].contains(x, y)) {
+          visitor.accept((D) entries[child]);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Returns the k shapes nearest to a point. The distance to a shape is the
+   * distance to its bounds (zero if the point is inside the bounds).
+   *
+   * @param x x-coordinate of the point
+   * @param y y-coordinate of the point
+   * @param k number of shapes
+   * @return the nearest shapes, nearest first
+   */
+  public List<D> nearest(double x, double y, int k) {
+    return nearest(x, y, k, null);
+  }
+
+
+  /**
+   * Returns the k shapes nearest to a point, using a distance function (for
+   * example the distance to the edges of a polygon). The distance function
+   * should never be less than the distance to the bounds of the shape,
+   * which is used to prune the nodes. The nodes are visited nearest first,
+   * and the k nearest shapes found so far are kept in a bounded priority
+   * queue.
+   *
+   * @param x        x-coordinate of the point
+   * @param y        y-coordinate of the point
+   * @param k        number of shapes
+   * @param distance distance from the point to a shape, null to use the
+   *                 distance to the bounds
+   * @return the nearest shapes, nearest first
+   */
+  public List<D> nearest(double x, double y, int k, ToDoubleFunction<? super D> distance) {
+    if (k <= 0 || entries.length == 0) {
+      return Collections.emptyList();
+    }
+    k = min(k, entries.length);
+
+    // bounded max-heap of the nearest shapes
+    double[] found      = new double[k];
+    int[]    foundIndex = new int[k];
+    int      foundCount = 0;
+
+    // min-heap of slots to visit
+    double[] queue      = new double[64];
+    int[]    queueSlot  = new int[64];
+    int      queueCount = 0;
+
+    int root = levels[levels.length - 1] - 1;
+    queue[0] = distance(boxes, root, x, y);
+    queueSlot[0] = root;
+    queueCount++;
+
+    while (queueCount > 0) {
+      double d    = queue[0];
+      int    slot = queueSlot[0];
+      queueCount--;
+      siftDown(queue, queueSlot, queueCount, queue[queueCount], queueSlot[queueCount], false);
+
+      if (foundCount == k && d >= found[0]) {
+        break;
+      }
+
+      if (slot < entries.length) {
+        // a shape, with its exact distance
+        if (foundCount < k) {
+          siftUp(found, foundIndex, foundCount++, d, slot, true);
+        }
+        else if (d < found[0]) {
+          siftDown(found, foundIndex, k, d, slot, true);
+        }
+        continue;
+      }
+
+      int level = 1;
+      while (levels[level] <= slot) {
+        level++;
+      }
+      int first = children[slot - entries.length];
+      int last  = min(first + nodeSize, levels[level - 1]);
+      for (int child = first; child < last; child++) {
+        double e = distance(boxes, child, x, y);
+        if (level == 1 && distance != null && (foundCount < k || e < found[0])) {
+          e = max(e, distance.applyAsDouble((D) entries[child]));
+        }
+        if (foundCount < k || e < found[0]) {
+          if (queueCount == queue.length) {
+            queue = Arrays.copyOf(queue, queueCount << 1);
+            queueSlot = Arrays.copyOf(queueSlot, queueCount << 1);
+          }
+          siftUp(queue, queueSlot, queueCount++, e, child, false);
+        }
+      }
+    }
+
+    // empty the max-heap, furthest first
+    Area[] nearest = new Area[foundCount];
+    for (int i = foundCount - 1; i >= 0; i--) {
+      nearest[i] = entries[foundIndex[0]];
+      siftDown(found, foundIndex, i, found[i], foundIndex[i], true);
+    }
+    return Arrays.asList((D[]) nearest);
+  }
+
+
+  /**
+   * Calculates the union of a range of packed boxes.
+   *
+   * @param boxes  packed boxes
+   * @param start  first box (inclusive)
+   * @param end    last box (exclusive)
+   * @param target box receiving the union
+   */
+  private static void union(double[] boxes, int start, int end, int target) {
+    double minX = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    for (int i = start; i < end; i++) {
+      int o = 4 * i;
+      minX = min(minX, boxes[o]);
+      maxX = max(maxX, boxes[o + 1]);
+      minY = min(minY, boxes[o + 2]);
+      maxY = max(maxY, boxes[o + 3]);
+    }
+    int o = 4 * target;
+    boxes[o] = minX;
+    boxes[o + 1] = maxX;
+    boxes[o + 2] = minY;
+    boxes[o + 3] = maxY;
+  }
+
+
+  /**
+   * Calculates the distance from a point to a packed box.
+   *
+   * @param boxes packed boxes
+   * @param slot  box
+   * @param x     x-coordinate of the point
+   * @param y     y-coordinate of the point
+   * @return distance
+   */
+  private static double distance(double[] boxes, int slot, double x, double y) {
+    int    o  = 4 * slot;
+    double dx = max(0, max(boxes[o] - x, x - boxes[o + 1]));
+    double dy = max(0, max(boxes[o + 2] - y, y - boxes[o + 3]));
+    return sqrt(dx * dx + dy * dy);
+  }
+
+
+  /**
+   * Inserts a value at the bottom of a binary heap and moves it up.
+   *
+   * @param keys    heap keys
+   * @param values  heap values
+   * @param index   index of the new value (current heap size)
+   * @param key     key to insert
+   * @param value   value to insert
+   * @param maxHeap true for a max-heap, false for a min-heap
+   */
+  private static void siftUp(double[] keys, int[] values, int index, double key, int value,
+                             boolean maxHeap) {
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (maxHeap ? keys[parent] >= key : keys[parent] <= key) {
+        break;
+      }
+      keys[index] = keys[parent];
+      values[index] = values[parent];
+      index = parent;
+    }
+    keys[index] = key;
+    values[index] = value;
+  }
+
+
+  /**
+   * Replaces the top of a binary heap by a value and moves it down.
+   *
+   * @param keys    heap keys
+   * @param values  heap values
+   * @param size    heap size
+   * @param key     key to insert
+   * @param value   value to insert
+   * @param maxHeap true for a max-heap, false for a min-heap
+   */
+  private static void siftDown(double[] keys, int[] values, int size, double key, int value,
+                               boolean maxHeap) {
+    if (size == 0) {
+      return;
+    }
+    int index = 0;
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size &&
+          (maxHeap ? keys[child + 1] > keys[child] : keys[child + 1] < keys[child])) {
+        child++;
+      }
+      if (maxHeap ? keys[child] <= key : keys[child] >= key) {
+        break;
+      }
+      keys[index] = keys[child];
+      values[index] = values[child];
+      index = child;
+    }
+    keys[index] = key;
+    values[index] = value;
+  }
+}
@@ -17,7 +17,6 @@
 
 package thorwin.math.geo;
 
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -30,7 +29,7 @@ import thorwin.math.Vector2D;
 /**
  * A closed polygon in 2-dimensional space
  */
-public final class Polygon2D implements Serializable {
+public final class Polygon2D implements Area {
   private static final long serialVersionUID = 955509001202467173L;
   private final Rectangle2D bounds;
   private final double[] xs;
@@ -82,6 +81,55 @@ public final class Polygon2D implements Serializable {
     this(vertices, vertices.length);
   }
 
+  /**
+   * Constructs a new polygon from coordinate arrays. The coordinates are
+   * copied.
+   * @param xs x-coordinates of the vertices
+   * @param ys y-coordinates of the vertices
+   */
+  public Polygon2D(double[] xs, double[] ys) {
+    this(xs, ys, 0, xs.length);
+    if (xs.length != ys.length) {
+      throw new IllegalArgumentException("Number of x and y coordinates should be equal");
+    }
+  }
+
+  /**
+   * Constructs a new polygon from a range of coordinate arrays. The
+   * coordinates are copied.
+   * @param xs     x-coordinates of the vertices
+   * @param ys     y-coordinates of the vertices
+   * @param offset index of the first vertex
+   * @param count  number of vertices
+   */
+  public Polygon2D(double[] xs, double[] ys, int offset, int count) {
+    super();
+
+    if (count < 2) {
+      throw new IllegalArgumentException("at least two vertices required");
+    }
+
+    this.xs = Arrays.copyOfRange(xs, offset, offset + count);
+    this.ys = Arrays.copyOfRange(ys, offset, offset + count);
+
+    double minX = this.xs[0];
+    double maxX = minX;
+    double minY = this.ys[0];
+    double maxY = minY;
+
+    for (int i = 1; i < count; i++) {
+      double x = this.xs[i];
+      double y = this.ys[i];
+
+      if (x < minX) minX = x;
+      if (x > maxX) maxX = x;
+      if (y < minY) minY = y;
+      if (y > maxY) maxY = y;
+    }
+
+    bounds = new Rectangle2D(minX, minY, maxX - minX, maxY - minY);
+  }
+
   /**
    * Constructs a new polygon
    * @param vertices vertices of the polygon
@@ -464,6 +512,7 @@ public final class Polygon2D implements Serializable {
     return contains(p.getX(), p.getY());
   }
 
+  @Override
   @SuppressWarnings("SuspiciousNameCombination")
   public boolean contains(double x, double y) {
 
@@ -540,6 +589,15 @@ public final class Polygon2D implements Serializable {
     return (hits & 1) != 0;
   }
 
+  /**
+   * Prepares this polygon for testing many points
+   * @return prepared polygon
+   * @see PreparedPolygon2D
+   */
+  public PreparedPolygon2D prepare() {
+    return new PreparedPolygon2D(this);
+  }
+
   /**
    * Determines if this polygon contains a rectangle
    * @param rectangle a rectangle
@@ -612,6 +670,7 @@ public final class Polygon2D implements Serializable {
    * Returns the bounds of this polygon
    * @return rectangle
    */
+  @Override
   public Rectangle2D getBounds() {
     return bounds;
   }
@@ -0,0 +1,409 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static java.lang.Math.ceil;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+import thorwin.math.Vector2D;
+
+
+/**
+ * A polygon prepared for fast point-in-polygon tests (for example to gate
+ * millions of events). The bounds of the polygon are divided into a uniform
+ * grid, and every cell is classified as inside, outside or boundary. Points
+ * in inside or outside cells are answered by a single lookup; points in
+ * boundary cells are tested against the edges crossing the row of the cell
+ * only. The results are identical to {@link Polygon2D#contains(double,
+ * double)}.
+ */
+public final class PreparedPolygon2D implements Area {
+
+  private static final long serialVersionUID = -1718052413860911934L;
+
+  /**
+   * Cell outside the polygon.
+   */
+  private static final byte OUTSIDE = 0;
+
+  /**
+   * Cell inside the polygon.
+   */
+  private static final byte INSIDE = 1;
+
+  /**
+   * Cell crossed by an edge.
+   */
+  private static final byte BOUNDARY = 2;
+
+  /**
+   * Margin (in cells) by which the edges are widened when classifying the
+   * cells, so rounding never misclassifies a cell.
+   */
+  private static final double MARGIN = 1e-6;
+
+  /**
+   * Number of points per chunk of the batch test (a multiple of 64).
+   */
+  private static final int CHUNK = 4096;
+
+  private final Polygon2D polygon;
+  private final double minX;
+  private final double minY;
+  private final double maxX;
+  private final double maxY;
+  private final double scaleX;
+  private final double scaleY;
+  private final int resolution;
+
+  /**
+   * Cell classes, row by row.
+   */
+  private final byte[] cells;
+
+  /**
+   * Edges (x1, y1, x2, y2 per edge).
+   */
+  private final double[] edges;
+
+  /**
+   * Start of the edges of every row in rowEdges (resolution + 1 entries).
+   */
+  private final int[] rowStarts;
+
+  /**
+   * Edges crossing every row.
+   */
+  private final int[] rowEdges;
+
+
+  /**
+   * Prepares a polygon, using a grid resolution based on its number of
+   * vertices.
+   *
+   * @param polygon polygon
+   */
+  public PreparedPolygon2D(Polygon2D polygon) {
+    this(polygon, min(1024, max(16, 8 * (int) ceil(sqrt(polygon.size())))));
+  }
+
+
+  /**
+   * Prepares a polygon.
+   *
+   * @param polygon    polygon
+   * @param resolution number of grid cells along each axis
+   */
+  public PreparedPolygon2D(Polygon2D polygon, int resolution) {
+    super();
+
+    if (resolution <= 0) {
+      throw new IllegalArgumentException("Resolution should be positive");
+    }
+
+    Rectangle2D bounds = polygon.getBounds();
+    this.polygon = polygon;
+    this.resolution = resolution;
+    this.minX = bounds.getX();
+    this.minY = bounds.getY();
+    this.maxX = minX + bounds.getWidth();
+    this.maxY = minY + bounds.getHeight();
+    this.scaleX = bounds.getWidth() > 0 ? resolution / bounds.getWidth() : 0.0;
+    this.scaleY = bounds.getHeight() > 0 ? resolution / bounds.getHeight() : 0.0;
+
+    // edges, from the previous vertex to the current one
+    int n = polygon.size();
+    edges = new double[4 * n];
+    for (int i = 0; i < n; i++) {
+      Vector2D previous = polygon.getVertex(i == 0 ? n - 1 : i - 1);
+      Vector2D current  = polygon.getVertex(i);
+      edges[4 * i] = previous.getX();
+      edges[4 * i + 1] = previous.getY();
+      edges[4 * i + 2] = current.getX();
+      edges[4 * i + 3] = current.getY();
+    }
+
+    // rows crossed by every edge
+    int[] counts = new int[resolution + 1];
+    for (int edge = 0; edge < n; edge++) {
+      int[] rows = rows(edge);
+      for (int row = rows[0]; row <= rows[1]; row++) {
+        counts[row + 1]++;
+      }
+    }
+    for (int row = 0; row < resolution; row++) {
+      counts[row + 1] += counts[row];
+    }
+    rowStarts = counts.clone();
+    rowEdges = new int[counts[resolution]];
+    for (int edge = 0; edge < n; edge++) {
+      int[] rows = rows(edge);
+      for (int row = rows[0]; row <= rows[1]; row++) {
+        rowEdges[counts[row]++] = edge;
+      }
+    }
+
+    // boundary cells, then the others by testing their centers
+    cells = new byte[resolution * resolution];
+    IntStream.range(0, resolution).parallel().forEach(this::classify);
+  }
+
+
+  /**
+   * Returns the prepared polygon.
+   *
+   * @return polygon
+   */
+  public Polygon2D getPolygon() {
+    return polygon;
+  }
+
+
+  @Override
+  public Rectangle2D getBounds() {
+    return polygon.getBounds();
+  }
+
+
+  /**
+   * Determines if the polygon contains a point.
+   *
+   * @param p point
+   * @return true if the polygon contains the coordinate
+   */
+  public boolean contains(Vector2D p) {
+    return contains(p.getX(), p.getY());
+  }
+
+
+  /**
+   * Determines if the polygon contains a point.
+   *
+   * @param x x-coordinate of the point
+   * @param y y-coordinate of the point
+   * @return true if the polygon contains the coordinate
+   */
+  @Override
+  public boolean contains(double x, double y) {
+    if (!(x >= minX && y >= minY && x <= maxX && y <= maxY) || edges.length < 12) {
+      return false;
+    }
+
+    int column = min(resolution - 1, (int) ((x - minX) * scaleX));
+    int row    = min(resolution - 1, (int) ((y - minY) * scaleY));
+    byte cell  = cells[row * resolution + column];
+    if (cell != BOUNDARY) {
+      return cell == INSIDE;
+    }
+
+    int hits = 0;
+    for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++) {
+      hits += crossing(edges, 4 * rowEdges[i], x, y);
+    }
+    return (hits & 1) != 0;
+  }
+
+
+  /**
+   * Determines for a number of points if the polygon contains them. The
+   * points are tested in parallel chunks.
+   *
+   * @param xs  x-coordinates of the points
+   * @param ys  y-coordinates of the points
+   * @param out receives the results: bit i is set if the polygon contains
+   *            point i, and cleared otherwise
+   */
+  public void containsAll(double[] xs, double[] ys, BitSet out) {
+    if (xs.length != ys.length) {
+      throw new IllegalArgumentException("Number of x and y coordinates should be equal");
+    }
+
+    int    n     = xs.length;
+    long[] words = new long[(n + 63) >>> 6];
+
+    // chunks are multiples of 64 points, so every word is written by one chunk
+    IntStream.range(0, (n + CHUNK - 1) / CHUNK).parallel().forEach((chunk) -> {
+      int end = min(n, (chunk + 1) * CHUNK);
+      for (int i = chunk * CHUNK; i < end; i++) {
+        if (contains(xs[i], ys[i])) {
+          words[i >>> 6] |= 1L << i;
+        }
+      }
+    });
+
+    out.clear(0, n);
+    out.or(BitSet.valueOf(words));
+  }
+
+
+  /**
+   * Counts the points contained by the polygon, in parallel.
+   *
+   * @param xs x-coordinates of the points
+   * @param ys y-coordinates of the points
+   * @return number of contained points
+   */
+  public int count(double[] xs, double[] ys) {
+    if (xs.length != ys.length) {
+      throw new IllegalArgumentException("Number of x and y coordinates should be equal");
+    }
+
+    int n = xs.length;
+    return IntStream.range(0, (n + CHUNK - 1) / CHUNK).parallel().map((chunk) -> {
+      int count = 0;
+      int end   = min(n, (chunk + 1) * CHUNK);
+      for (int i = chunk * CHUNK; i < end; i++) {
+        if (contains(xs[i], ys[i])) {
+          count++;
+        }
+      }
+      return count;
+    }).sum();
+  }
+
+
+  /**
+   * Classifies the cells of a row. Cells crossed by an edge of the row are
+   * boundary cells, the class of the other cells is determined by the
+   * center of the cell.
+   *
+   * @param row row
+   */
+  private void classify(int row) {
+    int    offset = row * resolution;
+    double bottom = row - MARGIN;
+    double top    = row + 1 + MARGIN;
+
+    for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++) {
+      int    o  = 4 * rowEdges[i];
+      double u1 = (edges[o] - minX) * scaleX;
+      double v1 = (edges[o + 1] - minY) * scaleY;
+      double u2 = (edges[o + 2] - minX) * scaleX;
+      double v2 = (edges[o + 3] - minY) * scaleY;
+
+      // the part of the edge inside the row
+      double low  = min(u1, u2);
+      double high = max(u1, u2);
+      if (v1 != v2) {
+        double a = u1 + (bottom - v1) / (v2 - v1) * (u2 - u1);
+        double b = u1 + (top - v1) / (v2 - v1) * (u2 - u1);
+        low = max(low, min(a, b));
+        high = min(high, max(a, b));
+      }
+
+      int first = max(0, (int) floor(low - MARGIN));
+      int last  = min(resolution - 1, (int) floor(high + MARGIN));
+      for (int column = first; column <= last; column++) {
+        cells[offset + column] = BOUNDARY;
+      }
+    }
+
+    double y = minY + (row + 0.5) / scaleY;
+    for (int column = 0; column < resolution; column++) {
+      if (cells[offset + column] != BOUNDARY) {
+        double x = minX + (column + 0.5) / scaleX;
+        cells[offset + column] = polygon.contains(x, y) ? INSIDE : OUTSIDE;
+      }
+    }
+  }
+
+
+  /**
+   * Determines the range of rows an edge may cross.
+   *
+   * @param edge edge
+   * @return first and last row (inclusive)
+   */
+  private int[] rows(int edge) {
+    int    o   = 4 * edge;
+    double v1  = (edges[o + 1] - minY) * scaleY;
+    double v2  = (edges[o + 3] - minY) * scaleY;
+    int    low = max(0, (int) floor(min(v1, v2) - MARGIN));
+    int    high = min(resolution - 1, (int) floor(max(v1, v2) + MARGIN));
+    return new int[]{low, high};
+  }
+
+
+  /**
+   * Determines if the horizontal ray from a point to the right crosses an
+   * edge, using the same rules as {@link Polygon2D#contains(double,
+   * double)}.
+   *
+   * @param edges edges
+   * @param o     offset of the edge
+   * @param x     x-coordinate of the point
+   * @param y     y-coordinate of the point
+   * @return 1 if the edge is crossed, 0 otherwise
+   */
+  private static int crossing(double[] edges, int o, double x, double y) {
+    double lastX     = edges[o];
+    double previousY = edges[o + 1];
+    double currentX  = edges[o + 2];
+    double currentY  = edges[o + 3];
+
+    if ((Double.compare(currentX, lastX) == 0) && (Double.compare(currentY, previousY) == 0)) {
+      return 0;
+    }
+
+    double leftX;
+    double testX;
+    double testY;
+
+    if (currentX < lastX) {
+      if (x >= lastX) {
+        return 0;
+      }
+      leftX = currentX;
+    }
+    else {
+      if (x >= currentX) {
+        return 0;
+      }
+      leftX = lastX;
+    }
+
+    if (currentY < previousY) {
+      if ((y < currentY) || (y >= previousY)) {
+        return 0;
+      }
+      if (x < leftX) {
+        return 1;
+      }
+      testX = x - currentX;
+      testY = y - currentY;
+    }
+    else {
+      if ((y < previousY) || (y >= currentY)) {
+        return 0;
+      }
+      if (x < leftX) {
+        return 1;
+      }
+      testX = x - lastX;
+      testY = y - previousY;
+    }
+
+    return testX < ((testY / (previousY - currentY)) * (lastX - currentX)) ? 1 : 0;
+  }
+}
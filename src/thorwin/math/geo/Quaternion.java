@@ -33,7 +33,7 @@ import thorwin.math.Vector3D;
 /**
  * Quaternion
  */
-public final class Quaternion implements java.io.Serializable {
+public final class Quaternion implements Transform3D {
 
   /**
    * The identity quaternion.
@@ -292,6 +292,50 @@ public final class Quaternion implements java.io.Serializable {
     return new Matrix3x3(mxx, mxy, mxz, myx, myy, myz, mzx, mzy, mzz);
   }
 
+  /**
+   * Rotates a point using this quaternion. This quaternion needs to be
+   * normalized for this method to result in a proper rotation.
+   *
+   * @param x x-coordinate of the point
+   * @param y y-coordinate of the point
+   * @param z z-coordinate of the point
+   * @return rotated point
+   */
+  @Override
+  public Vector3D transform(double x, double y, double z) {
+    assert isNormalized(0.001) : "Quaternion should be normalized";
+
+    // v' = v + 2w (q x v) + 2 q x (q x v)
+    double cx = 2 * (this.y * z - this.z * y);
+    double cy = 2 * (this.z * x - this.x * z);
+    double cz = 2 * (this.x * y - this.y * x);
+
+    return new Vector3D(x + w * cx + (this.y * cz - this.z * cy),
+                        y + w * cy + (this.z * cx - this.x * cz),
+                        z + w * cz + (this.x * cy - this.y * cx));
+  }
+
+  /**
+   * Rotates a range of points using this quaternion. The quaternion is
+   * converted to a rotation matrix once for the whole range. This quaternion
+   * needs to be normalized for this method to result in a proper rotation.
+   *
+   * @param xs    x-coordinates of the points
+   * @param ys    y-coordinates of the points
+   * @param zs    z-coordinates of the points
+   * @param from  index of the first point (inclusive)
+   * @param to    index of the last point (exclusive)
+   * @param outXs receives the rotated x-coordinates
+   * @param outYs receives the rotated y-coordinates
+   * @param outZs receives the rotated z-coordinates
+   */
+  @Override
+  public void transform(double[] xs, double[] ys, double[] zs,
+                        int from, int to,
+                        double[] outXs, double[] outYs, double[] outZs) {
+    toAffine3D().transform(xs, ys, zs, from, to, outXs, outYs, outZs);
+  }
+
   /**
    * Creates an affine matrix from this quaternion. This quaternion needs
    * to be normalized for this method to result in a proper rotation matrix.
@@ -435,6 +479,23 @@ public final class Quaternion implements java.io.Serializable {
     return new Quaternion(w, x, y, z);
   }
 
+  /**
+   * Interpolates spherically between this and another normalized quaternion
+   * (SLERP), along the shortest path, at a constant angular velocity.
+   *
+   * @param other another quaternion
+   * @param t     value between 0.0 and 1.0
+   * @return interpolated quaternion
+   * @see Quaternions
+   */
+  public Quaternion slerp(Quaternion other, double t) {
+    double[] from = {w, x, y, z};
+    double[] to   = {other.w, other.x, other.y, other.z};
+    double[] out  = new double[4];
+    Quaternions.slerp(from, to, 0, t, true, out);
+    return new Quaternion(out[0], out[1], out[2], out[3]);
+  }
+
   /**
    * Returns the euler representation of a normalized quaternion.
    *
@@ -0,0 +1,508 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static java.lang.Math.atan2;
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+
+import thorwin.math.Affine3D;
+
+
+/**
+ * Batch rotation interpolation on packed quaternion arrays. Quaternion
+ * <i>i</i> of an array occupies the elements <i>4i</i> to <i>4i + 3</i>, in
+ * the order w, x, y, z of {@link Quaternion}; quaternions are expected to be
+ * normalized. The methods write into caller supplied arrays (which may be
+ * one of the inputs) and do not allocate, so thousands of rotations can be
+ * interpolated per animation frame. Large batches are computed in parallel.
+ * <p>
+ * Angles are calculated with {@code atan2} rather than {@code acos}, which
+ * is both faster and more accurate for small angles.
+ * <p>
+ * NLERP (normalized linear interpolation) is the cheapest and is adequate
+ * for small angles; SLERP (spherical linear interpolation) rotates at a
+ * constant angular velocity; SQUAD (spherical quadrangle interpolation)
+ * smoothly passes a sequence of keyframes, using the control quaternions of
+ * {@link #controls(double[], double[], double[], double[])}. See
+ * {@link RotationTrack} for keyframe animation.
+ */
+public final class Quaternions {
+
+  /**
+   * Cosine of the angle below which SLERP falls back to NLERP, avoiding the
+   * division by the sine of a vanishing angle.
+   */
+  private static final double LINEAR = 1 - 1e-6;
+
+
+  /**
+   * Utility class.
+   */
+  private Quaternions() {
+    super();
+  }
+
+
+  /**
+   * Packs quaternions into an array.
+   *
+   * @param quaternions quaternions
+   * @return packed quaternions
+   */
+  public static double[] pack(Quaternion... quaternions) {
+    double[] packed = new double[4 * quaternions.length];
+    for (int i = 0; i < quaternions.length; i++) {
+      packed[4 * i] = quaternions[i].getW();
+      packed[4 * i + 1] = quaternions[i].getX();
+      packed[4 * i + 2] = quaternions[i].getY();
+      packed[4 * i + 3] = quaternions[i].getZ();
+    }
+    return packed;
+  }
+
+
+  /**
+   * Returns a quaternion of a packed array.
+   *
+   * @param quaternions packed quaternions
+   * @param index       index of the quaternion
+   * @return quaternion
+   */
+  public static Quaternion get(double[] quaternions, int index) {
+    return new Quaternion(quaternions[4 * index],
+                          quaternions[4 * index + 1],
+                          quaternions[4 * index + 2],
+                          quaternions[4 * index + 3]);
+  }
+
+
+  /**
+   * Normalizes packed quaternions.
+   *
+   * @param quaternions packed quaternions, normalized in place
+   */
+  public static void normalize(double[] quaternions) {
+    check(quaternions, quaternions, quaternions);
+    Blocks.run(quaternions.length / 4, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        normalize(quaternions, 4 * i);
+      }
+    });
+  }
+
+
+  /**
+   * Interpolates packed quaternions linearly and normalizes the results
+   * (NLERP), along the shortest path.
+   *
+   * @param from start quaternions
+   * @param to   end quaternions
+   * @param t    interpolation value between 0.0 and 1.0
+   * @param out  receives the interpolated quaternions
+   */
+  public static void nlerp(double[] from, double[] to, double t, double[] out) {
+    check(from, to, out);
+    Blocks.run(from.length / 4, (first, last) -> {
+      for (int i = first; i < last; i++) {
+        nlerp(from, to, 4 * i, t, true, out);
+      }
+    });
+  }
+
+
+  /**
+   * Interpolates packed quaternions spherically (SLERP), along the shortest
+   * path.
+   *
+   * @param from start quaternions
+   * @param to   end quaternions
+   * @param t    interpolation value between 0.0 and 1.0
+   * @param out  receives the interpolated quaternions
+   */
+  public static void slerp(double[] from, double[] to, double t, double[] out) {
+    check(from, to, out);
+    Blocks.run(from.length / 4, (first, last) -> {
+      for (int i = first; i < last; i++) {
+        slerp(from, to, 4 * i, t, true, out);
+      }
+    });
+  }
+
+
+  /**
+   * Interpolates packed quaternions spherically (SLERP), with an
+   * interpolation value per quaternion.
+   *
+   * @param from start quaternions
+   * @param to   end quaternions
+   * @param ts   interpolation values between 0.0 and 1.0
+   * @param out  receives the interpolated quaternions
+   */
+  public static void slerp(double[] from, double[] to, double[] ts, double[] out) {
+    check(from, to, out);
+    if (4 * ts.length != from.length) {
+      throw new IllegalArgumentException("Array lengths should be equal");
+    }
+    Blocks.run(ts.length, (first, last) -> {
+      for (int i = first; i < last; i++) {
+        slerp(from, to, 4 * i, ts[i], true, out);
+      }
+    });
+  }
+
+
+  /**
+   * Interpolates packed quaternions by spherical quadrangle interpolation
+   * (SQUAD) between keyframes q0 and q1 with control quaternions s0 and s1.
+   * The keyframes should be on the same hemisphere (non-negative dot
+   * product), as the interpolation does not take the shortest path.
+   *
+   * @param q0  start quaternions
+   * @param q1  end quaternions
+   * @param s0  control quaternions of the start
+   * @param s1  control quaternions of the end
+   * @param t   interpolation value between 0.0 and 1.0
+   * @param out receives the interpolated quaternions
+   */
+  public static void squad(double[] q0, double[] q1, double[] s0, double[] s1, double t,
+                           double[] out) {
+    check(q0, q1, out);
+    check(s0, s1, out);
+    Blocks.run(q0.length / 4, (first, last) -> {
+      for (int i = first; i < last; i++) {
+        squad(q0, q1, s0, s1, 4 * i, t, out);
+      }
+    });
+  }
+
+
+  /**
+   * Calculates the SQUAD control quaternions of keyframes:
+   * <i>s = q exp(-(log(q^-1 next) + log(q^-1 previous)) / 4)</i>. For the
+   * first and last keyframe, pass the keyframe itself as previous or next.
+   *
+   * @param previous previous keyframe quaternions
+   * @param current  keyframe quaternions
+   * @param next     next keyframe quaternions
+   * @param out      receives the control quaternions
+   */
+  public static void controls(double[] previous, double[] current, double[] next,
+                              double[] out) {
+    check(previous, current, out);
+    check(next, current, out);
+    Blocks.run(current.length / 4, (first, last) -> {
+      for (int i = first; i < last; i++) {
+        controls(previous, current, next, 4 * i, out);
+      }
+    });
+  }
+
+
+  /**
+   * Converts packed quaternions to affine matrices in bulk. Matrix <i>i</i>
+   * occupies the elements <i>12i</i> to <i>12i + 11</i> in the row-major
+   * order of the {@link Affine3D} constructor (mxx, mxy, mxz, tx, myx, ...,
+   * tz).
+   *
+   * @param quaternions  packed quaternions
+   * @param translations packed translations (x, y, z per quaternion), or
+   *                     null for no translation
+   * @param out          receives the matrices
+   */
+  public static void toAffine3D(double[] quaternions, double[] translations, double[] out) {
+    int count = quaternions.length / 4;
+    if (4 * count != quaternions.length || 12 * count != out.length ||
+        (translations != null && 3 * count != translations.length)) {
+      throw new IllegalArgumentException("Array lengths should be equal");
+    }
+    Blocks.run(count, (first, last) -> {
+      for (int i = first; i < last; i++) {
+        int    q  = 4 * i;
+        int    m  = 12 * i;
+        double w  = quaternions[q];
+        double x  = quaternions[q + 1];
+        double y  = quaternions[q + 2];
+        double z  = quaternions[q + 3];
+        double xx = x * x;
+        double yy = y * y;
+        double zz = z * z;
+        out[m] = 1 - 2 * (yy + zz);
+        out[m + 1] = 2 * (x * y - z * w);
+        out[m + 2] = 2 * (x * z + y * w);
+        out[m + 3] = translations == null ? 0 : translations[3 * i];
+        out[m + 4] = 2 * (x * y + z * w);
+        out[m + 5] = 1 - 2 * (xx + zz);
+        out[m + 6] = 2 * (y * z - x * w);
+        out[m + 7] = translations == null ? 0 : translations[3 * i + 1];
+        out[m + 8] = 2 * (x * z - y * w);
+        out[m + 9] = 2 * (y * z + x * w);
+        out[m + 10] = 1 - 2 * (xx + yy);
+        out[m + 11] = translations == null ? 0 : translations[3 * i + 2];
+      }
+    });
+  }
+
+
+  /**
+   * Converts packed quaternions to affine matrices.
+   *
+   * @param quaternions packed quaternions
+   * @return affine matrices
+   */
+  public static Affine3D[] toAffine3D(double[] quaternions) {
+    check(quaternions, quaternions, quaternions);
+    Affine3D[] affines = new Affine3D[quaternions.length / 4];
+    Blocks.run(affines.length, (first, last) -> {
+      for (int i = first; i < last; i++) {
+        affines[i] = Quaternion.toAffine3D(quaternions[4 * i],
+                                           quaternions[4 * i + 1],
+                                           quaternions[4 * i + 2],
+                                           quaternions[4 * i + 3]);
+      }
+    });
+    return affines;
+  }
+
+
+  /**
+   * Interpolates a quaternion linearly and normalizes the result.
+   *
+   * @param a        start quaternions
+   * @param b        end quaternions
+   * @param q        position of the quaternion
+   * @param t        interpolation value
+   * @param shortest true to take the shortest path
+   * @param out      receives the interpolated quaternion
+   */
+  static void nlerp(double[] a, double[] b, int q, double t, boolean shortest, double[] out) {
+    double u = 1 - t;
+    double v = shortest && dot(a, b, q) < 0 ? -t : t;
+    out[q] = u * a[q] + v * b[q];
+    out[q + 1] = u * a[q + 1] + v * b[q + 1];
+    out[q + 2] = u * a[q + 2] + v * b[q + 2];
+    out[q + 3] = u * a[q + 3] + v * b[q + 3];
+    normalize(out, q);
+  }
+
+
+  /**
+   * Interpolates a quaternion spherically.
+   *
+   * @param a        start quaternions
+   * @param b        end quaternions
+   * @param q        position of the quaternion
+   * @param t        interpolation value
+   * @param shortest true to take the shortest path
+   * @param out      receives the interpolated quaternion
+   */
+  static void slerp(double[] a, double[] b, int q, double t, boolean shortest, double[] out) {
+    double cosine = dot(a, b, q);
+    double sign   = 1;
+    if (shortest && cosine < 0) {
+      cosine = -cosine;
+      sign = -1;
+    }
+    if (cosine > LINEAR) {
+      nlerp(a, b, q, t, shortest, out);
+      return;
+    }
+    double sine  = sqrt(1 - cosine * cosine);
+    double angle = atan2(sine, cosine);
+    double scale = 1 / sine;
+    double u     = sin((1 - t) * angle) * scale;
+    double v     = sign * sin(t * angle) * scale;
+    out[q] = u * a[q] + v * b[q];
+    out[q + 1] = u * a[q + 1] + v * b[q + 1];
+    out[q + 2] = u * a[q + 2] + v * b[q + 2];
+    out[q + 3] = u * a[q + 3] + v * b[q + 3];
+  }
+
+
+  /**
+   * Interpolates a quaternion by spherical quadrangle interpolation. The
+   * intermediate results are kept in locals, so the output may be one of
+   * the inputs.
+   *
+   * @param q0  start quaternions
+   * @param q1  end quaternions
+   * @param s0  control quaternions of the start
+   * @param s1  control quaternions of the end
+   * @param q   position of the quaternion
+   * @param t   interpolation value
+   * @param out receives the interpolated quaternion
+   */
+  static void squad(double[] q0, double[] q1, double[] s0, double[] s1, int q, double t,
+                    double[] out) {
+    // slerp(q0, q1, t) and slerp(s0, s1, t), without taking the shortest path
+    double cosine = dot(q0, q1, q);
+    double u;
+    double v;
+    if (cosine > LINEAR || cosine < -LINEAR) {
+      u = 1 - t;
+      v = t;
+    }
+    else {
+      double sine  = sqrt(1 - cosine * cosine);
+      double angle = atan2(sine, cosine);
+      u = sin((1 - t) * angle) / sine;
+      v = sin(t * angle) / sine;
+    }
+    double aw = u * q0[q] + v * q1[q];
+    double ax = u * q0[q + 1] + v * q1[q + 1];
+    double ay = u * q0[q + 2] + v * q1[q + 2];
+    double az = u * q0[q + 3] + v * q1[q + 3];
+
+    cosine = dot(s0, s1, q);
+    if (cosine > LINEAR || cosine < -LINEAR) {
+      u = 1 - t;
+      v = t;
+    }
+    else {
+      double sine  = sqrt(1 - cosine * cosine);
+      double angle = atan2(sine, cosine);
+      u = sin((1 - t) * angle) / sine;
+      v = sin(t * angle) / sine;
+    }
+    double bw = u * s0[q] + v * s1[q];
+    double bx = u * s0[q + 1] + v * s1[q + 1];
+    double by = u * s0[q + 2] + v * s1[q + 2];
+    double bz = u * s0[q + 3] + v * s1[q + 3];
+
+    // slerp of both with 2t(1 - t)
+    double h = 2 * t * (1 - t);
+    cosine = aw * bw + ax * bx + ay * by + az * bz;
+    if (cosine > LINEAR || cosine < -LINEAR) {
+      u = 1 - h;
+      v = h;
+    }
+    else {
+      double sine  = sqrt(1 - cosine * cosine);
+      double angle = atan2(sine, cosine);
+      u = sin((1 - h) * angle) / sine;
+      v = sin(h * angle) / sine;
+    }
+    out[q] = u * aw + v * bw;
+    out[q + 1] = u * ax + v * bx;
+    out[q + 2] = u * ay + v * by;
+    out[q + 3] = u * az + v * bz;
+    normalize(out, q);
+  }
+
+
+  /**
+   * Calculates the SQUAD control quaternion of a keyframe.
+   *
+   * @param previous previous keyframe quaternions
+   * @param current  keyframe quaternions
+   * @param next     next keyframe quaternions
+   * @param q        position of the quaternion
+   * @param out      receives the control quaternion
+   */
+  static void controls(double[] previous, double[] current, double[] next, int q, double[] out) {
+    double w = current[q];
+    double x = current[q + 1];
+    double y = current[q + 2];
+    double z = current[q + 3];
+
+    // sum of the logarithms of the relative rotations to the neighbours
+    double ex = 0;
+    double ey = 0;
+    double ez = 0;
+    for (int k = 0; k < 2; k++) {
+      double[] other = k == 0 ? next : previous;
+      double   ow    = other[q];
+      double   ox    = other[q + 1];
+      double   oy    = other[q + 2];
+      double   oz    = other[q + 3];
+
+      // conjugate(current) * other, on the same hemisphere as the identity
+      double rw   = w * ow + x * ox + y * oy + z * oz;
+      double rx   = w * ox - x * ow - y * oz + z * oy;
+      double ry   = w * oy + x * oz - y * ow - z * ox;
+      double rz   = w * oz - x * oy + y * ox - z * ow;
+      double sign = rw < 0 ? -1 : 1;
+      double norm = sqrt(rx * rx + ry * ry + rz * rz);
+      double log  = norm > 0 ? sign * atan2(norm, sign * rw) / norm : 0;
+      ex -= 0.25 * log * rx;
+      ey -= 0.25 * log * ry;
+      ez -= 0.25 * log * rz;
+    }
+    double length = sqrt(ex * ex + ey * ey + ez * ez);
+    double ew     = cos(length);
+    double scale  = length > 0 ? sin(length) / length : 1;
+    ex *= scale;
+    ey *= scale;
+    ez *= scale;
+
+    // current * exp(-sum / 4)
+    out[q] = w * ew - x * ex - y * ey - z * ez;
+    out[q + 1] = w * ex + x * ew + y * ez - z * ey;
+    out[q + 2] = w * ey - x * ez + y * ew + z * ex;
+    out[q + 3] = w * ez + x * ey - y * ex + z * ew;
+  }
+
+
+  /**
+   * Calculates the dot product of two quaternions.
+   *
+   * @param a first quaternions
+   * @param b second quaternions
+   * @param q position of the quaternions
+   * @return dot product
+   */
+  private static double dot(double[] a, double[] b, int q) {
+    return a[q] * b[q] + a[q + 1] * b[q + 1] + a[q + 2] * b[q + 2] + a[q + 3] * b[q + 3];
+  }
+
+
+  /**
+   * Normalizes a quaternion in place.
+   *
+   * @param quaternions packed quaternions
+   * @param q           position of the quaternion
+   */
+  private static void normalize(double[] quaternions, int q) {
+    double length = sqrt(dot(quaternions, quaternions, q));
+    if (length > 0) {
+      double scale = 1 / length;
+      quaternions[q] *= scale;
+      quaternions[q + 1] *= scale;
+      quaternions[q + 2] *= scale;
+      quaternions[q + 3] *= scale;
+    }
+  }
+
+
+  /**
+   * Checks the lengths of packed quaternion arrays.
+   *
+   * @param a   first array
+   * @param b   second array
+   * @param out output array
+   */
+  private static void check(double[] a, double[] b, double[] out) {
+    if (a.length != b.length || a.length != out.length) {
+      throw new IllegalArgumentException("Array lengths should be equal");
+    }
+    if (a.length % 4 != 0) {
+      throw new IllegalArgumentException("Array length should be a multiple of 4");
+    }
+  }
+}
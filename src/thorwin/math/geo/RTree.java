@@ -0,0 +1,1039 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+
+
+/**
+ * A dynamic R-tree of 2D shapes, using the R*-tree insertion algorithm:
+ * subtrees are chosen by least overlap enlargement (at the leaf level) or
+ * least area enlargement, overflowing nodes first reinsert their outermost
+ * entries (once per level per insertion) and are otherwise split along the
+ * axis with the least margin, at the distribution with the least overlap.
+ * Underfull nodes are dissolved on deletion and their entries reinserted.
+ * <p>
+ * Queries are the same as those of {@link PackedRTree}: window selection,
+ * point stabbing and k nearest neighbours, reported to a visitor without
+ * allocating. Shapes must not change their bounds while they are in the
+ * tree: delete them, change them and insert them again.
+ * <p>
+ * An R-tree is not thread-safe.
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/R*_tree">
+ * Wikipedia on R*-trees</a>
+ */
+@SuppressWarnings("unchecked")
+public final class RTree<D extends Area> {
+
+  /**
+   * Maximum number of children per node.
+   */
+  private static final int MAX_CHILDREN = 16;
+
+  /**
+   * Minimum number of children per node (except the root).
+   */
+  private static final int MIN_CHILDREN = 6;
+
+  /**
+   * Number of entries reinserted when a node overflows (30%).
+   */
+  private static final int REINSERT = 5;
+
+  /**
+   * Root node.
+   */
+  private Node root = new Node();
+
+  /**
+   * Number of node levels, the leaves are at level zero.
+   */
+  private int height = 1;
+
+  /**
+   * Number of shapes.
+   */
+  private int size;
+
+
+  /**
+   * Constructs an empty R-tree.
+   */
+  public RTree() {
+    super();
+  }
+
+
+  /**
+   * Returns the number of shapes.
+   *
+   * @return number of shapes
+   */
+  public int size() {
+    return size;
+  }
+
+
+  /**
+   * Returns the depth of the tree (the number of node levels).
+   *
+   * @return depth
+   */
+  public int depth() {
+    return height;
+  }
+
+
+  /**
+   * Returns the bounds of all shapes.
+   *
+   * @return bounding rectangle, an empty rectangle at the origin if the tree
+   * is empty
+   */
+  public Rectangle2D getBounds() {
+    if (size == 0) {
+      return new Rectangle2D(0, 0, 0, 0);
+    }
+    double[] box = new double[4];
+    bounds(root, box, 0);
+    return new Rectangle2D(box[0], box[2], box[1] - box[0], box[3] - box[2]);
+  }
+
+
+  /**
+   * Inserts a number of shapes.
+   *
+   * @param shapes shapes to insert
+   */
+  public void insert(Collection<? extends D> shapes) {
+    shapes.forEach(this::insert);
+  }
+
+
+  /**
+   * Inserts a shape.
+   *
+   * @param shape shape to insert
+   */
+  public void insert(D shape) {
+    Insertion insertion = new Insertion(height);
+    insert(shape, box(shape), 0, insertion);
+    while (!insertion.pending.isEmpty()) {
+      Entry entry = insertion.pending.remove(insertion.pending.size() - 1);
+      insert(entry.child, entry.box, entry.level, insertion);
+    }
+    size++;
+  }
+
+
+  /**
+   * Removes a shape. The shape is located using its bounds, or found by
+   * visiting all shapes if its bounds have changed since its insertion.
+   *
+   * @param shape shape to remove
+   * @return true if removed, false if the shape was not present
+   */
+  public boolean delete(D shape) {
+    List<Entry> orphans = new ArrayList<>();
+    double[]    box     = box(shape);
+    if (!delete(root, height - 1, shape, box, true, orphans) &&
+        !delete(root, height - 1, shape, box, false, orphans)) {
+      return false;
+    }
+    size--;
+
+    // shorten the tree
+    while (height > 1 && root.count <= 1) {
+      if (root.count == 0) {
+        root = new Node();
+        height = 1;
+      }
+      else {
+        root = (Node) root.children[0];
+        height--;
+      }
+    }
+
+    Insertion insertion = new Insertion(height);
+    insertion.pending.addAll(orphans);
+    while (!insertion.pending.isEmpty()) {
+      Entry entry = insertion.pending.remove(insertion.pending.size() - 1);
+      insert(entry.child, entry.box, entry.level, insertion);
+    }
+    return true;
+  }
+
+
+  /**
+   * Selects all shapes whose bounds intersect a window.
+   *
+   * @param window window to select
+   * @return list of selected shapes
+   */
+  public List<D> select(Rectangle2D window) {
+    List<D> selected = new ArrayList<>();
+    select(window, selected::add);
+    return selected;
+  }
+
+
+  /**
+   * Visits all shapes whose bounds intersect a window.
+   *
+   * @param window  window to select
+   * @param visitor receives the selected shapes
+   */
+  public void select(Rectangle2D window, Consumer<? super D> visitor) {
+    Rectangle2D w = window.normalize();
+    select(w.getX(), w.getY(), w.getX() + w.getWidth(), w.getY() + w.getHeight(), visitor);
+  }
+
+
+  /**
+   * Visits all shapes whose bounds intersect a window.
+   *
+   * @param minX    minimum x-coordinate of the window
+   * @param minY    minimum y-coordinate of the window
+   * @param maxX    maximum x-coordinate of the window
+   * @param maxY    maximum y-coordinate of the window
+   * @param visitor receives the selected shapes
+   */
+  public void select(double minX, double minY, double maxX, double maxY,
+                     Consumer<? super D> visitor) {
+    select(root, height - 1, minX, minY, maxX, maxY, visitor);
+  }
+
+
+  /**
+   * Visits the shapes of a node whose bounds intersect a window.
+   *
+   * @param node    node
+   * @param level   level of the node
+   * @param minX    minimum x-coordinate of the window
+   * @param minY    minimum y-coordinate of the window
+   * @param maxX    maximum x-coordinate of the window
+   * @param maxY    maximum y-coordinate of the window
+   * @param visitor receives the selected shapes
+   */
+  private void select(Node node, int level, double minX, double minY, double maxX, double maxY,
+                      Consumer<? super D> visitor) {
+    double[] boxes = node.boxes;
+    for (int i = 0; i < node.count; i++) {
+      int o = 4 * i;
+      if (boxes[o] <= maxX && boxes[o + 1] >= minX &&
+          boxes[o + 2] <= maxY && boxes[o + 3] >= minY) {
+        if (level == 0) {
+          visitor.accept((D) node.children[i]);
+        }
+        else {
+          select((Node) node.children[i], level - 1, minX, minY, maxX, maxY, visitor);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Visits all shapes containing a point (for example for hit testing). The
+   * bounds are tested first, after which {@link Area#contains(double,
+   * double)} is called.
+   *
+   * @param x       x-coordinate of the point
+   * @param y       y-coordinate of the point
+   * @param visitor receives the shapes containing the point
+   */
+  public void stab(double x, double y, Consumer<? super D> visitor) {
+    stab(root, height - 1, x, y, visitor);
+  }
+
+
+  /**
+   * Visits the shapes of a node containing a point.
+   *
+   * @param node    node
+   * @param level   level of the node
+   * @param x       x-coordinate of the point
+   * @param y       y-coordinate of the point
+   * @param visitor receives the shapes containing the point
+   */
+  private void stab(Node node, int level, double x, double y, Consumer<? super D> visitor) {
+    double[] boxes = node.boxes;
+    for (int i = 0; i < node.count; i++) {
+      int o = 4 * i;
+      if (boxes[o] <= x && boxes[o + 1] >= x && boxes[o + 2] <= y && boxes[o + 3] >= y) {
+        if (level > 0) {
+          stab((Node) node.children[i], level - 1, x, y, visitor);
+        }
+        else if (((D) node.children[i]).contains(x, y)) {
+          visitor.accept((D) node.children[i]);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Returns the k shapes nearest to a point. The distance to a shape is the
+   * distance to its bounds (zero if the point is inside the bounds).
+   *
+   * @param x x-coordinate of the point
+   * @param y y-coordinate of the point
+   * @param k number of shapes
+   * @return the nearest shapes, nearest first
+   */
+  public List<D> nearest(double x, double y, int k) {
+    return nearest(x, y, k, null);
+  }
+
+
+  /**
+   * Returns the k shapes nearest to a point, using a distance function (for
+   * example the distance to the edges of a polygon). The distance function
+   * should never be less than the distance to the bounds of the shape,
+   * which is used to prune the nodes. The nodes are visited nearest first,
+   * and the k nearest shapes found so far are kept in a bounded priority
+   * queue.
+   *
+   * @param x        x-coordinate of the point
+   * @param y        y-coordinate of the point
+   * @param k        number of shapes
+   * @param distance distance from the point to a shape, null to use the
+   *                 distance to the bounds
+   * @return the nearest shapes, nearest first
+   */
+  public List<D> nearest(double x, double y, int k, ToDoubleFunction<? super D> distance) {
+    if (k <= 0 || size == 0) {
+      return Collections.emptyList();
+    }
+    k = min(k, size);
+
+    // bounded max-heap of the nearest shapes
+    double[] found      = new double[k];
+    Object[] foundShape = new Object[k];
+    int      foundCount = 0;
+
+    // min-heap of nodes and shapes to visit, nodes with their level
+    double[] queue      = new double[64];
+    Object[] queueItem  = new Object[64];
+    int[]    queueLevel = new int[64];
+    int      queueCount = 1;
+    queueItem[0] = root;
+    queueLevel[0] = height - 1;
+
+    while (queueCount > 0) {
+      double d     = queue[0];
+      Object item  = queueItem[0];
+      int    level = queueLevel[0];
+      queueCount--;
+      siftDown(queue, queueItem, queueLevel, queueCount, queue[queueCount],
+               queueItem[queueCount], queueLevel[queueCount], false);
+      queueItem[queueCount] = null;
+
+      if (foundCount == k && d >= found[0]) {
+        break;
+      }
+
+      if (level < 0) {
+        // a shape, with its exact distance
+        if (foundCount < k) {
+          siftUp(found, foundShape, null, foundCount++, d, item, 0, true);
+        }
+        else if (d < found[0]) {
+          siftDown(found, foundShape, null, k, d, item, 0, true);
+        }
+        continue;
+      }
+
+      Node node = (Node) item;
+      for (int i = 0; i < node.count; i++) {
+        double e = distance(node.boxes, 4 * i, x, y);
+        if (level == 0 && distance != null && (foundCount < k || e < found[0])) {
+          e = max(e, distance.applyAsDouble((D) node.children[i]));
+        }
+        if (foundCount < k || e < found[0]) {
+          if (queueCount == queue.length) {
+            queue = Arrays.copyOf(queue, queueCount << 1);
+            queueItem = Arrays.copyOf(queueItem, queueCount << 1);
+            queueLevel = Arrays.copyOf(queueLevel, queueCount << 1);
+          }
+          siftUp(queue, queueItem, queueLevel, queueCount++, e, node.children[i], level - 1,
+                 false);
+        }
+      }
+    }
+
+    // empty the max-heap, furthest first
+    Area[] nearest = new Area[foundCount];
+    for (int i = foundCount - 1; i >= 0; i--) {
+      nearest[i] = (Area) foundShape[0];
+      siftDown(found, foundShape, null, i, found[i], foundShape[i], 0, true);
+    }
+    return Arrays.asList((D[]) nearest);
+  }
+
+
+  /**
+   * Inserts a shape or a node at a level, and reinserts or splits
+   * overflowing nodes. A split root is replaced by a new root.
+   *
+   * @param child     shape (level zero) or node
+   * @param box       bounds of the child
+   * @param level     level of the node receiving the child
+   * @param insertion state of the insertion
+   */
+  private void insert(Object child, double[] box, int level, Insertion insertion) {
+    if (level > height - 1) {
+      // the tree has been shortened, insert the children of the node
+      Node node = (Node) child;
+      for (int i = 0; i < node.count; i++) {
+        insert(node.children[i], Arrays.copyOfRange(node.boxes, 4 * i, 4 * i + 4), level - 1,
+               insertion);
+      }
+      return;
+    }
+
+    Node split = insert(root, height - 1, child, box, level, insertion);
+    if (split != null) {
+      Node grown = new Node();
+      add(grown, root, null);
+      add(grown, split, null);
+      root = grown;
+      height++;
+    }
+  }
+
+
+  /**
+   * Inserts a shape or a node below a node.
+   *
+   * @param node        node
+   * @param nodeLevel   level of the node
+   * @param child       shape or node to insert
+   * @param box         bounds of the child
+   * @param targetLevel level of the node receiving the child
+   * @param insertion   state of the insertion
+   * @return the new sibling of the node if it has been split, null
+   * otherwise
+   */
+  private Node insert(Node node, int nodeLevel, Object child, double[] box, int targetLevel,
+                      Insertion insertion) {
+    if (nodeLevel == targetLevel) {
+      add(node, child, box);
+    }
+    else {
+      int  index = choose(node, nodeLevel, box);
+      Node next  = (Node) node.children[index];
+      Node split = insert(next, nodeLevel - 1, child, box, targetLevel, insertion);
+      bounds(next, node.boxes, 4 * index);
+      if (split != null) {
+        add(node, split, null);
+      }
+    }
+
+    if (node.count <= MAX_CHILDREN) {
+      return null;
+    }
+    if (nodeLevel < height - 1 && !insertion.reinserted(nodeLevel)) {
+      reinsert(node, nodeLevel, insertion);
+      return null;
+    }
+    return split(node);
+  }
+
+
+  /**
+   * Chooses the child of a node to insert into. At the level above the
+   * leaves, the child needing the least overlap enlargement is chosen,
+   * otherwise the child needing the least area enlargement. Ties are
+   * resolved by area enlargement and area.
+   *
+   * @param node  node
+   * @param level level of the node
+   * @param box   bounds of the inserted child
+   * @return index of the chosen child
+   */
+  private static int choose(Node node, int level, double[] box) {
+    double[] boxes       = node.boxes;
+    int      best        = 0;
+    double   bestOverlap = Double.POSITIVE_INFINITY;
+    double   bestGrowth  = Double.POSITIVE_INFINITY;
+    double   bestArea    = Double.POSITIVE_INFINITY;
+
+    for (int i = 0; i < node.count; i++) {
+      int    o      = 4 * i;
+      double minX   = min(boxes[o], box[0]);
+      double maxX   = max(boxes[o + 1], box[1]);
+      double minY   = min(boxes[o + 2], box[2]);
+      double maxY   = max(boxes[o + 3], box[3]);
+      double area   = area(boxes, o);
+      double growth = (maxX - minX) * (maxY - minY) - area;
+
+      double overlap = 0;
+      if (level == 1) {
+        for (int j = 0; j < node.count; j++) {
+          if (j != i) {
+            int p = 4 * j;
+            overlap += overlap(minX, maxX, minY, maxY, boxes, p) -
+                       overlap(boxes[o], boxes[o + 1], boxes[o + 2], boxes[o + 3], boxes, p);
+          }
+        }
+      }
+
+      if (overlap < bestOverlap ||
+          overlap == bestOverlap && (growth < bestGrowth ||
+                                     growth == bestGrowth && area < bestArea)) {
+        best = i;
+        bestOverlap = overlap;
+        bestGrowth = growth;
+        bestArea = area;
+      }
+    }
+    return best;
+  }
+
+
+  /**
+   * Removes the entries of an overflowing node that are furthest from its
+   * center, and schedules them for reinsertion, closest first.
+   *
+   * @param node      overflowing node
+   * @param level     level of the node
+   * @param insertion state of the insertion
+   */
+  private static void reinsert(Node node, int level, Insertion insertion) {
+    double[] center = new double[4];
+    bounds(node, center, 0);
+    double cx = 0.5 * (center[0] + center[1]);
+    double cy = 0.5 * (center[2] + center[3]);
+
+    int      count    = node.count;
+    double[] distance = new double[count];
+    int[]    order    = new int[count];
+    for (int i = 0; i < count; i++) {
+      int    o  = 4 * i;
+      double dx = 0.5 * (node.boxes[o] + node.boxes[o + 1]) - cx;
+      double dy = 0.5 * (node.boxes[o + 2] + node.boxes[o + 3]) - cy;
+      distance[i] = dx * dx + dy * dy;
+      order[i] = i;
+    }
+    sort(order, count, distance);
+
+    // the pending entries are taken from the end, furthest are added first
+    Object[] children = node.children.clone();
+    double[] boxes    = node.boxes.clone();
+    for (int i = count - 1; i >= count - REINSERT; i--) {
+      int o = 4 * order[i];
+      insertion.pending.add(new Entry(children[order[i]], Arrays.copyOfRange(boxes, o, o + 4),
+                                      level));
+    }
+    node.count = 0;
+    for (int i = 0; i < count - REINSERT; i++) {
+      add(node, children[order[i]], Arrays.copyOfRange(boxes, 4 * order[i], 4 * order[i] + 4));
+    }
+    Arrays.fill(node.children, node.count, node.children.length, null);
+  }
+
+
+  /**
+   * Splits an overflowing node. The split axis is the axis with the least
+   * sum of margins over all distributions; the distribution along that axis
+   * with the least overlap (then least area) is chosen.
+   *
+   * @param node overflowing node
+   * @return the new sibling of the node
+   */
+  private static Node split(Node node) {
+    int      count  = node.count;
+    double[] boxes  = node.boxes;
+    double[] keys   = new double[count];
+    int[][]  orders = new int[4][count];
+
+    // sorted by lower and by upper value along both axes
+    for (int sort = 0; sort < 4; sort++) {
+      for (int i = 0; i < count; i++) {
+        orders[sort][i] = i;
+        keys[i] = boxes[4 * i + sort];
+      }
+      sort(orders[sort], count, keys);
+    }
+
+    double[] lower = new double[4 * (count + 1)];
+    double[] upper = new double[4 * (count + 1)];
+
+    // axis with the least margin
+    double[] margins = new double[2];
+    for (int sort = 0; sort < 4; sort++) {
+      prefixes(boxes, orders[sort], count, lower, upper);
+      for (int k = MIN_CHILDREN; k <= count - MIN_CHILDREN; k++) {
+        margins[sort / 2] += margin(lower, 4 * k) + margin(upper, 4 * k);
+      }
+    }
+    int axis = margins[0] <= margins[1] ? 0 : 1;
+
+    // distribution with the least overlap, then area
+    int    bestSort    = 2 * axis;
+    int    bestK       = MIN_CHILDREN;
+    double bestOverlap = Double.POSITIVE_INFINITY;
+    double bestArea    = Double.POSITIVE_INFINITY;
+    for (int sort = 2 * axis; sort < 2 * axis + 2; sort++) {
+      prefixes(boxes, orders[sort], count, lower, upper);
+      for (int k = MIN_CHILDREN; k <= count - MIN_CHILDREN; k++) {
+        int    o       = 4 * k;
+        double overlap = overlap(lower[o], lower[o + 1], lower[o + 2], lower[o + 3], upper, o);
+        double area    = area(lower, o) + area(upper, o);
+        if (overlap < bestOverlap || overlap == bestOverlap && area < bestArea) {
+          bestSort = sort;
+          bestK = k;
+          bestOverlap = overlap;
+          bestArea = area;
+        }
+      }
+    }
+
+    int[]    order    = orders[bestSort];
+    Object[] children = node.children.clone();
+    double[] copy     = boxes.clone();
+    Node     sibling  = new Node();
+    node.count = 0;
+    for (int i = 0; i < count; i++) {
+      int o = 4 * order[i];
+      add(i < bestK ? node : sibling, children[order[i]], Arrays.copyOfRange(copy, o, o + 4));
+    }
+    Arrays.fill(node.children, node.count, node.children.length, null);
+    return sibling;
+  }
+
+
+  /**
+   * Calculates the bounds of the first k (lower) and last k (upper) boxes
+   * in an order, for all k.
+   *
+   * @param boxes packed boxes
+   * @param order order of the boxes
+   * @param count number of boxes
+   * @param lower receives the bounds of the first k boxes at offset 4k
+   * @param upper receives the bounds of the boxes from k on at offset 4k
+   */
+  private static void prefixes(double[] boxes, int[] order, int count, double[] lower,
+                               double[] upper) {
+    empty(lower, 0);
+    for (int k = 1; k <= count; k++) {
+      include(lower, 4 * k, lower, 4 * (k - 1), boxes, 4 * order[k - 1]);
+    }
+    empty(upper, 4 * count);
+    for (int k = count - 1; k >= 0; k--) {
+      include(upper, 4 * k, upper, 4 * (k + 1), boxes, 4 * order[k]);
+    }
+  }
+
+
+  /**
+   * Removes a shape below a node. Nodes that become underfull are removed,
+   * and their children are collected for reinsertion.
+   *
+   * @param node    node
+   * @param level   level of the node
+   * @param shape   shape to remove
+   * @param box     bounds of the shape
+   * @param prune   true to only visit nodes containing the bounds
+   * @param orphans receives the children of removed nodes
+   * @return true if the shape has been removed
+   */
+  private static boolean delete(Node node, int level, Object shape, double[] box, boolean prune,
+                                List<Entry> orphans) {
+    double[] boxes = node.boxes;
+    for (int i = 0; i < node.count; i++) {
+      int o = 4 * i;
+      if (prune && !(boxes[o] <= box[0] && boxes[o + 1] >= box[1] &&
+                     boxes[o + 2] <= box[2] && boxes[o + 3] >= box[3])) {
+        continue;
+      }
+      if (level == 0) {
+        if (node.children[i].equals(shape)) {
+          remove(node, i);
+          return true;
+        }
+      }
+      else {
+        Node child = (Node) node.children[i];
+        if (delete(child, level - 1, shape, box, prune, orphans)) {
+          if (child.count < MIN_CHILDREN) {
+            remove(node, i);
+            for (int j = 0; j < child.count; j++) {
+              orphans.add(new Entry(child.children[j],
+                                    Arrays.copyOfRange(child.boxes, 4 * j, 4 * j + 4),
+                                    level - 1));
+            }
+          }
+          else {
+            bounds(child, boxes, o);
+          }
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Adds a child to a node.
+   *
+   * @param node  node
+   * @param child shape or node
+   * @param box   bounds of the child, null to calculate the bounds of a node
+   */
+  private static void add(Node node, Object child, double[] box) {
+    int o = 4 * node.count;
+    if (box == null) {
+      bounds((Node) child, node.boxes, o);
+    }
+    else {
+      System.arraycopy(box, 0, node.boxes, o, 4);
+    }
+    node.children[node.count++] = child;
+  }
+
+
+  /**
+   * Removes a child from a node.
+   *
+   * @param node  node
+   * @param index index of the child
+   */
+  private static void remove(Node node, int index) {
+    int last = node.count - 1;
+    node.children[index] = node.children[last];
+    System.arraycopy(node.boxes, 4 * last, node.boxes, 4 * index, 4);
+    node.children[last] = null;
+    node.count = last;
+  }
+
+
+  /**
+   * Calculates the bounds of a node.
+   *
+   * @param node   node
+   * @param target packed boxes receiving the bounds
+   * @param offset offset of the box
+   */
+  private static void bounds(Node node, double[] target, int offset) {
+    empty(target, offset);
+    for (int i = 0; i < node.count; i++) {
+      include(target, offset, target, offset, node.boxes, 4 * i);
+    }
+  }
+
+
+  /**
+   * Returns the bounds of a shape as a packed box.
+   *
+   * @param shape shape
+   * @return bounds (min x, max x, min y, max y)
+   */
+  private static double[] box(Area shape) {
+    Rectangle2D bounds = shape.getBounds();
+    return new double[]{bounds.getX(), bounds.getX() + bounds.getWidth(),
+                        bounds.getY(), bounds.getY() + bounds.getHeight()};
+  }
+
+
+  /**
+   * Initializes an empty packed box.
+   *
+   * @param boxes  packed boxes
+   * @param offset offset of the box
+   */
+  private static void empty(double[] boxes, int offset) {
+    boxes[offset] = Double.POSITIVE_INFINITY;
+    boxes[offset + 1] = Double.NEGATIVE_INFINITY;
+    boxes[offset + 2] = Double.POSITIVE_INFINITY;
+    boxes[offset + 3] = Double.NEGATIVE_INFINITY;
+  }
+
+
+  /**
+   * Calculates the union of two packed boxes.
+   *
+   * @param target  packed boxes receiving the union
+   * @param offset  offset of the union
+   * @param a       first boxes
+   * @param offsetA offset of the first box
+   * @param b       second boxes
+   * @param offsetB offset of the second box
+   */
+  private static void include(double[] target, int offset, double[] a, int offsetA, double[] b,
+                              int offsetB) {
+    target[offset] = min(a[offsetA], b[offsetB]);
+    target[offset + 1] = max(a[offsetA + 1], b[offsetB + 1]);
+    target[offset + 2] = min(a[offsetA + 2], b[offsetB + 2]);
+    target[offset + 3] = max(a[offsetA + 3], b[offsetB + 3]);
+  }
+
+
+  /**
+   * Calculates the area of a packed box.
+   *
+   * @param boxes  packed boxes
+   * @param offset offset of the box
+   * @return area
+   */
+  private static double area(double[] boxes, int offset) {
+    return (boxes[offset + 1] - boxes[offset]) * (boxes[offset + 3] - boxes[offset + 2]);
+  }
+
+
+  /**
+   * Calculates the margin (half the perimeter) of a packed box.
+   *
+   * @param boxes  packed boxes
+   * @param offset offset of the box
+   * @return margin
+   */
+  private static double margin(double[] boxes, int offset) {
+    return (boxes[offset + 1] - boxes[offset]) + (boxes[offset + 3] - boxes[offset + 2]);
+  }
+
+
+  /**
+   * Calculates the area of the overlap of a box and a packed box.
+   *
+   * @param minX   minimum x-coordinate of the box
+   * @param maxX   maximum x-coordinate of the box
+   * @param minY   minimum y-coordinate of the box
+   * @param maxY   maximum y-coordinate of the box
+   * @param boxes  packed boxes
+   * @param offset offset of the packed box
+   * @return area of the overlap
+   */
+  private static double overlap(double minX, double maxX, double minY, double maxY,
+                                double[] boxes, int offset) {
+    double dx = min(maxX, boxes[offset + 1]) - max(minX, boxes[offset]);
+    double dy = min(maxY, boxes[offset + 3]) - max(minY, boxes[offset + 2]);
+    return dx > 0 && dy > 0 ? dx * dy : 0.0;
+  }
+
+
+  /**
+   * Calculates the distance from a point to a packed box.
+   *
+   * @param boxes  packed boxes
+   * @param offset offset of the box
+   * @param x      x-coordinate of the point
+   * @param y      y-coordinate of the point
+   * @return distance
+   */
+  private static double distance(double[] boxes, int offset, double x, double y) {
+    double dx = max(0, max(boxes[offset] - x, x - boxes[offset + 1]));
+    double dy = max(0, max(boxes[offset + 2] - y, y - boxes[offset + 3]));
+    return sqrt(dx * dx + dy * dy);
+  }
+
+
+  /**
+   * Sorts indices by key (insertion sort, nodes are small).
+   *
+   * @param order indices to sort
+   * @param count number of indices
+   * @param keys  keys by index
+   */
+  private static void sort(int[] order, int count, double[] keys) {
+    for (int i = 1; i < count; i++) {
+      int    index = order[i];
+      double key   = keys[index];
+      int    j     = i - 1;
+      while (j >= 0 && keys[order[j]] > key) {
+        order[j + 1] = order[j];
+        j--;
+      }
+      order[j + 1] = index;
+    }
+  }
+
+
+  /**
+   * Inserts a value at the bottom of a binary heap and moves it up.
+   *
+   * @param keys    heap keys
+   * @param values  heap values
+   * @param levels  heap levels (may be null)
+   * @param index   index of the new value (current heap size)
+   * @param key     key to insert
+   * @param value   value to insert
+   * @param level   level to insert
+   * @param maxHeap true for a max-heap, false for a min-heap
+   */
+  private static void siftUp(double[] keys, Object[] values, int[] levels, int index,
+                             double key, Object value, int level, boolean maxHeap) {
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (maxHeap ? keys[parent] >= key : keys[parent] <= key) {
+        break;
+      }
+      keys[index] = keys[parent];
+      values[index] = values[parent];
+      if (levels != null) {
+        levels[index] = levels[parent];
+      }
+      index = parent;
+    }
+    keys[index] = key;
+    values[index] = value;
+    if (levels != null) {
+      levels[index] = level;
+    }
+  }
+
+
+  /**
+   * Replaces the top of a binary heap by a value and moves it down.
+   *
+   * @param keys    heap keys
+   * @param values  heap values
+   * @param levels  heap levels (may be null)
+   * @param size    heap size
+   * @param key     key to insert
+   * @param value   value to insert
+   * @param level   level to insert
+   * @param maxHeap true for a max-heap, false for a min-heap
+   */
+  private static void siftDown(double[] keys, Object[] values, int[] levels, int size,
+                               double key, Object value, int level, boolean maxHeap) {
+    if (size == 0) {
+      return;
+    }
+    int index = 0;
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size &&
+          (maxHeap ? keys[child + 1] > keys[child] : keys[child + 1] < keys[child])) {
+        child++;
+      }
+      if (maxHeap ? keys[child] <= key : keys[child] >= key) {
+        break;
+      }
+      keys[index] = keys[child];
+      values[index] = values[child];
+      if (levels != null) {
+        levels[index] = levels[child];
+      }
+      index = child;
+    }
+    keys[index] = key;
+    values[index] = value;
+    if (levels != null) {
+      levels[index] = level;
+    }
+  }
+
+
+  /**
+   * Node of the tree, with the bounds of its children. Holds one child more
+   * than the maximum while overflowing.
+   */
+  private static final class Node {
+
+    /**
+     * Bounds of the children (min x, max x, min y, max y per child).
+     */
+    final double[] boxes = new double[4 * (MAX_CHILDREN + 1)];
+
+    /**
+     * Children: shapes (leaves) or nodes.
+     */
+    final Object[] children = new Object[MAX_CHILDREN + 1];
+
+    /**
+     * Number of children.
+     */
+    int count;
+  }
+
+
+  /**
+   * A shape or node to be (re)inserted at a level.
+   */
+  private static final class Entry {
+
+    final Object child;
+    final double[] box;
+    final int level;
+
+    /**
+     * Constructs an entry.
+     *
+     * @param child shape or node
+     * @param box   bounds of the child
+     * @param level level of the node receiving the child
+     */
+    Entry(Object child, double[] box, int level) {
+      this.child = child;
+      this.box = box;
+      this.level = level;
+    }
+  }
+
+
+  /**
+   * State of an insertion: the levels at which entries have been
+   * reinserted, and the entries pending reinsertion.
+   */
+  private static final class Insertion {
+
+    private boolean[] reinserted;
+    final List<Entry> pending = new ArrayList<>();
+
+    /**
+     * Constructs the state of an insertion.
+     *
+     * @param height height of the tree
+     */
+    Insertion(int height) {
+      this.reinserted = new boolean[height];
+    }
+
+    /**
+     * Marks a level as reinserted.
+     *
+     * @param level level
+     * @return true if entries have already been reinserted at the level
+     */
+    boolean reinserted(int level) {
+      if (level >= reinserted.length) {
+        reinserted = Arrays.copyOf(reinserted, level + 1);
+      }
+      boolean done = reinserted[level];
+      reinserted[level] = true;
+      return done;
+    }
+  }
+}
@@ -23,6 +23,7 @@ import static java.lang.Math.min;
 import java.io.Serializable;
 import java.util.Optional;
 import java.util.OptionalDouble;
+import java.util.function.IntToDoubleFunction;
 
 import thorwin.math.Matrix3x3;
 import thorwin.math.Vector3D;
@@ -485,6 +486,228 @@ public final class Ray3D implements Serializable {
     return intersectionDistance(triangle, epsilon).isPresent();
   }
 
+  /**
+   * Intersects this ray with a batch of triangles, packed as 9 coordinates
+   * (x, y, z of the three vertices) per triangle. Large batches are
+   * intersected in parallel.
+   *
+   * @param triangles packed triangles
+   * @param distances receives the intersection distance per triangle, or
+   *                  infinity if the triangle is missed (may be null)
+   * @return index of the closest triangle hit, or -1 if none is hit
+   */
+  public int intersectTriangles(double[] triangles, double[] distances) {
+    int count = triangles.length / 9;
+    if (9 * count != triangles.length) {
+      throw new IllegalArgumentException("Array length should be a multiple of 9");
+    }
+    return closest(count, distances, (i) -> intersect(triangles, 9 * i,
+                                                      origin.getX(), origin.getY(), origin.getZ(),
+                                                      direction.getX(), direction.getY(),
+                                                      direction.getZ()));
+  }
+
+  /**
+   * Intersects this ray with a batch of axis-aligned bounding boxes, packed
+   * as 6 coordinates per box in the order of the {@link AABB} constructor.
+   * The inverse direction is calculated once for all boxes. Large batches
+   * are intersected in parallel.
+   *
+   * @param boxes     packed boxes
+   * @param distances receives the entry distance per box (zero if the origin
+   *                  is inside), or infinity if the box is missed (may be
+   *                  null)
+   * @return index of the box with the smallest entry distance, or -1 if none
+   * is hit
+   */
+  public int intersectBoxes(double[] boxes, double[] distances) {
+    int count = boxes.length / 6;
+    if (6 * count != boxes.length) {
+      throw new IllegalArgumentException("Array length should be a multiple of 6");
+    }
+    double ox = origin.getX();
+    double oy = origin.getY();
+    double oz = origin.getZ();
+    double ix = 1.0 / direction.getX();
+    double iy = 1.0 / direction.getY();
+    double iz = 1.0 / direction.getZ();
+    return closest(count, distances, (i) -> slab(boxes, 6 * i, ox, oy, oz, ix, iy, iz));
+  }
+
+  /**
+   * Calculates distances for a batch of shapes and finds the smallest.
+   *
+   * @param count     number of shapes
+   * @param distances receives the distances (may be null)
+   * @param kernel    distance to a shape by index
+   * @return index of the smallest finite distance, or -1 if none
+   */
+  private static int closest(int count, double[] distances, IntToDoubleFunction kernel) {
+    if (distances != null && distances.length != count) {
+      throw new IllegalArgumentException("Array lengths should be equal");
+    }
+    double[] buffer = distances == null && count >= Transform3D.PARALLEL_THRESHOLD
+                      ? new double[count] : distances;
+    if (buffer == null) {
+      int    closest = -1;
+      double best    = Double.POSITIVE_INFINITY;
+      for (int i = 0; i < count; i++) {
+        double distance = kernel.applyAsDouble(i);
+        if (distance < best) {
+          best = distance;
+          closest = i;
+        }
+      }
+      return closest;
+    }
+
+    Blocks.run(count, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        buffer[i] = kernel.applyAsDouble(i);
+      }
+    });
+    int    closest = -1;
+    double best    = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < count; i++) {
+      if (buffer[i] < best) {
+        best = buffer[i];
+        closest = i;
+      }
+    }
+    return closest;
+  }
+
+  /**
+   * Intersects a ray with a packed triangle, using the algorithm by Thomas
+   * Moller (as {@link #intersectionDistance(Vector3D, Vector3D, Vector3D,
+   * Vector3D, Vector3D, double)}) without allocation.
+   *
+   * @param triangles packed triangles (9 coordinates per triangle)
+   * @param o         position of the triangle
+   * @param ox        x-coordinate of the ray origin
+   * @param oy        y-coordinate of the ray origin
+   * @param oz        z-coordinate of the ray origin
+   * @param dx        x-component of the ray direction
+   * @param dy        y-component of the ray direction
+   * @param dz        z-component of the ray direction
+   * @return intersection distance, or infinity if the triangle is missed
+   */
+  static double intersect(double[] triangles, int o,
+                          double ox, double oy, double oz,
+                          double dx, double dy, double dz) {
+    double x1  = triangles[o];
+    double y1  = triangles[o + 1];
+    double z1  = triangles[o + 2];
+    double e1x = triangles[o + 3] - x1;
+    double e1y = triangles[o + 4] - y1;
+    double e1z = triangles[o + 5] - z1;
+    double e2x = triangles[o + 6] - x1;
+    double e2y = triangles[o + 7] - y1;
+    double e2z = triangles[o + 8] - z1;
+
+    // pvec = direction x edge2
+    double px  = dy * e2z - dz * e2y;
+    double py  = dz * e2x - dx * e2z;
+    double pz  = dx * e2y - dy * e2x;
+    double det = e1x * px + e1y * py + e1z * pz;
+    if (det > -EPSILON && det < EPSILON) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double idet = 1.0 / det;
+
+    double tx = ox - x1;
+    double ty = oy - y1;
+    double tz = oz - z1;
+    double u  = (tx * px + ty * py + tz * pz) * idet;
+
+    // qvec = tvec x edge1
+    double qx = ty * e1z - tz * e1y;
+    double qy = tz * e1x - tx * e1z;
+    double qz = tx * e1y - ty * e1x;
+    double v  = (dx * qx + dy * qy + dz * qz) * idet;
+    double t  = (e2x * qx + e2y * qy + e2z * qz) * idet;
+
+    // single combined test instead of an early exit per barycentric bound
+    boolean hit = u >= 0.0 & v >= 0.0 & u + v <= 1.0 & t > EPSILON;
+    return hit ? t : Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Calculates the entry distance of a ray into a packed axis-aligned
+   * bounding box with the slab test, using the inverse ray direction.
+   *
+   * @param boxes packed boxes (minimum x, maximum x, ..., maximum z)
+   * @param o     position of the box
+   * @param ox    x-coordinate of the ray origin
+   * @param oy    y-coordinate of the ray origin
+   * @param oz    z-coordinate of the ray origin
+   * @param ix    inverse x-component of the ray direction
+   * @param iy    inverse y-component of the ray direction
+   * @param iz    inverse z-component of the ray direction
+   * @return entry distance (zero if the origin is inside), or infinity if
+   * the box is missed
+   */
+  static double slab(double[] boxes, int o, double ox, double oy, double oz,
+                     double ix, double iy, double iz) {
+    return slab(boxes[o], boxes[o + 1], boxes[o + 2], boxes[o + 3], boxes[o + 4], boxes[o + 5],
+                ox, oy, oz, ix, iy, iz);
+  }
+
+  /**
+   * Calculates the entry distance of a ray into an axis-aligned bounding
+   * box with the slab test, using the inverse ray direction. The slabs are
+   * combined with minimum and maximum instead of branches.
+   * <p>
+   * If a direction component is zero and the origin lies on a face of the
+   * box orthogonal to it, the distances to that slab are NaN (zero times
+   * infinity). The ray runs within the slab then, so NaN slabs are ignored
+   * (comparisons with NaN are false) rather than propagated.
+   *
+   * @param minX minimum x-coordinate of the box
+   * @param maxX maximum x-coordinate of the box
+   * @param minY minimum y-coordinate of the box
+   * @param maxY maximum y-coordinate of the box
+   * @param minZ minimum z-coordinate of the box
+   * @param maxZ maximum z-coordinate of the box
+   * @param ox   x-coordinate of the ray origin
+   * @param oy   y-coordinate of the ray origin
+   * @param oz   z-coordinate of the ray origin
+   * @param ix   inverse x-component of the ray direction
+   * @param iy   inverse y-component of the ray direction
+   * @param iz   inverse z-component of the ray direction
+   * @return entry distance (zero if the origin is inside), or infinity if
+   * the box is missed
+   */
+  static double slab(double minX, double maxX, double minY, double maxY,
+                     double minZ, double maxZ,
+                     double ox, double oy, double oz,
+                     double ix, double iy, double iz) {
+    double t1 = (minX - ox) * ix;
+    double t2 = (maxX - ox) * ix;
+    double t3 = (minY - oy) * iy;
+    double t4 = (maxY - oy) * iy;
+    double t5 = (minZ - oz) * iz;
+    double t6 = (maxZ - oz) * iz;
+
+    // min and max are NaN for a NaN slab, which the comparisons skip
+    double nx = min(t1, t2);
+    double ny = min(t3, t4);
+    double nz = min(t5, t6);
+    double fx = max(t1, t2);
+    double fy = max(t3, t4);
+    double fz = max(t5, t6);
+
+    double near = 0.0;
+    near = nx > near ? nx : near;
+    near = ny > near ? ny : near;
+    near = nz > near ? nz : near;
+    double far = Double.POSITIVE_INFINITY;
+    far = fx < far ? fx : far;
+    far = fy < far ? fy : far;
+    far = fz < far ? fz : far;
+    return far >= near ? near : Double.POSITIVE_INFINITY;
+  }
+
   @Override
   public int hashCode() {
     int result = origin.hashCode();
@@ -0,0 +1,362 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+import static java.lang.Math.sqrt;
+
+import thorwin.math.Vector3D;
+
+
+/**
+ * Immutable packet of rays, stored as primitive arrays per coordinate
+ * together with the inverse ray directions. A packet intersects all of its
+ * rays with a single shape in one pass, without allocating per ray, and
+ * writes the results into buffers provided by the caller. Large packets are
+ * intersected in parallel.
+ * <p>
+ * Distances are expressed in units of the ray directions, as by
+ * {@link Ray3D}. Rays that miss a shape get an infinite distance.
+ */
+public final class RayPacket {
+
+  /**
+   * X-coordinates of the origins.
+   */
+  private final double[] ox;
+
+  /**
+   * Y-coordinates of the origins.
+   */
+  private final double[] oy;
+
+  /**
+   * Z-coordinates of the origins.
+   */
+  private final double[] oz;
+
+  /**
+   * X-components of the directions.
+   */
+  private final double[] dx;
+
+  /**
+   * Y-components of the directions.
+   */
+  private final double[] dy;
+
+  /**
+   * Z-components of the directions.
+   */
+  private final double[] dz;
+
+  /**
+   * Inverse x-components of the directions.
+   */
+  private final double[] ix;
+
+  /**
+   * Inverse y-components of the directions.
+   */
+  private final double[] iy;
+
+  /**
+   * Inverse z-components of the directions.
+   */
+  private final double[] iz;
+
+
+  /**
+   * Constructs a packet of rays, packed as origin x, y, z and direction x, y,
+   * z per ray. The rays are copied.
+   *
+   * @param rays packed rays
+   */
+  public RayPacket(double[] rays) {
+    int n = rays.length / 6;
+    if (6 * n != rays.length) {
+      throw new IllegalArgumentException("Array length should be a multiple of 6");
+    }
+    ox = new double[n];
+    oy = new double[n];
+    oz = new double[n];
+    dx = new double[n];
+    dy = new double[n];
+    dz = new double[n];
+    ix = new double[n];
+    iy = new double[n];
+    iz = new double[n];
+    Blocks.run(n, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        int o = 6 * i;
+        ox[i] = rays[o];
+        oy[i] = rays[o + 1];
+        oz[i] = rays[o + 2];
+        dx[i] = rays[o + 3];
+        dy[i] = rays[o + 4];
+        dz[i] = rays[o + 5];
+        ix[i] = 1.0 / dx[i];
+        iy[i] = 1.0 / dy[i];
+        iz[i] = 1.0 / dz[i];
+      }
+    });
+  }
+
+
+  /**
+   * Constructs a packet of rays.
+   *
+   * @param rays rays
+   * @return packet
+   */
+  public static RayPacket of(Ray3D... rays) {
+    double[] packed = new double[6 * rays.length];
+    for (int i = 0; i < rays.length; i++) {
+      Vector3D origin    = rays[i].getOrigin();
+      Vector3D direction = rays[i].getDirection();
+      int      o         = 6 * i;
+      packed[o] = origin.getX();
+      packed[o + 1] = origin.getY();
+      packed[o + 2] = origin.getZ();
+      packed[o + 3] = direction.getX();
+      packed[o + 4] = direction.getY();
+      packed[o + 5] = direction.getZ();
+    }
+    return new RayPacket(packed);
+  }
+
+
+  /**
+   * Returns the number of rays.
+   *
+   * @return number of rays
+   */
+  public int size() {
+    return ox.length;
+  }
+
+
+  /**
+   * Returns a ray of the packet.
+   *
+   * @param index index of the ray
+   * @return ray
+   */
+  public Ray3D getRay(int index) {
+    return new Ray3D(new Vector3D(ox[index], oy[index], oz[index]),
+                     new Vector3D(dx[index], dy[index], dz[index]));
+  }
+
+
+  /**
+   * Intersects all rays with an axis-aligned bounding box.
+   *
+   * @param box       box
+   * @param distances receives the entry distance per ray (zero if the origin
+   *                  is inside the box)
+   * @return number of rays that hit the box
+   */
+  public int intersect(AABB box, double[] distances) {
+    return intersect(box.getMinX(), box.getMaxX(), box.getMinY(), box.getMaxY(),
+                     box.getMinZ(), box.getMaxZ(), distances);
+  }
+
+
+  /**
+   * Intersects all rays with an axis-aligned bounding box, using the slab
+   * test on the inverse directions without branches per slab.
+   *
+   * @param minX      minimum x-coordinate of the box
+   * @param maxX      maximum x-coordinate of the box
+   * @param minY      minimum y-coordinate of the box
+   * @param maxY      maximum y-coordinate of the box
+   * @param minZ      minimum z-coordinate of the box
+   * @param maxZ      maximum z-coordinate of the box
+   * @param distances receives the entry distance per ray (zero if the origin
+   *                  is inside the box)
+   * @return number of rays that hit the box
+   */
+  public int intersect(double minX, double maxX,
+                       double minY, double maxY,
+                       double minZ, double maxZ,
+                       double[] distances) {
+    checkLength(distances.length);
+    Blocks.run(size(), (from, to) -> {
+      for (int i = from; i < to; i++) {
+        distances[i] = Ray3D.slab(minX, maxX, minY, maxY, minZ, maxZ,
+                                  ox[i], oy[i], oz[i], ix[i], iy[i], iz[i]);
+      }
+    });
+    return hits(distances);
+  }
+
+
+  /**
+   * Intersects all rays with a sphere.
+   *
+   * @param sphere    sphere
+   * @param distances receives the distance per ray to the first intersection
+   *                  in front of the origin (the exit if the origin is inside
+   *                  the sphere)
+   * @return number of rays that hit the sphere
+   */
+  public int intersect(Sphere3D sphere, double[] distances) {
+    checkLength(distances.length);
+    double x  = sphere.getX();
+    double y  = sphere.getY();
+    double z  = sphere.getZ();
+    double r2 = sphere.getRadius() * sphere.getRadius();
+    Blocks.run(size(), (from, to) -> {
+      for (int i = from; i < to; i++) {
+        double cx = ox[i] - x;
+        double cy = oy[i] - y;
+        double cz = oz[i] - z;
+        double a  = dx[i] * dx[i] + dy[i] * dy[i] + dz[i] * dz[i];
+        double b  = cx * dx[i] + cy * dy[i] + cz * dz[i];
+        double c  = cx * cx + cy * cy + cz * cz - r2;
+
+        // a negative discriminant yields NaN, which fails the comparison
+        double root = sqrt(b * b - a * c);
+        double t0   = (-b - root) / a;
+        double t1   = (-b + root) / a;
+        double t    = t0 >= 0.0 ? t0 : t1;
+        distances[i] = t >= 0.0 ? t : Double.POSITIVE_INFINITY;
+      }
+    });
+    return hits(distances);
+  }
+
+
+  /**
+   * Finds the closest triangle hit per ray, testing every ray against every
+   * triangle. Suitable for small batches of triangles; use
+   * {@link #closestHits(BVH, double, int[], double[])} for meshes.
+   *
+   * @param triangles packed triangles (x, y, z of the three vertices per
+   *                  triangle)
+   * @param indices   receives the index of the closest triangle per ray, or
+   *                  -1 if no triangle is hit
+   * @param distances receives the distance to the closest triangle per ray
+   * @return number of rays that hit a triangle
+   */
+  public int closestHits(double[] triangles, int[] indices, double[] distances) {
+    int count = triangles.length / 9;
+    if (9 * count != triangles.length) {
+      throw new IllegalArgumentException("Array length should be a multiple of 9");
+    }
+    checkLength(indices.length);
+    checkLength(distances.length);
+    Blocks.run(size(), (from, to) -> {
+      for (int i = from; i < to; i++) {
+        int    closest = -1;
+        double best    = Double.POSITIVE_INFINITY;
+        for (int t = 0; t < count; t++) {
+          double distance = Ray3D.intersect(triangles, 9 * t,
+                                            ox[i], oy[i], oz[i], dx[i], dy[i], dz[i]);
+          if (distance < best) {
+            best = distance;
+            closest = t;
+          }
+        }
+        indices[i] = closest;
+        distances[i] = best;
+      }
+    });
+    return hits(distances);
+  }
+
+
+  /**
+   * Finds the closest triangle of a bounding volume hierarchy hit per ray.
+   *
+   * @param bvh         bounding volume hierarchy
+   * @param maxDistance maximum distance along the rays
+   * @param indices     receives the index of the closest triangle per ray, or
+   *                    -1 if no triangle is hit
+   * @param distances   receives the distance to the closest triangle per ray
+   * @return number of rays that hit a triangle
+   */
+  public int closestHits(BVH bvh, double maxDistance, int[] indices, double[] distances) {
+    checkLength(indices.length);
+    checkLength(distances.length);
+    Blocks.run(size(), (from, to) -> {
+      double[] distance = new double[1];
+      for (int i = from; i < to; i++) {
+        int hit = bvh.closestHit(ox[i], oy[i], oz[i], dx[i], dy[i], dz[i],
+                                 maxDistance, distance);
+        indices[i] = hit;
+        distances[i] = hit < 0 ? Double.POSITIVE_INFINITY : distance[0];
+      }
+    });
+    return hits(distances);
+  }
+
+
+  /**
+   * Determines per ray if any triangle of a bounding volume hierarchy is hit
+   * within a distance (for example for shadow or line of sight tests).
+   *
+   * @param bvh         bounding volume hierarchy
+   * @param maxDistance maximum distance along the rays
+   * @param hits        receives per ray if any triangle is hit
+   * @return number of rays that hit a triangle
+   */
+  public int anyHits(BVH bvh, double maxDistance, boolean[] hits) {
+    checkLength(hits.length);
+    Blocks.run(size(), (from, to) -> {
+      for (int i = from; i < to; i++) {
+        hits[i] = bvh.anyHit(ox[i], oy[i], oz[i], dx[i], dy[i], dz[i], maxDistance);
+      }
+    });
+    int count = 0;
+    for (boolean hit : hits) {
+      if (hit) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+
+  /**
+   * Counts the finite distances.
+   *
+   * @param distances distances
+   * @return number of hits
+   */
+  private static int hits(double[] distances) {
+    int count = 0;
+    for (double distance : distances) {
+      if (distance < Double.POSITIVE_INFINITY) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+
+  /**
+   * Checks the length of a result buffer against the number of rays.
+   *
+   * @param length length of the buffer
+   */
+  private void checkLength(int length) {
+    if (length != size()) {
+      throw new IllegalArgumentException("Array lengths should be equal");
+    }
+  }
+}
@@ -17,8 +17,6 @@
 
 package thorwin.math.geo;
 
-import java.io.Serializable;
-
 import thorwin.math.Vector2D;
 
 /**
@@ -26,7 +24,7 @@ import thorwin.math.Vector2D;
  * The rectangle is defined using reference point (<i>P1</i>), a width and
  * height. Note that width and height may be negative.
  */
-public final class Rectangle2D implements Serializable {
+public final class Rectangle2D implements Area {
 
   private static final long serialVersionUID = -2172683519962498480L;
 
@@ -78,6 +76,7 @@ public final class Rectangle2D implements Serializable {
    * @param y y-coordinate of the point to test
    * @return true if the polygon contains the coordinate
    */
+  @Override
   public boolean contains(double x, double y) {
     Rectangle2D normalized = normalize();
 
@@ -116,6 +115,15 @@ public final class Rectangle2D implements Serializable {
                            normalizedHeight);
   }
 
+  /**
+   * Returns the bounds of this rectangle, which is the normalized rectangle.
+   * @return normalized rectangle
+   */
+  @Override
+  public Rectangle2D getBounds() {
+    return normalize();
+  }
+
   /**
    * Returns true if both width and height are positive.
    * @return true if normalized
@@ -0,0 +1,273 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo;
+
+
+/**
+ * Keyframe track of the rotations of a number of objects. Every keyframe
+ * holds the packed quaternions (see {@link Quaternions}) of all objects at a
+ * time; evaluating the track at a time interpolates between the surrounding
+ * keyframes into a caller supplied array, without allocation, so the track
+ * can drive thousands of objects per animation frame.
+ * <p>
+ * The keyframes are copied, normalized and aligned to consecutive
+ * hemispheres at construction, so every interpolation follows the shortest
+ * path. The SQUAD control quaternions are computed at construction as well.
+ */
+public final class RotationTrack {
+
+  /**
+   * Interpolation between keyframes.
+   */
+  public enum Interpolation {
+
+    /**
+     * Normalized linear interpolation.
+     */
+    NLERP,
+
+    /**
+     * Spherical linear interpolation.
+     */
+    SLERP,
+
+    /**
+     * Spherical quadrangle interpolation, smooth over the keyframes.
+     */
+    SQUAD
+  }
+
+  /**
+   * Times of the keyframes, increasing.
+   */
+  private final double[] times;
+
+  /**
+   * Packed quaternions per keyframe.
+   */
+  private final double[][] keyframes;
+
+  /**
+   * Packed SQUAD control quaternions per keyframe (null unless SQUAD).
+   */
+  private final double[][] controls;
+
+  /**
+   * Interpolation between keyframes.
+   */
+  private final Interpolation interpolation;
+
+
+  /**
+   * Constructs a track.
+   *
+   * @param times         times of the keyframes, increasing
+   * @param keyframes     packed quaternions of all objects per keyframe
+   * @param interpolation interpolation between keyframes
+   */
+  public RotationTrack(double[] times, double[][] keyframes, Interpolation interpolation) {
+    super();
+    if (times.length == 0 || times.length != keyframes.length) {
+      throw new IllegalArgumentException("Number of times and keyframes should be equal and positive");
+    }
+    for (int k = 1; k < times.length; k++) {
+      if (!(times[k] > times[k - 1])) {
+        throw new IllegalArgumentException("Times should be increasing");
+      }
+    }
+    for (double[] keyframe : keyframes) {
+      if (keyframe.length != keyframes[0].length) {
+        throw new IllegalArgumentException("Keyframe lengths should be equal");
+      }
+    }
+    if (keyframes[0].length % 4 != 0) {
+      throw new IllegalArgumentException("Keyframe length should be a multiple of 4");
+    }
+
+    this.times = times.clone();
+    this.interpolation = interpolation;
+    this.keyframes = new double[keyframes.length][];
+    for (int k = 0; k < keyframes.length; k++) {
+      double[] keyframe = keyframes[k].clone();
+      Quaternions.normalize(keyframe);
+      if (k > 0) {
+        align(this.keyframes[k - 1], keyframe);
+      }
+      this.keyframes[k] = keyframe;
+    }
+
+    if (interpolation == Interpolation.SQUAD) {
+      int last = keyframes.length - 1;
+      controls = new double[keyframes.length][];
+      for (int k = 0; k <= last; k++) {
+        controls[k] = new double[keyframes[0].length];
+        Quaternions.controls(this.keyframes[k > 0 ? k - 1 : k],
+                             this.keyframes[k],
+                             this.keyframes[k < last ? k + 1 : k],
+                             controls[k]);
+      }
+    }
+    else {
+      controls = null;
+    }
+  }
+
+
+  /**
+   * Negates the quaternions of a keyframe that are on the other hemisphere
+   * than those of the previous keyframe.
+   *
+   * @param previous previous keyframe
+   * @param keyframe keyframe, aligned in place
+   */
+  private static void align(double[] previous, double[] keyframe) {
+    for (int q = 0; q < keyframe.length; q += 4) {
+      double dot = previous[q] * keyframe[q] + previous[q + 1] * keyframe[q + 1] +
+                   previous[q + 2] * keyframe[q + 2] + previous[q + 3] * keyframe[q + 3];
+      if (dot < 0) {
+        keyframe[q] = -keyframe[q];
+        keyframe[q + 1] = -keyframe[q + 1];
+        keyframe[q + 2] = -keyframe[q + 2];
+        keyframe[q + 3] = -keyframe[q + 3];
+      }
+    }
+  }
+
+
+  /**
+   * Returns the number of objects.
+   *
+   * @return number of objects
+   */
+  public int size() {
+    return keyframes[0].length / 4;
+  }
+
+
+  /**
+   * Returns the number of keyframes.
+   *
+   * @return number of keyframes
+   */
+  public int getKeyframeCount() {
+    return keyframes.length;
+  }
+
+
+  /**
+   * Returns the time of the first keyframe.
+   *
+   * @return start time
+   */
+  public double getStart() {
+    return times[0];
+  }
+
+
+  /**
+   * Returns the time of the last keyframe.
+   *
+   * @return end time
+   */
+  public double getEnd() {
+    return times[times.length - 1];
+  }
+
+
+  /**
+   * Returns the interpolation between keyframes.
+   *
+   * @return interpolation
+   */
+  public Interpolation getInterpolation() {
+    return interpolation;
+  }
+
+
+  /**
+   * Evaluates the rotations of all objects at a time. Times before the first
+   * or after the last keyframe evaluate to that keyframe.
+   *
+   * @param time time
+   * @param out  receives the packed quaternions of all objects
+   */
+  public void evaluate(double time, double[] out) {
+    if (out.length != keyframes[0].length) {
+      throw new IllegalArgumentException("Array lengths should be equal");
+    }
+
+    // keyframe at or before the time
+    int last = times.length - 1;
+    if (!(time > times[0]) || last == 0) {
+      System.arraycopy(keyframes[0], 0, out, 0, out.length);
+      return;
+    }
+    if (time >= times[last]) {
+      System.arraycopy(keyframes[last], 0, out, 0, out.length);
+      return;
+    }
+    int low  = 0;
+    int high = last;
+    while (high - low > 1) {
+      int middle = (low + high) >>> 1;
+      if (times[middle] <= time) {
+        low = middle;
+      }
+      else {
+        high = middle;
+      }
+    }
+
+    int      k  = low;
+    double   t  = (time - times[k]) / (times[k + 1] - times[k]);
+    double[] q0 = keyframes[k];
+    double[] q1 = keyframes[k + 1];
+    Blocks.run(out.length / 4, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        switch (interpolation) {
+          case NLERP:
+            Quaternions.nlerp(q0, q1, 4 * i, t, false, out);
+            break;
+          case SLERP:
+            Quaternions.slerp(q0, q1, 4 * i, t, false, out);
+            break;
+          default:
+            Quaternions.squad(q0, q1, controls[k], controls[k + 1], 4 * i, t, out);
+            break;
+        }
+      }
+    });
+  }
+
+
+  /**
+   * Evaluates the rotations of all objects at a time as affine matrices.
+   *
+   * @param time         time
+   * @param rotations    receives the packed quaternions of all objects
+   * @param translations packed translations (x, y, z per object), or null
+   *                     for no translation
+   * @param matrices     receives the matrices of all objects, see
+   *                     {@link Quaternions#toAffine3D(double[], double[], double[])}
+   */
+  public void evaluate(double time, double[] rotations, double[] translations,
+                       double[] matrices) {
+    evaluate(time, rotations);
+    Quaternions.toAffine3D(rotations, translations, matrices);
+  }
+}
@@ -18,6 +18,7 @@
 package thorwin.math.geo;
 
 import java.io.Serializable;
+import java.util.stream.IntStream;
 
 import thorwin.math.Vector3D;
 
@@ -27,6 +28,11 @@ import thorwin.math.Vector3D;
 @FunctionalInterface
 public interface Transform3D extends Serializable {
 
+  /**
+   * Minimum number of points for a batch to be transformed in parallel.
+   */
+  int PARALLEL_THRESHOLD = Integer.getInteger("thorwin.math.geo.parallel", 16384);
+
   /**
    * Transforms a point
    *
@@ -46,4 +52,36 @@ public interface Transform3D extends Serializable {
    * @return transformed point
    */
   Vector3D transform(double x, double y, double z);
+
+  /**
+   * Transforms a range of points, stored as separate coordinate arrays. The
+   * output arrays may be the same as the input arrays. Large batches are
+   * transformed in parallel, so the transform should be thread-safe.
+   * <p>
+   * This default implementation transforms each point separately,
+   * implementations are encouraged to provide a more efficient kernel.
+   *
+   * @param xs    x-coordinates of the points
+   * @param ys    y-coordinates of the points
+   * @param zs    z-coordinates of the points
+   * @param from  index of the first point (inclusive)
+   * @param to    index of the last point (exclusive)
+   * @param outXs receives the transformed x-coordinates
+   * @param outYs receives the transformed y-coordinates
+   * @param outZs receives the transformed z-coordinates
+   */
+  default void transform(double[] xs, double[] ys, double[] zs,
+                         int from, int to,
+                         double[] outXs, double[] outYs, double[] outZs) {
+    IntStream indices = IntStream.range(from, to);
+    if (to - from >= PARALLEL_THRESHOLD) {
+      indices = indices.parallel();
+    }
+    indices.forEach((i) -> {
+      Vector3D point = transform(xs[i], ys[i], zs[i]);
+      outXs[i] = point.getX();
+      outYs[i] = point.getY();
+      outZs[i] = point.getZ();
+    });
+  }
 }
@@ -24,11 +24,22 @@
  * <p>
  * Utility classes for processing 3-dimensional data is provided in the form
  * of the {@code AABB} (Axis-Aligned-Bounding-Box) and {@code Octree} classes.
+ * Packed bounding volumes are culled against a {@code Frustrum3D} by the
+ * {@code FrustrumCuller}. Many rays are cast at once by a {@code RayPacket}.
+ * 2-dimensional shapes are indexed by the {@code PackedRTree} (static) and
+ * {@code RTree} (dynamic) classes, and clipped against all tiles of a grid
+ * at once by the {@code GridClipper}.
  * <p>
  * Three implementations for 3-dimensional rotations are available: Euler,
- * axis/angle and Quaternions.
+ * axis/angle and Quaternions. Rotations of many objects are interpolated on
+ * packed quaternion arrays by {@code Quaternions} and {@code RotationTrack}.
  * <p>
  * Real-world coordinate systems are supported: {@code Geodetic}, {@code Ecef}
- * (Earth-Centered-Earth-Fixed) and {@code Enu} (East-North-Up).
+ * (Earth-Centered-Earth-Fixed) and {@code Enu} (East-North-Up). Geodetic
+ * points are indexed by the hierarchical cells of {@code GeodeticCell} in a
+ * {@code GeodeticIndex}.
+ * <p>
+ * Points are sorted along Morton or Hilbert space-filling curves by
+ * {@code Morton}, for memory layouts that keep nearby points together.
  */
 package thorwin.math.geo;
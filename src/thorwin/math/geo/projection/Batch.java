@@ -0,0 +1,100 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo.projection;
+
+import static java.lang.Math.min;
+
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+import thorwin.math.geo.Transform3D;
+
+
+/**
+ * Runs batch projections over primitive arrays, 64 elements (one word of the
+ * validity bit set) at a time. Large batches are run in parallel chunks of
+ * whole words.
+ */
+final class Batch {
+
+  /**
+   * Number of elements per chunk (a multiple of 64).
+   */
+  private static final int CHUNK = 4096;
+
+
+  /**
+   * Private constructor to prevent instantiation.
+   */
+  private Batch() {}
+
+
+  /**
+   * Runs a batch projection.
+   *
+   * @param a      first input array
+   * @param b      second input array
+   * @param c      first output array
+   * @param d      second output array
+   * @param kernel projection of the elements
+   * @param valid  receives the validity of the elements (may be null)
+   */
+  static void run(double[] a, double[] b, double[] c, double[] d, Kernel kernel, BitSet valid) {
+    int n = a.length;
+    if (b.length != n || c.length != n || d.length != n) {
+      throw new IllegalArgumentException("Array lengths should be equal");
+    }
+
+    long[] words = new long[(n + 63) >>> 6];
+    if (n >= Transform3D.PARALLEL_THRESHOLD) {
+      IntStream.range(0, (n + CHUNK - 1) / CHUNK).parallel().forEach((chunk) -> {
+        int end = min(n, (chunk + 1) * CHUNK);
+        for (int from = chunk * CHUNK; from < end; from += 64) {
+          words[from >>> 6] = kernel.apply(from, min(end, from + 64));
+        }
+      });
+    }
+    else {
+      for (int from = 0; from < n; from += 64) {
+        words[from >>> 6] = kernel.apply(from, min(n, from + 64));
+      }
+    }
+
+    if (valid != null) {
+      valid.clear(0, n);
+      valid.or(BitSet.valueOf(words));
+    }
+  }
+
+
+  /**
+   * Projection of a range of at most 64 elements.
+   */
+  @FunctionalInterface
+  interface Kernel {
+
+    /**
+     * Projects a range of elements. Invalid elements are set to NaN.
+     *
+     * @param from first index (inclusive)
+     * @param to   last index (exclusive, at most from + 64)
+     * @return validity bits (bit <i>i - from</i> for element <i>i</i>)
+     */
+    long apply(int from, int to);
+  }
+}
@@ -17,6 +17,7 @@
 
 package thorwin.math.geo.projection;
 
+import java.util.BitSet;
 import java.util.Optional;
 
 import thorwin.math.Vector2D;
@@ -46,6 +47,60 @@ public interface CylindricalProjection extends MapProjection {
     }
   }
 
+  /**
+   * {@inheritDoc} The coordinates are projected separately, without creating
+   * objects. Invalid locations and locations with an infinite point (such as
+   * the poles in the Mercator projection) have no point.
+   */
+  @Override
+  default void toPoints(double[] latitudes, double[] longitudes, double[] xs, double[] ys,
+                        BitSet valid) {
+    Batch.run(latitudes, longitudes, xs, ys, (from, to) -> {
+      long bits = 0;
+      for (int i = from; i < to; i++) {
+        double x = toX(longitudes[i]);
+        double y = toY(latitudes[i]);
+        if (Geodetic.isValid(latitudes[i], longitudes[i]) &&
+            Double.isFinite(x) && Double.isFinite(y)) {
+          xs[i] = x;
+          ys[i] = y;
+          bits |= 1L << (i - from);
+        }
+        else {
+          xs[i] = Double.NaN;
+          ys[i] = Double.NaN;
+        }
+      }
+      return bits;
+    }, valid);
+  }
+
+  /**
+   * {@inheritDoc} The coordinates are converted separately, without creating
+   * objects.
+   */
+  @Override
+  default void toGeodetics(double[] xs, double[] ys, double[] latitudes, double[] longitudes,
+                           BitSet valid) {
+    Batch.run(xs, ys, latitudes, longitudes, (from, to) -> {
+      long bits = 0;
+      for (int i = from; i < to; i++) {
+        double longitude = toLongitude(xs[i]);
+        double latitude  = toLatitude(ys[i]);
+        if (Geodetic.isValid(latitude, longitude)) {
+          latitudes[i] = latitude;
+          longitudes[i] = longitude;
+          bits |= 1L << (i - from);
+        }
+        else {
+          latitudes[i] = Double.NaN;
+          longitudes[i] = Double.NaN;
+        }
+      }
+      return bits;
+    }, valid);
+  }
+
   /**
    * Calculate the longitude for the specified x-coordinate
    * @param x x-coordinate
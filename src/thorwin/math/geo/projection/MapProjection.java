@@ -18,6 +18,7 @@
 package thorwin.math.geo.projection;
 
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.Optional;
 
 import thorwin.math.Vector2D;
@@ -48,6 +49,67 @@ public interface MapProjection extends Serializable {
    */
   Optional<Geodetic> toGeodetic(double x, double y);
 
+  /**
+   * Converts locations to points in 2D space, in parallel for large batches.
+   * Locations without a point get NaN coordinates.
+   *
+   * @param latitudes  latitudes (radians)
+   * @param longitudes longitudes (radians)
+   * @param xs         receives the x-coordinates
+   * @param ys         receives the y-coordinates
+   * @param valid      receives which locations have a point (may be null)
+   */
+  default void toPoints(double[] latitudes, double[] longitudes, double[] xs, double[] ys,
+                        BitSet valid) {
+    Batch.run(latitudes, longitudes, xs, ys, (from, to) -> {
+      long bits = 0;
+      for (int i = from; i < to; i++) {
+        Optional<Vector2D> point = Geodetic.isValid(latitudes[i], longitudes[i]) ?
+                                   toPoint(latitudes[i], longitudes[i]) : Optional.empty();
+        if (point.isPresent()) {
+          xs[i] = point.get().getX();
+          ys[i] = point.get().getY();
+          bits |= 1L << (i - from);
+        }
+        else {
+          xs[i] = Double.NaN;
+          ys[i] = Double.NaN;
+        }
+      }
+      return bits;
+    }, valid);
+  }
+
+  /**
+   * Converts points in 2D space to geodetic locations, in parallel for large
+   * batches. Points without a location get NaN coordinates.
+   *
+   * @param xs         x-coordinates
+   * @param ys         y-coordinates
+   * @param latitudes  receives the latitudes (radians)
+   * @param longitudes receives the longitudes (radians)
+   * @param valid      receives which points have a location (may be null)
+   */
+  default void toGeodetics(double[] xs, double[] ys, double[] latitudes, double[] longitudes,
+                           BitSet valid) {
+    Batch.run(xs, ys, latitudes, longitudes, (from, to) -> {
+      long bits = 0;
+      for (int i = from; i < to; i++) {
+        Optional<Geodetic> location = toGeodetic(xs[i], ys[i]);
+        if (location.isPresent()) {
+          latitudes[i] = location.get().getLatitude();
+          longitudes[i] = location.get().getLongitude();
+          bits |= 1L << (i - from);
+        }
+        else {
+          latitudes[i] = Double.NaN;
+          longitudes[i] = Double.NaN;
+        }
+      }
+      return bits;
+    }, valid);
+  }
+
   /**
    * Returns the minimum x-coordinate in this map projection
    * @return x-coordinate
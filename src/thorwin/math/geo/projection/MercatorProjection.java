@@ -19,10 +19,13 @@ package thorwin.math.geo.projection;
 
 import static java.lang.Math.PI;
 import static java.lang.Math.atan;
+import static java.lang.Math.exp;
 import static java.lang.Math.log;
 import static java.lang.Math.sinh;
 import static java.lang.Math.tan;
 
+import java.util.BitSet;
+
 import thorwin.math.geo.Geodetic;
 
 /**
@@ -81,6 +84,58 @@ public final class MercatorProjection implements CylindricalProjection {
     return longitude - l0;
   }
 
+  @Override
+  public void toPoints(double[] latitudes, double[] longitudes, double[] xs, double[] ys,
+                       BitSet valid) {
+    double l0 = this.l0;
+    Batch.run(latitudes, longitudes, xs, ys, (from, to) -> {
+      long bits = 0;
+      for (int i = from; i < to; i++) {
+        double latitude  = latitudes[i];
+        double longitude = longitudes[i];
+        double y         = log(tan((PI / 4.0) + (latitude / 2.0)));
+        if (Geodetic.isValid(latitude, longitude) && Double.isFinite(y)) {
+          xs[i] = longitude - l0;
+          ys[i] = y;
+          bits |= 1L << (i - from);
+        }
+        else {
+          xs[i] = Double.NaN;
+          ys[i] = Double.NaN;
+        }
+      }
+      return bits;
+    }, valid);
+  }
+
+  /**
+   * {@inheritDoc} The latitude is calculated as <i>2 atan(exp(y)) - PI/2</i>,
+   * which agrees with {@link #toLatitude(double)} to rounding (a few ulps)
+   * but is cheaper.
+   */
+  @Override
+  public void toGeodetics(double[] xs, double[] ys, double[] latitudes, double[] longitudes,
+                          BitSet valid) {
+    double l0 = this.l0;
+    Batch.run(xs, ys, latitudes, longitudes, (from, to) -> {
+      long bits = 0;
+      for (int i = from; i < to; i++) {
+        double latitude  = 2 * atan(exp(ys[i])) - (PI / 2.0);
+        double longitude = xs[i] + l0;
+        if (Geodetic.isValid(latitude, longitude)) {
+          latitudes[i] = latitude;
+          longitudes[i] = longitude;
+          bits |= 1L << (i - from);
+        }
+        else {
+          latitudes[i] = Double.NaN;
+          longitudes[i] = Double.NaN;
+        }
+      }
+      return bits;
+    }, valid);
+  }
+
   @Override
   public String toString() {
     return "MercatorProjection{" + "l0=" + l0 + '}';
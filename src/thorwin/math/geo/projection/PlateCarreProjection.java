@@ -17,6 +17,8 @@
 
 package thorwin.math.geo.projection;
 
+import java.util.BitSet;
+
 import thorwin.math.geo.Geodetic;
 
 /**
@@ -74,6 +76,60 @@ public final class PlateCarreProjection implements CylindricalProjection {
     return (longitude * sx) + tx;
   }
 
+  @Override
+  public void toPoints(double[] latitudes, double[] longitudes, double[] xs, double[] ys,
+                       BitSet valid) {
+    // y = height - (latitude * sy + ty) = (height - ty) - latitude * sy
+    double sx = this.sx;
+    double tx = this.tx;
+    double sy = this.sy;
+    double ty = height - this.ty;
+    Batch.run(latitudes, longitudes, xs, ys, (from, to) -> {
+      long bits = 0;
+      for (int i = from; i < to; i++) {
+        double latitude  = latitudes[i];
+        double longitude = longitudes[i];
+        if (Geodetic.isValid(latitude, longitude)) {
+          xs[i] = (longitude * sx) + tx;
+          ys[i] = ty - (latitude * sy);
+          bits |= 1L << (i - from);
+        }
+        else {
+          xs[i] = Double.NaN;
+          ys[i] = Double.NaN;
+        }
+      }
+      return bits;
+    }, valid);
+  }
+
+  @Override
+  public void toGeodetics(double[] xs, double[] ys, double[] latitudes, double[] longitudes,
+                          BitSet valid) {
+    // latitude = (height - y - ty) / sy = ((height - ty) - y) / sy
+    double sx = this.sx;
+    double tx = this.tx;
+    double sy = this.sy;
+    double ty = height - this.ty;
+    Batch.run(xs, ys, latitudes, longitudes, (from, to) -> {
+      long bits = 0;
+      for (int i = from; i < to; i++) {
+        double latitude  = (ty - ys[i]) / sy;
+        double longitude = (xs[i] - tx) / sx;
+        if (Geodetic.isValid(latitude, longitude)) {
+          latitudes[i] = latitude;
+          longitudes[i] = longitude;
+          bits |= 1L << (i - from);
+        }
+        else {
+          latitudes[i] = Double.NaN;
+          longitudes[i] = Double.NaN;
+        }
+      }
+      return bits;
+    }, valid);
+  }
+
   @Override
   public String toString() {
     return "PlateCarreProjection{" + "sx=" + sx + ", sy=" + sy + ", tx=" + tx
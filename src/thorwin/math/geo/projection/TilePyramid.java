@@ -0,0 +1,359 @@
+/******************************************************************************
+ * Copyright (C) 2015 Sebastiaan R. Hogenbirk                                 *
+ *                                                                            *
+ * This program is free software: you can redistribute it and/or modify       *
+ * it under the terms of the GNU Lesser General Public License as published by*
+ * the Free Software Foundation, either version 3 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of             *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the              *
+ * GNU Lesser General Public License for more details.                        *
+ *                                                                            *
+ * You should have received a copy of the GNU Lesser General Public License   *
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.      *
+ ******************************************************************************/
+
+package thorwin.math.geo.projection;
+
+import static java.lang.Math.PI;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+import thorwin.math.geo.GridClipper;
+import thorwin.math.geo.Polygon2D;
+import thorwin.math.geo.Rectangle2D;
+
+
+/**
+ * Pyramid of map tiles over the extent of a map projection. At zoom level
+ * <i>z</i> the extent is divided into <i>2^z</i> by <i>2^z</i> tiles;
+ * columns increase with x and rows increase with y. Tiles are identified by
+ * a single key (see {@link #key(int, int, int)}), so buckets of tiles can be
+ * kept in sorted maps.
+ * <p>
+ * Feature sets (polygons in geodetic coordinates) are projected and clipped
+ * into tile buckets in one pass: every feature is projected with the batch
+ * projection of the map projection, and clipped against all tiles at once
+ * by a {@link GridClipper}. Features are processed in parallel.
+ */
+public final class TilePyramid implements Serializable {
+
+  private static final long serialVersionUID = 3874201934770951337L;
+
+  /**
+   * Maximum zoom level.
+   */
+  public static final int MAX_ZOOM = 29;
+
+  /**
+   * Number of bits of the column and row of a key.
+   */
+  private static final int BITS = 29;
+
+  /**
+   * Map projection.
+   */
+  private final MapProjection projection;
+
+  /**
+   * Extent of the tiles in projected coordinates.
+   */
+  private final Rectangle2D extent;
+
+
+  /**
+   * Creates a tile pyramid over the extent of a map projection.
+   *
+   * @param projection map projection with a finite extent
+   */
+  public TilePyramid(MapProjection projection) {
+    this(projection, new Rectangle2D(projection.getMinimumX(),
+                                     projection.getMinimumY(),
+                                     projection.getMaximumX() - projection.getMinimumX(),
+                                     projection.getMaximumY() - projection.getMinimumY()));
+  }
+
+
+  /**
+   * Creates a tile pyramid over an extent of a map projection.
+   *
+   * @param projection map projection
+   * @param extent     extent of the tiles in projected coordinates
+   */
+  public TilePyramid(MapProjection projection, Rectangle2D extent) {
+    super();
+    Rectangle2D normalized = extent.normalize();
+    if (!Double.isFinite(normalized.getX()) || !Double.isFinite(normalized.getY()) ||
+        !(normalized.getWidth() > 0 && normalized.getWidth() < Double.POSITIVE_INFINITY) ||
+        !(normalized.getHeight() > 0 && normalized.getHeight() < Double.POSITIVE_INFINITY)) {
+      throw new IllegalArgumentException("Extent should be finite and not empty");
+    }
+    this.projection = projection;
+    this.extent = normalized;
+  }
+
+
+  /**
+   * Creates the common (web) tile pyramid of a Mercator projection: the
+   * square extent [-PI,PI] x [-PI,PI], up to about 85 degrees latitude.
+   *
+   * @param projection Mercator projection
+   * @return tile pyramid
+   */
+  public static TilePyramid mercator(MercatorProjection projection) {
+    return new TilePyramid(projection, new Rectangle2D(-PI, -PI, 2 * PI));
+  }
+
+
+  /**
+   * Returns the key of a tile: the zoom level in the upper bits, followed by
+   * the row and the column.
+   *
+   * @param zoom   zoom level
+   * @param column column
+   * @param row    row
+   * @return key
+   */
+  public static long key(int zoom, int column, int row) {
+    checkZoom(zoom);
+    int tiles = 1 << zoom;
+    if (column < 0 || column >= tiles || row < 0 || row >= tiles) {
+      throw new IllegalArgumentException("Tile outside of the pyramid");
+    }
+    return ((long) zoom << (2 * BITS)) | ((long) row << BITS) | column;
+  }
+
+
+  /**
+   * Returns the zoom level of a tile key.
+   *
+   * @param key key
+   * @return zoom level
+   */
+  public static int zoom(long key) {
+    return (int) (key >>> (2 * BITS));
+  }
+
+
+  /**
+   * Returns the column of a tile key.
+   *
+   * @param key key
+   * @return column
+   */
+  public static int column(long key) {
+    return (int) (key & ((1L << BITS) - 1));
+  }
+
+
+  /**
+   * Returns the row of a tile key.
+   *
+   * @param key key
+   * @return row
+   */
+  public static int row(long key) {
+    return (int) ((key >>> BITS) & ((1L << BITS) - 1));
+  }
+
+
+  /**
+   * Returns the map projection.
+   *
+   * @return map projection
+   */
+  public MapProjection getProjection() {
+    return projection;
+  }
+
+
+  /**
+   * Returns the extent of the tiles in projected coordinates.
+   *
+   * @return extent
+   */
+  public Rectangle2D getExtent() {
+    return extent;
+  }
+
+
+  /**
+   * Returns the bounds of a tile in projected coordinates.
+   *
+   * @param key key of the tile
+   * @return bounds of the tile
+   */
+  public Rectangle2D getBounds(long key) {
+    int    zoom   = zoom(key);
+    double width  = extent.getWidth() / (1 << zoom);
+    double height = extent.getHeight() / (1 << zoom);
+    return new Rectangle2D(extent.getX() + column(key) * width,
+                           extent.getY() + row(key) * height,
+                           width,
+                           height);
+  }
+
+
+  /**
+   * Projects feature polygons and clips them into tile buckets.
+   *
+   * @param zoom       zoom level of the tiles
+   * @param latitudes  latitudes of the vertices of every feature (radians)
+   * @param longitudes longitudes of the vertices of every feature (radians)
+   * @return clipped fragments per tile key, sorted by key and by feature
+   */
+  public Map<Long, List<Fragment>> clip(int zoom, double[][] latitudes, double[][] longitudes) {
+    checkZoom(zoom);
+    if (latitudes.length != longitudes.length) {
+      throw new IllegalArgumentException("Number of features should be equal");
+    }
+
+    double[][] xs = new double[latitudes.length][];
+    double[][] ys = new double[latitudes.length][];
+    IntStream.range(0, latitudes.length)
+             .parallel()
+             .forEach((feature) -> project(feature, latitudes[feature], longitudes[feature],
+                                           xs, ys));
+
+    int                       tiles     = 1 << zoom;
+    GridClipper.Fragments     fragments = new GridClipper(extent, tiles, tiles).clip(xs, ys);
+    Map<Long, List<Fragment>> buckets   = new TreeMap<>();
+    for (int i = 0; i < fragments.size(); i++) {
+      long key = key(zoom, fragments.getColumn(i), fragments.getRow(i));
+      buckets.computeIfAbsent(key, (k) -> new ArrayList<>())
+             .add(new Fragment(key, fragments.getFeature(i), fragments.getPolygon(i)));
+    }
+    return buckets;
+  }
+
+
+  /**
+   * Projects a feature polygon. Vertices without a point in the projection
+   * are skipped.
+   *
+   * @param feature    index of the feature
+   * @param latitudes  latitudes of the vertices
+   * @param longitudes longitudes of the vertices
+   * @param xs         receives the x-coordinates of the feature
+   * @param ys         receives the y-coordinates of the feature
+   */
+  private void project(int feature, double[] latitudes, double[] longitudes,
+                       double[][] xs, double[][] ys) {
+    int      n      = latitudes.length;
+    double[] x      = new double[n];
+    double[] y      = new double[n];
+    BitSet   valid  = new BitSet(n);
+    projection.toPoints(latitudes, longitudes, x, y, valid);
+
+    int count = 0;
+    for (int i = valid.nextSetBit(0); i >= 0; i = valid.nextSetBit(i + 1)) {
+      x[count] = x[i];
+      y[count] = y[i];
+      count++;
+    }
+    xs[feature] = Arrays.copyOf(x, count);
+    ys[feature] = Arrays.copyOf(y, count);
+  }
+
+
+  /**
+   * Checks a zoom level.
+   *
+   * @param zoom zoom level
+   */
+  private static void checkZoom(int zoom) {
+    if (zoom < 0 || zoom > MAX_ZOOM) {
+      throw new IllegalArgumentException("Zoom level should be in range [0," + MAX_ZOOM + "]");
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    return "TilePyramid{" + "projection=" + projection + ", extent=" + extent + '}';
+  }
+
+
+  /**
+   * Part of a feature within a tile.
+   */
+  public static final class Fragment implements Serializable {
+
+    private static final long serialVersionUID = -1650981364503227045L;
+
+    /**
+     * Key of the tile.
+     */
+    private final long key;
+
+    /**
+     * Index of the feature.
+     */
+    private final int feature;
+
+    /**
+     * Clipped polygon in projected coordinates.
+     */
+    private final Polygon2D polygon;
+
+
+    /**
+     * Constructs a fragment.
+     *
+     * @param key     key of the tile
+     * @param feature index of the feature
+     * @param polygon clipped polygon in projected coordinates
+     */
+    public Fragment(long key, int feature, Polygon2D polygon) {
+      super();
+      this.key = key;
+      this.feature = feature;
+      this.polygon = polygon;
+    }
+
+
+    /**
+     * Returns the key of the tile.
+     *
+     * @return key
+     */
+    public long getKey() {
+      return key;
+    }
+
+
+    /**
+     * Returns the index of the feature.
+     *
+     * @return index of the feature
+     */
+    public int getFeature() {
+      return feature;
+    }
+
+
+    /**
+     * Returns the clipped polygon in projected coordinates.
+     *
+     * @return polygon
+     */
+    public Polygon2D getPolygon() {
+      return polygon;
+    }
+
+
+    @Override
+    public String toString() {
+      return "Fragment{" + "key=" + key + ", feature=" + feature + ", polygon=" + polygon + '}';
+    }
+  }
+}
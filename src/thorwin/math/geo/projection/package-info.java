@@ -18,5 +18,9 @@
 /**
  * Provides classes for projecting 3-dimensional spheroids (Earth)
  * on a 2-dimensional space.
+ * <p>
+ * Besides single locations, map projections convert whole arrays of
+ * coordinates, reporting validity in a {@code BitSet}. The
+ * {@code TilePyramid} projects and clips feature sets into map tiles.
  */
 package thorwin.math.geo.projection;
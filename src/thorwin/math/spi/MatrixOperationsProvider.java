@@ -94,6 +94,99 @@ public class MatrixOperationsProvider {
   }
 
 
+  /**
+   * Calculates <i>C<sub>out</sub> = &alpha; &times; A &times; B + &beta;
+   * &times; C</i> in single precision. The resulting matrix is stored in
+   * matrix c. This is basically the fortran SGEMM function, without the stride
+   * support.
+   *
+   * @param a     input matrix A (row-major packed)
+   * @param b     input matrix B (row-major packed)
+   * @param c     input/output matrix C (row-major packed).
+   * @param m     row count of matrix A and C
+   * @param n     column count of matrix b and C
+   * @param k     column count of matrix A and row count of matrix B
+   * @param ta    matrix A transposition state
+   * @param tb    matrix B transposition state
+   * @param alpha alpha multiplicand
+   * @param beta  beta multiplicand
+   */
+  public void sgemm(float[] a,
+                    float[] b,
+                    float[] c,
+                    int m,
+                    int n,
+                    int k,
+                    boolean ta,
+                    boolean tb,
+                    float alpha,
+                    float beta) {
+    if (ta) {
+      a = transpose(a, k, m);
+    }
+
+    if (tb) {
+      b = transpose(b, n, k);
+    }
+
+    if (c == a) {
+      a = a.clone();
+    }
+    if (c == b) {
+      b = b.clone();
+    }
+
+    if (beta == 0.0f) {
+      Arrays.fill(c, 0, m * n, 0.0f);
+    }
+    else if (beta != 1.0f) {
+      for (int i = 0; i < m * n; i++) {
+        c[i] *= beta;
+      }
+    }
+
+    // row of A times B, accumulated row by row of B so the inner loop is
+    // sequential in both B and C
+    for (int i = 0; i < m; i++) {
+      int base = i * n;
+      int ia   = i * k;
+      for (int p = 0; p < k; p++) {
+        float value = alpha * a[ia + p];
+        if (value == 0.0f) {
+          continue;
+        }
+        int ib = p * n;
+        for (int j = 0; j < n; j++) {
+          c[base + j] += value * b[ib + j];
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Creates a transposed version of the packed single precision array
+   * @param packed source array
+   * @param rows rows
+   * @param columns columns
+   * @return new transposed packed array
+   */
+  private static float[] transpose(float[] packed, int rows, int columns) {
+    float[] transposed = new float[packed.length];
+    int     index1     = 0;
+    for (int i = 0; i < columns; i++) {
+      int index2 = i;
+      int fence  = index1 + rows;
+      while (index1 < fence) {
+        transposed[index1] = packed[index2];
+        index1++;
+        index2 += columns;
+      }
+    }
+    return transposed;
+  }
+
+
   /**
    * Creates a transposed version of the packed array
    * @param packed source array
@@ -45,7 +45,54 @@ public class VectorOperationsProvider {
       throw new IllegalArgumentException("length of x and y should be equal");
     }
     for (int i = 0; i < x.length; i++) {
-      y[i] = a * x[i];
+      y[i] += a * x[i];
     }
   }
+
+
+  /**
+   * Multiply a single precision vector by a constant
+   * @param alpha value
+   * @param x vector
+   */
+  public void sscal(float alpha, float[] x) {
+    for (int i = 0; i < x.length; i++) {
+      x[i] *= alpha;
+    }
+  }
+
+
+  /**
+   * Calculates <i>Y<sub>out</sub> = A&times;X + Y</i> in single precision
+   * @param a value A
+   * @param x input vector X
+   * @param y input/output vector Y
+   */
+  public void saxpy(float a, float[] x, float[] y) {
+    if (x.length != y.length) {
+      throw new IllegalArgumentException("length of x and y should be equal");
+    }
+    for (int i = 0; i < x.length; i++) {
+      y[i] += a * x[i];
+    }
+  }
+
+
+  /**
+   * Calculates the dot product of two single precision vectors, accumulated
+   * in double precision.
+   * @param x vector X
+   * @param y vector Y
+   * @return dot product
+   */
+  public double dsdot(float[] x, float[] y) {
+    if (x.length != y.length) {
+      throw new IllegalArgumentException("length of x and y should be equal");
+    }
+    double dot = 0.0;
+    for (int i = 0; i < x.length; i++) {
+      dot += (double) x[i] * y[i];
+    }
+    return dot;
+  }
 }
@@ -10,6 +10,8 @@ import javafx.scene.shape.Line;
 import javafx.scene.shape.Polygon;
 import javafx.scene.shape.Polyline;
 import javafx.scene.shape.Rectangle;
+import thorwin.math.geo.CurveCache;
+import thorwin.math.geo.FlattenedCurve;
 
 public class LineUtil
 {
@@ -324,4 +326,64 @@ public class LineUtil
 		return new Point2D((int) Math.round(sx1 + u * xDelta), (int) Math.round(sy1 + u * yDelta));
 	}
 
+	// **-------------------------------------------------------------------------------
+	static double CURVE_TOLERANCE = 0.25;
+	private static final CurveCache CURVES = new CurveCache(4096);
+
+	/**
+	 * Flattens a cubic curve into a polyline, reusing the cached polyline while the
+	 * control points are unchanged. Coordinates are local to the curve.
+	 * @param c the CubicCurve
+	 * @param tolerance maximum distance between the polyline and the curve
+	 * @return the flattened curve
+	 */
+	public static FlattenedCurve flatten(CubicCurve c, double tolerance)
+	{
+		return CURVES.flatten(c.getStartX(), c.getStartY(), c.getControlX1(), c.getControlY1(),
+				c.getControlX2(), c.getControlY2(), c.getEndX(), c.getEndY(), tolerance);
+	}
+
+	/**
+	 * Finds the point on a cubic curve closest to a point.
+	 * @param c the CubicCurve
+	 * @param px x-coordinate of the point
+	 * @param py y-coordinate of the point
+	 * @return a Point2D on the curve
+	 */
+	public static Point2D getClosestPointOnCurve(CubicCurve c, double px, double py)
+	{
+		FlattenedCurve curve = flatten(c, CURVE_TOLERANCE);
+		double[] pt = new double[3];
+		curve.evaluate(curve.closest(px, py, 0), pt);
+		return new Point2D(pt[0], pt[1]);
+	}
+
+	/**
+	 * Returns the parameter 0<=t<=1 of the point on a cubic curve closest to a point
+	 * @param c the CubicCurve
+	 * @param pt the point
+	 * @return param between 0 and 1
+	 */
+	public static double closestParameter(CubicCurve c, Point2D pt)
+	{
+		return flatten(c, CURVE_TOLERANCE).closest(pt.getX(), pt.getY(), 0);
+	}
+
+	/**
+	 * Returns the parameter 0<=t<=1 at a fraction of the length of a cubic curve,
+	 * to place points at equal distances along it
+	 * @param c the CubicCurve
+	 * @param fraction fraction of the length, between 0 and 1
+	 * @return param between 0 and 1
+	 */
+	public static double parameterAtLength(CubicCurve c, double fraction)
+	{
+		FlattenedCurve curve = flatten(c, CURVE_TOLERANCE);
+		return curve.parameter(fraction * curve.length());
+	}
+
+	static public boolean onEdge(Point2D pt, CubicCurve c) {
+		return flatten(c, CURVE_TOLERANCE).isWithin(pt.getX(), pt.getY(), 0, EPSILON);
+	}
+
 }